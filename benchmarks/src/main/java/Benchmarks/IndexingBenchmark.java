@@ -0,0 +1,41 @@
+package Benchmarks;
+
+import InvertedIndex.InvertedIndex;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link InvertedIndex#addDocument} throughput in documents per second, indexing a
+ * fixed batch of synthetic pages into a fresh index on every invocation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class IndexingBenchmark {
+    private static final int DOCS = 1_000;
+
+    @Param({"100", "1000"})
+    public int meanDocLength;
+
+    private List<String> documents;
+
+    @Setup
+    public void setup() {
+        documents = new SyntheticCorpus(50_000, 1.0, 42).documents(DOCS, meanDocLength);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(DOCS)
+    public InvertedIndex addDocument() {
+        InvertedIndex index = new InvertedIndex();
+        for (int docId = 0; docId < documents.size(); docId++) {
+            index.addDocument(docId, documents.get(docId));
+        }
+        return index;
+    }
+}
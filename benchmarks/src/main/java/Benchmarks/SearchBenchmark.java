@@ -0,0 +1,92 @@
+package Benchmarks;
+
+import InvertedIndex.IndexReader;
+import InvertedIndex.IndexWriter;
+import InvertedIndex.InvertedIndex;
+import InvertedIndex.MappedIndex;
+import InvertedIndex.ParallelIndexBuilder;
+import SearchEngine.Bm25;
+import SearchEngine.SearchEngine;
+import SearchEngine.TfIdf;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * {@link SearchEngine#search} latency for 1-, 2- and 5-term queries at several corpus
+ * sizes and for each scoring: TF-IDF and BM25 over the in-memory index, and BM25 over
+ * a {@link MappedIndex} written with impact-ordered postings, which evaluates
+ * score-at-a-time. Each invocation runs the next query from a fixed, pre-generated list.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SearchBenchmark {
+    private static final int QUERIES = 1_024;
+
+    @Param({"1000", "10000", "50000"})
+    public int corpusSize;
+
+    @Param({"1", "2", "5"})
+    public int queryTerms;
+
+    @Param({"tfidf", "bm25", "bm25-impact-ordered"})
+    public String scoring;
+
+    private SearchEngine engine;
+    private String[] queries;
+    // the written index of bm25-impact-ordered, deleted after the trial
+    private MappedIndex mapped;
+    private Path dir;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        SyntheticCorpus corpus = new SyntheticCorpus(50_000, 1.0, 42);
+        List<String> documents = corpus.documents(corpusSize, 300);
+        InvertedIndex index = new ParallelIndexBuilder(Runtime.getRuntime().availableProcessors()).build(documents);
+        index.getDocNorms(); // refresh the norm table outside the measurement
+        IndexReader reader = index;
+        if (scoring.equals("bm25-impact-ordered")) {
+            dir = Files.createTempDirectory("search-benchmark");
+            IndexWriter.write(index, dir, true);
+            reader = mapped = MappedIndex.open(dir);
+        }
+        engine = new SearchEngine(reader, scoring.equals("tfidf") ? new TfIdf() : new Bm25());
+
+        queries = new String[QUERIES];
+        for (int i = 0; i < QUERIES; i++) {
+            queries[i] = corpus.query(queryTerms);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        if (mapped != null) {
+            mapped.close();
+            try (Stream<Path> files = Files.walk(dir)) {
+                for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                    Files.delete(file);
+                }
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class QueryCursor {
+        int next;
+    }
+
+    @Benchmark
+    public List<SearchEngine.Result> search(QueryCursor cursor) {
+        return engine.search(queries[cursor.next++ & (QUERIES - 1)]);
+    }
+}
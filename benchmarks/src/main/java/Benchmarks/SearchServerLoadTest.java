@@ -0,0 +1,160 @@
+package Benchmarks;
+
+import DocumentStore.DocumentStore;
+import DocumentStore.MappedDocumentStore;
+import InvertedIndex.IndexWriter;
+import InvertedIndex.InvertedIndex;
+import InvertedIndex.MappedIndex;
+import InvertedIndex.ParallelIndexBuilder;
+import SearchEngine.Highlighter;
+import SearchEngine.SearchEngine;
+import Server.SearchServer;
+
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Closed-loop load test of {@link SearchServer}: for each concurrency level, that many
+ * virtual-thread clients send queries back to back for a fixed time, and the run
+ * reports throughput, latency percentiles and how many requests were shed.
+ * <pre>
+ * java -cp target/benchmarks.jar Benchmarks.SearchServerLoadTest [docs] [seconds] [concurrency...]
+ * </pre>
+ * The server reads a synthetic corpus from memory-mapped files, as {@code Main --port}
+ * does. Its result cache is disabled so every request is evaluated; the client runs
+ * in the same JVM, so the numbers include its cost too. A refused client backs off
+ * briefly before its next request, as one honouring Retry-After would, rather than
+ * turning shed load into a busy loop.
+ */
+public class SearchServerLoadTest {
+    private static final int QUERIES = 4_096;
+    private static final long BACKOFF_MILLIS = 10;
+
+    public static void main(String[] args) throws Exception {
+        int docs = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        int[] levels = args.length > 2
+                ? Arrays.stream(args, 2, args.length).mapToInt(Integer::parseInt).toArray()
+                : new int[]{1, 2, 4, 8, 16, 32, 64, 128, 256};
+
+        SyntheticCorpus corpus = new SyntheticCorpus(50_000, 1.0, 42);
+        DocumentStore store = new DocumentStore();
+        for (int i = 0; i < docs; i++) {
+            store.add("https://example.org/doc/" + i, "Document " + i, corpus.document(300));
+        }
+        InvertedIndex built = new ParallelIndexBuilder(Runtime.getRuntime().availableProcessors(), true).build(store.texts());
+        Path dir = Files.createTempDirectory("load-test");
+        store.write(dir);
+        IndexWriter.write(built, dir);
+
+        String[] queries = new String[QUERIES];
+        for (int i = 0; i < QUERIES; i++) {
+            queries[i] = URLEncoder.encode(corpus.query(1 + i % 3), StandardCharsets.UTF_8);
+        }
+
+        try (MappedIndex index = MappedIndex.open(dir);
+             MappedDocumentStore documents = MappedDocumentStore.open(dir);
+             SearchServer server = new SearchServer(new InetSocketAddress("localhost", 0), new SearchEngine(index),
+                     new Highlighter(index, documents), documents)) {
+            server.start();
+            HttpClient client = HttpClient.newBuilder()
+                    .version(HttpClient.Version.HTTP_1_1)
+                    .executor(Executors.newVirtualThreadPerTaskExecutor())
+                    .build();
+            String base = "http://localhost:" + server.port() + "/search?k=10&q=";
+
+            run(client, base, queries, 8, 2); // warm up
+            System.out.printf("%d docs, %d cores, %ds per level%n", docs, Runtime.getRuntime().availableProcessors(), seconds);
+            System.out.printf("%11s %9s %9s %9s %9s %9s%n", "concurrency", "qps", "p50 ms", "p99 ms", "max ms", "shed");
+            for (int concurrency : levels) {
+                Level level = run(client, base, queries, concurrency, seconds);
+                System.out.printf("%11d %9.0f %9.2f %9.2f %9.2f %9d%n", concurrency, level.qps,
+                        level.percentile(0.50), level.percentile(0.99), level.percentile(1.0), level.shed);
+            }
+        }
+    }
+
+    private static Level run(HttpClient client, String base, String[] queries, int concurrency, int seconds)
+            throws InterruptedException, ExecutionException {
+        long end = System.nanoTime() + seconds * 1_000_000_000L;
+        List<Future<Client>> clients = new ArrayList<>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int c = 0; c < concurrency; c++) {
+                int seed = c;
+                clients.add(executor.submit(() -> {
+                    Client stats = new Client();
+                    int next = seed * 7919;
+                    while (System.nanoTime() < end) {
+                        HttpRequest request = HttpRequest.newBuilder(URI.create(base + queries[next++ & (QUERIES - 1)]))
+                                .timeout(Duration.ofSeconds(10)).build();
+                        long start = System.nanoTime();
+                        int status = client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+                        stats.record(System.nanoTime() - start, status);
+                        if (status == 503) {
+                            Thread.sleep(BACKOFF_MILLIS);
+                        }
+                    }
+                    return stats;
+                }));
+            }
+        }
+
+        Level level = new Level();
+        long completed = 0;
+        for (Future<Client> future : clients) {
+            Client stats = future.get();
+            level.latencies = concat(level.latencies, stats.latencies, stats.count);
+            level.shed += stats.shed;
+            completed += stats.count;
+        }
+        Arrays.sort(level.latencies);
+        level.qps = completed / (double) seconds;
+        return level;
+    }
+
+    private static long[] concat(long[] a, long[] b, int bLength) {
+        long[] joined = Arrays.copyOf(a, a.length + bLength);
+        System.arraycopy(b, 0, joined, a.length, bLength);
+        return joined;
+    }
+
+    // one client's successful request latencies, and the requests the server refused
+    private static final class Client {
+        long[] latencies = new long[1024];
+        int count;
+        long shed;
+
+        void record(long nanos, int status) {
+            if (status != 200) {
+                shed++;
+                return;
+            }
+            if (count == latencies.length) {
+                latencies = Arrays.copyOf(latencies, count * 2);
+            }
+            latencies[count++] = nanos;
+        }
+    }
+
+    private static final class Level {
+        long[] latencies = new long[0];
+        long shed;
+        double qps;
+
+        double percentile(double p) {
+            if (latencies.length == 0) return 0;
+            int rank = (int) Math.ceil(p * latencies.length) - 1;
+            return latencies[Math.max(0, rank)] / 1e6;
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package Benchmarks;
+
+import Stemmer.StemCache;
+import Stemmer.Stemmer;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stemming throughput over a Zipfian token stream, in tokens per second.
+ * {@code fresh} is the old allocate-per-token path, {@code reused} a single reset Stemmer,
+ * and {@code cached} the shared StemCache used by indexing and querying.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StemmerBenchmark {
+    private static final int TOKENS = 100_000;
+
+    private String[] tokens;
+    private Stemmer stemmer;
+    private StemCache cache;
+
+    @Setup
+    public void setup() {
+        tokens = new SyntheticCorpus(50_000, 1.0, 42).tokens(TOKENS);
+        stemmer = new Stemmer();
+        cache = new StemCache(1 << 16);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(TOKENS)
+    public void fresh(Blackhole blackhole) {
+        for (String token : tokens) {
+            Stemmer s = new Stemmer();
+            s.addString(token);
+            s.stem();
+            blackhole.consume(s.toString());
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(TOKENS)
+    public void reused(Blackhole blackhole) {
+        for (String token : tokens) {
+            stemmer.reset();
+            stemmer.add(token, 0, token.length());
+            stemmer.stem();
+            blackhole.consume(stemmer.getResultLength());
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(TOKENS)
+    public void cached(Blackhole blackhole) {
+        for (String token : tokens) {
+            blackhole.consume(cache.stem(token));
+        }
+    }
+}
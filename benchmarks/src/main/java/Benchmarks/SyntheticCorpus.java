@@ -0,0 +1,101 @@
+package Benchmarks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Deterministic synthetic text with a Zipfian word distribution, so benchmarks run
+ * offline and every run sees the same corpus.
+ * <p>
+ * Words are built from syllables plus common English suffixes, which gives the
+ * stemmer realistic work. The word of rank r is drawn with probability proportional
+ * to 1 / r^exponent, and documents are split into capitalized, punctuated sentences
+ * so the tokenizer sees mixed case and separators.
+ */
+public class SyntheticCorpus {
+    private static final String[] SYLLABLES = {
+            "ka", "ra", "pha", "oh", "men", "tu", "set", "ne", "fer", "ti", "kh", "ptah",
+            "am", "un", "ra", "mes", "dyn", "as", "ty", "temp", "le", "pyr", "mid", "nil",
+            "del", "ta", "gyp", "tian", "old", "king", "dom", "mid", "new", "sun", "god", "ro"
+    };
+    private static final String[] SUFFIXES = {"", "", "", "", "s", "es", "ing", "ed", "ation", "ness", "ly", "er", "ies"};
+
+    private final String[] vocabulary;
+    private final double[] cumulative;
+    private final SplittableRandom random;
+
+    public SyntheticCorpus(int vocabularySize, double exponent, long seed) {
+        this.random = new SplittableRandom(seed);
+        this.vocabulary = new String[vocabularySize];
+        for (int rank = 0; rank < vocabularySize; rank++) {
+            StringBuilder word = new StringBuilder();
+            int syllables = 1 + random.nextInt(3);
+            for (int s = 0; s < syllables; s++) {
+                word.append(SYLLABLES[random.nextInt(SYLLABLES.length)]);
+            }
+            word.append(SUFFIXES[random.nextInt(SUFFIXES.length)]);
+            vocabulary[rank] = word.toString();
+        }
+
+        this.cumulative = new double[vocabularySize];
+        double sum = 0;
+        for (int rank = 0; rank < vocabularySize; rank++) {
+            sum += 1 / Math.pow(rank + 1, exponent);
+            cumulative[rank] = sum;
+        }
+        for (int rank = 0; rank < vocabularySize; rank++) {
+            cumulative[rank] /= sum;
+        }
+    }
+
+    public String word() {
+        int rank = Arrays.binarySearch(cumulative, random.nextDouble());
+        if (rank < 0) rank = -rank - 1;
+        return vocabulary[Math.min(rank, vocabulary.length - 1)];
+    }
+
+    public String document(int meanLength) {
+        int length = meanLength / 2 + random.nextInt(meanLength + 1);
+        StringBuilder text = new StringBuilder(length * 8);
+        boolean sentenceStart = true;
+        for (int i = 0; i < length; i++) {
+            String word = word();
+            if (sentenceStart) {
+                text.append(Character.toUpperCase(word.charAt(0))).append(word, 1, word.length());
+            } else {
+                text.append(word);
+            }
+            sentenceStart = random.nextInt(12) == 0;
+            text.append(sentenceStart ? ". " : random.nextInt(10) == 0 ? ", " : " ");
+        }
+        return text.toString();
+    }
+
+    public List<String> documents(int count, int meanLength) {
+        List<String> documents = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            documents.add(document(meanLength));
+        }
+        return documents;
+    }
+
+    public String query(int terms) {
+        StringBuilder query = new StringBuilder();
+        for (int i = 0; i < terms; i++) {
+            if (i > 0) query.append(' ');
+            query.append(word());
+        }
+        return query.toString();
+    }
+
+    // lower-case words in corpus frequency, as the stemmer receives them
+    public String[] tokens(int count) {
+        String[] tokens = new String[count];
+        for (int i = 0; i < count; i++) {
+            tokens[i] = word();
+        }
+        return tokens;
+    }
+}
@@ -0,0 +1,239 @@
+package Autocomplete;
+
+import DocumentStore.DocumentReader;
+import InvertedIndex.IndexReader;
+import Metrics.Histogram;
+import Metrics.Metrics;
+
+import java.io.Closeable;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+/**
+ * Suggests completions for a query as it is typed.
+ * <p>
+ * Suggestions come from two {@link CompletionIndex}es, each answering a prefix with its
+ * heaviest completions while looking at no more than a few dozen entries:
+ * <ul>
+ * <li>words: the index's terms, weighted by their document frequency. They complete
+ *     the last word typed, so "egyptian pyr" suggests "egyptian pyramid".
+ * <li>phrases: the titles of the pages the index holds, weighted by the number of pages
+ *     with that title, and the queries users ran, weighted by how often. They complete
+ *     the whole prefix.
+ * </ul>
+ * Both lists are merged by weight, so a phrase that is also a word adds up both. Matching
+ * ignores case and extra whitespace. Index terms are stemmed, so a word suggestion is
+ * the stem the index holds ("civil" for "civilization"), which finds the same pages.
+ * <p>
+ * Queries reach the phrases through {@link #recordQuery(String)}. Only plain queries,
+ * made of words, spaces, apostrophes and hyphens, are counted: Boolean, phrase or
+ * wildcard syntax makes a poor suggestion. At most {@value #MAX_LOGGED_QUERIES}
+ * distinct queries are counted between rebuilds, and each rebuild halves every count
+ * and forgets the queries that reach 0, so popularity follows recent traffic.
+ * <p>
+ * The indexes are immutable and published through one volatile field. Lookups never
+ * wait, and any number of threads can run them at once. A rebuild, every
+ * {@code rebuildInterval} on a background thread or on demand, reads the index's
+ * current snapshot, the stored titles and the query counts, and swaps the new indexes
+ * in. Lookups keep using the old ones until then. Lookup and rebuild latencies are
+ * recorded in {@link Metrics#shared()} as {@code autocomplete.suggest} and
+ * {@code autocomplete.rebuild}.
+ */
+public final class Autocomplete implements Closeable {
+    public static final int MAX_K = CompletionIndex.MAX_K;
+    static final int MAX_LOGGED_QUERIES = 1 << 16;
+
+    private static final Histogram SUGGEST = Metrics.shared().histogram("autocomplete.suggest");
+    private static final Histogram REBUILD = Metrics.shared().histogram("autocomplete.rebuild");
+    // the operators of a Boolean query, upper-case like the parser expects them
+    private static final Pattern OPERATOR = Pattern.compile("\\b(AND|OR|NOT)\\b");
+
+    private final IndexReader index;
+    private final DocumentReader documents;
+    private final ConcurrentHashMap<String, LongAdder> queryCounts = new ConcurrentHashMap<>();
+    private final Object rebuildLock = new Object();
+
+    private volatile Indexes current;
+    private final ScheduledExecutorService scheduler;
+
+    /**
+     * Builds the first indexes before returning, so suggestions are available at once.
+     *
+     * @param documents       supplies the page titles
+     * @param rebuildInterval how often the indexes are rebuilt in the background;
+     *                        {@link Duration#ZERO} rebuilds only when {@link #rebuild()} is called
+     */
+    public Autocomplete(IndexReader index, DocumentReader documents, Duration rebuildInterval) {
+        if (rebuildInterval.isNegative()) {
+            throw new IllegalArgumentException("negative rebuild interval: " + rebuildInterval);
+        }
+        this.index = index;
+        this.documents = documents;
+        rebuild();
+        if (rebuildInterval.isZero()) {
+            this.scheduler = null;
+        } else {
+            this.scheduler = Executors.newSingleThreadScheduledExecutor(task -> {
+                Thread thread = new Thread(task, "autocomplete-rebuild");
+                thread.setDaemon(true);
+                return thread;
+            });
+            long nanos = rebuildInterval.toNanos();
+            scheduler.scheduleWithFixedDelay(this::rebuild, nanos, nanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * The k heaviest completions of what the user has typed so far, heaviest first.
+     * A trailing space means the last word is complete: "great " suggests phrases
+     * going on after "great", and no words.
+     *
+     * @throws IllegalArgumentException if k is not from 1 to {@link #MAX_K}
+     */
+    public List<Suggestion> suggest(String prefix, int k) {
+        if (k < 1 || k > MAX_K) {
+            throw new IllegalArgumentException("k must be from 1 to " + MAX_K + ": " + k);
+        }
+        long started = System.nanoTime();
+        try {
+            String key = CompletionIndex.key(prefix, true);
+            if (key.isEmpty()) {
+                return new ArrayList<>();
+            }
+            Indexes indexes = current;
+            Map<String, Suggestion> merged = new HashMap<>();
+            for (Suggestion phrase : indexes.phrases.complete(key, k)) {
+                merge(merged, phrase);
+            }
+            int space = key.lastIndexOf(' ');
+            String head = key.substring(0, space + 1);
+            if (space < key.length() - 1) {
+                for (Suggestion word : indexes.words.complete(key.substring(space + 1), k)) {
+                    merge(merged, new Suggestion(head + word.text, word.weight));
+                }
+            }
+            List<Suggestion> suggestions = new ArrayList<>(merged.values());
+            suggestions.sort(Comparator.comparingLong((Suggestion s) -> -s.weight).thenComparing(s -> s.text));
+            return suggestions.size() > k ? new ArrayList<>(suggestions.subList(0, k)) : suggestions;
+        } finally {
+            SUGGEST.recordSince(started);
+        }
+    }
+
+    // the same phrase from both indexes, perhaps in another case, counts once with both weights
+    private static void merge(Map<String, Suggestion> merged, Suggestion suggestion) {
+        merged.merge(CompletionIndex.key(suggestion.text, false), suggestion,
+                (a, b) -> new Suggestion(a.text, a.weight + b.weight));
+    }
+
+    /**
+     * Counts a query a user ran, so it is suggested from the next rebuild on. Call it
+     * for queries that found something; the others would suggest dead ends.
+     */
+    public void recordQuery(String query) {
+        String key = CompletionIndex.key(query, false);
+        if (key.isEmpty() || !isPlain(key) || OPERATOR.matcher(query).find()) {
+            return;
+        }
+        LongAdder count = queryCounts.get(key);
+        if (count == null) {
+            if (queryCounts.size() >= MAX_LOGGED_QUERIES) {
+                return;
+            }
+            count = queryCounts.computeIfAbsent(key, q -> new LongAdder());
+        }
+        count.increment();
+    }
+
+    private static boolean isPlain(String query) {
+        for (int i = 0; i < query.length(); i++) {
+            char c = query.charAt(i);
+            if (c != ' ' && c != '\'' && c != '-' && !Character.isLetterOrDigit(c)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Rebuilds the indexes from the index's current terms, the stored titles and the
+     * query counts, and publishes them. Lookups are not blocked while it runs; a
+     * concurrent rebuild waits for this one.
+     */
+    public void rebuild() {
+        synchronized (rebuildLock) {
+            long started = System.nanoTime();
+            IndexReader snapshot = index.snapshot();
+            CompletionIndex.Builder words = new CompletionIndex.Builder();
+            snapshot.terms().forEachWithPrefix("", (ordinal, term) -> words.add(term, snapshot.docFreq(term)));
+
+            // only the pages the snapshot can find: the store keeps every version of a
+            // changed page and the pages removed since, which have no length there
+            CompletionIndex.Builder phrases = new CompletionIndex.Builder();
+            for (int docId = 0, n = documents.size(); docId < n; docId++) {
+                if (snapshot.docLength(docId) > 0) {
+                    phrases.add(documents.title(docId), 1);
+                }
+            }
+            for (Map.Entry<String, LongAdder> entry : queryCounts.entrySet()) {
+                long count = entry.getValue().sum();
+                phrases.add(entry.getKey(), count);
+                // halve it for the next rebuild; increments racing with this may be lost
+                entry.getValue().add(-(count - count / 2));
+                if (count / 2 == 0) {
+                    queryCounts.remove(entry.getKey(), entry.getValue());
+                }
+            }
+            current = new Indexes(words.build(), phrases.build());
+            REBUILD.recordSince(started);
+        }
+    }
+
+    // the number of words and phrases that can be suggested
+    public int size() {
+        Indexes indexes = current;
+        return indexes.words.size() + indexes.phrases.size();
+    }
+
+    /**
+     * Stops the periodic rebuild. Lookups keep working on the last indexes built.
+     */
+    @Override
+    public void close() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    public static class Suggestion {
+        public final String text;
+        public final long weight;
+
+        public Suggestion(String text, long weight) {
+            this.text = text;
+            this.weight = weight;
+        }
+
+        @Override
+        public String toString() {
+            return text + " (" + weight + ")";
+        }
+    }
+
+    // what one rebuild published
+    private static final class Indexes {
+        final CompletionIndex words;
+        final CompletionIndex phrases;
+
+        Indexes(CompletionIndex words, CompletionIndex phrases) {
+            this.words = words;
+            this.phrases = phrases;
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package Autocomplete;
+
+import java.util.*;
+
+/**
+ * An immutable set of weighted phrases that answers "the k heaviest phrases starting
+ * with this prefix".
+ * <p>
+ * Phrases are kept sorted by their lower-cased key, so the phrases starting with a
+ * prefix are one contiguous range, found with two binary searches. A short range is
+ * scanned. Every prefix whose range holds more than {@value #SCAN_LIMIT} phrases has
+ * its {@value #MAX_K} heaviest precomputed: these are the nodes of the trie over the
+ * keys that have more than {@value #SCAN_LIMIT} phrases below them. A lookup therefore
+ * never looks at more than {@value #SCAN_LIMIT} phrases, however short the prefix.
+ * Each trie level holds at most n / {@value #SCAN_LIMIT} such prefixes, so precomputing
+ * them costs one scan of the phrases per level.
+ */
+final class CompletionIndex {
+    static final int MAX_K = 16;
+    // a prefix matching more phrases than this has its heaviest precomputed
+    static final int SCAN_LIMIT = 64;
+    // longer phrases are cut, so a long title costs a bounded trie depth
+    static final int MAX_LENGTH = 100;
+
+    private final String[] keys;
+    private final String[] texts;
+    private final long[] weights;
+    // prefix -> indexes of its heaviest phrases, heaviest first
+    private final Map<String, int[]> heaviest = new HashMap<>();
+
+    private CompletionIndex(String[] keys, String[] texts, long[] weights) {
+        this.keys = keys;
+        this.texts = texts;
+        this.weights = weights;
+        precompute(0, keys.length, 0);
+    }
+
+    // the number of phrases
+    int size() {
+        return keys.length;
+    }
+
+    /**
+     * The k heaviest phrases whose key starts with the prefix, heaviest first; equal
+     * weights in key order. The prefix must already be a key: see {@link #key(String, boolean)}.
+     */
+    List<Autocomplete.Suggestion> complete(String prefix, int k) {
+        int from = Arrays.binarySearch(keys, prefix);
+        if (from < 0) from = -from - 1;
+        int to = end(prefix, from);
+        int[] top = to - from > SCAN_LIMIT ? heaviest.get(prefix) : heaviest(from, to, k);
+        List<Autocomplete.Suggestion> suggestions = new ArrayList<>(Math.min(k, top.length));
+        for (int i = 0; i < top.length && i < k; i++) {
+            suggestions.add(new Autocomplete.Suggestion(texts[top[i]], weights[top[i]]));
+        }
+        return suggestions;
+    }
+
+    // the first index from `from` on whose key does not start with the prefix
+    private int end(String prefix, int from) {
+        int low = from, high = keys.length - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (keys[mid].startsWith(prefix)) low = mid + 1;
+            else high = mid - 1;
+        }
+        return low;
+    }
+
+    /*
+     * The keys from..to-1 all start with the same `depth` characters. Records their
+     * heaviest if there are too many to scan, then recurses into the groups that
+     * share one more character. The key equal to the prefix itself, if any, sorts first
+     * and belongs to no group.
+     */
+    private void precompute(int from, int to, int depth) {
+        if (to - from <= SCAN_LIMIT) {
+            return;
+        }
+        heaviest.put(keys[from].substring(0, depth), heaviest(from, to, MAX_K));
+        int i = from;
+        while (i < to && keys[i].length() == depth) i++;
+        while (i < to) {
+            char c = keys[i].charAt(depth);
+            int j = i + 1;
+            while (j < to && keys[j].charAt(depth) == c) j++;
+            precompute(i, j, depth + 1);
+            i = j;
+        }
+    }
+
+    // the k heaviest of the phrases from..to-1, heaviest first
+    private int[] heaviest(int from, int to, int k) {
+        // the worst of the best so far on top, to be dropped when a better one comes
+        PriorityQueue<Integer> best = new PriorityQueue<>(k + 1, (a, b) -> rank(b, a));
+        for (int i = from; i < to; i++) {
+            best.add(i);
+            if (best.size() > k) best.poll();
+        }
+        int[] top = new int[best.size()];
+        for (int i = top.length - 1; i >= 0; i--) {
+            top[i] = best.poll();
+        }
+        return top;
+    }
+
+    // negative if phrase a ranks before phrase b: heavier first, then in key order
+    private int rank(int a, int b) {
+        int cmp = Long.compare(weights[b], weights[a]);
+        return cmp != 0 ? cmp : Integer.compare(a, b);
+    }
+
+    /**
+     * The form phrases are matched in: lower-cased, whitespace runs collapsed to one
+     * space, leading whitespace dropped, cut to {@value #MAX_LENGTH} characters. A
+     * trailing space is kept only if asked for, as in a prefix the user is typing:
+     * "great " only matches phrases with more words after "great".
+     */
+    static String key(String text, boolean keepTrailingSpace) {
+        return display(text, keepTrailingSpace).toLowerCase(Locale.ROOT);
+    }
+
+    private static String display(String text, boolean keepTrailingSpace) {
+        StringBuilder out = new StringBuilder(Math.min(text.length(), MAX_LENGTH));
+        boolean space = false;
+        for (int i = 0; i < text.length() && out.length() < MAX_LENGTH; i++) {
+            char c = text.charAt(i);
+            if (Character.isWhitespace(c)) {
+                space = out.length() > 0;
+            } else {
+                if (space) out.append(' ');
+                out.append(c);
+                space = false;
+            }
+        }
+        if (space && keepTrailingSpace && out.length() < MAX_LENGTH) {
+            out.append(' ');
+        }
+        if (out.length() > 0 && Character.isHighSurrogate(out.charAt(out.length() - 1))) {
+            out.setLength(out.length() - 1);
+        }
+        return out.toString();
+    }
+
+    /**
+     * Collects weighted phrases. Adding a phrase again adds to its weight; the text
+     * suggested for it is the first one added, with its whitespace tidied.
+     */
+    static final class Builder {
+        private final Map<String, String> texts = new HashMap<>();
+        private final Map<String, Long> weights = new HashMap<>();
+
+        Builder add(String text, long weight) {
+            if (text == null || weight <= 0) {
+                return this;
+            }
+            String display = display(text, false);
+            if (!display.isEmpty()) {
+                String key = display.toLowerCase(Locale.ROOT);
+                texts.putIfAbsent(key, display);
+                weights.merge(key, weight, Long::sum);
+            }
+            return this;
+        }
+
+        CompletionIndex build() {
+            String[] keys = texts.keySet().toArray(new String[0]);
+            Arrays.sort(keys);
+            String[] sortedTexts = new String[keys.length];
+            long[] sortedWeights = new long[keys.length];
+            for (int i = 0; i < keys.length; i++) {
+                sortedTexts[i] = texts.get(keys[i]);
+                sortedWeights[i] = weights.get(keys[i]);
+            }
+            return new CompletionIndex(keys, sortedTexts, sortedWeights);
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package Cluster;
+
+import InvertedIndex.IndexReader;
+import InvertedIndex.TermDictionary;
+
+import java.util.*;
+
+/**
+ * The statistics a score depends on beyond the document itself: the number of
+ * documents, their total length and every term's document frequency.
+ * <p>
+ * A shard that ranked by its own statistics would weigh a term by how rare it is in
+ * its partition, so the same document would score differently depending on which
+ * shard holds it, and merged results would not be comparable. Instead, each shard
+ * reports {@link #of(IndexReader) its statistics}, the coordinator {@link #sum sums}
+ * them, and every shard ranks with {@link #over(IndexReader) the sums}, scoring each
+ * document exactly as an index of the whole collection would.
+ * <p>
+ * Statistics travel as text, a header line per figure and then a tab-separated
+ * line per term; analyzed terms never contain whitespace. {@link #version()} is a hash
+ * of the content, so a shard and its coordinator can tell whether they rank alike.
+ */
+public final class CollectionStatistics {
+    public final int numDocs;
+    public final long totalDocLength;
+    private final Map<String, Integer> docFreqs;
+    private final long version;
+
+    private CollectionStatistics(int numDocs, long totalDocLength, Map<String, Integer> docFreqs) {
+        this.numDocs = numDocs;
+        this.totalDocLength = totalDocLength;
+        this.docFreqs = docFreqs;
+        this.version = hash(numDocs, totalDocLength, docFreqs);
+    }
+
+    // the statistics of one index, such as a shard's
+    public static CollectionStatistics of(IndexReader reader) {
+        TermDictionary terms = reader.terms();
+        Map<String, Integer> docFreqs = new HashMap<>(terms.size() * 4 / 3 + 1);
+        for (int ordinal = 0; ordinal < terms.size(); ordinal++) {
+            String term = terms.term(ordinal);
+            int docFreq = reader.docFreq(term);
+            if (docFreq > 0) {
+                docFreqs.put(term, docFreq);
+            }
+        }
+        return new CollectionStatistics(reader.numDocs(), reader.totalDocLength(), docFreqs);
+    }
+
+    /**
+     * The statistics of the union of disjoint partitions.
+     *
+     * @throws IllegalArgumentException if the union has more documents than an int counts
+     */
+    public static CollectionStatistics sum(Collection<CollectionStatistics> partitions) {
+        long numDocs = 0;
+        long totalDocLength = 0;
+        Map<String, Integer> docFreqs = new HashMap<>();
+        for (CollectionStatistics partition : partitions) {
+            numDocs += partition.numDocs;
+            totalDocLength += partition.totalDocLength;
+            partition.docFreqs.forEach((term, docFreq) -> docFreqs.merge(term, docFreq, Integer::sum));
+        }
+        if (numDocs > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("too many documents for one collection: " + numDocs);
+        }
+        return new CollectionStatistics((int) numDocs, totalDocLength, docFreqs);
+    }
+
+    public int docFreq(String term) {
+        return docFreqs.getOrDefault(term, 0);
+    }
+
+    // the number of distinct terms
+    public int termCount() {
+        return docFreqs.size();
+    }
+
+    // a hash of the content: equal statistics always have equal versions
+    public long version() {
+        return version;
+    }
+
+    /**
+     * A view of the shard that ranks by these statistics: see {@link GlobalStatisticsReader}.
+     * Only the terms the shard contains are kept.
+     */
+    public IndexReader over(IndexReader shard) {
+        TermDictionary terms = shard.terms();
+        Map<String, Integer> local = new HashMap<>(terms.size() * 4 / 3 + 1);
+        for (int ordinal = 0; ordinal < terms.size(); ordinal++) {
+            String term = terms.term(ordinal);
+            Integer docFreq = docFreqs.get(term);
+            if (docFreq != null) {
+                local.put(term, docFreq);
+            }
+        }
+        return new GlobalStatisticsReader(shard, numDocs, totalDocLength, local);
+    }
+
+    public String encode() {
+        StringBuilder text = new StringBuilder(64 + 16 * docFreqs.size());
+        text.append("docs\t").append(numDocs).append('\n');
+        text.append("length\t").append(totalDocLength).append('\n');
+        docFreqs.forEach((term, docFreq) -> text.append(term).append('\t').append(docFreq).append('\n'));
+        return text.toString();
+    }
+
+    /**
+     * Parses what {@link #encode()} wrote.
+     *
+     * @throws IllegalArgumentException if the text is malformed
+     */
+    public static CollectionStatistics decode(String text) {
+        String[] lines = text.split("\n");
+        if (lines.length < 2 || !lines[0].startsWith("docs\t") || !lines[1].startsWith("length\t")) {
+            throw new IllegalArgumentException("not collection statistics: missing header");
+        }
+        try {
+            int numDocs = Integer.parseInt(lines[0].substring(5));
+            long totalDocLength = Long.parseLong(lines[1].substring(7));
+            Map<String, Integer> docFreqs = new HashMap<>(lines.length * 4 / 3 + 1);
+            for (int i = 2; i < lines.length; i++) {
+                int tab = lines[i].lastIndexOf('\t');
+                if (tab <= 0) {
+                    throw new IllegalArgumentException("malformed term line " + (i + 1) + ": " + lines[i]);
+                }
+                docFreqs.put(lines[i].substring(0, tab), Integer.parseInt(lines[i].substring(tab + 1)));
+            }
+            return new CollectionStatistics(numDocs, totalDocLength, docFreqs);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("malformed collection statistics: " + e.getMessage());
+        }
+    }
+
+    // independent of the map's iteration order
+    private static long hash(int numDocs, long totalDocLength, Map<String, Integer> docFreqs) {
+        long terms = 0;
+        for (Map.Entry<String, Integer> entry : docFreqs.entrySet()) {
+            long h = entry.getKey().hashCode() * 0x9E3779B97F4A7C15L + entry.getValue();
+            terms += h ^ (h >>> 29) * 0xBF58476D1CE4E5B9L;
+        }
+        return (numDocs * 31L + totalDocLength) * 0x9E3779B97F4A7C15L ^ terms;
+    }
+
+    @Override
+    public String toString() {
+        return numDocs + " docs, " + totalDocLength + " tokens, " + docFreqs.size() + " terms (version "
+                + Long.toHexString(version) + ")";
+    }
+}
@@ -0,0 +1,97 @@
+package Cluster;
+
+import InvertedIndex.IndexReader;
+import InvertedIndex.PostingsCursor;
+import InvertedIndex.TermDictionary;
+
+import java.util.Map;
+
+/**
+ * A shard's index as a scoring model sees it: its own postings and document
+ * lengths, but the whole collection's document count, total length and document
+ * frequencies, so {@link SearchEngine.Bm25} weighs every term as an index of the whole
+ * collection would.
+ * <p>
+ * The shard's precomputed impacts are hidden: they were quantized against the
+ * shard's own average length, so BM25 scores the shard's postings exactly instead,
+ * with the global average. TF-IDF document norms are a sum over each document's own
+ * terms weighted by idf, precomputed by the shard, and stay the shard's; only BM25
+ * ranks a shard exactly like the whole collection.
+ */
+final class GlobalStatisticsReader implements IndexReader {
+    private final IndexReader shard;
+    private final int numDocs;
+    private final long totalDocLength;
+    // the collection's frequencies of the terms the shard contains
+    private final Map<String, Integer> docFreqs;
+
+    GlobalStatisticsReader(IndexReader shard, int numDocs, long totalDocLength, Map<String, Integer> docFreqs) {
+        this.shard = shard;
+        this.numDocs = numDocs;
+        this.totalDocLength = totalDocLength;
+        this.docFreqs = docFreqs;
+    }
+
+    @Override
+    public int numDocs() {
+        return numDocs;
+    }
+
+    // the shard's own frequency for a term the statistics missed, as a lower bound
+    @Override
+    public int docFreq(String term) {
+        Integer docFreq = docFreqs.get(term);
+        return docFreq != null ? docFreq : shard.docFreq(term);
+    }
+
+    @Override
+    public long totalDocLength() {
+        return totalDocLength;
+    }
+
+    @Override
+    public PostingsCursor postings(String term, boolean withPositions) {
+        return shard.postings(term, withPositions);
+    }
+
+    @Override
+    public boolean hasPositions() {
+        return shard.hasPositions();
+    }
+
+    @Override
+    public double maxNormalizedTfWeight(String term) {
+        return shard.maxNormalizedTfWeight(term);
+    }
+
+    @Override
+    public double[] getDocNorms() {
+        return shard.getDocNorms();
+    }
+
+    @Override
+    public int docLength(int docId) {
+        return shard.docLength(docId);
+    }
+
+    @Override
+    public long postingsBytes() {
+        return shard.postingsBytes();
+    }
+
+    @Override
+    public TermDictionary terms() {
+        return shard.terms();
+    }
+
+    @Override
+    public long getGeneration() {
+        return shard.getGeneration();
+    }
+
+    @Override
+    public IndexReader snapshot() {
+        IndexReader snapshot = shard.snapshot();
+        return snapshot == shard ? this : new GlobalStatisticsReader(snapshot, numDocs, totalDocLength, docFreqs);
+    }
+}
@@ -0,0 +1,256 @@
+package Cluster;
+
+import DocumentStore.DocumentReader;
+import InvertedIndex.InvertedIndex;
+import InvertedIndex.ParallelIndexBuilder;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.AbstractList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * One shard's share of a document-partitioned index: a contiguous range of the
+ * collection's docIds. A collection's docIds need not all be live: a recrawl stores a
+ * changed page again under a new docId and keeps the old version and the pages that
+ * were removed. Shard i of n owns the live docIds from the {@code live * i / n}-th up to
+ * the {@code live * (i + 1) / n}-th, and the dead ones between them, so the shards
+ * cover the collection without overlap and differ by at most one live document.
+ * <p>
+ * A shard indexes the live documents of its range under local docIds from 0, so its
+ * index holds no entries for the documents other shards own, nor for dead ones;
+ * {@link #globalDocId(int)} and {@link #localDocId(int)} translate. Ranges ascend with
+ * the shard number, so sorting by global docId sorts every shard's results the way it
+ * sorted them itself.
+ * <p>
+ * File (big-endian), written next to the shard's index: magic, version, shard, shard
+ * count, the range, then the words of the range's live set. A shard whose file does
+ * not equal its partition was built from another collection and has to be rebuilt.
+ */
+public final class Partition {
+    static final int MAGIC = 0x53455054; // "SEPT"
+    static final int VERSION = 1;
+    static final String FILE = "partition";
+
+    public final int shard;
+    public final int shards;
+    // the first global docId of the range
+    public final int firstDocId;
+    // one past the last global docId of the range
+    public final int endDocId;
+    // the live documents of the range, by local docId
+    private final BitSet live;
+
+    private Partition(int shard, int shards, int firstDocId, int endDocId, BitSet live) {
+        this.shard = shard;
+        this.shards = shards;
+        this.firstDocId = firstDocId;
+        this.endDocId = endDocId;
+        this.live = live;
+    }
+
+    /**
+     * Shard {@code shard} of {@code shards} over a collection of {@code size} documents,
+     * all of them live.
+     *
+     * @throws IllegalArgumentException if the shard is not from 0 to shards - 1
+     */
+    public static Partition of(int shard, int shards, int size) {
+        return of(shard, shards, size, null);
+    }
+
+    /**
+     * Shard {@code shard} of {@code shards} over a collection of {@code size} documents
+     * of which those in {@code live} are live; null means all of them.
+     *
+     * @throws IllegalArgumentException if the shard is not from 0 to shards - 1
+     */
+    public static Partition of(int shard, int shards, int size, BitSet live) {
+        if (shards < 1 || shard < 0 || shard >= shards || size < 0) {
+            throw new IllegalArgumentException("invalid partition: shard " + shard + " of " + shards + ", " + size + " docs");
+        }
+        if (live == null) {
+            live = new BitSet(size);
+            live.set(0, size);
+        } else {
+            live = live.get(0, size);
+        }
+        int count = live.cardinality();
+        int first = shard == 0 ? 0 : nthSetBit(live, (int) ((long) count * shard / shards), size);
+        int end = shard == shards - 1 ? size : nthSetBit(live, (int) ((long) count * (shard + 1) / shards), size);
+        return new Partition(shard, shards, first, end, live.get(first, end));
+    }
+
+    // the docId of the nth live document from 0, or size past the last
+    private static int nthSetBit(BitSet live, int n, int size) {
+        int docId = live.nextSetBit(0);
+        for (int i = 0; i < n && docId >= 0; i++) {
+            docId = live.nextSetBit(docId + 1);
+        }
+        return docId < 0 ? size : docId;
+    }
+
+    /**
+     * Parses "i/n", shard i of n counting from 0, over a collection of size documents,
+     * all of them live.
+     *
+     * @throws IllegalArgumentException if spec is not of that form
+     */
+    public static Partition parse(String spec, int size) {
+        return parse(spec, size, null);
+    }
+
+    /**
+     * Parses "i/n" like {@link #parse(String, int)}, over a collection of size documents
+     * of which those in {@code live} are live; null means all of them.
+     */
+    public static Partition parse(String spec, int size, BitSet live) {
+        int slash = spec.indexOf('/');
+        try {
+            if (slash > 0) {
+                return of(Integer.parseInt(spec.substring(0, slash).trim()), Integer.parseInt(spec.substring(slash + 1).trim()),
+                        size, live);
+            }
+        } catch (NumberFormatException e) {
+            // reported below
+        }
+        throw new IllegalArgumentException("a shard is given as i/n, shard i of n from 0: " + spec);
+    }
+
+    public int size() {
+        return endDocId - firstDocId;
+    }
+
+    public boolean contains(int globalDocId) {
+        return globalDocId >= firstDocId && globalDocId < endDocId;
+    }
+
+    // the number of live documents in the range, the ones the shard indexes
+    public int liveDocs() {
+        return live.cardinality();
+    }
+
+    public int globalDocId(int localDocId) {
+        return firstDocId + localDocId;
+    }
+
+    public int localDocId(int globalDocId) {
+        return globalDocId - firstDocId;
+    }
+
+    /**
+     * The range's documents under local docIds, read from the whole collection's.
+     */
+    public DocumentReader documents(DocumentReader collection) {
+        return new DocumentReader() {
+            @Override
+            public int size() {
+                return Partition.this.size();
+            }
+
+            @Override
+            public String url(int docId) {
+                return collection.url(globalDocId(docId));
+            }
+
+            @Override
+            public String title(int docId) {
+                return collection.title(globalDocId(docId));
+            }
+
+            @Override
+            public String text(int docId) {
+                return collection.text(globalDocId(docId));
+            }
+
+            @Override
+            public String excerpt(int docId, int from, int to) {
+                return collection.excerpt(globalDocId(docId), from, to);
+            }
+        };
+    }
+
+    /**
+     * Indexes the range's live documents with positions, under local docIds, on the
+     * given number of threads.
+     */
+    public InvertedIndex index(DocumentReader collection, int threads) {
+        DocumentReader documents = documents(collection);
+        List<String> texts = new AbstractList<>() {
+            @Override
+            public String get(int docId) {
+                return live.get(docId) ? documents.text(docId) : null;
+            }
+
+            @Override
+            public int size() {
+                return documents.size();
+            }
+        };
+        return new ParallelIndexBuilder(threads, true).build(texts);
+    }
+
+    public void write(Path dir) throws IOException {
+        Files.createDirectories(dir);
+        Path temp = dir.resolve(FILE + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(shard);
+            out.writeInt(shards);
+            out.writeInt(firstDocId);
+            out.writeInt(endDocId);
+            long[] words = live.toLongArray();
+            out.writeInt(words.length);
+            for (long word : words) {
+                out.writeLong(word);
+            }
+        }
+        Files.move(temp, dir.resolve(FILE), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public static Partition read(Path dir) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(dir.resolve(FILE)), 1 << 16))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("not a partition file: " + dir.resolve(FILE));
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException("unsupported partition version " + version + " in " + dir);
+            }
+            int shard = in.readInt();
+            int shards = in.readInt();
+            int firstDocId = in.readInt();
+            int endDocId = in.readInt();
+            long[] words = new long[in.readInt()];
+            for (int i = 0; i < words.length; i++) {
+                words[i] = in.readLong();
+            }
+            return new Partition(shard, shards, firstDocId, endDocId, BitSet.valueOf(words));
+        }
+    }
+
+    public static boolean exists(Path dir) {
+        return Files.isRegularFile(dir.resolve(FILE));
+    }
+
+    // the same shard of the same range, with the same live documents
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof Partition other && shard == other.shard && shards == other.shards
+                && firstDocId == other.firstDocId && endDocId == other.endDocId && live.equals(other.live);
+    }
+
+    @Override
+    public int hashCode() {
+        return ((shard * 31 + shards) * 31 + firstDocId) * 31 + endDocId;
+    }
+
+    @Override
+    public String toString() {
+        return "shard " + shard + " of " + shards + " (docIds " + firstDocId + " to " + (endDocId - 1) + ")";
+    }
+}
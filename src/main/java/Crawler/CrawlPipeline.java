@@ -0,0 +1,248 @@
+package Crawler;
+
+import InvertedIndex.AnalyzedDocument;
+import InvertedIndex.DocumentSink;
+import Metrics.Metrics;
+import Tokenizer.Analyzer;
+
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Crawls and indexes at the same time, as four stages joined by bounded queues:
+ * <pre>
+ * fetch ──▶ parse ──▶ analyze ──▶ index
+ * </pre>
+ * <ul>
+ * <li>fetch: the crawler's virtual threads, up to its maxConcurrency, download pages.
+ * <li>parse: {@code parsers} threads extract text and links, drop near-duplicates,
+ *     and store the page. Storing assigns the docId.
+ * <li>analyze: {@code analyzers} threads turn text into an {@link AnalyzedDocument}.
+ * <li>index: one thread adds documents to the {@link DocumentSink} in docId order.
+ *     Writes to an index are serial. The documents the analyzers finish out of
+ *     order wait in a reorder buffer until the ones before them arrive.
+ * </ul>
+ * Every queue holds at most {@code queueCapacity} pages, and a stage whose output
+ * queue is full waits. The reorder buffer cannot be bounded the same way. The index
+ * stage must keep taking documents to reach the one it is waiting for. So pages
+ * hold a permit from before they are stored until they are indexed: a parser takes
+ * one before storing a page and gives it back if the page is not stored. Every docId
+ * thus has its permit the moment it is assigned and never waits behind later ones.
+ * There are {@code 2 * queueCapacity + analyzers + parsers} permits, enough to fill
+ * both queues and keep every analyzer and parser busy. A slow index stage therefore
+ * fills the stages behind it, one after another, until fetchers wait to hand over
+ * their pages and no new fetches start. Memory stays bounded by the queue
+ * capacities, whatever the crawl's size. The network and the CPU are both busy:
+ * fetches keep going while earlier pages are analyzed. A page's text is dropped
+ * once it is analyzed, and its terms once they are indexed. The only copy left is
+ * the compressed one in the crawler's {@code DocumentStore}.
+ * <p>
+ * The queue depths are gauges in {@link Metrics#shared()}: {@code pipeline.parse},
+ * {@code pipeline.analyze} and {@code pipeline.index} count the pages waiting for
+ * each stage, and {@code pipeline.reorder} those waiting for an earlier docId.
+ * {@link #queueDepths()} returns the same numbers.
+ */
+public class CrawlPipeline {
+    // marks the end of a queue's input; each consumer takes one and stops
+    private static final Crawler.FetchedPage END_OF_PAGES = new Crawler.FetchedPage(null, null);
+    private static final Analyzed END_OF_DOCUMENTS = new Analyzed(-1, null);
+
+    private final Crawler crawler;
+    private final DocumentSink index;
+    private final int parsers;
+    private final int analyzers;
+
+    private final BlockingQueue<Crawler.FetchedPage> toParse;
+    private final BlockingQueue<Crawler.FetchedPage> toAnalyze;
+    private final BlockingQueue<Analyzed> toIndex;
+    // analyzed documents waiting for an earlier docId, guarded by itself
+    private final PriorityQueue<Analyzed> reorder = new PriorityQueue<>(Comparator.comparingInt(a -> a.docId));
+    // one per stored page not yet indexed
+    private final Semaphore unindexed;
+    private volatile int indexed;
+
+    /**
+     * @param crawler       supplies the fetch stage and stores each page; its store's next
+     *                      docId must be the index's next one
+     * @param parsers       threads parsing pages
+     * @param analyzers     threads analyzing text
+     * @param queueCapacity the pages each queue between stages may hold
+     */
+    public CrawlPipeline(Crawler crawler, DocumentSink index, int parsers, int analyzers, int queueCapacity) {
+        if (parsers < 1 || analyzers < 1 || queueCapacity < 1) {
+            throw new IllegalArgumentException("invalid pipeline sizes: parsers=" + parsers
+                    + ", analyzers=" + analyzers + ", queueCapacity=" + queueCapacity);
+        }
+        this.crawler = crawler;
+        this.index = index;
+        this.parsers = parsers;
+        this.analyzers = analyzers;
+        this.toParse = new ArrayBlockingQueue<>(queueCapacity);
+        this.toAnalyze = new ArrayBlockingQueue<>(queueCapacity);
+        this.toIndex = new ArrayBlockingQueue<>(queueCapacity);
+        this.unindexed = new Semaphore(2 * queueCapacity + analyzers + parsers);
+        Metrics.shared().gauge("pipeline.parse", toParse::size);
+        Metrics.shared().gauge("pipeline.analyze", toAnalyze::size);
+        Metrics.shared().gauge("pipeline.index", toIndex::size);
+        Metrics.shared().gauge("pipeline.reorder", this::reorderSize);
+    }
+
+    /**
+     * Crawls until the crawler's limits are reached or the frontier runs dry, and
+     * returns once every stored page is in the index. Returns the number of pages stored.
+     */
+    public int run() throws InterruptedException {
+        int firstDocId = crawler.getDocumentStore().size();
+        List<Thread> parseThreads = start("pipeline-parse", parsers, this::parse);
+        List<Thread> analyzeThreads = start("pipeline-analyze", analyzers, this::analyze);
+        List<Thread> indexThreads = start("pipeline-index", 1, () -> index(firstDocId));
+
+        int stored;
+        try {
+            stored = crawler.crawl(toParse);
+        } finally {
+            // every stage drains its queue, then passes the end on
+            finish(parseThreads, toParse, END_OF_PAGES);
+            finish(analyzeThreads, toAnalyze, END_OF_PAGES);
+            finish(indexThreads, toIndex, END_OF_DOCUMENTS);
+        }
+        System.out.println("Indexed " + indexed + " pages");
+        return stored;
+    }
+
+    // pages waiting for each stage, in pipeline order
+    public Map<String, Integer> queueDepths() {
+        Map<String, Integer> depths = new LinkedHashMap<>();
+        depths.put("parse", toParse.size());
+        depths.put("analyze", toAnalyze.size());
+        depths.put("index", toIndex.size());
+        depths.put("reorder", reorderSize());
+        return depths;
+    }
+
+    private int reorderSize() {
+        synchronized (reorder) {
+            return reorder.size();
+        }
+    }
+
+    private void parse() {
+        Crawler.FetchedPage page;
+        while ((page = take(toParse)) != END_OF_PAGES) {
+            // taken before the page can get a docId, or the docId the index stage waits
+            // for could wait here while later ones hold every permit
+            acquire(unindexed);
+            try {
+                crawler.process(page, true);
+            } catch (RuntimeException e) {
+                // process has given back the page's slot; keep the stage alive for the rest
+                System.out.println("Failed to parse: " + page.url + " (" + e + ")");
+            }
+            if (page.docId >= 0) {
+                put(toAnalyze, page);
+            } else {
+                unindexed.release();
+            }
+        }
+    }
+
+    private void analyze() {
+        Analyzer analyzer = new Analyzer();
+        boolean positions = index.hasPositions();
+        Crawler.FetchedPage page;
+        while ((page = take(toAnalyze)) != END_OF_PAGES) {
+            AnalyzedDocument document = null;
+            try {
+                document = AnalyzedDocument.analyze(page.text, positions, analyzer);
+            } catch (RuntimeException e) {
+                System.out.println("Failed to analyze: " + page.url + " (" + e + ")");
+            }
+            // a failed page still passes on its docId, or the index stage would wait for it forever
+            put(toIndex, new Analyzed(page.docId, document));
+        }
+    }
+
+    // adds documents in docId order, holding back those that arrive early
+    private void index(int firstDocId) {
+        int next = firstDocId;
+        Analyzed analyzed;
+        while ((analyzed = take(toIndex)) != END_OF_DOCUMENTS) {
+            synchronized (reorder) {
+                reorder.add(analyzed);
+            }
+            while (true) {
+                synchronized (reorder) {
+                    if (reorder.isEmpty() || reorder.peek().docId != next) {
+                        break;
+                    }
+                    analyzed = reorder.poll();
+                }
+                if (analyzed.document != null) {
+                    try {
+                        index.addDocument(analyzed.docId, analyzed.document);
+                        indexed++;
+                    } catch (RuntimeException e) {
+                        System.out.println("Failed to index doc " + analyzed.docId + " (" + e + ")");
+                    }
+                }
+                unindexed.release();
+                next++;
+            }
+        }
+    }
+
+    private static List<Thread> start(String name, int count, Runnable stage) {
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            threads.add(Thread.ofPlatform().name(name + "-" + i).start(stage));
+        }
+        return threads;
+    }
+
+    // ends the stage once its queue is drained: one end marker per thread, then waits for all of them
+    private static <T> void finish(List<Thread> threads, BlockingQueue<T> queue, T end) throws InterruptedException {
+        for (int i = 0; i < threads.size(); i++) {
+            queue.put(end);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+    }
+
+    private static void acquire(Semaphore permits) {
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            throw new IllegalStateException("pipeline stage interrupted", e);
+        }
+    }
+
+    private static <T> T take(BlockingQueue<T> queue) {
+        try {
+            return queue.take();
+        } catch (InterruptedException e) {
+            throw new IllegalStateException("pipeline stage interrupted", e);
+        }
+    }
+
+    private static <T> void put(BlockingQueue<T> queue, T item) {
+        try {
+            queue.put(item);
+        } catch (InterruptedException e) {
+            throw new IllegalStateException("pipeline stage interrupted", e);
+        }
+    }
+
+    // a document ready for the index stage; document is null if analysis failed
+    private static final class Analyzed {
+        final int docId;
+        final AnalyzedDocument document;
+
+        Analyzed(int docId, AnalyzedDocument document) {
+            this.docId = docId;
+            this.document = document;
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package Crawler;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * What the crawler knows about each page it stored: the docId of the current version,
+ * the validators the server sent with it (ETag and Last-Modified) and a hash of its
+ * title and text. A recrawl sends the validators back as a conditional request and
+ * compares the hash, so pages that did not change cost a 304 or a hash comparison
+ * instead of re-indexing.
+ * <p>
+ * File (big-endian): magic, version, page count, then per page the URL, docId, ETag,
+ * Last-Modified (modified UTF-8, empty when the server sent none) and content hash.
+ * <p>
+ * All methods are thread-safe.
+ */
+public class CrawlState {
+    static final int MAGIC = 0x53454353; // "SECS"
+    static final int VERSION = 1;
+    static final String FILE = "crawl.state";
+
+    private final Map<String, Page> pages = new ConcurrentHashMap<>();
+
+    public Page get(String url) {
+        return pages.get(url);
+    }
+
+    public void put(String url, Page page) {
+        pages.put(url, page);
+    }
+
+    public Page remove(String url) {
+        return pages.remove(url);
+    }
+
+    // a copy of the known URLs
+    public List<String> urls() {
+        return new ArrayList<>(pages.keySet());
+    }
+
+    public int size() {
+        return pages.size();
+    }
+
+    public void write(Path dir) throws IOException {
+        Files.createDirectories(dir);
+        Path temp = dir.resolve(FILE + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), 1 << 16))) {
+            Map<String, Page> copy = new TreeMap<>(pages);
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(copy.size());
+            for (Map.Entry<String, Page> entry : copy.entrySet()) {
+                Page page = entry.getValue();
+                out.writeUTF(entry.getKey());
+                out.writeInt(page.docId);
+                out.writeUTF(page.etag == null ? "" : page.etag);
+                out.writeUTF(page.lastModified == null ? "" : page.lastModified);
+                out.writeLong(page.contentHash);
+            }
+        }
+        // replace the old state only once the new one is complete
+        Files.move(temp, dir.resolve(FILE), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public static CrawlState read(Path dir) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(dir.resolve(FILE)), 1 << 16))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("not a crawl state file: " + dir.resolve(FILE));
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException("unsupported crawl state version " + version + " in " + dir);
+            }
+            CrawlState state = new CrawlState();
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String url = in.readUTF();
+                int docId = in.readInt();
+                String etag = in.readUTF();
+                String lastModified = in.readUTF();
+                long hash = in.readLong();
+                state.put(url, new Page(docId, etag.isEmpty() ? null : etag,
+                        lastModified.isEmpty() ? null : lastModified, hash));
+            }
+            return state;
+        }
+    }
+
+    public static boolean exists(Path dir) {
+        return Files.isRegularFile(dir.resolve(FILE));
+    }
+
+    /**
+     * The first 8 bytes of the SHA-256 of a page's title and text. Markup changes that
+     * leave both the same, such as a new timestamp in a comment, hash the same.
+     */
+    public static long contentHash(String title, String text) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is required of every JVM", e);
+        }
+        digest.update((title == null ? "" : title).getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+        byte[] hash = digest.digest((text == null ? "" : text).getBytes(StandardCharsets.UTF_8));
+        long value = 0;
+        for (int i = 0; i < 8; i++) {
+            value = value << 8 | (hash[i] & 0xFF);
+        }
+        return value;
+    }
+
+    /**
+     * The stored version of a page.
+     */
+    public static final class Page {
+        public final int docId;
+        // validators from the response, null if the server sent none
+        public final String etag;
+        public final String lastModified;
+        public final long contentHash;
+
+        public Page(int docId, String etag, String lastModified, long contentHash) {
+            this.docId = docId;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.contentHash = contentHash;
+        }
+    }
+}
@@ -0,0 +1,541 @@
+package Crawler;
+
+import DocumentStore.DocumentStore;
+import Metrics.Histogram;
+import Metrics.Metrics;
+import org.jsoup.Connection;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.jsoup.select.Elements;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+public class Crawler {
+    // outcomes of revisiting a page, indexes into recrawl's counts
+    private static final int NOT_MODIFIED = 0, UNCHANGED = 1, CHANGED = 2, REMOVED = 3, FAILED = 4;
+    // per-host fetch latencies and bytes are recorded as crawler.fetch.<host> and crawler.bytes.<host>
+    private static final Histogram FETCH = Metrics.shared().histogram("crawler.fetch");
+    private static final Histogram PARSE = Metrics.shared().histogram("crawler.parse");
+
+    private final String BASE_URL;
+    private final int MAX_PAGES;
+    private final int MAX_CONCURRENCY;
+    private final HostThrottle throttle;
+    private final Frontier frontier; // URLs to fetch, each queued once
+    private final DocumentStore store; // every stored page, in crawl order
+    private final CrawlState state; // validators and hash of each stored page, for recrawls
+    private final NearDuplicateDetector duplicates; // null if near-duplicates are stored too
+    private final Map<String, Integer> duplicateOf = new ConcurrentHashMap<>(); // skipped URL -> canonical docId
+
+    // concurrent crawl bookkeeping, guarded by lock
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition progress = lock.newCondition();
+    private int inFlight;
+    // pages a fetcher handed to a CrawlPipeline's parse stage, not yet stored
+    private int pending;
+    private int pagesStored;
+
+    public Crawler(String baseUrl, int maxPages, List<String> seedUrls) {
+        this(baseUrl, maxPages, seedUrls, 1, new HostThrottle(0, Integer.MAX_VALUE));
+    }
+
+    /**
+     * @param maxConcurrency the number of fetches that may run at once in {@link #startConcurrentCrawling()}
+     * @param throttle       per-host politeness applied to every concurrent fetch
+     */
+    public Crawler(String baseUrl, int maxPages, List<String> seedUrls, int maxConcurrency, HostThrottle throttle) {
+        this(baseUrl, maxPages, seedUrls, maxConcurrency, throttle, new DocumentStore());
+    }
+
+    /**
+     * @param store receives each crawled page; its docIds follow the order pages complete
+     */
+    public Crawler(String baseUrl, int maxPages, List<String> seedUrls, int maxConcurrency, HostThrottle throttle,
+                   DocumentStore store) {
+        this(baseUrl, maxPages, seedUrls, maxConcurrency, throttle, store, new CrawlState());
+    }
+
+    /**
+     * @param state records every page stored; a state from an earlier crawl, with the
+     *              store that crawl filled, is what {@link #recrawl} revisits
+     */
+    public Crawler(String baseUrl, int maxPages, List<String> seedUrls, int maxConcurrency, HostThrottle throttle,
+                   DocumentStore store, CrawlState state) {
+        this(baseUrl, maxPages, seedUrls, maxConcurrency, throttle, store, state, new NearDuplicateDetector());
+    }
+
+    public Crawler(String baseUrl, int maxPages, List<String> seedUrls, int maxConcurrency, HostThrottle throttle,
+                   DocumentStore store, CrawlState state, NearDuplicateDetector duplicates) {
+        this(baseUrl, maxPages, seedUrls, maxConcurrency, throttle, store, state, duplicates, new Frontier());
+    }
+
+    /**
+     * @param duplicates finds pages whose text nearly repeats a stored page's; those are
+     *                   linked to that page's docId instead of stored, see {@link #getDuplicates()}.
+     *                   Null stores every page.
+     * @param frontier   the URLs to fetch; the seeds are added to it, and every link found
+     *                   is added once. Size it for large crawls, which it spills to disk.
+     */
+    public Crawler(String baseUrl, int maxPages, List<String> seedUrls, int maxConcurrency, HostThrottle throttle,
+                   DocumentStore store, CrawlState state, NearDuplicateDetector duplicates, Frontier frontier) {
+        if (maxConcurrency < 1) {
+            throw new IllegalArgumentException("maxConcurrency must be positive: " + maxConcurrency);
+        }
+        this.BASE_URL = baseUrl;
+        this.MAX_PAGES = maxPages;
+        this.MAX_CONCURRENCY = maxConcurrency;
+        this.throttle = throttle;
+        this.frontier = frontier;
+        for (String seed : seedUrls) {
+            frontier.add(seed);
+        }
+        this.store = store;
+        this.state = state;
+        this.duplicates = duplicates;
+    }
+
+    /**
+     * Crawls one page at a time. Returns the number of pages stored; their docIds are the
+     * store's from its size before the crawl on.
+     */
+    public int startCrawling() {
+        int stored = 0;
+        while (!frontier.isEmpty() && stored < MAX_PAGES) {
+            String url = frontier.poll();
+
+            try {
+                System.out.println("Crawling: " + url);
+                Connection.Response response = download(Jsoup.connect(url), url);
+                Document doc = parse(response);
+
+                // Store the page content and title
+                String content = doc.text();
+                String title = doc.title();
+                if (storePage(url, title, content, response.header("ETag"), response.header("Last-Modified"),
+                        fingerprint(content)) >= 0) {
+                    stored++;
+                }
+
+                // Extract and filter links
+                Elements links = doc.select("a[href]");
+                for (Element link : links) {
+                    String absHref = link.absUrl("href");
+
+                    if (isValidLink(absHref)) {
+                        frontier.add(absHref);
+                    }
+
+                    if (stored >= MAX_PAGES) {
+                        break; // Prevent the queue from growing too large
+                    }
+                }
+            } catch (IOException e) {
+                System.out.println("Failed to crawl: " + url);
+            }
+        }
+
+        System.out.println("\nCrawled " + stored + " pages");
+        return stored;
+    }
+
+    /**
+     * Crawls with up to MAX_CONCURRENCY fetches in flight, each on its own virtual thread.
+     * <p>
+     * A fetch is only started while stored pages plus in-flight fetches are below
+     * MAX_PAGES, so the crawl stores exactly MAX_PAGES pages when that many are reachable.
+     * A failed fetch gives its slot back to the next URL in the frontier. Returns the
+     * number of pages stored.
+     */
+    public int startConcurrentCrawling() {
+        return crawl(null);
+    }
+
+    /**
+     * The concurrent crawl. Without a parse queue each fetcher parses and stores its own
+     * page. With one, as in a {@link CrawlPipeline}, a fetcher only downloads: it puts the
+     * page on the queue, waiting while the queue is full, and the parse stage passes it to
+     * {@link #process}. A waiting fetcher keeps its slot, so when parsing or indexing
+     * falls behind, fetching slows down to match. Pages on the queue count towards
+     * MAX_PAGES like fetches in flight, and the crawl ends once they are all processed.
+     */
+    int crawl(BlockingQueue<FetchedPage> parseQueue) {
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            lock.lock();
+            try {
+                while (pagesStored < MAX_PAGES) {
+                    if (inFlight >= MAX_CONCURRENCY || pagesStored + inFlight + pending >= MAX_PAGES) {
+                        progress.await();
+                        continue;
+                    }
+                    String url = frontier.poll();
+                    if (url == null) {
+                        if (inFlight == 0 && pending == 0) break; // frontier drained and nothing left to discover
+                        progress.await();
+                        continue;
+                    }
+                    inFlight++;
+                    executor.submit(() -> fetch(url, parseQueue));
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                executor.shutdownNow();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        int stored;
+        lock.lock();
+        try {
+            stored = pagesStored;
+        } finally {
+            lock.unlock();
+        }
+        System.out.println("\nCrawled " + stored + " pages");
+        return stored;
+    }
+
+    private void fetch(String url, BlockingQueue<FetchedPage> parseQueue) {
+        Connection.Response response = null;
+        try {
+            if (throttle.acquire(url)) {
+                System.out.println("Crawling: " + url);
+                response = download(Jsoup.connect(url), url);
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            System.out.println("Failed to crawl: " + url);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        FetchedPage page = new FetchedPage(url, response);
+        if (response != null && parseQueue != null) {
+            try {
+                parseQueue.put(page);
+                handedOff();
+                return;
+            } catch (InterruptedException e) {
+                // the crawl is being stopped: finish the page here instead
+                Thread.currentThread().interrupt();
+            }
+        }
+        process(page, false);
+    }
+
+    // moves a page's slot from the fetchers to the parse stage
+    private void handedOff() {
+        lock.lock();
+        try {
+            inFlight--;
+            pending++;
+            progress.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Parses a downloaded page, stores it and queues its links, then gives back its slot,
+     * which is a fetcher's or, if the page was handed off, the parse stage's. Sets the
+     * page's docId and text if it was stored. A page without a response failed to
+     * download and only gives back its slot.
+     */
+    void process(FetchedPage page, boolean handedOff) {
+        String content = null, title = null, etag = null, lastModified = null;
+        long fingerprint = 0;
+        List<String> links = new ArrayList<>();
+        try {
+            if (page.response != null) {
+                Document doc = parse(page.response);
+                etag = page.response.header("ETag");
+                lastModified = page.response.header("Last-Modified");
+                content = doc.text();
+                title = doc.title();
+                fingerprint = fingerprint(content);
+                for (Element link : doc.select("a[href]")) {
+                    String absHref = link.absUrl("href");
+                    if (isValidLink(absHref)) {
+                        links.add(absHref);
+                    }
+                }
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            System.out.println("Failed to crawl: " + page.url);
+        } finally {
+            // always release the slot, or the crawl loop would wait forever
+            page.response = null;
+            completeFetch(page, content, title, etag, lastModified, fingerprint, links, handedOff);
+        }
+    }
+
+    /*
+     * Stores the page and sets its docId and text, then queues its links. The docId is
+     * set as soon as the store assigns it: a CrawlPipeline indexes docIds in sequence,
+     * so one that never reaches it would stall the index stage for good.
+     */
+    private void completeFetch(FetchedPage page, String content, String title, String etag, String lastModified,
+                               long fingerprint, List<String> links, boolean handedOff) {
+        lock.lock();
+        try {
+            if (handedOff) {
+                pending--;
+            } else {
+                inFlight--;
+            }
+            if (content != null) {
+                // the slot for this page was reserved before the fetch started
+                int docId = storePage(page.url, title, content, etag, lastModified, fingerprint);
+                if (docId >= 0) {
+                    page.docId = docId;
+                    page.text = content;
+                    pagesStored++;
+                }
+                try {
+                    for (String link : links) {
+                        frontier.add(link);
+                    }
+                } catch (UncheckedIOException e) {
+                    // the page stays stored; only the links it had left to queue are lost
+                    System.out.println("Failed to queue the links of " + page.url + " (" + e.getMessage() + ")");
+                }
+            }
+            progress.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stores a fetched page unless it nearly duplicates one stored before, in which case
+     * it is linked to that page. Returns the docId it was stored under, or -1.
+     */
+    private int storePage(String url, String title, String content, String etag, String lastModified,
+                              long fingerprint) {
+        if (duplicates != null) {
+            int canonical = duplicates.find(fingerprint);
+            if (canonical >= 0) {
+                duplicateOf.put(url, canonical);
+                System.out.println("Near-duplicate of doc " + canonical + ": " + url);
+                return -1;
+            }
+        }
+        int docId = store.add(url, title, content);
+        state.put(url, new CrawlState.Page(docId, etag, lastModified, CrawlState.contentHash(title, content)));
+        if (duplicates != null) {
+            duplicates.add(fingerprint, docId);
+        }
+        return docId;
+    }
+
+    // computed by the fetching thread, outside the crawl lock
+    private long fingerprint(String content) {
+        return duplicates == null ? 0 : NearDuplicateDetector.fingerprint(content);
+    }
+
+    /**
+     * Revisits every page in the crawl state, up to MAX_CONCURRENCY at a time under the
+     * same per-host politeness as a crawl, and reports what changed.
+     * <p>
+     * Each request carries the page's stored validators as If-None-Match and
+     * If-Modified-Since, so an unchanged page usually costs a bodiless 304. A page
+     * served in full whose title and text hash the same as before is not stored again
+     * either; only its validators are updated. A changed page is appended to the store
+     * under a new docId and passed to {@link RecrawlListener#changed}, and a page
+     * answering 404 or 410 is dropped from the state and passed to
+     * {@link RecrawlListener#removed}. Any other failure leaves the page as it was.
+     * Links are not followed: new pages are found by a crawl. Changed pages are not
+     * checked for near-duplicates.
+     * <p>
+     * The throttle's per-host cap counts recrawl requests too, so a recrawl should use
+     * a Crawler with a fresh {@link HostThrottle}.
+     */
+    public RecrawlStats recrawl(RecrawlListener listener) {
+        AtomicIntegerArray counts = new AtomicIntegerArray(FAILED + 1);
+        Semaphore slots = new Semaphore(MAX_CONCURRENCY);
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (String url : state.urls()) {
+                slots.acquire();
+                executor.submit(() -> {
+                    try {
+                        counts.incrementAndGet(revisit(url, listener));
+                    } finally {
+                        slots.release();
+                    }
+                });
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        RecrawlStats stats = new RecrawlStats(counts.get(NOT_MODIFIED), counts.get(UNCHANGED),
+                counts.get(CHANGED), counts.get(REMOVED), counts.get(FAILED));
+        System.out.println("\nRecrawled " + state.size() + " pages: " + stats);
+        return stats;
+    }
+
+    private int revisit(String url, RecrawlListener listener) {
+        CrawlState.Page known = state.get(url);
+        try {
+            if (known == null || !throttle.acquire(url)) {
+                return FAILED;
+            }
+            Connection connection = Jsoup.connect(url).ignoreHttpErrors(true);
+            if (known.etag != null) {
+                connection.header("If-None-Match", known.etag);
+            }
+            if (known.lastModified != null) {
+                connection.header("If-Modified-Since", known.lastModified);
+            }
+            Connection.Response response = download(connection, url);
+            int status = response.statusCode();
+            if (status == 304) {
+                return NOT_MODIFIED;
+            }
+            if (status == 404 || status == 410) {
+                lock.lock();
+                try {
+                    state.remove(url);
+                    listener.removed(url, known.docId);
+                } finally {
+                    lock.unlock();
+                }
+                System.out.println("Removed: " + url);
+                return REMOVED;
+            }
+            if (status != 200) {
+                System.out.println("Failed to recrawl: " + url + " (HTTP " + status + ")");
+                return FAILED;
+            }
+
+            Document doc = parse(response);
+            String content = doc.text();
+            String title = doc.title();
+            String etag = response.header("ETag");
+            String lastModified = response.header("Last-Modified");
+            long hash = CrawlState.contentHash(title, content);
+            if (hash == known.contentHash) {
+                state.put(url, new CrawlState.Page(known.docId, etag, lastModified, hash));
+                return UNCHANGED;
+            }
+            // storing and reporting under one lock keeps the listener's docIds in order
+            lock.lock();
+            try {
+                int docId = store.add(url, title, content);
+                state.put(url, new CrawlState.Page(docId, etag, lastModified, hash));
+                listener.changed(url, known.docId, docId, content);
+            } finally {
+                lock.unlock();
+            }
+            System.out.println("Changed: " + url);
+            return CHANGED;
+        } catch (IOException | IllegalArgumentException e) {
+            System.out.println("Failed to recrawl: " + url);
+            return FAILED;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return FAILED;
+        }
+    }
+
+    private boolean isValidLink(String url) {
+        // : to avoid :contact_us , :about , :contents ,
+        // # to avoid urls like #body
+        if (!url.startsWith(BASE_URL) ) return false;
+        if (url.contains("#")) return false;
+
+        String path = url.substring((BASE_URL).length());
+
+        return !path.contains(":");
+    }
+
+    /**
+     * Executes the request and reads the whole body, recording how long that took, in
+     * total and for the url's host, and how many bytes the host sent.
+     */
+    private static Connection.Response download(Connection connection, String url) throws IOException {
+        long started = System.nanoTime();
+        Connection.Response response = connection.execute().bufferUp();
+        long elapsed = System.nanoTime() - started;
+        String host = HostThrottle.hostOf(url);
+        FETCH.record(elapsed);
+        Metrics.shared().histogram("crawler.fetch." + host).record(elapsed);
+        Metrics.shared().counter("crawler.bytes." + host).add(response.bodyAsBytes().length);
+        return response;
+    }
+
+    private static Document parse(Connection.Response response) throws IOException {
+        long started = System.nanoTime();
+        Document doc = response.parse();
+        PARSE.recordSince(started);
+        return doc;
+    }
+
+    public DocumentStore getDocumentStore() {
+        return store;
+    }
+
+    public CrawlState getCrawlState() {
+        return state;
+    }
+
+    // the URLs still to fetch; close it to delete its spill files once the crawl is over
+    public Frontier getFrontier() {
+        return frontier;
+    }
+
+    /**
+     * The crawled URLs that were not stored because their text nearly duplicates a
+     * stored page, each with that page's docId.
+     */
+    public Map<String, Integer> getDuplicates() {
+        return Collections.unmodifiableMap(duplicateOf);
+    }
+
+    // a downloaded page on its way from a fetcher to the parse stage of a CrawlPipeline
+    static final class FetchedPage {
+        final String url;
+        // null if the download failed, and once the page is parsed
+        Connection.Response response;
+        // set by process: the docId the page was stored under, or -1, and its text
+        int docId = -1;
+        String text;
+
+        FetchedPage(String url, Connection.Response response) {
+            this.url = url;
+            this.response = response;
+        }
+    }
+
+    /**
+     * How the pages of a recrawl turned out.
+     */
+    public static class RecrawlStats {
+        // answered 304 to the conditional request
+        public final int notModified;
+        // sent again, but with the same title and text
+        public final int unchanged;
+        public final int changed;
+        public final int removed;
+        // unreachable, refused by the throttle or answered with another error; left as they were
+        public final int failed;
+
+        RecrawlStats(int notModified, int unchanged, int changed, int removed, int failed) {
+            this.notModified = notModified;
+            this.unchanged = unchanged;
+            this.changed = changed;
+            this.removed = removed;
+            this.failed = failed;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("notModified=%d unchanged=%d changed=%d removed=%d failed=%d",
+                    notModified, unchanged, changed, removed, failed);
+        }
+    }
+}
@@ -0,0 +1,370 @@
+package Crawler;
+
+import java.io.*;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * The crawler's URL frontier: the queue of URLs still to fetch, and the record of every
+ * URL ever queued so that none is queued twice. Both stay within a fixed heap budget
+ * however many URLs are discovered, by spilling to files in a scratch directory.
+ * <p>
+ * A URL is remembered as a 64-bit hash. New hashes go into an in-memory open-addressing
+ * table, and when that holds {@code maxUrlsInMemory / 2} hashes it is sorted and written
+ * out as a run file. Run files are searched through memory maps by binary search. They
+ * are merged like index segments, whenever the newest is at least as large as the one
+ * before it, so there are O(log n) of them. A Bloom filter sized for
+ * {@code expectedUrls} sits in front of all of this. Most new URLs fail the Bloom check
+ * and are queued without touching the table or a run. Only URLs it reports as possibly
+ * seen, mostly links to pages already queued, are looked up. Two URLs with the same
+ * 64-bit hash are taken for one. Across tens of millions of URLs that is expected to
+ * happen less than once.
+ * <p>
+ * The queue is FIFO. URLs are appended to an in-memory tail. When the tail holds
+ * {@code maxUrlsInMemory / 2} URLs it is written to an append-only segment file.
+ * Polling drains an in-memory head, then the oldest segment (read back whole and
+ * deleted), then the tail. Heap use is bounded by the Bloom filter plus
+ * {@code maxUrlsInMemory} hashes and URLs, whatever the crawl's size.
+ * <p>
+ * I/O failures of the scratch files are thrown as {@link UncheckedIOException}.
+ * {@link #close()} deletes the files. All methods are thread-safe.
+ */
+public class Frontier implements Closeable {
+    private static final int DEFAULT_EXPECTED_URLS = 1 << 20;
+    private static final int DEFAULT_MAX_URLS_IN_MEMORY = 1 << 18;
+    // Bloom filter bits per expected URL and hash functions: about a 1% false positive rate
+    private static final int BLOOM_BITS_PER_URL = 10;
+    private static final int BLOOM_HASHES = 7;
+
+    private final long[] bloom;
+    private final long bloomBits;
+    private final int batchSize;
+
+    // hashes seen since the last run was written; 0 marks a free slot
+    private final long[] recent;
+    private int recentCount;
+    // sorted run files of older hashes, oldest first
+    private final List<Run> runs = new ArrayList<>();
+    private long seen;
+
+    private final ArrayDeque<String> head = new ArrayDeque<>();
+    private final ArrayDeque<String> tail = new ArrayDeque<>();
+    // spilled queue segments, oldest first, and how many URLs each holds
+    private final ArrayDeque<Path> segments = new ArrayDeque<>();
+    private final ArrayDeque<Integer> segmentSizes = new ArrayDeque<>();
+    private long size;
+
+    private final Path spillDir;
+    // created on the first spill, so a small crawl never touches the disk
+    private Path directory;
+    private boolean spillDirCreated;
+    private int nextFile;
+
+    public Frontier() {
+        this(DEFAULT_EXPECTED_URLS, DEFAULT_MAX_URLS_IN_MEMORY, null);
+    }
+
+    /**
+     * @param expectedUrls    the number of distinct URLs the Bloom filter is sized for, at
+     *                        10 bits each; more still dedup exactly, with more lookups
+     * @param maxUrlsInMemory the URLs and hashes kept on the heap before spilling to disk
+     * @param spillDir        where the scratch files go, or null for a new temporary directory
+     */
+    public Frontier(long expectedUrls, int maxUrlsInMemory, Path spillDir) {
+        if (expectedUrls < 1 || maxUrlsInMemory < 2) {
+            throw new IllegalArgumentException("invalid frontier sizes: expectedUrls=" + expectedUrls
+                    + ", maxUrlsInMemory=" + maxUrlsInMemory);
+        }
+        long words = Math.max(1, (expectedUrls * BLOOM_BITS_PER_URL + 63) / 64);
+        if (words > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("expectedUrls too large for a Bloom filter: " + expectedUrls);
+        }
+        this.bloom = new long[(int) words];
+        this.bloomBits = words * 64;
+        this.batchSize = maxUrlsInMemory / 2;
+        this.recent = new long[Integer.highestOneBit(batchSize) * 4];
+        this.spillDir = spillDir;
+    }
+
+    /**
+     * Queues a URL unless it was queued before. Returns whether it was queued.
+     */
+    public synchronized boolean add(String url) {
+        long hash = hash(url);
+        if (mightContain(hash) && contains(hash)) {
+            return false;
+        }
+        remember(hash);
+        tail.addLast(url);
+        size++;
+        if (tail.size() >= batchSize) {
+            spillTail();
+        }
+        return true;
+    }
+
+    /**
+     * The URL queued longest ago, removed from the queue, or null if none is waiting.
+     */
+    public synchronized String poll() {
+        if (head.isEmpty()) {
+            if (!segments.isEmpty()) {
+                readSegment();
+            } else {
+                // nothing on disk: the tail is next in line
+                head.addAll(tail);
+                tail.clear();
+            }
+        }
+        String url = head.pollFirst();
+        if (url != null) {
+            size--;
+        }
+        return url;
+    }
+
+    // the number of URLs waiting
+    public synchronized long size() {
+        return size;
+    }
+
+    public synchronized boolean isEmpty() {
+        return size == 0;
+    }
+
+    // the number of distinct URLs ever queued
+    public synchronized long seen() {
+        return seen;
+    }
+
+    /**
+     * Deletes the scratch files. The frontier must not be used afterwards.
+     */
+    @Override
+    public synchronized void close() {
+        for (Run run : runs) {
+            run.delete();
+        }
+        runs.clear();
+        for (Path segment : segments) {
+            deleteQuietly(segment);
+        }
+        segments.clear();
+        segmentSizes.clear();
+        if (spillDirCreated && spillDir == null) {
+            deleteQuietly(directory);
+        }
+    }
+
+    // ---- the seen set ----
+
+    private boolean mightContain(long hash) {
+        long h1 = hash, h2 = hash >>> 32 | 1;
+        for (int i = 0; i < BLOOM_HASHES; i++) {
+            long bit = Long.remainderUnsigned(h1 + i * h2, bloomBits);
+            if ((bloom[(int) (bit >>> 6)] & 1L << bit) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean contains(long hash) {
+        for (int slot = slot(hash); recent[slot] != 0; slot = (slot + 1) & (recent.length - 1)) {
+            if (recent[slot] == hash) {
+                return true;
+            }
+        }
+        for (Run run : runs) {
+            if (run.contains(hash)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void remember(long hash) {
+        long h1 = hash, h2 = hash >>> 32 | 1;
+        for (int i = 0; i < BLOOM_HASHES; i++) {
+            long bit = Long.remainderUnsigned(h1 + i * h2, bloomBits);
+            bloom[(int) (bit >>> 6)] |= 1L << bit;
+        }
+        int slot = slot(hash);
+        while (recent[slot] != 0) {
+            slot = (slot + 1) & (recent.length - 1);
+        }
+        recent[slot] = hash;
+        seen++;
+        if (++recentCount >= batchSize) {
+            spillRecent();
+        }
+    }
+
+    private int slot(long hash) {
+        return (int) (hash ^ hash >>> 29) & (recent.length - 1);
+    }
+
+    // writes the in-memory hashes as a sorted run, then merges runs while the newest is the largest
+    private void spillRecent() {
+        long[] sorted = new long[recentCount];
+        int n = 0;
+        for (int slot = 0; slot < recent.length; slot++) {
+            if (recent[slot] != 0) {
+                sorted[n++] = recent[slot];
+                recent[slot] = 0;
+            }
+        }
+        recentCount = 0;
+        Arrays.sort(sorted);
+        try {
+            runs.add(Run.write(newFile("run"), sorted));
+            int last;
+            while ((last = runs.size() - 1) > 0 && runs.get(last).size >= runs.get(last - 1).size) {
+                Run merged = Run.merge(newFile("run"), runs.get(last - 1), runs.get(last));
+                runs.remove(last).delete();
+                runs.remove(last - 1).delete();
+                runs.add(merged);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("cannot spill the frontier's seen URLs", e);
+        }
+    }
+
+    // ---- the queue ----
+
+    private void spillTail() {
+        Path segment = newFile("queue");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(segment), 1 << 16))) {
+            for (String url : tail) {
+                byte[] bytes = url.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("cannot spill the frontier queue", e);
+        }
+        segments.addLast(segment);
+        segmentSizes.addLast(tail.size());
+        tail.clear();
+    }
+
+    private void readSegment() {
+        Path segment = segments.pollFirst();
+        int count = segmentSizes.pollFirst();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(segment), 1 << 16))) {
+            for (int i = 0; i < count; i++) {
+                byte[] bytes = new byte[in.readInt()];
+                in.readFully(bytes);
+                head.addLast(new String(bytes, StandardCharsets.UTF_8));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("cannot read a spilled frontier segment", e);
+        }
+        deleteQuietly(segment);
+    }
+
+    // ---- files ----
+
+    private Path newFile(String kind) {
+        try {
+            if (!spillDirCreated) {
+                directory = spillDir != null ? Files.createDirectories(spillDir) : Files.createTempDirectory("frontier");
+                spillDirCreated = true;
+            }
+            return directory.resolve(kind + "-" + nextFile++ + ".dat");
+        } catch (IOException e) {
+            throw new UncheckedIOException("cannot create the frontier's spill directory", e);
+        }
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            // a leftover scratch file is harmless
+        }
+    }
+
+    /**
+     * 64-bit FNV-1a of the URL's characters, finished with the SplitMix64 mixer so the
+     * bits are uniform for the Bloom filter and the table. Never 0, the free-slot marker.
+     */
+    static long hash(String url) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < url.length(); i++) {
+            hash = (hash ^ url.charAt(i)) * 0x100000001b3L;
+        }
+        hash = (hash ^ (hash >>> 30)) * 0xbf58476d1ce4e5b9L;
+        hash = (hash ^ (hash >>> 27)) * 0x94d049bb133111ebL;
+        hash ^= hash >>> 31;
+        return hash == 0 ? 1 : hash;
+    }
+
+    /**
+     * A sorted file of hashes, searched through a read-only memory map.
+     */
+    private static final class Run {
+        final Path file;
+        final long size;
+        final LongBuffer hashes;
+
+        private Run(Path file) throws IOException {
+            this.file = file;
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                this.size = channel.size() / 8;
+                this.hashes = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size())
+                        .order(ByteOrder.BIG_ENDIAN).asLongBuffer();
+            }
+        }
+
+        static Run write(Path file, long[] sorted) throws IOException {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 1 << 16))) {
+                for (long hash : sorted) {
+                    out.writeLong(hash);
+                }
+            }
+            return new Run(file);
+        }
+
+        // a two-way merge of sorted runs, which never share a hash
+        static Run merge(Path file, Run a, Run b) throws IOException {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 1 << 16))) {
+                long i = 0, j = 0;
+                while (i < a.size || j < b.size) {
+                    if (j == b.size || (i < a.size && a.hashes.get((int) i) < b.hashes.get((int) j))) {
+                        out.writeLong(a.hashes.get((int) i++));
+                    } else {
+                        out.writeLong(b.hashes.get((int) j++));
+                    }
+                }
+            }
+            return new Run(file);
+        }
+
+        boolean contains(long hash) {
+            int low = 0, high = (int) size - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                long value = hashes.get(mid);
+                if (value < hash) {
+                    low = mid + 1;
+                } else if (value > hash) {
+                    high = mid - 1;
+                } else {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        void delete() {
+            deleteQuietly(file);
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package Crawler;
+
+import java.net.URI;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Per-host politeness for the concurrent crawler: requests to the same host are
+ * spaced at least {@code delayMillis} apart, and at most {@code maxRequestsPerHost}
+ * requests are issued to any single host over the whole crawl.
+ */
+public class HostThrottle {
+    private final long delayNanos;
+    private final int maxRequestsPerHost;
+    private final Map<String, HostState> hosts = new ConcurrentHashMap<>();
+
+    public HostThrottle(long delayMillis, int maxRequestsPerHost) {
+        if (delayMillis < 0 || maxRequestsPerHost < 1) {
+            throw new IllegalArgumentException("invalid politeness settings: delay=" + delayMillis
+                    + "ms, maxRequestsPerHost=" + maxRequestsPerHost);
+        }
+        this.delayNanos = delayMillis * 1_000_000L;
+        this.maxRequestsPerHost = maxRequestsPerHost;
+    }
+
+    /**
+     * Blocks until the politeness delay for the url's host allows another request.
+     * Returns false without waiting if the host has used up its request cap.
+     */
+    public boolean acquire(String url) throws InterruptedException {
+        HostState state = hosts.computeIfAbsent(hostOf(url), h -> new HostState());
+        long waitNanos;
+        synchronized (state) {
+            if (state.requests >= maxRequestsPerHost) {
+                return false;
+            }
+            state.requests++;
+            // reserve the next free slot for this host so concurrent callers queue up behind each other
+            long now = System.nanoTime();
+            long slot = Math.max(now, state.nextSlot);
+            state.nextSlot = slot + delayNanos;
+            waitNanos = slot - now;
+        }
+        if (waitNanos > 0) {
+            Thread.sleep(waitNanos / 1_000_000L, (int) (waitNanos % 1_000_000L));
+        }
+        return true;
+    }
+
+    static String hostOf(String url) {
+        try {
+            String host = URI.create(url).getHost();
+            return host == null ? "" : host.toLowerCase();
+        } catch (IllegalArgumentException e) {
+            return "";
+        }
+    }
+
+    private static final class HostState {
+        int requests;
+        long nextSlot = Long.MIN_VALUE;
+    }
+}
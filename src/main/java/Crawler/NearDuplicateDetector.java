@@ -0,0 +1,226 @@
+package Crawler;
+
+import Tokenizer.Tokenizer;
+
+import java.util.Arrays;
+
+/**
+ * Finds pages whose text is nearly the same as a page seen before, such as redirects,
+ * printable views and mirrors, so the crawler can skip them instead of indexing them
+ * again.
+ * <p>
+ * Each text is reduced to a 64-bit SimHash of its overlapping three-word shingles:
+ * every shingle hash votes on every bit, and the fingerprint keeps the majority.
+ * Texts sharing most of their shingles get fingerprints that differ in few bits, so
+ * two pages count as near-duplicates when their fingerprints are at most
+ * {@code maxDistance} bits apart. The default of 3 catches the same text with a little
+ * boilerplate around it, such as a printable view or a mirror's header, but not an
+ * edited page: with one word in a hundred replaced the typical distance is already 5.
+ * Unrelated pages are about 32 bits apart.
+ * <p>
+ * Lookups use banded LSH. The fingerprint is split into {@code maxDistance + 1}
+ * bands, and by the pigeonhole principle two fingerprints within maxDistance bits
+ * agree exactly on at least one band. Each band files every fingerprint in a bucket
+ * keyed by its band value, stored as one contiguous array, so a lookup costs a cache
+ * miss and a short scan per band. With the default four 16-bit bands, a million pages
+ * leave about 15 fingerprints per bucket and a lookup takes about a microsecond. The
+ * scans grow linearly but slowly, by one comparison per band per 65,536 pages. A larger
+ * maxDistance means narrower bands and longer scans.
+ * <p>
+ * Fingerprinting is one pass over the words with no allocation per word, about as fast
+ * as tokenizing the text. The buckets take under 100 bytes per page at the default
+ * distance. All methods are thread-safe.
+ */
+public class NearDuplicateDetector {
+    public static final int DEFAULT_MAX_DISTANCE = 3;
+    private static final int MAX_DISTANCE_LIMIT = 7;
+    // buckets per band: one per band value for bands up to 16 bits, hashed for wider ones
+    private static final int MAX_BUCKET_BITS = 16;
+    // words per shingle
+    private static final int SHINGLE = 3;
+
+    private final int maxDistance;
+    private final int bands;
+    // band b is the bits (fingerprint >>> bandShift[b]) & bandMask[b]
+    private final int[] bandShift;
+    private final long[] bandMask;
+    private final int bucketMask;
+
+    // per band and bucket: the fingerprints filed there and their docIds, oldest first
+    private final long[][][] fingerprints;
+    private final int[][][] docIds;
+    private final int[][] bucketSizes;
+    private int size;
+
+    public NearDuplicateDetector() {
+        this(DEFAULT_MAX_DISTANCE);
+    }
+
+    /**
+     * @param maxDistance the number of fingerprint bits, from 0 to 7, in which two pages
+     *                    may differ and still count as near-duplicates
+     */
+    public NearDuplicateDetector(int maxDistance) {
+        if (maxDistance < 0 || maxDistance > MAX_DISTANCE_LIMIT) {
+            throw new IllegalArgumentException("maxDistance must be from 0 to " + MAX_DISTANCE_LIMIT + ": " + maxDistance);
+        }
+        this.maxDistance = maxDistance;
+        this.bands = maxDistance + 1;
+        this.bandShift = new int[bands];
+        this.bandMask = new long[bands];
+        for (int b = 0, shift = 0; b < bands; b++) {
+            int width = 64 / bands + (b < 64 % bands ? 1 : 0);
+            bandShift[b] = shift;
+            bandMask[b] = width == 64 ? -1L : (1L << width) - 1;
+            shift += width;
+        }
+        int bucketBits = Math.min(64 / bands, MAX_BUCKET_BITS);
+        this.bucketMask = (1 << bucketBits) - 1;
+        this.fingerprints = new long[bands][bucketMask + 1][];
+        this.docIds = new int[bands][bucketMask + 1][];
+        this.bucketSizes = new int[bands][bucketMask + 1];
+    }
+
+    /**
+     * The docId of the earliest page within maxDistance bits of the fingerprint, among
+     * those found in the first band that has one, or -1.
+     */
+    public synchronized int find(long fingerprint) {
+        for (int b = 0; b < bands; b++) {
+            int bucket = bucket(fingerprint, b);
+            long[] candidates = fingerprints[b][bucket];
+            // a contiguous scan, so a lookup costs one cache miss per band
+            for (int i = 0, n = bucketSizes[b][bucket]; i < n; i++) {
+                if (Long.bitCount(candidates[i] ^ fingerprint) <= maxDistance) {
+                    return docIds[b][bucket][i];
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Records a stored page, so later near-duplicates of it are found.
+     */
+    public synchronized void add(long fingerprint, int docId) {
+        for (int b = 0; b < bands; b++) {
+            int bucket = bucket(fingerprint, b);
+            int n = bucketSizes[b][bucket];
+            if (n == 0) {
+                fingerprints[b][bucket] = new long[4];
+                docIds[b][bucket] = new int[4];
+            } else if (n == fingerprints[b][bucket].length) {
+                fingerprints[b][bucket] = Arrays.copyOf(fingerprints[b][bucket], n * 2);
+                docIds[b][bucket] = Arrays.copyOf(docIds[b][bucket], n * 2);
+            }
+            fingerprints[b][bucket][n] = fingerprint;
+            docIds[b][bucket][n] = docId;
+            bucketSizes[b][bucket] = n + 1;
+        }
+        size++;
+    }
+
+    // the number of pages recorded
+    public synchronized int size() {
+        return size;
+    }
+
+    private int bucket(long fingerprint, int b) {
+        long band = fingerprint >>> bandShift[b] & bandMask[b];
+        return (int) (band > bucketMask ? mix(band) : band) & bucketMask;
+    }
+
+    /**
+     * The SimHash of a text's overlapping three-word shingles, over the same lower-cased
+     * words the index sees. A text of fewer than three words is one shingle.
+     */
+    public static long fingerprint(CharSequence text) {
+        Tokenizer tokens = new Tokenizer().reset(text);
+        Votes votes = new Votes();
+        long first = 0, second = 0;
+        int count = 0;
+        while (tokens.next()) {
+            long word = wordHash(tokens);
+            if (++count >= SHINGLE) {
+                votes.add(mix(mix(first ^ Long.rotateLeft(second, 21)) ^ Long.rotateLeft(word, 42)));
+            }
+            first = second;
+            second = word;
+        }
+        if (count > 0 && count < SHINGLE) {
+            votes.add(mix(mix(first ^ Long.rotateLeft(second, 21))));
+        }
+        return votes.majority();
+    }
+
+    // the number of bits in which two fingerprints differ
+    public static int distance(long a, long b) {
+        return Long.bitCount(a ^ b);
+    }
+
+    // 64-bit FNV-1a of the token's characters
+    private static long wordHash(CharSequence word) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < word.length(); i++) {
+            hash = (hash ^ word.charAt(i)) * 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /**
+     * Counts, for each of the 64 bits, how many shingle hashes have it set. The counts
+     * are bit-sliced: plane j holds bit j of all 64 counters, so adding a hash is a
+     * ripple-carry add of one word into the planes, a couple of operations on average
+     * instead of 64 increments.
+     */
+    private static final class Votes {
+        private static final int PLANES = 16;
+        private final long[] planes = new long[PLANES];
+        private final int[] counts = new int[64];
+        private int pending;
+        private int total;
+
+        void add(long hash) {
+            long carry = hash;
+            for (int j = 0; carry != 0; j++) {
+                long overflow = planes[j] & carry;
+                planes[j] ^= carry;
+                carry = overflow;
+            }
+            total++;
+            // flush before a counter could overflow its 16 planes
+            if (++pending == (1 << PLANES) - 1) {
+                flush();
+            }
+        }
+
+        private void flush() {
+            for (int j = 0; j < PLANES; j++) {
+                for (long plane = planes[j]; plane != 0; plane &= plane - 1) {
+                    counts[Long.numberOfTrailingZeros(plane)] += 1 << j;
+                }
+                planes[j] = 0;
+            }
+            pending = 0;
+        }
+
+        // the fingerprint with each bit set that more than half the hashes have set
+        long majority() {
+            flush();
+            long fingerprint = 0;
+            for (int bit = 0; bit < 64; bit++) {
+                if (2 * counts[bit] > total) {
+                    fingerprint |= 1L << bit;
+                }
+            }
+            return fingerprint;
+        }
+    }
+
+    // the SplitMix64 finalizer, so every input bit affects every output bit
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
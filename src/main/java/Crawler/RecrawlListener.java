@@ -0,0 +1,15 @@
+package Crawler;
+
+/**
+ * Receives the changes a {@link Crawler#recrawl} finds, typically to apply them to a
+ * {@code NearRealTimeIndex}. Calls are made one at a time, in the order the new
+ * versions were stored, so newDocIds arrive in increasing order.
+ */
+public interface RecrawlListener {
+
+    // the page's text changed and was stored again under newDocId
+    void changed(String url, int oldDocId, int newDocId, String text);
+
+    // the page is gone (404 or 410)
+    void removed(String url, int docId);
+}
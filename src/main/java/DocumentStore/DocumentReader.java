@@ -0,0 +1,34 @@
+package DocumentStore;
+
+/**
+ * Read access to stored documents by docId, implemented by the appendable
+ * {@link DocumentStore} and by the memory-mapped {@link MappedDocumentStore}.
+ * Every lookup is O(1) in the number of documents.
+ */
+public interface DocumentReader {
+
+    // token positions between the stored offsets an excerpt can start from
+    int TOKEN_INTERVAL = 64;
+
+    // an upper bound on the UTF-8 length of an excerpt
+    int MAX_EXCERPT_BYTES = 1 << 16;
+
+    // the number of documents; docIds run from 0 to size() - 1
+    int size();
+
+    String url(int docId);
+
+    String title(int docId);
+
+    // the page text, decompressed from its blocks
+    String text(int docId);
+
+    /**
+     * The part of a page's text holding the tokens at positions from..to-1, read
+     * without decompressing the rest of the page. It starts with the token at position
+     * {@code from - from % TOKEN_INTERVAL}, so tokenizing it counts positions from
+     * there, and it ends at a later token or the end of the text. Excerpts stop short
+     * of {@code to} only if they would exceed {@link #MAX_EXCERPT_BYTES}.
+     */
+    String excerpt(int docId, int from, int to);
+}
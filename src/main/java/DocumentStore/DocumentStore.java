@@ -0,0 +1,513 @@
+package DocumentStore;
+
+import Tokenizer.Tokenizer;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * The single copy of every crawled page, addressed by docId: the crawler appends to it,
+ * the indexer reads the text back through {@link #texts()}, and {@link #write(Path)}
+ * persists it next to the index for {@link MappedDocumentStore}; {@link #read(Path)}
+ * loads it again for a later run to append to. The store is append-only: a recrawled
+ * page that changed is added again under a new docId, and the index stops returning
+ * the old one.
+ * <p>
+ * URLs and titles are kept in dense arrays indexed by docId. Page text is appended to
+ * a block of {@link #BLOCK_SIZE} UTF-8 bytes, and each full block is deflated into an
+ * off-heap buffer, so the heap holds only the block being filled. A page that fits in
+ * a block never straddles two; a longer one fills the current block and runs on
+ * through as many full blocks as it needs. Reading inflates a block once per thread
+ * and keeps it for the following documents, which makes sequential reads (indexing a
+ * range of docIds) cheap.
+ * <p>
+ * For every {@link #TOKEN_INTERVAL}-th token of a page the store also records the
+ * token's byte offset in the text, so {@link #excerpt} can start at a token near any
+ * position and inflate only the blocks around it.
+ * <p>
+ * Files (all big-endian):
+ * <pre>
+ * store.dat  the deflated blocks, back to back
+ * store.str  per docId: url then title, as UTF-8
+ * store.idx  magic, version, docCount, blockCount, tokenOffsetCount;
+ *            per docId: textBlock, textOffset, textLength, stringsOffset, urlLength, titleLength,
+ *                       firstTokenOffset;
+ *            blockCount + 1 block offsets into store.dat, then each block's inflated length;
+ *            the token offsets: per docId, the byte offsets in its text of tokens
+ *            TOKEN_INTERVAL, 2 * TOKEN_INTERVAL, ...
+ * </pre>
+ * store.idx is written last, so a directory without it holds no usable store.
+ * <p>
+ * All methods are thread-safe.
+ */
+public class DocumentStore implements DocumentReader {
+    static final int MAGIC = 0x53454453; // "SEDS"
+    static final int VERSION = 2;
+    static final int HEADER_BYTES = 20;
+    static final int DOC_ENTRY_INTS = 7;
+    // small blocks keep random excerpts cheap, at some cost in compression
+    static final int BLOCK_SIZE = 1 << 13;
+
+    static final String INDEX = "store.idx";
+    static final String STRINGS = "store.str";
+    static final String BLOCKS = "store.dat";
+
+    private String[] urls = new String[16];
+    private String[] titles = new String[16];
+    // per docId: (text block, offset in the inflated block, UTF-8 length, first token offset)
+    private int[] texts = new int[16 * 4];
+    private int size;
+
+    // deflated blocks, never modified once written
+    private ByteBuffer blocks = ByteBuffer.allocateDirect(BLOCK_SIZE);
+    private int blocksLength;
+    private int[] blockOffsets = new int[]{0, 0, 0, 0, 0};
+    private int[] blockLengths = new int[4];
+    private int blockCount;
+
+    // the block being filled; its index is blockCount
+    private final byte[] pending = new byte[BLOCK_SIZE];
+    private int pendingLength;
+
+    // the token offsets of every document, in docId order
+    private int[] tokenOffsets = new int[64];
+    private int tokenOffsetCount;
+
+    private final ThreadLocal<DecodedBlock> decoded = ThreadLocal.withInitial(DecodedBlock::new);
+
+    /**
+     * Stores a page and returns its docId, the next in sequence from 0.
+     */
+    public int add(String url, String title, String text) {
+        String body = text == null ? "" : text;
+        // encoding and tokenizing run outside the lock, so concurrent crawlers overlap
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        int[] offsets = tokenOffsetsOf(body);
+        return append(url == null ? "" : url, title == null ? "" : title, bytes, offsets);
+    }
+
+    private synchronized int append(String url, String title, byte[] bytes, int[] offsets) {
+        int docId = size;
+        if (docId == urls.length) {
+            urls = Arrays.copyOf(urls, docId * 2);
+            titles = Arrays.copyOf(titles, docId * 2);
+            texts = Arrays.copyOf(texts, docId * 2 * 4);
+        }
+        urls[docId] = url;
+        titles[docId] = title;
+
+        if (pendingLength == BLOCK_SIZE || (bytes.length <= BLOCK_SIZE && pendingLength + bytes.length > BLOCK_SIZE)) {
+            flushBlock();
+        }
+        texts[docId * 4] = blockCount;
+        texts[docId * 4 + 1] = pendingLength;
+        texts[docId * 4 + 2] = bytes.length;
+        texts[docId * 4 + 3] = tokenOffsetCount;
+        for (int copied = 0; copied < bytes.length; ) {
+            if (pendingLength == BLOCK_SIZE) {
+                flushBlock();
+            }
+            int n = Math.min(bytes.length - copied, BLOCK_SIZE - pendingLength);
+            System.arraycopy(bytes, copied, pending, pendingLength, n);
+            pendingLength += n;
+            copied += n;
+        }
+
+        if (tokenOffsetCount + offsets.length > tokenOffsets.length) {
+            tokenOffsets = Arrays.copyOf(tokenOffsets, Math.max(tokenOffsets.length * 2, tokenOffsetCount + offsets.length));
+        }
+        System.arraycopy(offsets, 0, tokenOffsets, tokenOffsetCount, offsets.length);
+        tokenOffsetCount += offsets.length;
+        size++;
+        return docId;
+    }
+
+    @Override
+    public synchronized int size() {
+        return size;
+    }
+
+    @Override
+    public synchronized String url(int docId) {
+        return docId >= 0 && docId < size ? urls[docId] : null;
+    }
+
+    @Override
+    public synchronized String title(int docId) {
+        return docId >= 0 && docId < size ? titles[docId] : null;
+    }
+
+    @Override
+    public String text(int docId) {
+        int length;
+        synchronized (this) {
+            if (docId < 0 || docId >= size) {
+                return null;
+            }
+            length = texts[docId * 4 + 2];
+        }
+        return decode(docId, 0, length);
+    }
+
+    @Override
+    public String excerpt(int docId, int from, int to) {
+        int start, end;
+        synchronized (this) {
+            if (docId < 0 || docId >= size) {
+                return null;
+            }
+            int length = texts[docId * 4 + 2];
+            int first = texts[docId * 4 + 3];
+            int count = (docId + 1 < size ? texts[docId * 4 + 7] : tokenOffsetCount) - first;
+            start = tokenOffset(tokenOffsets, first, count, Math.max(from, 0) / TOKEN_INTERVAL, length);
+            end = tokenOffset(tokenOffsets, first, count, Math.ceilDiv(Math.max(to, from), TOKEN_INTERVAL), length);
+        }
+        return decode(docId, start, Math.min(end, start + MAX_EXCERPT_BYTES));
+    }
+
+    // bytes from..to-1 of a document's text; written blocks are immutable, so they are inflated outside the lock
+    private String decode(int docId, int from, int to) {
+        byte[] bytes = new byte[to - from];
+        int block, offset, length = bytes.length;
+        ByteBuffer compressed;
+        int[] offsets, lengths;
+        synchronized (this) {
+            long address = (long) texts[docId * 4] * BLOCK_SIZE + texts[docId * 4 + 1] + from;
+            block = (int) (address / BLOCK_SIZE);
+            offset = (int) (address % BLOCK_SIZE);
+            compressed = blocks;
+            offsets = blockOffsets;
+            lengths = blockLengths;
+            // whatever lies in the block still being filled is copied under the lock
+            long pendingStart = (long) blockCount * BLOCK_SIZE;
+            if (address + length > pendingStart) {
+                int flushed = (int) Math.max(0, pendingStart - address);
+                System.arraycopy(pending, (int) (address + flushed - pendingStart), bytes, flushed, length - flushed);
+                length = flushed;
+            }
+        }
+        DecodedBlock decodedBlock = decoded.get();
+        for (int copied = 0; copied < length; block++, offset = 0) {
+            int n = Math.min(length - copied, lengths[block] - offset);
+            byte[] data = decodedBlock.get(block, compressed, offsets[block], offsets[block + 1] - offsets[block], offset + n);
+            if (n == bytes.length) {
+                return utf8(data, offset, n);
+            }
+            System.arraycopy(data, offset, bytes, copied, n);
+            copied += n;
+        }
+        return utf8(bytes, 0, bytes.length);
+    }
+
+    /**
+     * A live list view of the page texts, indexed by docId, for {@code ParallelIndexBuilder}.
+     */
+    public List<String> texts() {
+        return new TextList();
+    }
+
+    /**
+     * Off-heap bytes holding the deflated page text.
+     */
+    public synchronized long compressedTextBytes() {
+        return blocksLength;
+    }
+
+    /**
+     * Writes the store to dir in the format read by {@link MappedDocumentStore}.
+     */
+    public synchronized void write(Path dir) throws IOException {
+        Files.createDirectories(dir);
+        Files.deleteIfExists(dir.resolve(INDEX));
+        if (pendingLength > 0) {
+            flushBlock();
+        }
+
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(dir.resolve(BLOCKS)), 1 << 16)) {
+            ByteBuffer data = blocks.duplicate().position(0).limit(blocksLength);
+            byte[] chunk = new byte[1 << 16];
+            while (data.hasRemaining()) {
+                int n = Math.min(chunk.length, data.remaining());
+                data.get(chunk, 0, n);
+                out.write(chunk, 0, n);
+            }
+        }
+
+        int[] stringOffsets = new int[size];
+        int[] urlLengths = new int[size];
+        int[] titleLengths = new int[size];
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(dir.resolve(STRINGS)), 1 << 16)) {
+            long offset = 0;
+            for (int docId = 0; docId < size; docId++) {
+                byte[] url = urls[docId].getBytes(StandardCharsets.UTF_8);
+                byte[] title = titles[docId].getBytes(StandardCharsets.UTF_8);
+                stringOffsets[docId] = checkedInt(offset, STRINGS);
+                urlLengths[docId] = url.length;
+                titleLengths[docId] = title.length;
+                out.write(url);
+                out.write(title);
+                offset += url.length + title.length;
+            }
+            checkedInt(offset, STRINGS);
+        }
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(dir.resolve(INDEX)), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(size);
+            out.writeInt(blockCount);
+            out.writeInt(tokenOffsetCount);
+            for (int docId = 0; docId < size; docId++) {
+                out.writeInt(texts[docId * 4]);
+                out.writeInt(texts[docId * 4 + 1]);
+                out.writeInt(texts[docId * 4 + 2]);
+                out.writeInt(stringOffsets[docId]);
+                out.writeInt(urlLengths[docId]);
+                out.writeInt(titleLengths[docId]);
+                out.writeInt(texts[docId * 4 + 3]);
+            }
+            for (int i = 0; i <= blockCount; i++) {
+                out.writeInt(blockOffsets[i]);
+            }
+            for (int i = 0; i < blockCount; i++) {
+                out.writeInt(blockLengths[i]);
+            }
+            for (int i = 0; i < tokenOffsetCount; i++) {
+                out.writeInt(tokenOffsets[i]);
+            }
+        }
+    }
+
+    /**
+     * Reads a store written by {@link #write(Path)} back into memory, so that more pages
+     * can be appended under the following docIds, as a recrawl does. The deflated blocks
+     * are copied as they are; new text starts a new block.
+     */
+    public static DocumentStore read(Path dir) throws IOException {
+        DocumentStore store = new DocumentStore();
+        synchronized (store) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(dir.resolve(INDEX)), 1 << 16))) {
+                if (in.readInt() != MAGIC) {
+                    throw new IOException("not a document store: " + dir);
+                }
+                int version = in.readInt();
+                if (version != VERSION) {
+                    throw new IOException("unsupported document store version " + version + " in " + dir);
+                }
+                int size = in.readInt();
+                int blockCount = in.readInt();
+                int tokenOffsetCount = in.readInt();
+
+                byte[] strings = Files.readAllBytes(dir.resolve(STRINGS));
+                int capacity = Math.max(16, size);
+                store.urls = new String[capacity];
+                store.titles = new String[capacity];
+                store.texts = new int[capacity * 4];
+                for (int docId = 0; docId < size; docId++) {
+                    store.texts[docId * 4] = in.readInt();
+                    store.texts[docId * 4 + 1] = in.readInt();
+                    store.texts[docId * 4 + 2] = in.readInt();
+                    int stringsOffset = in.readInt();
+                    int urlLength = in.readInt();
+                    int titleLength = in.readInt();
+                    store.texts[docId * 4 + 3] = in.readInt();
+                    store.urls[docId] = new String(strings, stringsOffset, urlLength, StandardCharsets.UTF_8);
+                    store.titles[docId] = new String(strings, stringsOffset + urlLength, titleLength, StandardCharsets.UTF_8);
+                }
+
+                store.blockLengths = new int[Math.max(4, blockCount)];
+                store.blockOffsets = new int[store.blockLengths.length + 1];
+                for (int i = 0; i <= blockCount; i++) {
+                    store.blockOffsets[i] = in.readInt();
+                }
+                for (int i = 0; i < blockCount; i++) {
+                    store.blockLengths[i] = in.readInt();
+                }
+                store.tokenOffsets = new int[Math.max(64, tokenOffsetCount)];
+                for (int i = 0; i < tokenOffsetCount; i++) {
+                    store.tokenOffsets[i] = in.readInt();
+                }
+                store.size = size;
+                store.blockCount = blockCount;
+                store.tokenOffsetCount = tokenOffsetCount;
+            }
+
+            byte[] blocks = Files.readAllBytes(dir.resolve(BLOCKS));
+            if (blocks.length != store.blockOffsets[store.blockCount]) {
+                throw new IOException(BLOCKS + " holds " + blocks.length + " bytes, expected "
+                        + store.blockOffsets[store.blockCount] + ": " + dir);
+            }
+            store.blocks = ByteBuffer.allocateDirect(Math.max(BLOCK_SIZE, blocks.length)).put(0, blocks);
+            store.blocksLength = blocks.length;
+        }
+        return store;
+    }
+
+    // deflates the pending block into the off-heap buffer
+    private void flushBlock() {
+        byte[] compressed = deflate(pending, pendingLength);
+
+        if (blocksLength + compressed.length > blocks.capacity()) {
+            ByteBuffer grown = ByteBuffer.allocateDirect(Math.max(blocksLength + compressed.length, blocks.capacity() * 2));
+            grown.put(0, blocks, 0, blocksLength);
+            blocks = grown;
+        }
+        blocks.put(blocksLength, compressed);
+        blocksLength += compressed.length;
+
+        if (blockCount == blockLengths.length) {
+            blockLengths = Arrays.copyOf(blockLengths, blockCount * 2);
+            blockOffsets = Arrays.copyOf(blockOffsets, blockCount * 2 + 1);
+        }
+        blockLengths[blockCount] = pendingLength;
+        blockOffsets[++blockCount] = blocksLength;
+        pendingLength = 0;
+    }
+
+    private static byte[] deflate(byte[] data, int length) {
+        Deflater deflater = new Deflater();
+        try {
+            deflater.setInput(data, 0, length);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, length / 2));
+            byte[] chunk = new byte[8192];
+            while (!deflater.finished()) {
+                out.write(chunk, 0, deflater.deflate(chunk));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    // the UTF-8 offsets of tokens TOKEN_INTERVAL, 2 * TOKEN_INTERVAL, ... in the text
+    private static int[] tokenOffsetsOf(String text) {
+        Tokenizer tokens = new Tokenizer().reset(text);
+        int[] offsets = new int[0];
+        int count = 0, chars = 0, bytes = 0;
+        while (tokens.next()) {
+            if (tokens.position() % TOKEN_INTERVAL == 0 && tokens.position() > 0) {
+                bytes += utf8Length(text, chars, tokens.start());
+                chars = tokens.start();
+                if (count == offsets.length) {
+                    offsets = Arrays.copyOf(offsets, Math.max(8, count * 2));
+                }
+                offsets[count++] = bytes;
+            }
+        }
+        return Arrays.copyOf(offsets, count);
+    }
+
+    // the length of text[from, to) as String.getBytes(UTF_8) encodes it; tokens start at ASCII chars, never mid-pair
+    private static int utf8Length(String text, int from, int to) {
+        int length = 0;
+        for (int i = from; i < to; i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < to && Character.isLowSurrogate(text.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                length++; // an unpaired surrogate is encoded as '?'
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * The byte offset in a text of the token at position checkpoint * TOKEN_INTERVAL, or
+     * the text length if it has fewer tokens. offsets[first..first+count) holds the
+     * text's token offsets.
+     */
+    private static int tokenOffset(int[] offsets, int first, int count, int checkpoint, int length) {
+        if (checkpoint == 0) return 0;
+        return checkpoint <= count ? offsets[first + checkpoint - 1] : length;
+    }
+
+    // decodes UTF-8, dropping a character cut off at the end by MAX_EXCERPT_BYTES
+    static String utf8(byte[] bytes, int offset, int length) {
+        int lead = offset + length - 1;
+        while (lead > offset && (bytes[lead] & 0xC0) == 0x80) lead--;
+        if (lead >= offset && bytes[lead] < 0) {
+            int needed = (bytes[lead] & 0xE0) == 0xC0 ? 2 : (bytes[lead] & 0xF0) == 0xE0 ? 3 : 4;
+            if (lead + needed > offset + length) {
+                length = lead - offset;
+            }
+        }
+        return new String(bytes, offset, length, StandardCharsets.UTF_8);
+    }
+
+    // a single MappedByteBuffer cannot address more than 2GB
+    static int checkedInt(long offset, String file) throws IOException {
+        if (offset > Integer.MAX_VALUE) {
+            throw new IOException(file + " exceeds the 2GB limit of a single mapping");
+        }
+        return (int) offset;
+    }
+
+    /**
+     * The most recently inflated block of one thread. Inflation stops at the last byte
+     * a read needs and picks up from there if a later read on the same block needs
+     * more, so an excerpt near the start of a block never pays for the rest of it.
+     */
+    static final class DecodedBlock {
+        private final Inflater inflater = new Inflater();
+        private final byte[] bytes = new byte[BLOCK_SIZE];
+        private ByteBuffer source;
+        private int block = -1;
+        // bytes of the block inflated so far
+        private int inflated;
+
+        // the block's bytes, inflated at least up to needed
+        byte[] get(int block, ByteBuffer compressed, int offset, int length, int needed) {
+            if (block != this.block || compressed != source) {
+                inflater.reset();
+                inflater.setInput(compressed.slice(offset, length));
+                this.source = compressed;
+                this.block = block;
+                this.inflated = 0;
+            }
+            try {
+                while (inflated < needed) {
+                    int n = inflater.inflate(bytes, inflated, needed - inflated);
+                    if (n == 0 && (inflater.finished() || inflater.needsInput())) {
+                        this.block = -1;
+                        throw new IllegalStateException("truncated text block " + block);
+                    }
+                    inflated += n;
+                }
+            } catch (DataFormatException e) {
+                this.block = -1;
+                throw new IllegalStateException("corrupt text block " + block, e);
+            }
+            return bytes;
+        }
+    }
+
+    private final class TextList extends AbstractList<String> implements RandomAccess {
+        @Override
+        public String get(int docId) {
+            if (docId < 0 || docId >= size()) {
+                throw new IndexOutOfBoundsException("docId " + docId);
+            }
+            return text(docId);
+        }
+
+        @Override
+        public int size() {
+            return DocumentStore.this.size();
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package DocumentStore;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static DocumentStore.DocumentStore.*;
+
+/**
+ * A store written by {@link DocumentStore#write(Path)}, served from memory-mapped files.
+ * <p>
+ * Looking up a URL or title reads one fixed-size entry and the string bytes it points
+ * at. Text is inflated from its mapped blocks into a per-thread buffer, so concurrent
+ * readers never contend and never move a shared buffer's position.
+ */
+public class MappedDocumentStore implements DocumentReader, Closeable {
+    private final List<FileChannel> channels = new ArrayList<>();
+
+    private final int size;
+    private final int blockCount;
+    private final int tokenOffsetCount;
+    private final ByteBuffer index;
+    private final ByteBuffer strings;
+    private final ByteBuffer blocks;
+    // offsets of the block table and the token offsets in store.idx
+    private final int blockTable;
+    private final int tokenTable;
+
+    private final ThreadLocal<DecodedBlock> decoded = ThreadLocal.withInitial(DecodedBlock::new);
+
+    private MappedDocumentStore(Path dir) throws IOException {
+        try {
+            index = map(dir.resolve(INDEX));
+            if (index.limit() < HEADER_BYTES || index.getInt(0) != MAGIC) {
+                throw new IOException("not a document store: " + dir);
+            }
+            int version = index.getInt(4);
+            if (version != VERSION) {
+                throw new IOException("unsupported document store version " + version + " in " + dir);
+            }
+            size = index.getInt(8);
+            blockCount = index.getInt(12);
+            tokenOffsetCount = index.getInt(16);
+            blockTable = HEADER_BYTES + size * DOC_ENTRY_INTS * 4;
+            tokenTable = blockTable + (2 * blockCount + 1) * 4;
+            strings = map(dir.resolve(STRINGS));
+            blocks = map(dir.resolve(BLOCKS));
+        } catch (IOException | RuntimeException e) {
+            close();
+            throw e;
+        }
+    }
+
+    public static MappedDocumentStore open(Path dir) throws IOException {
+        return new MappedDocumentStore(dir);
+    }
+
+    /**
+     * True if dir holds a completely written store.
+     */
+    public static boolean exists(Path dir) {
+        return Files.isRegularFile(dir.resolve(INDEX));
+    }
+
+    private MappedByteBuffer map(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        channels.add(channel);
+        if (channel.size() > Integer.MAX_VALUE) {
+            throw new IOException(file + " exceeds the 2GB limit of a single mapping");
+        }
+        return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public String url(int docId) {
+        if (docId < 0 || docId >= size) {
+            return null;
+        }
+        int entry = entry(docId);
+        return string(index.getInt(entry + 12), index.getInt(entry + 16));
+    }
+
+    @Override
+    public String title(int docId) {
+        if (docId < 0 || docId >= size) {
+            return null;
+        }
+        int entry = entry(docId);
+        return string(index.getInt(entry + 12) + index.getInt(entry + 16), index.getInt(entry + 20));
+    }
+
+    @Override
+    public String text(int docId) {
+        if (docId < 0 || docId >= size) {
+            return null;
+        }
+        return decode(entry(docId), 0, index.getInt(entry(docId) + 8));
+    }
+
+    @Override
+    public String excerpt(int docId, int from, int to) {
+        if (docId < 0 || docId >= size) {
+            return null;
+        }
+        int entry = entry(docId);
+        int length = index.getInt(entry + 8);
+        int first = index.getInt(entry + 24);
+        int count = (docId + 1 < size ? index.getInt(entry(docId + 1) + 24) : tokenOffsetCount) - first;
+        int start = tokenOffset(first, count, Math.max(from, 0) / TOKEN_INTERVAL, length);
+        int end = tokenOffset(first, count, Math.ceilDiv(Math.max(to, from), TOKEN_INTERVAL), length);
+        return decode(entry, start, Math.min(end, start + MAX_EXCERPT_BYTES));
+    }
+
+    // see DocumentStore.tokenOffset
+    private int tokenOffset(int first, int count, int checkpoint, int length) {
+        if (checkpoint == 0) return 0;
+        return checkpoint <= count ? index.getInt(tokenTable + (first + checkpoint - 1) * 4) : length;
+    }
+
+    // bytes from..to-1 of the text of the document at entry
+    private String decode(int entry, int from, int to) {
+        long address = (long) index.getInt(entry) * BLOCK_SIZE + index.getInt(entry + 4) + from;
+        int block = (int) (address / BLOCK_SIZE);
+        int offset = (int) (address % BLOCK_SIZE);
+        byte[] bytes = new byte[to - from];
+        DecodedBlock decodedBlock = decoded.get();
+        for (int copied = 0; copied < bytes.length; block++, offset = 0) {
+            int compressedOffset = index.getInt(blockTable + block * 4);
+            int compressedLength = index.getInt(blockTable + (block + 1) * 4) - compressedOffset;
+            int inflatedLength = index.getInt(blockTable + (blockCount + 1 + block) * 4);
+            int n = Math.min(bytes.length - copied, inflatedLength - offset);
+            byte[] data = decodedBlock.get(block, blocks, compressedOffset, compressedLength, offset + n);
+            if (n == bytes.length) {
+                return utf8(data, offset, n);
+            }
+            System.arraycopy(data, offset, bytes, copied, n);
+            copied += n;
+        }
+        return utf8(bytes, 0, bytes.length);
+    }
+
+    private static int entry(int docId) {
+        return HEADER_BYTES + docId * DOC_ENTRY_INTS * 4;
+    }
+
+    private String string(int offset, int length) {
+        byte[] bytes = new byte[length];
+        strings.get(offset, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void close() throws IOException {
+        IOException failure = null;
+        for (FileChannel channel : channels) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+        channels.clear();
+        if (failure != null) throw failure;
+    }
+}
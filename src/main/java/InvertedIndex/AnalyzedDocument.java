@@ -0,0 +1,76 @@
+package InvertedIndex;
+
+import Metrics.Histogram;
+import Metrics.Metrics;
+import Tokenizer.Analyzer;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A document's text reduced to what indexing needs: each distinct term with its
+ * count and, optionally, its positions. Analysis is the costly half of
+ * {@link InvertedIndex#addDocument(int, String)} and needs nothing from the index,
+ * so several threads can analyze documents while one adds them to the index in
+ * docId order, see {@link DocumentSink}.
+ */
+public final class AnalyzedDocument {
+    private static final Histogram ANALYZE = Metrics.shared().histogram("index.analyze");
+
+    final Map<String, Occurrences> terms;
+    // the number of tokens
+    final int length;
+    final boolean positions;
+
+    private AnalyzedDocument(Map<String, Occurrences> terms, int length, boolean positions) {
+        this.terms = terms;
+        this.length = length;
+        this.positions = positions;
+    }
+
+    /**
+     * Analyzes the text with the given analyzer, which is not thread-safe: use one per
+     * thread.
+     *
+     * @param positions whether to record where each term occurs, as an index with
+     *                  positions requires
+     */
+    public static AnalyzedDocument analyze(CharSequence text, boolean positions, Analyzer analyzer) {
+        long started = System.nanoTime();
+        Map<String, Occurrences> terms = new HashMap<>();
+        int length = analyzer.analyze(text, (term, position, start, end) ->
+                terms.computeIfAbsent(term, t -> new Occurrences(positions)).add(position));
+        ANALYZE.recordSince(started);
+        return new AnalyzedDocument(terms, length, positions);
+    }
+
+    public int length() {
+        return length;
+    }
+
+    public boolean hasPositions() {
+        return positions;
+    }
+
+    // the frequency of a term in the document, and its positions if they are kept
+    static final class Occurrences {
+        // null unless positions are kept
+        int[] positions;
+        int count;
+
+        Occurrences(boolean keepPositions) {
+            this.positions = keepPositions ? new int[4] : null;
+        }
+
+        void add(int position) {
+            if (positions != null) {
+                if (count == positions.length) {
+                    positions = Arrays.copyOf(positions, count * 2);
+                }
+                positions[count] = position;
+            }
+            count++;
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package InvertedIndex;
+
+/**
+ * Takes analyzed documents in increasing docId order. {@link InvertedIndex} builds a
+ * static index from them and {@link NearRealTimeIndex} makes them searchable at its
+ * next refresh, so a crawl can feed either.
+ */
+public interface DocumentSink {
+
+    void addDocument(int docId, AnalyzedDocument document);
+
+    // whether documents must be analyzed with positions
+    boolean hasPositions();
+}
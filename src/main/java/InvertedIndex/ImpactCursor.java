@@ -0,0 +1,78 @@
+package InvertedIndex;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Forward-only iterator over a term's postings in impact order, from the
+ * {@code impacts.dat} an {@link IndexWriter} writes on request.
+ * <p>
+ * The postings are grouped into segments of equal {@link Impacts impact}, highest
+ * first, each holding its documents in docId order. A segment is one byte of impact,
+ * a varint count, then the docIds as varint gaps, the first from 0. A query reading
+ * every term's segments from the top meets the highest-scoring postings first, so it
+ * can stop once what is left cannot change the top k.
+ * <p>
+ * Usage: {@link #nextSegment()} moves to the next segment and returns its impact, or 0
+ * once there is none; {@link #nextDoc()} then returns its documents one by one and
+ * {@link PostingsCursor#NO_MORE_DOCS} at its end. A segment does not have to be read to
+ * the end before moving on.
+ */
+public final class ImpactCursor {
+    private final ByteBuffer data;
+    private int offset;
+    private int impact;
+    private int remaining;
+    private int docId;
+
+    ImpactCursor(ByteBuffer data) {
+        this.data = data;
+        this.offset = data.position();
+    }
+
+    /**
+     * Skips what is left of the current segment, then moves to the next one and
+     * returns its impact, or 0 if the term has no more postings.
+     */
+    public int nextSegment() {
+        while (remaining > 0) {
+            nextDoc();
+        }
+        if (offset >= data.limit()) {
+            return impact = 0;
+        }
+        impact = data.get(offset++) & 0xFF;
+        remaining = readVInt();
+        docId = 0;
+        return impact;
+    }
+
+    // the impact of the current segment, 0 before the first and after the last
+    public int impact() {
+        return impact;
+    }
+
+    // the documents of the current segment not returned by nextDoc yet
+    public int remaining() {
+        return remaining;
+    }
+
+    /**
+     * The next docId of the current segment, or {@link PostingsCursor#NO_MORE_DOCS} at its end.
+     */
+    public int nextDoc() {
+        if (remaining == 0) {
+            return PostingsCursor.NO_MORE_DOCS;
+        }
+        remaining--;
+        return docId += readVInt();
+    }
+
+    private int readVInt() {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = data.get(offset++);
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) return value;
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package InvertedIndex;
+
+/**
+ * BM25 term frequency saturation, quantized to one byte per posting.
+ * <p>
+ * BM25 scores a posting by {@code idf * tf * (k1 + 1) / (tf + k1 * (1 - b + b * dl / avgdl))},
+ * where dl is the document's length and avgdl the collection's average. Everything but
+ * the idf depends only on the posting, so {@link IndexWriter} computes it once, when
+ * the index is written, and stores it as an impact from 1 to {@value #MAX_IMPACT}: the
+ * tf part always lies between 0 and k1 + 1, split into {@value #MAX_IMPACT} equal
+ * steps. A query then scores a posting with one multiplication, and each term's
+ * largest impact bounds its score as tightly as quantization allows.
+ * <p>
+ * Impacts only hold for the k1, b and collection they were computed with, so they
+ * belong to one written index: see {@link IndexReader#impacts()}.
+ */
+public final class Impacts {
+    public static final int MAX_IMPACT = 255;
+    public static final double DEFAULT_K1 = 1.2;
+    public static final double DEFAULT_B = 0.75;
+
+    public final double k1;
+    public final double b;
+    public final double averageDocLength;
+
+    /**
+     * @throws IllegalArgumentException if k1 is not positive, b is not from 0 to 1 or
+     *                                  the average length is not positive
+     */
+    public Impacts(double k1, double b, double averageDocLength) {
+        if (!(k1 > 0) || !(b >= 0 && b <= 1)) {
+            throw new IllegalArgumentException("BM25 needs k1 > 0 and b from 0 to 1: k1=" + k1 + ", b=" + b);
+        }
+        if (!(averageDocLength > 0)) {
+            throw new IllegalArgumentException("average document length must be positive: " + averageDocLength);
+        }
+        this.k1 = k1;
+        this.b = b;
+        this.averageDocLength = averageDocLength;
+    }
+
+    // the average over the reader's documents, at least 1: the statistic impacts are relative to
+    public static double averageDocLength(IndexReader reader) {
+        return reader.numDocs() == 0 ? 1 : Math.max((double) reader.totalDocLength() / reader.numDocs(), 1);
+    }
+
+    /**
+     * The unquantized BM25 tf part of a posting.
+     */
+    public double saturation(int termFrequency, int docLength) {
+        return termFrequency * (k1 + 1) / (termFrequency + k1 * (1 - b + b * docLength / averageDocLength));
+    }
+
+    /**
+     * The impact of a posting, from 1 to {@value #MAX_IMPACT}; 0 only for a term
+     * frequency of 0.
+     */
+    public int quantize(int termFrequency, int docLength) {
+        if (termFrequency <= 0) {
+            return 0;
+        }
+        int impact = 1 + (int) (saturation(termFrequency, docLength) / (k1 + 1) * MAX_IMPACT);
+        return Math.min(impact, MAX_IMPACT);
+    }
+
+    /**
+     * The tf part an impact stands for, the middle of its step. Scores are a term's
+     * idf times this, so any posting of the term scores at most idf times the weight of
+     * its largest impact.
+     */
+    public double weight(int impact) {
+        return impact <= 0 ? 0 : (impact - 0.5) * (k1 + 1) / MAX_IMPACT;
+    }
+
+    // whether these impacts were computed with the given parameters
+    public boolean matches(double k1, double b) {
+        return this.k1 == k1 && this.b == b;
+    }
+
+    @Override
+    public String toString() {
+        return "BM25 impacts (k1=" + k1 + ", b=" + b + ", avgdl=" + averageDocLength + ")";
+    }
+}
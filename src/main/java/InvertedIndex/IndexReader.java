@@ -0,0 +1,91 @@
+package InvertedIndex;
+
+/**
+ * Read-only view of an index, implemented by the in-memory {@link InvertedIndex}
+ * and by the memory-mapped {@link MappedIndex}, so the same search code can run
+ * against either.
+ */
+public interface IndexReader {
+
+    int numDocs();
+
+    int docFreq(String term);
+
+    /**
+     * A fresh cursor over the term's postings, or null if no document contains it.
+     */
+    default PostingsCursor postings(String term) {
+        return postings(term, false);
+    }
+
+    /**
+     * Like {@link #postings(String)}, optionally with a cursor that can decode the positions
+     * of each posting. Positions can only be requested if {@link #hasPositions()}.
+     */
+    PostingsCursor postings(String term, boolean withPositions);
+
+    // whether the index stores term positions, needed for phrase and proximity queries
+    boolean hasPositions();
+
+    /**
+     * The largest {@code tfWeight(tf) / docNorm} over the term's postings, or 0 if absent.
+     */
+    double maxNormalizedTfWeight(String term);
+
+    /**
+     * Norms of every document's full TF-IDF vector, indexed by docId.
+     * Callers must not modify the returned array.
+     */
+    double[] getDocNorms();
+
+    // the number of tokens in the document
+    int docLength(int docId);
+
+    // the number of tokens in all documents, for the average length BM25 normalizes by
+    long totalDocLength();
+
+    /**
+     * The BM25 impacts computed when the index was written, or null if it has none.
+     * When present, {@link #maxImpact(String)} bounds each term's impacts.
+     */
+    default Impacts impacts() {
+        return null;
+    }
+
+    // the largest impact among the term's postings, or 0 if it is absent or the index has no impacts
+    default int maxImpact(String term) {
+        return 0;
+    }
+
+    /**
+     * A fresh cursor over the term's postings in impact order, or null if no document
+     * contains it or the index was written without that layout.
+     */
+    default ImpactCursor impactPostings(String term) {
+        return null;
+    }
+
+    // the memory or file space the postings take, in bytes
+    long postingsBytes();
+
+    /**
+     * Every term of the index, sorted, for expanding prefix and wildcard queries.
+     * The ordinals are only meaningful for this reader and generation.
+     */
+    TermDictionary terms();
+
+    /**
+     * A counter that changes whenever documents are added, so anything derived from
+     * the index (norms, cached results) can tell when it is stale.
+     */
+    long getGeneration();
+
+    /**
+     * A point-in-time view to run one query against, so every call the query makes
+     * sees the same documents. A static index is its own snapshot; a
+     * {@link NearRealTimeIndex} returns the one it published last.
+     */
+    default IndexReader snapshot() {
+        return this;
+    }
+}
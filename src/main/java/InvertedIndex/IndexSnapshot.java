@@ -0,0 +1,260 @@
+package InvertedIndex;
+
+import java.util.*;
+
+/**
+ * An immutable, searchable view of a {@link NearRealTimeIndex} at the moment it was
+ * published: a list of frozen segments plus everything derived from them, so a query
+ * running against it sees one consistent set of documents however long it takes.
+ * <p>
+ * Segments are {@link InvertedIndex} instances that are never written again, over
+ * ascending, disjoint docId ranges. The snapshot merges their term dictionaries into
+ * one map of per-segment postings, and computes the collection statistics scoring
+ * needs over all of them: document frequencies, the TF-IDF norm of every document,
+ * and each term's largest normalized weight for WAND. Those depend on the whole
+ * collection, so they are computed once here, on the refresh thread, and never
+ * while a query runs. Building a snapshot costs one pass over the postings, the same
+ * as {@link InvertedIndex#getDocNorms()} after documents were added.
+ * <p>
+ * Documents deleted after their segment was frozen are tombstones: still in the
+ * segment's postings, but not set in the snapshot's live set. Cursors skip them, and
+ * every statistic is computed over live documents only, so results are the same as
+ * from an index that never held them. Segment merges drop them for good.
+ */
+public final class IndexSnapshot implements IndexReader {
+    private final List<InvertedIndex> segments;
+    // the first docId of each segment, for docLength lookups
+    private final int[] segmentStarts;
+    private final Map<String, Term> terms;
+    // the documents a query may see, or null if no segment holds a deleted one
+    private final BitSet live;
+    private final boolean positions;
+    private final int numDocs;
+    // documents in the segments that are not live
+    private final int deletedDocs;
+    private final long totalDocLength;
+    private final double[] docNorms;
+    private final long generation;
+    // built by the first query that needs it; two racing builds are equal, so either may win
+    private volatile TermDictionary dictionary;
+
+    /**
+     * @param live the live docIds, or null if every document of the segments is live
+     */
+    IndexSnapshot(List<InvertedIndex> segments, BitSet live, boolean positions, long generation) {
+        this.segments = List.copyOf(segments);
+        this.positions = positions;
+        this.generation = generation;
+        this.segmentStarts = new int[segments.size()];
+        int docs = 0, maxDocId = -1;
+        for (int i = 0; i < segments.size(); i++) {
+            InvertedIndex segment = segments.get(i);
+            segmentStarts[i] = segment.minDocId();
+            docs += segment.numDocs();
+            maxDocId = segment.maxDocId();
+        }
+        // a tombstone is a document a segment holds that is not live
+        int liveDocs = live == null ? docs : live.get(0, maxDocId + 1).cardinality();
+        this.live = liveDocs < docs ? live : null;
+        this.numDocs = liveDocs;
+        this.deletedDocs = docs - liveDocs;
+        this.totalDocLength = totalDocLength(segments);
+
+        Map<String, List<PostingsList>> lists = new HashMap<>();
+        for (InvertedIndex segment : segments) {
+            for (Map.Entry<String, PostingsList> entry : segment.getIndex().entrySet()) {
+                lists.computeIfAbsent(entry.getKey(), t -> new ArrayList<>(2)).add(entry.getValue());
+            }
+        }
+        this.terms = new HashMap<>(lists.size() * 2);
+        for (Map.Entry<String, List<PostingsList>> entry : lists.entrySet()) {
+            Term term = new Term(entry.getValue().toArray(new PostingsList[0]), this.live);
+            if (term.docFreq > 0) {
+                terms.put(entry.getKey(), term);
+            }
+        }
+        this.docNorms = computeNorms(maxDocId);
+    }
+
+    private long totalDocLength(List<InvertedIndex> segments) {
+        long total = 0;
+        if (live == null) {
+            for (InvertedIndex segment : segments) {
+                total += segment.totalDocLength();
+            }
+        } else {
+            for (int docId = live.nextSetBit(0); docId >= 0; docId = live.nextSetBit(docId + 1)) {
+                total += docLength(docId);
+            }
+        }
+        return total;
+    }
+
+    // the same sums, in the same order, as InvertedIndex.refreshNorms, so scores match a single index
+    private double[] computeNorms(int maxDocId) {
+        double[] norms = new double[maxDocId + 1];
+        List<String> sorted = new ArrayList<>(terms.keySet());
+        Collections.sort(sorted);
+        for (String term : sorted) {
+            Term postings = terms.get(term);
+            double idf = Math.log10((double) numDocs / postings.docFreq);
+            PostingsCursor cursor = postings.cursor(false);
+            while (cursor.next() != PostingsCursor.NO_MORE_DOCS) {
+                double weight = InvertedIndex.tfWeight(cursor.termFrequency()) * idf;
+                norms[cursor.docId()] += weight * weight;
+            }
+        }
+        for (int docId = 0; docId < norms.length; docId++) {
+            norms[docId] = Math.sqrt(norms[docId]);
+        }
+
+        for (Term postings : terms.values()) {
+            double maxWeight = 0;
+            PostingsCursor cursor = postings.cursor(false);
+            while (cursor.next() != PostingsCursor.NO_MORE_DOCS) {
+                double norm = norms[cursor.docId()];
+                if (norm > 0) {
+                    maxWeight = Math.max(maxWeight, InvertedIndex.tfWeight(cursor.termFrequency()) / norm);
+                }
+            }
+            postings.maxNormalizedTfWeight = maxWeight;
+        }
+        return norms;
+    }
+
+    @Override
+    public int numDocs() {
+        return numDocs;
+    }
+
+    @Override
+    public int docFreq(String term) {
+        Term postings = terms.get(term);
+        return postings == null ? 0 : postings.docFreq;
+    }
+
+    @Override
+    public PostingsCursor postings(String term, boolean withPositions) {
+        if (withPositions && !positions) {
+            throw new IllegalStateException("index has no positions");
+        }
+        Term postings = terms.get(term);
+        return postings == null ? null : postings.cursor(withPositions);
+    }
+
+    @Override
+    public boolean hasPositions() {
+        return positions;
+    }
+
+    @Override
+    public double maxNormalizedTfWeight(String term) {
+        Term postings = terms.get(term);
+        return postings == null ? 0 : postings.maxNormalizedTfWeight;
+    }
+
+    @Override
+    public double[] getDocNorms() {
+        return docNorms;
+    }
+
+    // 0 for a tombstone, like any other document that is not live
+    @Override
+    public int docLength(int docId) {
+        if (live != null && docId >= 0 && !live.get(docId)) {
+            return 0;
+        }
+        int segment = Arrays.binarySearch(segmentStarts, docId);
+        if (segment < 0) segment = -segment - 2;
+        return segment < 0 ? 0 : segments.get(segment).docLength(docId);
+    }
+
+    // live documents only, like numDocs
+    @Override
+    public long totalDocLength() {
+        return totalDocLength;
+    }
+
+    // deleted documents' postings included, until a merge drops them
+    @Override
+    public long postingsBytes() {
+        long bytes = 0;
+        for (InvertedIndex segment : segments) {
+            bytes += segment.postingsBytes();
+        }
+        return bytes;
+    }
+
+    @Override
+    public TermDictionary terms() {
+        TermDictionary built = dictionary;
+        if (built == null) {
+            dictionary = built = TermDictionary.build(terms.keySet());
+        }
+        return built;
+    }
+
+    @Override
+    public long getGeneration() {
+        return generation;
+    }
+
+    // the largest docId in the snapshot, or -1 if it is empty
+    public int maxDocId() {
+        return docNorms.length - 1;
+    }
+
+    // the tombstones queries skip until their segments are merged
+    public int deletedDocs() {
+        return deletedDocs;
+    }
+
+    public int segmentCount() {
+        return segments.size();
+    }
+
+    List<InvertedIndex> segments() {
+        return segments;
+    }
+
+    // a term's postings in every segment that has it, in docId order
+    private static final class Term {
+        final PostingsList[] lists;
+        final int[] lastDocIds;
+        final BitSet live;
+        final int docFreq;
+        // written once while the snapshot is built, before it is published
+        double maxNormalizedTfWeight;
+
+        Term(PostingsList[] lists, BitSet live) {
+            this.lists = lists;
+            this.lastDocIds = new int[lists.length];
+            this.live = live;
+            int docFreq = 0;
+            for (int i = 0; i < lists.length; i++) {
+                lastDocIds[i] = lists[i].lastDocId();
+                docFreq += lists[i].size();
+            }
+            if (live != null) {
+                // count the live postings, the ones cursor() returns
+                docFreq = 0;
+                PostingsCursor cursor = cursor(false);
+                while (cursor.next() != PostingsCursor.NO_MORE_DOCS) {
+                    docFreq++;
+                }
+            }
+            this.docFreq = docFreq;
+        }
+
+        PostingsCursor cursor(boolean withPositions) {
+            if (lists.length == 1 && live == null) {
+                return lists[0].cursor(withPositions);
+            }
+            PostingsCursor[] parts = new PostingsCursor[lists.length];
+            for (int i = 0; i < lists.length; i++) {
+                parts[i] = lists[i].cursor(withPositions);
+            }
+            return new SegmentedPostingsCursor(parts, lastDocIds, live);
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package InvertedIndex;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Writes an {@link InvertedIndex} to a directory in the binary format read by {@link MappedIndex}.
+ * <p>
+ * Files (all big-endian):
+ * <pre>
+ * meta.bin      magic, format version, numDocs, maxDocId, termCount, flags (bit 0: positions,
+ *               bit 1: impacts.dat), totalDocLength (long), BM25 k1 and b (doubles)
+ * terms.idx     one fixed-size entry per term, in term ordinal order: postingsOffset (long),
+ *               docsLength, freqsLength, skipCount, docFreq, maxNormalizedTfWeight (double),
+ *               positionsLength, maxImpact, impactsOffset (long), impactsLength, padding
+ * terms.dat     the front-coded {@link TermDictionary}, which maps each term to its ordinal
+ * postings.dat  per term: varint doc gaps, varint term frequencies, varint position gaps
+ *               (empty without positions), skip entries (4 ints each)
+ * impacts.dat   optional, per term: its postings in impact order, see {@link ImpactCursor}
+ * norms.dat     one double per docId
+ * lengths.dat   one int per docId
+ * </pre>
+ * Every index stores the {@link Impacts} of its postings under the default k1 and b:
+ * each term's largest, which bounds its BM25 score, costs nothing to compute while the
+ * postings are written. The impact-ordered copy of the postings is optional, as it
+ * takes about as much space again as the doc gaps and frequencies of postings.dat.
+ * <p>
+ * meta.bin is written last, so a directory without it holds no usable index. URLs,
+ * titles and text are not part of the index; they live in a {@code DocumentStore}.
+ */
+public class IndexWriter {
+    static final int MAGIC = 0x53454958; // "SEIX"
+    static final int VERSION = 5;
+    static final int TERM_ENTRY_BYTES = 56;
+    static final int FLAG_POSITIONS = 1;
+    static final int FLAG_IMPACT_ORDERED = 2;
+
+    static final String META = "meta.bin";
+    static final String TERMS_INDEX = "terms.idx";
+    static final String TERMS_DATA = "terms.dat";
+    static final String POSTINGS = "postings.dat";
+    static final String IMPACTS = "impacts.dat";
+    static final String NORMS = "norms.dat";
+    static final String LENGTHS = "lengths.dat";
+
+    private IndexWriter() {
+    }
+
+    public static void write(InvertedIndex index, Path dir) throws IOException {
+        write(index, dir, false);
+    }
+
+    /**
+     * @param impactOrdered also write every term's postings in impact order, which lets
+     *                      BM25 queries stop early; see {@link IndexReader#impactPostings(String)}
+     */
+    public static void write(InvertedIndex index, Path dir, boolean impactOrdered) throws IOException {
+        Files.createDirectories(dir);
+        Files.deleteIfExists(dir.resolve(META));
+        Files.deleteIfExists(dir.resolve(IMPACTS));
+        Impacts impacts = new Impacts(Impacts.DEFAULT_K1, Impacts.DEFAULT_B, Impacts.averageDocLength(index));
+
+        double[] norms = index.getDocNorms();
+        int maxDocId = index.maxDocId();
+
+        // sort by UTF-8 bytes, the order of the dictionary's ordinals
+        List<byte[]> terms = new ArrayList<>();
+        Map<byte[], PostingsList> postingsByTerm = new IdentityHashMap<>();
+        for (Map.Entry<String, PostingsList> entry : index.getIndex().entrySet()) {
+            byte[] term = entry.getKey().getBytes(StandardCharsets.UTF_8);
+            terms.add(term);
+            postingsByTerm.put(term, entry.getValue());
+        }
+        terms.sort(Arrays::compareUnsigned);
+
+        try (DataOutputStream termsData = open(dir.resolve(TERMS_DATA))) {
+            termsData.write(TermDictionary.encode(terms));
+        }
+
+        try (DataOutputStream termsIndex = open(dir.resolve(TERMS_INDEX));
+             DataOutputStream postings = open(dir.resolve(POSTINGS));
+             DataOutputStream impactPostings = impactOrdered ? open(dir.resolve(IMPACTS)) : null) {
+            long postingsOffset = 0;
+            long impactsOffset = 0;
+            for (byte[] term : terms) {
+                PostingsList list = postingsByTerm.get(term);
+                int skipInts = list.skipCount() * PostingsCursor.SKIP_ENTRY_INTS;
+                int positionsLength = list.hasPositions() ? list.positionsLength() : 0;
+                ImpactSegments segments = new ImpactSegments(list, index, impacts);
+                int impactsLength = 0;
+                if (impactPostings != null) {
+                    impactsLength = segments.writeTo(impactPostings);
+                }
+
+                termsIndex.writeLong(postingsOffset);
+                termsIndex.writeInt(list.docsLength());
+                termsIndex.writeInt(list.freqsLength());
+                termsIndex.writeInt(list.skipCount());
+                termsIndex.writeInt(list.size());
+                termsIndex.writeDouble(list.maxNormalizedTfWeight());
+                termsIndex.writeInt(positionsLength);
+                termsIndex.writeInt(segments.maxImpact());
+                termsIndex.writeLong(impactsOffset);
+                termsIndex.writeInt(impactsLength);
+                termsIndex.writeInt(0);
+
+                postings.write(list.docsBytes(), 0, list.docsLength());
+                postings.write(list.freqsBytes(), 0, list.freqsLength());
+                if (positionsLength > 0) {
+                    postings.write(list.positionsBytes(), 0, positionsLength);
+                }
+                int[] skips = list.skips();
+                for (int i = 0; i < skipInts; i++) {
+                    postings.writeInt(skips[i]);
+                }
+                postingsOffset += list.docsLength() + list.freqsLength() + positionsLength + 4L * skipInts;
+                impactsOffset += impactsLength;
+            }
+            checkedInt(postingsOffset, POSTINGS);
+            checkedInt(impactsOffset, IMPACTS);
+        }
+
+        try (DataOutputStream normsOut = open(dir.resolve(NORMS));
+             DataOutputStream lengthsOut = open(dir.resolve(LENGTHS))) {
+            for (int docId = 0; docId <= maxDocId; docId++) {
+                normsOut.writeDouble(norms[docId]);
+                lengthsOut.writeInt(index.docLength(docId));
+            }
+        }
+
+        try (DataOutputStream meta = open(dir.resolve(META))) {
+            meta.writeInt(MAGIC);
+            meta.writeInt(VERSION);
+            meta.writeInt(index.numDocs());
+            meta.writeInt(maxDocId);
+            meta.writeInt(terms.size());
+            meta.writeInt((index.hasPositions() ? FLAG_POSITIONS : 0) | (impactOrdered ? FLAG_IMPACT_ORDERED : 0));
+            meta.writeLong(index.totalDocLength());
+            meta.writeDouble(impacts.k1);
+            meta.writeDouble(impacts.b);
+        }
+    }
+
+    private static DataOutputStream open(Path file) throws IOException {
+        return new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 1 << 16));
+    }
+
+    // a term's docIds bucketed by impact, one pass over its postings
+    private static final class ImpactSegments {
+        private final int[][] docIds = new int[Impacts.MAX_IMPACT + 1][];
+        private final int[] counts = new int[Impacts.MAX_IMPACT + 1];
+        private int maxImpact;
+
+        ImpactSegments(PostingsList list, InvertedIndex index, Impacts impacts) {
+            PostingsCursor cursor = list.cursor();
+            while (cursor.next() != PostingsCursor.NO_MORE_DOCS) {
+                int docId = cursor.docId();
+                int impact = impacts.quantize(cursor.termFrequency(), index.docLength(docId));
+                if (docIds[impact] == null) {
+                    docIds[impact] = new int[Math.min(list.size(), 16)];
+                } else if (counts[impact] == docIds[impact].length) {
+                    docIds[impact] = Arrays.copyOf(docIds[impact], counts[impact] * 2);
+                }
+                docIds[impact][counts[impact]++] = docId;
+                maxImpact = Math.max(maxImpact, impact);
+            }
+        }
+
+        int maxImpact() {
+            return maxImpact;
+        }
+
+        // highest impact first, in the layout ImpactCursor reads; returns the bytes written
+        int writeTo(DataOutputStream out) throws IOException {
+            byte[] buffer = new byte[64];
+            int length = 0;
+            for (int impact = maxImpact; impact > 0; impact--) {
+                int count = counts[impact];
+                if (count == 0) {
+                    continue;
+                }
+                if (buffer.length < length + 6 + 5 * count) {
+                    buffer = Arrays.copyOf(buffer, Math.max(length + 6 + 5 * count, buffer.length * 2));
+                }
+                buffer[length++] = (byte) impact;
+                length = PostingsList.writeVInt(buffer, length, count);
+                int previous = 0;
+                for (int i = 0; i < count; i++) {
+                    length = PostingsList.writeVInt(buffer, length, docIds[impact][i] - previous);
+                    previous = docIds[impact][i];
+                }
+            }
+            out.write(buffer, 0, length);
+            return length;
+        }
+    }
+
+    // a single MappedByteBuffer cannot address more than 2GB
+    private static int checkedInt(long offset, String file) throws IOException {
+        if (offset > Integer.MAX_VALUE) {
+            throw new IOException(file + " exceeds the 2GB limit of a single mapping");
+        }
+        return (int) offset;
+    }
+}
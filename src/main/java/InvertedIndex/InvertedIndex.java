@@ -1,52 +1,312 @@
 package InvertedIndex;
 
 import java.util.*;
-import Stemmer.Stemmer;
+import Metrics.Histogram;
+import Metrics.Metrics;
+import Tokenizer.Analyzer;
 
 
 
-public class InvertedIndex {
-    // term -> list of postings
-    private final Map<String, List<Posting>> index = new HashMap<>();
-    // docId -> raw document text
-    private final Map<Integer, String> documents = new HashMap<>();
+public class InvertedIndex implements IndexReader, DocumentSink {
+    // addDocument's second phase, appending term counts to the postings; AnalyzedDocument times the first
+    private static final Histogram INVERT = Metrics.shared().histogram("index.invert");
 
-    public void addDocument(int docId, String text) {
-        documents.put(docId, text);
+    // term -> compressed postings, sorted by docId
+    private final Map<String, PostingsList> index = new HashMap<>();
+    // the text itself lives in the DocumentStore; the index only counts documents
+    private int numDocs;
+    private int minDocId = -1;
+    // guarded by this index's lock, like every other addDocument state
+    private final Analyzer analyzer = new Analyzer();
+    // docId -> number of tokens in the document
+    private int[] docLengths = new int[16];
+    // the sum of the lengths of the documents numDocs counts
+    private long totalDocLength;
+    private int maxDocId = -1;
+    // whether postings record where each term occurs, for phrase and proximity queries
+    private final boolean positions;
 
-        String[] tokens = tokenizeAndNormalize(text);
-        Map<String, Integer> termFreqs = new HashMap<>();
-        
-        for (String token : tokens) {
-            Stemmer stemmer = new Stemmer();
-            if (token.isBlank()) continue;
-            stemmer.addString(token);
-            stemmer.stem();
-            String stemmed = stemmer.toString();
-            termFreqs.put(stemmed, termFreqs.getOrDefault(stemmed, 0) + 1);
+    // bumped by every addDocument; the norm table is stale when its generation differs
+    // (written under the lock, volatile so getGeneration can be read without it)
+    private volatile long generation;
+    private long normsGeneration = -1;
+    // docId -> euclidean norm of the document's full TF-IDF vector
+    private double[] docNorms = new double[0];
+    // the sorted terms, rebuilt on request when their generation differs, like the norms
+    private TermDictionary terms;
+    private long termsGeneration = -1;
+
+    // 1 + log10(tf) for small term frequencies, which cover almost every posting
+    private static final double[] TF_WEIGHTS = new double[256];
+    static {
+        for (int tf = 1; tf < TF_WEIGHTS.length; tf++) {
+            TF_WEIGHTS[tf] = 1 + Math.log10(tf);
+        }
+    }
+
+    public InvertedIndex() {
+        this(false);
+    }
+
+    /**
+     * With positions, every posting also records where its term occurs in the document,
+     * which phrase and proximity queries need. This costs about one more byte per token.
+     */
+    public InvertedIndex(boolean positions) {
+        this.positions = positions;
+    }
+
+    // docIds must be added in increasing order so postings stay sorted and delta-encodable
+    public synchronized void addDocument(int docId, String text) {
+        if (docId <= maxDocId) {
+            throw new IllegalArgumentException("docId " + docId + " added after " + maxDocId);
+        }
+        addDocument(docId, AnalyzedDocument.analyze(text, positions, analyzer));
+    }
+
+    /**
+     * Adds a document analyzed elsewhere, with positions if this index keeps them.
+     */
+    @Override
+    public synchronized void addDocument(int docId, AnalyzedDocument document) {
+        if (docId <= maxDocId) {
+            throw new IllegalArgumentException("docId " + docId + " added after " + maxDocId);
+        }
+        if (positions && !document.positions) {
+            throw new IllegalArgumentException("doc " + docId + " was analyzed without the positions this index keeps");
+        }
+        if (numDocs++ == 0) {
+            minDocId = docId;
         }
 
-        for (Map.Entry<String, Integer> entry : termFreqs.entrySet()) {
+        long started = System.nanoTime();
+        for (Map.Entry<String, AnalyzedDocument.Occurrences> entry : document.terms.entrySet()) {
             String term = entry.getKey();
-            int tf = entry.getValue();
+            AnalyzedDocument.Occurrences occurrences = entry.getValue();
+
+            index.computeIfAbsent(term, k -> new PostingsList(positions)).add(docId, occurrences.positions, occurrences.count);
+        }
+        INVERT.recordSince(started);
+
+        if (docId >= docLengths.length) {
+            docLengths = Arrays.copyOf(docLengths, Math.max(docId + 1, docLengths.length * 2));
+        }
+        docLengths[docId] = document.length;
+        totalDocLength += document.length;
+        maxDocId = docId;
+        generation++;
+    }
+
+    // adopts the documents of a shard whose docIds all follow this index's; its postings are merged separately
+    synchronized void appendDocuments(InvertedIndex shard) {
+        if (shard.positions != positions) {
+            throw new IllegalArgumentException("cannot merge a shard " + (shard.positions ? "with" : "without") + " positions");
+        }
+        if (shard.maxDocId < 0) {
+            return;
+        }
+        if (shard.minDocId <= maxDocId) {
+            throw new IllegalArgumentException("shard overlaps docIds up to " + maxDocId);
+        }
+        if (shard.maxDocId >= docLengths.length) {
+            docLengths = Arrays.copyOf(docLengths, shard.maxDocId + 1);
+        }
+        System.arraycopy(shard.docLengths, shard.minDocId, docLengths, shard.minDocId, shard.maxDocId - shard.minDocId + 1);
+        if (numDocs == 0) {
+            minDocId = shard.minDocId;
+        }
+        numDocs += shard.numDocs;
+        totalDocLength += shard.totalDocLength;
+        maxDocId = shard.maxDocId;
+        generation += shard.generation;
+    }
+
+    /**
+     * Norms of every document's full TF-IDF vector, indexed by docId.
+     * <p>
+     * IDF shifts whenever the collection grows, so the table is versioned by the index
+     * generation and recomputed lazily the first time it is requested after documents
+     * were added. Callers must not modify the returned array.
+     */
+    @Override
+    public synchronized double[] getDocNorms() {
+        if (normsGeneration != generation) {
+            refreshNorms();
+        }
+        return docNorms;
+    }
+
+    // one pass accumulates the squared weights per document, a second finds each term's
+    // largest normalized weight, which bounds its contribution to any cosine score
+    private void refreshNorms() {
+        int totalDocs = numDocs();
+        double[] norms = new double[maxDocId + 1];
+        // sum in term order so the norms do not depend on how the map was built
+        List<String> terms = new ArrayList<>(index.keySet());
+        Collections.sort(terms);
+        for (String term : terms) {
+            PostingsList postings = index.get(term);
+            double idf = Math.log10((double) totalDocs / postings.size());
+            PostingsCursor cursor = postings.cursor();
+            while (cursor.next() != PostingsCursor.NO_MORE_DOCS) {
+                double weight = tfWeight(cursor.termFrequency()) * idf;
+                norms[cursor.docId()] += weight * weight;
+            }
+        }
+        for (int docId = 0; docId < norms.length; docId++) {
+            norms[docId] = Math.sqrt(norms[docId]);
+        }
+
+        for (PostingsList postings : index.values()) {
+            double maxWeight = 0;
+            PostingsCursor cursor = postings.cursor();
+            while (cursor.next() != PostingsCursor.NO_MORE_DOCS) {
+                double norm = norms[cursor.docId()];
+                if (norm > 0) {
+                    maxWeight = Math.max(maxWeight, tfWeight(cursor.termFrequency()) / norm);
+                }
+            }
+            postings.setMaxNormalizedTfWeight(maxWeight);
+        }
 
-            List<Posting> postings = index.computeIfAbsent(term, k -> new ArrayList<>());
+        docNorms = norms;
+        normsGeneration = generation;
+    }
 
-            Posting posting = new Posting(docId);
-            posting.termFrequency = tf;
-            postings.add(posting);
+    /**
+     * A new index holding the documents of the segments that are set in live, or all of
+     * them if live is null. The segments must cover ascending, disjoint docId ranges and
+     * agree on positions. Like {@link ParallelIndexBuilder}'s merge, each term's postings
+     * are concatenated in segment order; postings of documents that are not live are
+     * dropped, and so are terms left without any.
+     */
+    static InvertedIndex merge(List<InvertedIndex> segments, boolean positions, BitSet live) {
+        InvertedIndex merged = new InvertedIndex(positions);
+        for (InvertedIndex segment : segments) {
+            for (Map.Entry<String, PostingsList> entry : segment.index.entrySet()) {
+                PostingsList postings = merged.index.computeIfAbsent(entry.getKey(), t -> new PostingsList(positions));
+                postings.addAll(entry.getValue(), live);
+                if (postings.size() == 0) {
+                    merged.index.remove(entry.getKey());
+                }
+            }
+            merged.appendDocuments(segment);
         }
+        if (live != null && merged.numDocs > 0) {
+            // deleted documents no longer count, and have no length, as in an index that never held them
+            merged.numDocs = live.get(merged.minDocId, merged.maxDocId + 1).cardinality();
+            merged.totalDocLength = 0;
+            for (int docId = merged.minDocId; docId <= merged.maxDocId; docId++) {
+                if (live.get(docId)) {
+                    merged.totalDocLength += merged.docLengths[docId];
+                } else {
+                    merged.docLengths[docId] = 0;
+                }
+            }
+        }
+        merged.trimToSize();
+        return merged;
+    }
+
+    /**
+     * The log-scaled term frequency weight 1 + log10(tf).
+     */
+    public static double tfWeight(int tf) {
+        return tf < TF_WEIGHTS.length ? TF_WEIGHTS[tf] : 1 + Math.log10(tf);
     }
 
-    private String[] tokenizeAndNormalize(String text) {
-        return text.toLowerCase().split("\\W+"); // non-word characters
+    /**
+     * Releases the spare capacity of every postings list. Call once indexing is done.
+     */
+    public void trimToSize() {
+        for (PostingsList postings : index.values()) {
+            postings.trim();
+        }
     }
 
-    public Map<String, List<Posting>> getIndex() {
+    public Map<String, PostingsList> getIndex() {
         return index;
     }
 
-    public Map<Integer, String> getDocuments() {
-        return documents;
+    // returns null if the term does not occur in any document
+    public PostingsList getPostings(String term) {
+        return index.get(term);
+    }
+
+    @Override
+    public int docFreq(String term) {
+        PostingsList postings = index.get(term);
+        return postings == null ? 0 : postings.size();
+    }
+
+    @Override
+    public PostingsCursor postings(String term, boolean withPositions) {
+        PostingsList postings = index.get(term);
+        return postings == null ? null : postings.cursor(withPositions);
+    }
+
+    @Override
+    public boolean hasPositions() {
+        return positions;
+    }
+
+    @Override
+    public double maxNormalizedTfWeight(String term) {
+        PostingsList postings = index.get(term);
+        return postings == null ? 0 : postings.maxNormalizedTfWeight();
+    }
+
+    // the number of tokens in the document, the length used by length-normalized scoring models
+    @Override
+    public int docLength(int docId) {
+        return docId <= maxDocId ? docLengths[docId] : 0;
+    }
+
+    @Override
+    public synchronized long totalDocLength() {
+        return totalDocLength;
+    }
+
+    // the capacity of every postings buffer, spare room included
+    @Override
+    public synchronized long postingsBytes() {
+        long bytes = 0;
+        for (PostingsList postings : index.values()) {
+            bytes += postings.sizeInBytes();
+        }
+        return bytes;
+    }
+
+    /**
+     * The term dictionary, rebuilt on the first call after documents were added.
+     * Only wildcard queries need it, so indexing never pays for it.
+     */
+    @Override
+    public synchronized TermDictionary terms() {
+        if (termsGeneration != generation) {
+            terms = TermDictionary.build(index.keySet());
+            termsGeneration = generation;
+        }
+        return terms;
+    }
+
+    @Override
+    public long getGeneration() {
+        return generation;
+    }
+
+    // the largest docId added so far, or -1 if the index is empty
+    public int maxDocId() {
+        return maxDocId;
+    }
+
+    // the smallest docId added so far, or -1 if the index is empty
+    int minDocId() {
+        return minDocId;
+    }
+
+    @Override
+    public int numDocs() {
+        return numDocs;
     }
 }
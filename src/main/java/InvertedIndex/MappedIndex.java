@@ -0,0 +1,236 @@
+package InvertedIndex;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static InvertedIndex.IndexWriter.*;
+
+/**
+ * An index written by {@link IndexWriter}, served straight from memory-mapped files.
+ * <p>
+ * Opening only maps the files and copies the document norms (8 bytes per document,
+ * read for every scored candidate) onto the heap. The front-coded
+ * {@link TermDictionary}, the term entries and the postings stay in the mapped files and are paged in by the OS on demand, so
+ * the page cache does the caching and a restart can serve queries immediately. So does
+ * the optional impact-ordered copy of the postings, read by {@link #impactPostings(String)}.
+ * <p>
+ * Instances are safe for concurrent readers: all reads use absolute gets or
+ * per-call slices and never move a shared buffer's position.
+ */
+public class MappedIndex implements IndexReader, Closeable {
+    private final List<FileChannel> channels = new ArrayList<>();
+
+    private final int numDocs;
+    private final int maxDocId;
+    private final int termCount;
+    private final boolean positions;
+    private final long totalDocLength;
+    private final Impacts impacts;
+
+    private final ByteBuffer termsIndex;
+    private final TermDictionary dictionary;
+    private final ByteBuffer postings;
+    // null unless the index was written impact-ordered
+    private final ByteBuffer impactPostings;
+    private final ByteBuffer lengths;
+    private final double[] norms;
+
+    private MappedIndex(Path dir) throws IOException {
+        boolean impactOrdered;
+        try (DataInputStream meta = new DataInputStream(new BufferedInputStream(Files.newInputStream(dir.resolve(META))))) {
+            if (meta.readInt() != MAGIC) {
+                throw new IOException("not an index directory: " + dir);
+            }
+            int version = meta.readInt();
+            if (version != VERSION) {
+                throw new IOException("unsupported index format version " + version + " in " + dir);
+            }
+            numDocs = meta.readInt();
+            maxDocId = meta.readInt();
+            termCount = meta.readInt();
+            int flags = meta.readInt();
+            positions = (flags & FLAG_POSITIONS) != 0;
+            impactOrdered = (flags & FLAG_IMPACT_ORDERED) != 0;
+            totalDocLength = meta.readLong();
+            double k1 = meta.readDouble();
+            double b = meta.readDouble();
+            impacts = new Impacts(k1, b, Impacts.averageDocLength(this));
+        }
+        try {
+            termsIndex = map(dir.resolve(TERMS_INDEX));
+            dictionary = TermDictionary.read(map(dir.resolve(TERMS_DATA)));
+            if (dictionary.size() != termCount) {
+                throw new IOException("term dictionary holds " + dictionary.size() + " of " + termCount + " terms in " + dir);
+            }
+            postings = map(dir.resolve(POSTINGS));
+            impactPostings = impactOrdered ? map(dir.resolve(IMPACTS)) : null;
+            lengths = map(dir.resolve(LENGTHS));
+
+            norms = new double[maxDocId + 1];
+            map(dir.resolve(NORMS)).asDoubleBuffer().get(norms);
+        } catch (IOException | RuntimeException e) {
+            close();
+            throw e;
+        }
+    }
+
+    public static MappedIndex open(Path dir) throws IOException {
+        return new MappedIndex(dir);
+    }
+
+    /**
+     * True if dir holds a completely written index.
+     */
+    public static boolean exists(Path dir) {
+        return Files.isRegularFile(dir.resolve(META));
+    }
+
+    private MappedByteBuffer map(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        channels.add(channel);
+        if (channel.size() > Integer.MAX_VALUE) {
+            throw new IOException(file + " exceeds the 2GB limit of a single mapping");
+        }
+        return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+
+    @Override
+    public int numDocs() {
+        return numDocs;
+    }
+
+    @Override
+    public int docFreq(String term) {
+        int entry = findTerm(term);
+        return entry < 0 ? 0 : termsIndex.getInt(entry + 20);
+    }
+
+    @Override
+    public PostingsCursor postings(String term, boolean withPositions) {
+        if (withPositions && !positions) {
+            throw new IllegalStateException("index has no positions");
+        }
+        int entry = findTerm(term);
+        if (entry < 0) {
+            return null;
+        }
+        int offset = (int) termsIndex.getLong(entry);
+        int docsLength = termsIndex.getInt(entry + 8);
+        int freqsLength = termsIndex.getInt(entry + 12);
+        int skipCount = termsIndex.getInt(entry + 16);
+        int docFreq = termsIndex.getInt(entry + 20);
+        int positionsLength = termsIndex.getInt(entry + 32);
+        int skipsOffset = offset + docsLength + freqsLength + positionsLength;
+        return new PostingsCursor(
+                postings.slice(offset, docsLength),
+                postings.slice(offset + docsLength, freqsLength),
+                withPositions ? postings.slice(offset + docsLength + freqsLength, positionsLength) : null,
+                postings.slice(skipsOffset, skipCount * PostingsCursor.SKIP_ENTRY_INTS * 4).asIntBuffer(),
+                docFreq);
+    }
+
+    @Override
+    public boolean hasPositions() {
+        return positions;
+    }
+
+    @Override
+    public double maxNormalizedTfWeight(String term) {
+        int entry = findTerm(term);
+        return entry < 0 ? 0 : termsIndex.getDouble(entry + 24);
+    }
+
+    @Override
+    public double[] getDocNorms() {
+        return norms;
+    }
+
+    @Override
+    public int docLength(int docId) {
+        return docId >= 0 && docId <= maxDocId ? lengths.getInt(docId * 4) : 0;
+    }
+
+    @Override
+    public long totalDocLength() {
+        return totalDocLength;
+    }
+
+    // computed with the default k1 and b against this index's average document length
+    @Override
+    public Impacts impacts() {
+        return impacts;
+    }
+
+    @Override
+    public int maxImpact(String term) {
+        int entry = findTerm(term);
+        return entry < 0 ? 0 : termsIndex.getInt(entry + 36);
+    }
+
+    @Override
+    public ImpactCursor impactPostings(String term) {
+        if (impactPostings == null) {
+            return null;
+        }
+        int entry = findTerm(term);
+        if (entry < 0) {
+            return null;
+        }
+        int offset = (int) termsIndex.getLong(entry + 40);
+        return new ImpactCursor(impactPostings.slice(offset, termsIndex.getInt(entry + 48)));
+    }
+
+    // whether the index was written with its postings in impact order as well
+    public boolean isImpactOrdered() {
+        return impactPostings != null;
+    }
+
+    // the size of the mapped postings file
+    @Override
+    public long postingsBytes() {
+        return postings.capacity();
+    }
+
+    // read from the mapped terms.dat, whose ordinals index the term entries
+    @Override
+    public TermDictionary terms() {
+        return dictionary;
+    }
+
+    // a mapped index is immutable, so its generation never changes
+    @Override
+    public long getGeneration() {
+        return 0;
+    }
+
+    public int maxDocId() {
+        return maxDocId;
+    }
+
+    // the byte offset of the term's entry, or -1
+    private int findTerm(String term) {
+        int ordinal = dictionary.ordinal(term);
+        return ordinal < 0 ? -1 : ordinal * TERM_ENTRY_BYTES;
+    }
+
+    @Override
+    public void close() throws IOException {
+        IOException failure = null;
+        for (FileChannel channel : channels) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+        channels.clear();
+        if (failure != null) throw failure;
+    }
+}
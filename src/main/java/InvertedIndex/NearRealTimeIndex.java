@@ -0,0 +1,323 @@
+package InvertedIndex;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * An index that can be searched while documents are still being added.
+ * <p>
+ * New documents go into an in-memory buffer that no query ever reads. A refresh, run
+ * every {@code refreshInterval} or on demand, freezes the buffer as a new segment and
+ * publishes an immutable {@link IndexSnapshot} of all segments; documents become
+ * searchable then, not before. Queries take the current snapshot with one volatile
+ * read and never wait for writers or for a refresh in progress, and a query that
+ * runs through a refresh keeps seeing the snapshot it started with.
+ * <p>
+ * Segments are merged as they are frozen so their number stays logarithmic in the
+ * number of documents: whenever the newest segment holds at least as many documents
+ * as the one before it, the two are replaced by their merge. Each document is
+ * therefore copied O(log n) times in total, and a query visits O(log n) postings
+ * lists per term.
+ * <p>
+ * Documents are updated and deleted with tombstones: a deleted document leaves the
+ * live set at once, but its postings stay in its segment until a merge drops them.
+ * Snapshots skip tombstones and compute every statistic over live documents only.
+ * A refresh also rewrites any segment where tombstones pass
+ * {@link #MAX_DELETED_RATIO}, so they never cost queries much, and {@link #compact()}
+ * removes all of them.
+ * <p>
+ * Cosine scoring needs the norm of every document under the current idf, which
+ * changes with each new document, so every refresh recomputes them over the whole
+ * collection. A refresh therefore costs time linear in the size of the index, and the
+ * interval bounds how often that is paid; documents are searchable at most one
+ * interval plus one refresh after they are added.
+ * <p>
+ * Every method is thread-safe. The read methods of {@link IndexReader} answer from
+ * the current snapshot; a query that makes several calls should take
+ * {@link #snapshot()} once and use it throughout, as {@code SearchEngine} does.
+ */
+public final class NearRealTimeIndex implements IndexReader, DocumentSink, Closeable {
+    // the share of a segment's documents that may be tombstones before a refresh rewrites it
+    static final double MAX_DELETED_RATIO = 0.2;
+
+    private final boolean positions;
+
+    // documents added since the last refresh, guarded by writeLock
+    private InvertedIndex buffer;
+    // the largest docId ever added, guarded by writeLock
+    private int maxDocId = -1;
+    // every docId added and not deleted since, guarded by writeLock
+    private final BitSet live = new BitSet();
+    // whether a document was deleted since the last refresh, guarded by writeLock
+    private boolean deletions;
+    private final Object writeLock = new Object();
+
+    // frozen segments in docId order, guarded by refreshLock
+    private final List<InvertedIndex> segments = new ArrayList<>();
+    private final ReentrantLock refreshLock = new ReentrantLock();
+    private long generation;
+
+    private volatile IndexSnapshot current;
+    private final ScheduledExecutorService scheduler;
+
+    /**
+     * @param refreshInterval how often buffered documents are made searchable;
+     *                        {@link Duration#ZERO} refreshes only when {@link #refresh()} is called
+     */
+    public NearRealTimeIndex(boolean positions, Duration refreshInterval) {
+        if (refreshInterval.isNegative()) {
+            throw new IllegalArgumentException("negative refresh interval: " + refreshInterval);
+        }
+        this.positions = positions;
+        this.buffer = new InvertedIndex(positions);
+        this.current = new IndexSnapshot(List.of(), null, positions, 0);
+        if (refreshInterval.isZero()) {
+            this.scheduler = null;
+        } else {
+            this.scheduler = Executors.newSingleThreadScheduledExecutor(task -> {
+                Thread thread = new Thread(task, "nrt-refresh");
+                thread.setDaemon(true);
+                return thread;
+            });
+            long nanos = refreshInterval.toNanos();
+            scheduler.scheduleWithFixedDelay(this::refresh, nanos, nanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Buffers a document; it becomes searchable at the next refresh. Like
+     * {@link InvertedIndex#addDocument}, docIds must increase.
+     */
+    public void addDocument(int docId, String text) {
+        synchronized (writeLock) {
+            if (docId <= maxDocId) {
+                throw new IllegalArgumentException("docId " + docId + " added after " + maxDocId);
+            }
+            buffer.addDocument(docId, text);
+            live.set(docId);
+            maxDocId = docId;
+        }
+    }
+
+    /**
+     * Like {@link #addDocument(int, String)}, for a document analyzed elsewhere, so the
+     * analysis does not hold up other writers.
+     */
+    @Override
+    public void addDocument(int docId, AnalyzedDocument document) {
+        synchronized (writeLock) {
+            if (docId <= maxDocId) {
+                throw new IllegalArgumentException("docId " + docId + " added after " + maxDocId);
+            }
+            buffer.addDocument(docId, document);
+            live.set(docId);
+            maxDocId = docId;
+        }
+    }
+
+    /**
+     * Replaces a document with a new version under a new docId. Both take effect at the
+     * same refresh, so no snapshot holds both versions or neither. If oldDocId is not
+     * live this is a plain {@link #addDocument}.
+     */
+    public void updateDocument(int oldDocId, int newDocId, String text) {
+        synchronized (writeLock) {
+            addDocument(newDocId, text);
+            deleteDocument(oldDocId);
+        }
+    }
+
+    /**
+     * Removes a document from the next refresh on. Its postings stay in their segment
+     * as a tombstone until a merge rewrites it. Returns false if the document was not
+     * live.
+     */
+    public boolean deleteDocument(int docId) {
+        synchronized (writeLock) {
+            if (docId < 0 || !live.get(docId)) {
+                return false;
+            }
+            live.clear(docId);
+            deletions = true;
+            return true;
+        }
+    }
+
+    /**
+     * Makes every change made so far searchable and returns the snapshot that holds
+     * them. Writers are blocked only while the buffer is swapped for an empty one.
+     */
+    public IndexSnapshot refresh() {
+        return publish(false);
+    }
+
+    /**
+     * Like {@link #refresh()}, then merges all segments into one without tombstones.
+     * This rewrites the whole index; the merges refresh makes keep the tombstones
+     * below {@link #MAX_DELETED_RATIO} of each segment without it.
+     */
+    public IndexSnapshot compact() {
+        return publish(true);
+    }
+
+    /**
+     * Compacts the index and writes it to dir like
+     * {@link IndexWriter#write(InvertedIndex, Path, boolean)}, under the same docIds, so a
+     * later run can open it as a {@link MappedIndex}. Refreshes wait until it is written;
+     * writers and queries do not.
+     */
+    public void write(Path dir, boolean impactOrdered) throws IOException {
+        refreshLock.lock();
+        try {
+            compact();
+            IndexWriter.write(segments.isEmpty() ? new InvertedIndex(positions) : segments.get(0), dir, impactOrdered);
+        } finally {
+            refreshLock.unlock();
+        }
+    }
+
+    private IndexSnapshot publish(boolean compact) {
+        refreshLock.lock();
+        try {
+            InvertedIndex frozen = null;
+            BitSet liveDocs;
+            synchronized (writeLock) {
+                if (buffer.numDocs() == 0 && !deletions && !compact) {
+                    return current;
+                }
+                if (buffer.numDocs() > 0) {
+                    frozen = buffer;
+                    buffer = new InvertedIndex(positions);
+                }
+                liveDocs = (BitSet) live.clone();
+                deletions = false;
+            }
+            if (frozen != null) {
+                frozen.trimToSize();
+                segments.add(frozen);
+                mergeSegments(liveDocs);
+            }
+            if (compact && !segments.isEmpty()) {
+                InvertedIndex merged = InvertedIndex.merge(segments, positions, liveDocs);
+                segments.clear();
+                if (merged.numDocs() > 0) {
+                    segments.add(merged);
+                }
+            } else {
+                purgeDeleted(liveDocs);
+            }
+            IndexSnapshot snapshot = new IndexSnapshot(segments, liveDocs, positions, ++generation);
+            current = snapshot;
+            return snapshot;
+        } finally {
+            refreshLock.unlock();
+        }
+    }
+
+    // merges the newest segments while the last is at least as large as the one before it
+    private void mergeSegments(BitSet liveDocs) {
+        int last;
+        while ((last = segments.size() - 1) > 0
+                && segments.get(last).numDocs() >= segments.get(last - 1).numDocs()) {
+            InvertedIndex merged = InvertedIndex.merge(segments.subList(last - 1, last + 1), positions, liveDocs);
+            segments.subList(last - 1, last + 1).clear();
+            segments.add(merged);
+        }
+    }
+
+    // rewrites every segment whose tombstones exceed MAX_DELETED_RATIO of its documents
+    private void purgeDeleted(BitSet liveDocs) {
+        for (int i = segments.size() - 1; i >= 0; i--) {
+            InvertedIndex segment = segments.get(i);
+            int liveCount = liveDocs.get(segment.minDocId(), segment.maxDocId() + 1).cardinality();
+            if (liveCount == 0) {
+                segments.remove(i);
+            } else if (segment.numDocs() - liveCount > MAX_DELETED_RATIO * segment.numDocs()) {
+                segments.set(i, InvertedIndex.merge(List.of(segment), positions, liveDocs));
+            }
+        }
+    }
+
+    /**
+     * The snapshot published by the last refresh. It never changes, so a query can make
+     * any number of calls against it and see the same documents.
+     */
+    @Override
+    public IndexSnapshot snapshot() {
+        return current;
+    }
+
+    @Override
+    public int numDocs() {
+        return current.numDocs();
+    }
+
+    @Override
+    public int docFreq(String term) {
+        return current.docFreq(term);
+    }
+
+    @Override
+    public PostingsCursor postings(String term, boolean withPositions) {
+        return current.postings(term, withPositions);
+    }
+
+    @Override
+    public boolean hasPositions() {
+        return positions;
+    }
+
+    @Override
+    public double maxNormalizedTfWeight(String term) {
+        return current.maxNormalizedTfWeight(term);
+    }
+
+    @Override
+    public double[] getDocNorms() {
+        return current.getDocNorms();
+    }
+
+    @Override
+    public int docLength(int docId) {
+        return current.docLength(docId);
+    }
+
+    @Override
+    public long totalDocLength() {
+        return current.totalDocLength();
+    }
+
+    @Override
+    public long postingsBytes() {
+        return current.postingsBytes();
+    }
+
+    @Override
+    public TermDictionary terms() {
+        return current.terms();
+    }
+
+    // the number of refreshes that published a change
+    @Override
+    public long getGeneration() {
+        return current.getGeneration();
+    }
+
+    /**
+     * Stops the periodic refresh. Documents still buffered stay unsearchable unless
+     * {@link #refresh()} is called.
+     */
+    @Override
+    public void close() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package InvertedIndex;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Builds an {@link InvertedIndex} on several threads.
+ * <p>
+ * The documents are split into one contiguous docId range per thread, and each thread
+ * builds a private shard over its range, so tokenizing, stemming and inverting need
+ * no coordination. The shards are then merged term by term, again in parallel: since
+ * the ranges are disjoint and ascending, concatenating a term's postings in shard
+ * order keeps them sorted by docId. The result is identical to adding the same
+ * documents serially.
+ */
+public class ParallelIndexBuilder {
+    private final int threads;
+    private final boolean positions;
+
+    public ParallelIndexBuilder(int threads) {
+        this(threads, false);
+    }
+
+    /**
+     * @param positions whether the index records term positions, see {@link InvertedIndex#InvertedIndex(boolean)}
+     */
+    public ParallelIndexBuilder(int threads, boolean positions) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be positive: " + threads);
+        }
+        this.threads = threads;
+        this.positions = positions;
+    }
+
+    /**
+     * Indexes the documents, giving each one its position in the list as docId. A null
+     * document is left out, so the index holds nothing under its docId.
+     */
+    public InvertedIndex build(List<String> documents) {
+        int shardCount = Math.max(1, Math.min(threads, documents.size()));
+        ExecutorService executor = Executors.newFixedThreadPool(shardCount);
+        try {
+            List<Future<InvertedIndex>> shardFutures = new ArrayList<>();
+            for (int shard = 0; shard < shardCount; shard++) {
+                int from = (int) ((long) documents.size() * shard / shardCount);
+                int to = (int) ((long) documents.size() * (shard + 1) / shardCount);
+                shardFutures.add(executor.submit(() -> buildShard(documents, from, to)));
+            }
+            List<InvertedIndex> shards = new ArrayList<>();
+            for (Future<InvertedIndex> future : shardFutures) {
+                shards.add(await(future));
+            }
+            return merge(shards, executor, shardCount);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private InvertedIndex buildShard(List<String> documents, int from, int to) {
+        InvertedIndex shard = new InvertedIndex(positions);
+        for (int docId = from; docId < to; docId++) {
+            String text = documents.get(docId);
+            if (text != null) {
+                shard.addDocument(docId, text);
+            }
+        }
+        shard.trimToSize();
+        return shard;
+    }
+
+    // shards must be ordered by their docId ranges
+    private InvertedIndex merge(List<InvertedIndex> shards, ExecutorService executor, int partitions) {
+        if (shards.size() == 1) {
+            return shards.get(0);
+        }
+
+        // partition the vocabulary so each task merges a disjoint set of terms
+        List<List<String>> termPartitions = new ArrayList<>();
+        for (int i = 0; i < partitions; i++) {
+            termPartitions.add(new ArrayList<>());
+        }
+        Set<String> vocabulary = new HashSet<>();
+        for (InvertedIndex shard : shards) {
+            vocabulary.addAll(shard.getIndex().keySet());
+        }
+        for (String term : vocabulary) {
+            termPartitions.get(Math.floorMod(term.hashCode(), partitions)).add(term);
+        }
+
+        List<Future<Map<String, PostingsList>>> mergeFutures = new ArrayList<>();
+        for (List<String> terms : termPartitions) {
+            mergeFutures.add(executor.submit(() -> mergePostings(shards, terms)));
+        }
+
+        InvertedIndex merged = new InvertedIndex(positions);
+        for (Future<Map<String, PostingsList>> future : mergeFutures) {
+            merged.getIndex().putAll(await(future));
+        }
+        for (InvertedIndex shard : shards) {
+            merged.appendDocuments(shard);
+        }
+        return merged;
+    }
+
+    private Map<String, PostingsList> mergePostings(List<InvertedIndex> shards, List<String> terms) {
+        Map<String, PostingsList> merged = new HashMap<>(terms.size() * 2);
+        for (String term : terms) {
+            PostingsList postings = new PostingsList(positions);
+            for (InvertedIndex shard : shards) {
+                PostingsList shardPostings = shard.getPostings(term);
+                if (shardPostings != null) {
+                    postings.addAll(shardPostings);
+                }
+            }
+            postings.trim();
+            merged.put(term, postings);
+        }
+        return merged;
+    }
+
+    private static <T> T await(Future<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while building the index", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtime) throw runtime;
+            throw new IllegalStateException("index build failed", e.getCause());
+        }
+    }
+}
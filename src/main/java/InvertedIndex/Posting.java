@@ -1,15 +0,0 @@
-package InvertedIndex;
-
-public class Posting {
-    public final int docId;
-    public int termFrequency;
-
-    public Posting(int docId) {
-        this.docId = docId;
-        this.termFrequency = 1;
-    }
-
-    public void increment() {
-        this.termFrequency++;
-    }
-}
\ No newline at end of file
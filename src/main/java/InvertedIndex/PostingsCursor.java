@@ -0,0 +1,210 @@
+package InvertedIndex;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+
+/**
+ * Forward-only iterator over a compressed postings list. Each posting is decoded
+ * on demand, so iterating does not allocate per document.
+ * <p>
+ * Usage: call {@link #next()} until it returns {@link #NO_MORE_DOCS}; after each
+ * call {@link #docId()} and {@link #termFrequency()} describe the current posting.
+ * {@link #advance(int)} gallops over the skip entries of the list to jump over whole blocks.
+ * <p>
+ * A cursor opened with positions decodes them only in {@link #positions()}. Until
+ * then it just counts the position varints it has passed, so stepping through postings
+ * costs nothing extra and blocks skipped by {@link #advance(int)} are never scanned.
+ * <p>
+ * The encoded postings are read through buffers with absolute gets, so the same
+ * cursor works over a heap {@link PostingsList} and over a memory-mapped index file.
+ */
+public class PostingsCursor {
+    public static final int NO_MORE_DOCS = Integer.MAX_VALUE;
+    // a skip entry is (last doc id before the block, docs offset, freqs offset, positions offset)
+    static final int SKIP_ENTRY_INTS = 4;
+
+    private final ByteBuffer docs;
+    private final ByteBuffer freqs;
+    // null unless positions were requested
+    private final ByteBuffer positions;
+    private final IntBuffer skips;
+    private final int skipCount;
+    private final int size;
+    private int nextSkip;
+
+    private int docsOffset;
+    private int freqsOffset;
+    private int index = -1;
+    private int docId = -1;
+    private int termFrequency;
+
+    // positions are located lazily: the current posting's positions start pendingPositions
+    // varints after positionsOffset, and positionsDecoded tells whether positionBuffer holds them
+    private int positionsOffset;
+    private int pendingPositions;
+    private boolean positionsDecoded;
+    private int[] positionBuffer;
+
+    PostingsCursor(ByteBuffer docs, ByteBuffer freqs, ByteBuffer positions, IntBuffer skips, int size) {
+        this.docs = docs;
+        this.freqs = freqs;
+        this.positions = positions;
+        this.skips = skips;
+        this.skipCount = skips.limit() / SKIP_ENTRY_INTS;
+        this.size = size;
+        this.docsOffset = docs.position();
+        this.freqsOffset = freqs.position();
+        this.positionsOffset = positions == null ? 0 : positions.position();
+    }
+
+    /**
+     * Moves to the next posting and returns its doc id, or NO_MORE_DOCS when exhausted.
+     */
+    public int next() {
+        positionsDecoded = false;
+        if (++index >= size) {
+            index = size;
+            return docId = NO_MORE_DOCS;
+        }
+        docId += readDocs();
+        // the previous posting's positions now lie before the current one's
+        pendingPositions += termFrequency;
+        termFrequency = readFreqs();
+        return docId;
+    }
+
+    /**
+     * Moves to the first posting whose doc id is at least target and returns it,
+     * or NO_MORE_DOCS. Does not move backwards if already at or past target.
+     */
+    public int advance(int target) {
+        if (docId >= target) {
+            return docId;
+        }
+        // jump to the last block that starts before target, galloping over the skip entries
+        // so a far target costs O(log distance) rather than one step per block
+        int skip = -1;
+        if (nextSkip < skipCount && skipDoc(nextSkip) < target) {
+            int low = nextSkip, high = nextSkip + 1, step = 1;
+            while (high < skipCount && skipDoc(high) < target) {
+                low = high;
+                step <<= 1;
+                high = low + step;
+            }
+            high = Math.min(high, skipCount);
+            // skipDoc(low) < target, and high is past the end or at an entry >= target
+            while (high - low > 1) {
+                int mid = (low + high) >>> 1;
+                if (skipDoc(mid) < target) low = mid;
+                else high = mid;
+            }
+            skip = low;
+            nextSkip = low + 1;
+        }
+        if (skip >= 0 && (skip + 1) * PostingsList.SKIP_INTERVAL - 1 > index) {
+            int entry = skip * SKIP_ENTRY_INTS;
+            index = (skip + 1) * PostingsList.SKIP_INTERVAL - 1;
+            docId = skips.get(entry);
+            docsOffset = docs.position() + skips.get(entry + 1);
+            freqsOffset = freqs.position() + skips.get(entry + 2);
+            if (positions != null) {
+                positionsOffset = positions.position() + skips.get(entry + 3);
+            }
+            pendingPositions = 0;
+            termFrequency = 0;
+        }
+        int doc;
+        do {
+            doc = next();
+        } while (doc < target);
+        return doc;
+    }
+
+    public int docId() {
+        return docId;
+    }
+
+    // the last doc id before the block of skip entry i
+    private int skipDoc(int i) {
+        return skips.get(i * SKIP_ENTRY_INTS);
+    }
+
+    public int termFrequency() {
+        return termFrequency;
+    }
+
+    public boolean hasPositions() {
+        return positions != null;
+    }
+
+    /**
+     * The positions of the term in the current document, in increasing order. Only the
+     * first {@link #termFrequency()} entries are valid, and the array is reused by the
+     * cursor, so callers must not modify or keep it.
+     */
+    public int[] positions() {
+        if (positions == null) {
+            throw new IllegalStateException("cursor was opened without positions");
+        }
+        if (!positionsDecoded) {
+            if (pendingPositions > 0) {
+                positionsOffset = skipVInts(positions, positionsOffset, pendingPositions);
+                pendingPositions = 0;
+            }
+            if (positionBuffer == null || positionBuffer.length < termFrequency) {
+                positionBuffer = new int[Math.max(termFrequency, positionBuffer == null ? 8 : 2 * positionBuffer.length)];
+            }
+            int offset = positionsOffset;
+            int position = 0;
+            for (int i = 0; i < termFrequency; i++) {
+                byte b = positions.get(offset++);
+                int gap = b & 0x7F;
+                for (int shift = 7; b < 0; shift += 7) {
+                    b = positions.get(offset++);
+                    gap |= (b & 0x7F) << shift;
+                }
+                position += gap;
+                positionBuffer[i] = position;
+            }
+            positionsDecoded = true;
+        }
+        return positionBuffer;
+    }
+
+    /**
+     * The document frequency of the underlying postings list.
+     */
+    public int size() {
+        return size;
+    }
+
+    private int readDocs() {
+        byte b = docs.get(docsOffset++);
+        int value = b & 0x7F;
+        for (int shift = 7; b < 0; shift += 7) {
+            b = docs.get(docsOffset++);
+            value |= (b & 0x7F) << shift;
+        }
+        return value;
+    }
+
+    // the offset just past count varints starting at offset
+    private static int skipVInts(ByteBuffer buffer, int offset, int count) {
+        while (count > 0) {
+            if (buffer.get(offset++) >= 0) {
+                count--;
+            }
+        }
+        return offset;
+    }
+
+    private int readFreqs() {
+        byte b = freqs.get(freqsOffset++);
+        int value = b & 0x7F;
+        for (int shift = 7; b < 0; shift += 7) {
+            b = freqs.get(freqsOffset++);
+            value |= (b & 0x7F) << shift;
+        }
+        return value;
+    }
+}
@@ -0,0 +1,261 @@
+package InvertedIndex;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Compressed postings for a single term.
+ * <p>
+ * Doc ids must be added in increasing order. They are stored as varint-encoded
+ * gaps from the previous doc id, and the term frequencies are stored as varints
+ * in a parallel byte array. Postings are decoded lazily through a {@link PostingsCursor}.
+ * <p>
+ * Every {@link #SKIP_INTERVAL} postings a skip entry records the doc id preceding the
+ * block and the byte offsets where the block starts, so a cursor can leap over
+ * whole blocks in {@link PostingsCursor#advance(int)} without decoding them.
+ * <p>
+ * A positional list also stores where the term occurs in each document: tf varint
+ * gaps per posting, the first one relative to position 0, in a third byte array.
+ * Skip entries record the positions offset too, and cursors only decode positions
+ * when asked for them, so plain term queries pay nothing for them.
+ */
+public class PostingsList {
+    static final int SKIP_INTERVAL = 64;
+    private static final int INITIAL_CAPACITY = 8;
+
+    private byte[] docs = new byte[INITIAL_CAPACITY];
+    private int docsLength;
+    private byte[] freqs = new byte[INITIAL_CAPACITY];
+    private int freqsLength;
+    // null unless the list is positional
+    private byte[] positions;
+    private int positionsLength;
+
+    // skip entry i describes the block starting at posting (i + 1) * SKIP_INTERVAL and is stored
+    // as (last doc id before the block, docs offset, freqs offset, positions offset)
+    private int[] skips = new int[0];
+    private int skipCount;
+
+    private int size;
+    private int lastDocId = -1;
+
+    // max over the postings of tfWeight(tf) / docNorm, maintained with the norm table
+    private double maxNormalizedTfWeight;
+
+    public PostingsList() {
+        this(false);
+    }
+
+    public PostingsList(boolean positional) {
+        if (positional) {
+            positions = new byte[INITIAL_CAPACITY];
+        }
+    }
+
+    public boolean hasPositions() {
+        return positions != null;
+    }
+
+    /**
+     * Adds a posting to a non-positional list.
+     */
+    public void add(int docId, int termFrequency) {
+        if (positions != null) {
+            throw new IllegalStateException("a positional list needs the positions of every posting");
+        }
+        append(docId, termFrequency);
+    }
+
+    /**
+     * Adds a posting whose term occurs at the first termFrequency entries of positions,
+     * in increasing order. The positions are ignored if this list does not store them.
+     */
+    public void add(int docId, int[] positions, int termFrequency) {
+        if (this.positions == null) {
+            append(docId, termFrequency);
+            return;
+        }
+        if (positions == null || positions.length < termFrequency) {
+            throw new IllegalArgumentException("expected " + termFrequency + " positions for doc " + docId);
+        }
+        for (int i = 0; i < termFrequency; i++) {
+            if (positions[i] < (i == 0 ? 0 : positions[i - 1] + 1)) {
+                throw new IllegalArgumentException("positions of doc " + docId + " are not increasing");
+            }
+        }
+        append(docId, termFrequency);
+        this.positions = ensureCapacity(this.positions, positionsLength + 5 * termFrequency);
+        int previous = 0;
+        for (int i = 0; i < termFrequency; i++) {
+            positionsLength = writeVInt(this.positions, positionsLength, positions[i] - previous);
+            previous = positions[i];
+        }
+    }
+
+    private void append(int docId, int termFrequency) {
+        if (docId <= lastDocId) {
+            throw new IllegalArgumentException("docId " + docId + " added after " + lastDocId);
+        }
+        if (termFrequency < 1) {
+            throw new IllegalArgumentException("termFrequency must be positive: " + termFrequency);
+        }
+        if (size > 0 && size % SKIP_INTERVAL == 0) {
+            addSkip();
+        }
+        docs = ensureCapacity(docs, docsLength + 5);
+        docsLength = writeVInt(docs, docsLength, docId - lastDocId);
+        freqs = ensureCapacity(freqs, freqsLength + 5);
+        freqsLength = writeVInt(freqs, freqsLength, termFrequency);
+        lastDocId = docId;
+        size++;
+    }
+
+    /**
+     * Appends every posting of other, whose doc ids must all follow this list's last doc id.
+     * A positional list can only take postings from another positional list.
+     */
+    public void addAll(PostingsList other) {
+        addAll(other, null);
+    }
+
+    /**
+     * Like {@link #addAll(PostingsList)}, but only the postings of documents set in
+     * live, or all of them if live is null. Merges use this to drop deleted documents.
+     */
+    public void addAll(PostingsList other, BitSet live) {
+        if (positions != null && other.positions == null) {
+            throw new IllegalArgumentException("cannot add postings without positions to a positional list");
+        }
+        PostingsCursor cursor = other.cursor(positions != null);
+        while (cursor.next() != PostingsCursor.NO_MORE_DOCS) {
+            if (live != null && !live.get(cursor.docId())) {
+                continue;
+            }
+            if (positions != null) {
+                add(cursor.docId(), cursor.positions(), cursor.termFrequency());
+            } else {
+                append(cursor.docId(), cursor.termFrequency());
+            }
+        }
+    }
+
+    /**
+     * The number of documents containing the term (its document frequency).
+     */
+    public int size() {
+        return size;
+    }
+
+    public int lastDocId() {
+        return lastDocId;
+    }
+
+    /**
+     * The largest {@code tfWeight(tf) / docNorm} of any posting in this list. Multiplied by
+     * the term's idf and query weight it bounds the term's contribution to a cosine score.
+     * Only valid after {@link InvertedIndex#getDocNorms()} has been called.
+     */
+    public double maxNormalizedTfWeight() {
+        return maxNormalizedTfWeight;
+    }
+
+    void setMaxNormalizedTfWeight(double maxNormalizedTfWeight) {
+        this.maxNormalizedTfWeight = maxNormalizedTfWeight;
+    }
+
+    public PostingsCursor cursor() {
+        return cursor(false);
+    }
+
+    /**
+     * A cursor that can also decode each posting's positions, which requires a positional list.
+     */
+    public PostingsCursor cursor(boolean withPositions) {
+        if (withPositions && positions == null) {
+            throw new IllegalStateException("postings have no positions");
+        }
+        return new PostingsCursor(ByteBuffer.wrap(docs, 0, docsLength), ByteBuffer.wrap(freqs, 0, freqsLength),
+                withPositions ? ByteBuffer.wrap(positions, 0, positionsLength) : null,
+                IntBuffer.wrap(skips, 0, skipCount * PostingsCursor.SKIP_ENTRY_INTS), size);
+    }
+
+    /**
+     * Releases the unused tail of the growable buffers.
+     */
+    public void trim() {
+        if (docs.length != docsLength) docs = Arrays.copyOf(docs, docsLength);
+        if (freqs.length != freqsLength) freqs = Arrays.copyOf(freqs, freqsLength);
+        if (positions != null && positions.length != positionsLength) positions = Arrays.copyOf(positions, positionsLength);
+        int skipInts = skipCount * PostingsCursor.SKIP_ENTRY_INTS;
+        if (skips.length != skipInts) skips = Arrays.copyOf(skips, skipInts);
+    }
+
+    /**
+     * Approximate heap footprint of the encoded postings, excluding the object header.
+     */
+    public long sizeInBytes() {
+        return docs.length + freqs.length + (positions == null ? 0 : positions.length) + 4L * skips.length;
+    }
+
+    // raw encoded form, used by IndexWriter to copy the postings to disk verbatim
+
+    byte[] docsBytes() {
+        return docs;
+    }
+
+    int docsLength() {
+        return docsLength;
+    }
+
+    byte[] freqsBytes() {
+        return freqs;
+    }
+
+    int freqsLength() {
+        return freqsLength;
+    }
+
+    byte[] positionsBytes() {
+        return positions;
+    }
+
+    int positionsLength() {
+        return positionsLength;
+    }
+
+    int[] skips() {
+        return skips;
+    }
+
+    int skipCount() {
+        return skipCount;
+    }
+
+    private void addSkip() {
+        int offset = skipCount * PostingsCursor.SKIP_ENTRY_INTS;
+        if (offset == skips.length) {
+            skips = Arrays.copyOf(skips, Math.max(4 * PostingsCursor.SKIP_ENTRY_INTS, skips.length * 2));
+        }
+        skips[offset] = lastDocId;
+        skips[offset + 1] = docsLength;
+        skips[offset + 2] = freqsLength;
+        skips[offset + 3] = positionsLength;
+        skipCount++;
+    }
+
+    private static byte[] ensureCapacity(byte[] buffer, int needed) {
+        if (needed <= buffer.length) return buffer;
+        return Arrays.copyOf(buffer, Math.max(needed, buffer.length + (buffer.length >> 1)));
+    }
+
+    static int writeVInt(byte[] buffer, int offset, int value) {
+        while ((value & ~0x7F) != 0) {
+            buffer[offset++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[offset++] = (byte) value;
+        return offset;
+    }
+}
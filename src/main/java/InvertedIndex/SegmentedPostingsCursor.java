@@ -0,0 +1,93 @@
+package InvertedIndex;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.BitSet;
+
+/**
+ * One term's postings across the segments of an {@link IndexSnapshot}, read as a single
+ * list. Segments cover ascending, disjoint docId ranges, so the segments' cursors are
+ * simply drained one after another; {@link #advance(int)} passes over every segment
+ * whose postings end before the target without touching it.
+ * <p>
+ * Documents deleted since their segment was written are still in its postings until
+ * the segment is merged; the cursor steps over them, so callers never see them.
+ */
+final class SegmentedPostingsCursor extends PostingsCursor {
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+    private final PostingsCursor[] parts;
+    // the last docId of each part
+    private final int[] lastDocIds;
+    // the documents that may be returned, or null if every posting is live
+    private final BitSet live;
+    private final int size;
+    private int current;
+    private int docId = -1;
+
+    SegmentedPostingsCursor(PostingsCursor[] parts, int[] lastDocIds, BitSet live) {
+        super(EMPTY, EMPTY, null, IntBuffer.allocate(0), 0);
+        this.parts = parts;
+        this.lastDocIds = lastDocIds;
+        this.live = live;
+        int total = 0;
+        for (PostingsCursor part : parts) {
+            total += part.size();
+        }
+        this.size = total;
+    }
+
+    @Override
+    public int next() {
+        while (current < parts.length) {
+            int doc = parts[current].next();
+            if (doc == NO_MORE_DOCS) {
+                current++;
+            } else if (live == null || live.get(doc)) {
+                return docId = doc;
+            }
+        }
+        return docId = NO_MORE_DOCS;
+    }
+
+    @Override
+    public int advance(int target) {
+        if (docId >= target) {
+            return docId;
+        }
+        while (current < parts.length && lastDocIds[current] < target) {
+            current++;
+        }
+        if (current == parts.length) {
+            return docId = NO_MORE_DOCS;
+        }
+        // the current part holds a posting >= target
+        int doc = parts[current].advance(target);
+        return live == null || live.get(doc) ? docId = doc : next();
+    }
+
+    @Override
+    public int docId() {
+        return docId;
+    }
+
+    @Override
+    public int termFrequency() {
+        return parts[Math.min(current, parts.length - 1)].termFrequency();
+    }
+
+    @Override
+    public boolean hasPositions() {
+        return parts[0].hasPositions();
+    }
+
+    @Override
+    public int[] positions() {
+        return parts[Math.min(current, parts.length - 1)].positions();
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+}
@@ -0,0 +1,248 @@
+package InvertedIndex;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * An immutable, sorted set of terms, each identified by its ordinal (its rank in
+ * UTF-8 byte order), with lookups by term, by ordinal and by prefix.
+ * <p>
+ * Terms are front-coded in blocks of {@value #BLOCK_SIZE}. A block stores its first
+ * term in full and every other term as the length of the prefix it shares with the
+ * term before it, then the rest of its bytes. Sorted terms share long prefixes
+ * ("pyramid", "pyramidal", "pyramids"), so most take two or three bytes. A table of
+ * block offsets leads to each block's first term, which is what a lookup binary
+ * searches. It then decodes at most one block.
+ * <p>
+ * Layout (big-endian):
+ * <pre>
+ * int   termCount
+ * int   blockCount
+ * int[] offset of each block, from the start of the dictionary
+ * per block: varint length, bytes of the first term
+ *            per other term: varint shared prefix length, varint suffix length, suffix bytes
+ * </pre>
+ * The same bytes are the {@code terms.dat} of an index written by {@link IndexWriter}.
+ * {@link MappedIndex} reads them straight from the mapped file, and
+ * {@link IndexReader#terms()} builds them on the heap for an in-memory index.
+ * A term costs a few bytes plus a quarter byte of block offset, against about
+ * 60 bytes for a key of a HashMap&lt;String, ?&gt;.
+ * <p>
+ * Instances are safe for concurrent readers: all reads are absolute gets.
+ */
+public final class TermDictionary {
+    static final int BLOCK_SIZE = 16;
+    private static final int HEADER_BYTES = 8;
+
+    private final ByteBuffer data;
+    private final int size;
+    private final int blockCount;
+
+    private TermDictionary(ByteBuffer data) {
+        this.data = data;
+        this.size = data.getInt(0);
+        this.blockCount = data.getInt(4);
+    }
+
+    /**
+     * A dictionary of the given terms, in any order and without duplicates.
+     */
+    public static TermDictionary build(Collection<String> terms) {
+        List<byte[]> sorted = new ArrayList<>(terms.size());
+        for (String term : terms) {
+            sorted.add(term.getBytes(StandardCharsets.UTF_8));
+        }
+        sorted.sort(Arrays::compareUnsigned);
+        return new TermDictionary(ByteBuffer.wrap(encode(sorted)));
+    }
+
+    // a dictionary over bytes written by encode, such as a mapped terms.dat
+    static TermDictionary read(ByteBuffer data) {
+        return new TermDictionary(data);
+    }
+
+    /**
+     * The encoded dictionary of terms sorted by their UTF-8 bytes, unsigned.
+     */
+    static byte[] encode(List<byte[]> sorted) {
+        int blocks = (sorted.size() + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        byte[] out = new byte[HEADER_BYTES + 4 * blocks + 64];
+        int offset = HEADER_BYTES + 4 * blocks;
+        byte[] previous = null;
+        for (int i = 0; i < sorted.size(); i++) {
+            byte[] term = sorted.get(i);
+            if (previous != null && Arrays.compareUnsigned(previous, term) >= 0) {
+                throw new IllegalArgumentException("terms not sorted or not unique at " + i);
+            }
+            out = ensureCapacity(out, offset + term.length + 10);
+            if (i % BLOCK_SIZE == 0) {
+                putInt(out, HEADER_BYTES + 4 * (i / BLOCK_SIZE), offset);
+                offset = PostingsList.writeVInt(out, offset, term.length);
+                System.arraycopy(term, 0, out, offset, term.length);
+                offset += term.length;
+            } else {
+                int shared = Arrays.mismatch(previous, term);
+                offset = PostingsList.writeVInt(out, offset, shared);
+                offset = PostingsList.writeVInt(out, offset, term.length - shared);
+                System.arraycopy(term, shared, out, offset, term.length - shared);
+                offset += term.length - shared;
+            }
+            previous = term;
+        }
+        putInt(out, 0, sorted.size());
+        putInt(out, 4, blocks);
+        return Arrays.copyOf(out, offset);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // the encoded size, the memory or file space the dictionary takes
+    public long sizeInBytes() {
+        return data.capacity();
+    }
+
+    /**
+     * The term's ordinal, or -1 if the dictionary does not hold it.
+     */
+    public int ordinal(String term) {
+        byte[] key = term.getBytes(StandardCharsets.UTF_8);
+        int block = floorBlock(key);
+        if (block < 0) {
+            return -1;
+        }
+        Cursor cursor = new Cursor(block);
+        while (cursor.next()) {
+            int cmp = cursor.compareTo(key);
+            if (cmp == 0) return cursor.ordinal;
+            if (cmp > 0 || cursor.ordinal % BLOCK_SIZE == BLOCK_SIZE - 1) break;
+        }
+        return -1;
+    }
+
+    /**
+     * The term with the given ordinal, from 0 to {@link #size()} - 1.
+     */
+    public String term(int ordinal) {
+        if (ordinal < 0 || ordinal >= size) {
+            throw new IndexOutOfBoundsException("ordinal " + ordinal + " of " + size + " terms");
+        }
+        Cursor cursor = new Cursor(ordinal / BLOCK_SIZE);
+        for (int i = ordinal % BLOCK_SIZE; i >= 0; i--) {
+            cursor.next();
+        }
+        return cursor.term();
+    }
+
+    /**
+     * Visits every term starting with the prefix, in order. The empty prefix visits
+     * them all. Finding the first costs a binary search over the blocks.
+     */
+    public void forEachWithPrefix(String prefix, TermVisitor visitor) {
+        byte[] key = prefix.getBytes(StandardCharsets.UTF_8);
+        Cursor cursor = new Cursor(Math.max(floorBlock(key), 0));
+        while (cursor.next()) {
+            if (cursor.startsWith(key)) {
+                visitor.visit(cursor.ordinal, cursor.term());
+            } else if (cursor.compareTo(key) > 0) {
+                return;
+            }
+        }
+    }
+
+    @FunctionalInterface
+    public interface TermVisitor {
+        void visit(int ordinal, String term);
+    }
+
+    // the last block whose first term is at most key, or -1 if key precedes every term
+    private int floorBlock(byte[] key) {
+        int low = 0, high = blockCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (compareFirstTerm(mid, key) <= 0) low = mid + 1;
+            else high = mid - 1;
+        }
+        return high;
+    }
+
+    private int compareFirstTerm(int block, byte[] key) {
+        int offset = data.getInt(HEADER_BYTES + 4 * block);
+        int length = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = data.get(offset++);
+            length |= (b & 0x7F) << shift;
+            if (b >= 0) break;
+        }
+        int common = Math.min(length, key.length);
+        for (int i = 0; i < common; i++) {
+            int cmp = Byte.compareUnsigned(data.get(offset + i), key[i]);
+            if (cmp != 0) return cmp;
+        }
+        return Integer.compare(length, key.length);
+    }
+
+    private static byte[] ensureCapacity(byte[] buffer, int needed) {
+        if (needed <= buffer.length) return buffer;
+        return Arrays.copyOf(buffer, Math.max(needed, buffer.length + (buffer.length >> 1)));
+    }
+
+    private static void putInt(byte[] buffer, int offset, int value) {
+        buffer[offset] = (byte) (value >>> 24);
+        buffer[offset + 1] = (byte) (value >>> 16);
+        buffer[offset + 2] = (byte) (value >>> 8);
+        buffer[offset + 3] = (byte) value;
+    }
+
+    // decodes terms in order from the start of a block, rebuilding each from the one before
+    private final class Cursor {
+        private int offset;
+        private int ordinal;
+        private byte[] term = new byte[32];
+        private int length;
+
+        Cursor(int block) {
+            this.ordinal = block * BLOCK_SIZE - 1;
+            this.offset = block < blockCount ? data.getInt(HEADER_BYTES + 4 * block) : -1;
+        }
+
+        boolean next() {
+            if (offset < 0 || ordinal + 1 >= size) {
+                return false;
+            }
+            ordinal++;
+            int shared = ordinal % BLOCK_SIZE == 0 ? 0 : readVInt();
+            int suffix = readVInt();
+            length = shared + suffix;
+            if (length > term.length) {
+                term = Arrays.copyOf(term, Math.max(length, term.length * 2));
+            }
+            data.get(offset, term, shared, suffix);
+            offset += suffix;
+            return true;
+        }
+
+        int compareTo(byte[] key) {
+            return Arrays.compareUnsigned(term, 0, length, key, 0, key.length);
+        }
+
+        boolean startsWith(byte[] prefix) {
+            return length >= prefix.length && Arrays.equals(term, 0, prefix.length, prefix, 0, prefix.length);
+        }
+
+        String term() {
+            return new String(term, 0, length, StandardCharsets.UTF_8);
+        }
+
+        private int readVInt() {
+            int value = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = data.get(offset++);
+                value |= (b & 0x7F) << shift;
+                if (b >= 0) return value;
+            }
+        }
+    }
+}
@@ -1,40 +1,266 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
 import java.net.URL;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
 import java.util.*;
-import InvertedIndex.InvertedIndex;
+import Autocomplete.Autocomplete;
+import Cluster.Partition;
+import InvertedIndex.IndexWriter;
+import InvertedIndex.MappedIndex;
+import InvertedIndex.NearRealTimeIndex;
+import Metrics.Metrics;
+import DocumentStore.DocumentStore;
+import DocumentStore.MappedDocumentStore;
+import Crawler.CrawlPipeline;
+import Crawler.CrawlState;
+import Crawler.Crawler;
+import Crawler.HostThrottle;
+import Crawler.RecrawlListener;
+import SearchEngine.Bm25;
+import SearchEngine.Highlighter;
+import SearchEngine.SearchEngine;
+import Server.Coordinator;
+import Server.SearchServer;
+import Server.ShardServer;
 
 public class Main {
-    private static final int SNIPPET_LENGTH = 150;
+    private static final Path DEFAULT_INDEX_DIR = Paths.get("index");
+    private static final String BASE_URL = "https://en.wikipedia.org/wiki";
 
-    public static void main(String[] args) {
+    /*
+     * Usage: Main [indexDir] [--port N]; with a port the JSON search endpoint replaces the console,
+     * and a first run serves the pages crawled so far while it builds indexDir.
+     * Sharded, as one JVM per shard and one coordinator, after a plain run has built indexDir:
+     *   Main [indexDir] --shard i/n --port N          serves shard i of n, from 0
+     *   Main --coordinator host:port,... --port N     the JSON search endpoint over those shards
+     * Main [indexDir] --recrawl revisits the pages of an earlier crawl and rewrites indexDir with
+     * their changes; stop any server reading indexDir first.
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        Path indexDir = DEFAULT_INDEX_DIR;
+        int port = -1;
+        String shard = null;
+        String coordinator = null;
+        boolean recrawl = false;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--port") && i + 1 < args.length) {
+                port = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--shard") && i + 1 < args.length) {
+                shard = args[++i];
+            } else if (args[i].equals("--coordinator") && i + 1 < args.length) {
+                coordinator = args[++i];
+            } else if (args[i].equals("--recrawl")) {
+                recrawl = true;
+            } else {
+                indexDir = Paths.get(args[i]);
+            }
+        }
+
+        if ((shard != null || coordinator != null) && port < 0) {
+            System.err.println("--shard and --coordinator need a --port");
+            System.exit(2);
+        }
+        if (coordinator != null) {
+            coordinate(coordinator, port);
+            return;
+        }
+        if (shard != null) {
+            serveShard(indexDir, shard, port);
+            return;
+        }
+        if (recrawl) {
+            recrawl(indexDir);
+            return;
+        }
+
+        // The index is built once and reopened from disk on every later run
+        if (!MappedIndex.exists(indexDir) || !MappedDocumentStore.exists(indexDir)) {
+            buildIndex(indexDir, port);
+        }
+
+        try (MappedIndex index = MappedIndex.open(indexDir);
+             MappedDocumentStore documents = MappedDocumentStore.open(indexDir)) {
+            // readable over JMX and in the metrics dump, next to the query latencies
+            Metrics.shared().gauge("index.postings.bytes", index::postingsBytes);
+            Metrics.shared().gauge("index.docs", index::numDocs);
+            if (port >= 0) {
+                serve(index, documents, port);
+            } else {
+                search(index, documents);
+            }
+        }
+    }
+
+    private static void serve(MappedIndex index, MappedDocumentStore documents, int port) throws IOException, InterruptedException {
+        // rebuilt every minute, so popular queries become suggestions
+        Autocomplete autocomplete = new Autocomplete(index, documents, Duration.ofMinutes(1));
+        SearchServer server = new SearchServer(new InetSocketAddress(port), new SearchEngine(index, new Bm25(), 1024),
+                new Highlighter(index, documents), documents, autocomplete);
+        server.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.close();
+            autocomplete.close();
+        }));
+        System.out.println("Serving http://localhost:" + server.port() + "/search?q=... (Ctrl-C to stop)");
+        Thread.currentThread().join();
+    }
+
+    private static void serveShard(Path indexDir, String spec, int port) throws IOException, InterruptedException {
+        // every shard reads the documents of the one collection; none crawls its own
+        if (!MappedDocumentStore.exists(indexDir)) {
+            System.err.println("No documents in " + indexDir.toAbsolutePath() + ": run Main without --shard first");
+            System.exit(1);
+        }
+        try (MappedDocumentStore documents = MappedDocumentStore.open(indexDir)) {
+            // the current version of every page; the store also holds the ones a recrawl replaced or removed
+            BitSet live = null;
+            if (CrawlState.exists(indexDir)) {
+                live = new BitSet(documents.size());
+                CrawlState state = CrawlState.read(indexDir);
+                for (String url : state.urls()) {
+                    live.set(state.get(url).docId);
+                }
+            }
+            Partition partition = Partition.parse(spec, documents.size(), live);
+            // each shard indexes its own range once, and reopens it from disk until a recrawl
+            // changes the range or the pages in it
+            Path shardDir = indexDir.resolve("shard-" + partition.shard + "-of-" + partition.shards);
+            if (!MappedIndex.exists(shardDir) || !Partition.exists(shardDir) || !partition.equals(Partition.read(shardDir))) {
+                IndexWriter.write(partition.index(documents, Runtime.getRuntime().availableProcessors()), shardDir);
+                partition.write(shardDir);
+            }
+            try (MappedIndex index = MappedIndex.open(shardDir)) {
+                Metrics.shared().gauge("index.docs", index::numDocs);
+                ShardServer server = new ShardServer(new InetSocketAddress(port), index, partition, documents,
+                        new Bm25(), 1024);
+                server.start();
+                Runtime.getRuntime().addShutdownHook(new Thread(server::close));
+                System.out.println("Serving " + partition + " on port " + server.port() + " (Ctrl-C to stop)");
+                Thread.currentThread().join();
+            }
+        }
+    }
+
+    private static void coordinate(String shards, int port) throws IOException, InterruptedException {
+        List<URI> uris = new ArrayList<>();
+        for (String shard : shards.split(",")) {
+            uris.add(URI.create(shard.contains("://") ? shard : "http://" + shard));
+        }
+        // each round of a query waits up to 500ms for the shards, the request up to 2s in all
+        Coordinator coordinator = Coordinator.connect(uris, Duration.ofMillis(500), Duration.ofMinutes(5));
+        int cores = Runtime.getRuntime().availableProcessors();
+        SearchServer server = new SearchServer(new InetSocketAddress(port), coordinator, cores, 4 * cores,
+                Duration.ofSeconds(2));
+        server.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.close();
+            coordinator.close();
+        }));
+        System.out.println("Serving http://localhost:" + server.port() + "/search?q=... over " + uris.size()
+                + " shards (Ctrl-C to stop)");
+        Thread.currentThread().join();
+    }
+
+    private static void buildIndex(Path indexDir, int port) throws IOException, InterruptedException {
         // Initialize components
         List<String> seeds = Arrays.asList(
                 "https://en.wikipedia.org/wiki/List_of_pharaohs",
                 "https://en.wikipedia.org/wiki/Pharaoh"
         );
 
-        // Create and run crawler
-        Crawler crawler = new Crawler("https://en.wikipedia.org/wiki", 10, seeds);
-        crawler.startCrawling();
+        // Create the crawler: 4 concurrent fetches, at most one request per 250ms to each host.
+        // Each page lands in the store under the docId the index will use for it
+        DocumentStore store = new DocumentStore();
+        Crawler crawler = new Crawler(BASE_URL, 10, seeds, 4, new HostThrottle(250, 1000), store);
 
-        // Create inverted index
-        InvertedIndex index = new InvertedIndex();
-        
-        // Create URL to docId mapping
-        Map<String, Integer> urlToDocId = new HashMap<>();
-        int docId = 0;
-        
-        // Index the crawled pages
-        for (Map.Entry<String, String> entry : crawler.getPageContents().entrySet()) {
-            urlToDocId.put(entry.getKey(), docId);
-            index.addDocument(docId++, entry.getValue());
+        // Index pages while the crawl goes on: parsing and analysis on every core, at most
+        // 64 pages between any two stages. With a port, the pages indexed so far are searched
+        // while the crawl goes on, each within a second or so of being indexed
+        int cores = Runtime.getRuntime().availableProcessors();
+        try (NearRealTimeIndex index = new NearRealTimeIndex(true, port < 0 ? Duration.ZERO : Duration.ofSeconds(1))) {
+            SearchServer server = null;
+            if (port >= 0) {
+                server = new SearchServer(new InetSocketAddress(port), new SearchEngine(index, new Bm25(), 1024),
+                        new Highlighter(index, store), store);
+                server.start();
+                System.out.println("Serving http://localhost:" + server.port() + "/search?q=... while crawling");
+            }
+            try {
+                new CrawlPipeline(crawler, index, cores, cores, 64).run();
+            } finally {
+                // the port is served from the written index next
+                if (server != null) server.close();
+            }
+            store.write(indexDir);
+            // impact-ordered postings let BM25 stop reading common terms early
+            index.write(indexDir, true);
         }
+        // the validators and content hashes a later recrawl sends back
+        crawler.getCrawlState().write(indexDir);
+        System.out.println("Index written to " + indexDir.toAbsolutePath());
+        // fetch, parse and indexing latencies of the build
+        System.out.print(Metrics.shared().dump());
+    }
 
+    private static void recrawl(Path indexDir) throws IOException {
+        if (!MappedDocumentStore.exists(indexDir) || !CrawlState.exists(indexDir)) {
+            System.err.println("No crawl in " + indexDir.toAbsolutePath() + ": run Main without --recrawl first");
+            System.exit(1);
+        }
+        // read into memory rather than mapped, so changed pages can be appended
+        DocumentStore store = DocumentStore.read(indexDir);
+        CrawlState state = CrawlState.read(indexDir);
+
+        // the current version of every known page, from the stored text: nothing is fetched
+        // again to rebuild the index, and only the changes are applied to it below
+        int[] live = new int[state.size()];
+        int n = 0;
+        for (String url : state.urls()) {
+            live[n++] = state.get(url).docId;
+        }
+        Arrays.sort(live);
+        try (NearRealTimeIndex index = new NearRealTimeIndex(true, Duration.ZERO)) {
+            for (int docId : live) {
+                index.addDocument(docId, store.text(docId));
+            }
+
+            // a fresh throttle, since the per-host cap counts recrawl requests too
+            Crawler crawler = new Crawler(BASE_URL, 0, List.of(), 4, new HostThrottle(250, 1000), store, state);
+            Crawler.RecrawlStats stats = crawler.recrawl(new RecrawlListener() {
+                @Override
+                public void changed(String url, int oldDocId, int newDocId, String text) {
+                    index.updateDocument(oldDocId, newDocId, text);
+                }
+
+                @Override
+                public void removed(String url, int docId) {
+                    index.deleteDocument(docId);
+                }
+            });
+
+            // the store first, so the index never points past it; the state last, so a
+            // failed write leaves it at docIds the files on disk still hold
+            if (stats.changed > 0 || stats.removed > 0) {
+                store.write(indexDir);
+                index.write(indexDir, true);
+            }
+            state.write(indexDir);
+            System.out.println("Index in " + indexDir.toAbsolutePath() + " holds " + state.size() + " pages");
+        }
+    }
+
+    private static void search(MappedIndex index, MappedDocumentStore documents) {
         // Create search engine
-        SearchEngine searchEngine = new SearchEngine(index);
+        SearchEngine searchEngine = new SearchEngine(index, new Bm25(), 1024);
+        Highlighter highlighter = new Highlighter(index, documents);
+        Autocomplete autocomplete = new Autocomplete(index, documents, Duration.ofMinutes(1));
 
         // Simple search interface
         Scanner scanner = new Scanner(System.in);
-        System.out.println("\nSearch Engine Ready! Enter your search query (or 'quit' to exit):");
+        System.out.println("\nSearch Engine Ready! Enter your search query (':suggest <prefix>' for completions, ':metrics' for timings, 'quit' to exit):");
         
         while (true) {
             System.out.print("\nSearch: ");
@@ -48,29 +274,44 @@ public class Main {
                 continue;
             }
 
+            if (query.equals(":metrics")) {
+                System.out.print(Metrics.shared().dump());
+                continue;
+            }
+
+            if (query.startsWith(":suggest ")) {
+                for (Autocomplete.Suggestion suggestion : autocomplete.suggest(query.substring(9), 10)) {
+                    System.out.println("  " + suggestion.text);
+                }
+                continue;
+            }
+
             // Perform search
-            List<SearchEngine.Result> results = searchEngine.search(query);
+            List<SearchEngine.Result> results;
+            Set<String> terms;
+            try {
+                results = searchEngine.search(query);
+                terms = searchEngine.highlightTerms(query);
+            } catch (IllegalArgumentException e) {
+                System.out.println("Invalid query: " + e.getMessage());
+                continue;
+            }
             
             // Display results
             if (results.isEmpty()) {
                 System.out.println("No results found.");
             } else {
+                // a query that found something is worth suggesting
+                autocomplete.recordQuery(query);
                 System.out.println("\nSearch Results:");
                 for (int i = 0; i < results.size(); i++) {
                     SearchEngine.Result result = results.get(i);
                     
-                    // Find the URL for this docId
-                    String url = urlToDocId.entrySet().stream()
-                            .filter(e -> e.getValue() == result.docId)
-                            .map(Map.Entry::getKey)
-                            .findFirst()
-                            .orElse("Unknown URL");
-                    
-                    String title = crawler.getPageTitles().get(url);
-                    String content = crawler.getPageContents().get(url);
-                    
-                    // Generate a snippet around the first occurrence of any query term
-                    String snippet = generateSnippet(content, query);
+                    String url = documents.url(result.docId);
+                    String title = documents.title(result.docId);
+
+                    // The densest window of query terms, with each match in **bold**
+                    String snippet = highlighter.snippet(result.docId, terms).format("**", "**");
                     
                     // Print formatted result
                     System.out.println("\n" + (i + 1) + ". " + title);
@@ -83,34 +324,7 @@ public class Main {
         }
         
         scanner.close();
+        autocomplete.close();
         System.out.println("\nGoodbye!");
     }
-
-    private static String generateSnippet(String content, String query) {
-        String[] terms = query.toLowerCase().split("\\W+");
-        String lowerContent = content.toLowerCase();
-        
-        // Find the first occurrence of any query term
-        int firstPos = -1;
-        for (String term : terms) {
-            int pos = lowerContent.indexOf(term);
-            if (pos != -1 && (firstPos == -1 || pos < firstPos)) {
-                firstPos = pos;
-            }
-        }
-        
-        if (firstPos == -1) {
-            return content.substring(0, Math.min(SNIPPET_LENGTH, content.length())) + "...";
-        }
-        
-        // Get a window around the first occurrence
-        int start = Math.max(0, firstPos - SNIPPET_LENGTH/2);
-        int end = Math.min(content.length(), firstPos + SNIPPET_LENGTH/2);
-        
-        String snippet = content.substring(start, end);
-        if (start > 0) snippet = "..." + snippet;
-        if (end < content.length()) snippet = snippet + "...";
-        
-        return snippet;
-    }
 }
@@ -0,0 +1,38 @@
+package Metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A running total, such as bytes fetched from a host. Adding is a {@link LongAdder}
+ * increment, which spreads contended updates over cells instead of retrying one CAS.
+ */
+public class Counter implements CounterMBean {
+    private final String name;
+    private final LongAdder value = new LongAdder();
+
+    Counter(String name) {
+        this.name = name;
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public void add(long amount) {
+        value.add(amount);
+    }
+
+    public void increment() {
+        value.increment();
+    }
+
+    @Override
+    public long getValue() {
+        return value.sum();
+    }
+
+    @Override
+    public String toString() {
+        return name + " " + getValue();
+    }
+}
@@ -0,0 +1,9 @@
+package Metrics;
+
+/**
+ * The JMX view of a {@link Counter}, and of a gauge registered with {@link Metrics#gauge}.
+ */
+public interface CounterMBean {
+
+    long getValue();
+}
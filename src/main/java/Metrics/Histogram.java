@@ -0,0 +1,165 @@
+package Metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A latency histogram in nanoseconds that is cheap enough to record on every query.
+ * <p>
+ * Buckets are log-linear, as in HdrHistogram: each power of two is split into 16
+ * equal sub-buckets, so a bucket is at most 1/16 of its values wide and a reported
+ * percentile is within 6.25% of the true one. Finding a value's bucket takes a
+ * leading-zeros count and a shift. Recording then does one atomic increment of
+ * that bucket and updates the sum, and the max when it grows. It allocates nothing
+ * and takes no lock, so many threads can record at once. 960 buckets cover every
+ * non-negative long in under 8KB.
+ * <p>
+ * Reads copy the counts. A read that races with recording may miss the newest
+ * values, but every count it sees is final.
+ */
+public class Histogram implements HistogramMBean {
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final String name;
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    Histogram(String name) {
+        this.name = name;
+    }
+
+    public String name() {
+        return name;
+    }
+
+    /**
+     * Records a duration in nanoseconds. Negative values count as 0.
+     */
+    public void record(long nanos) {
+        long value = Math.max(nanos, 0);
+        counts.incrementAndGet(bucket(value));
+        sum.addAndGet(value);
+        long largest;
+        while (value > (largest = max.get()) && !max.compareAndSet(largest, value)) {
+            // another thread raised the max first; compare against the new one
+        }
+    }
+
+    // records the time elapsed since a System.nanoTime() reading
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    // values below 16 get a bucket each; above, 16 buckets per power of two
+    static int bucket(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) (value >>> shift & (SUB_BUCKETS - 1));
+    }
+
+    // the largest value that falls into the bucket
+    static long highestValue(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        long lowest = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+
+    public Snapshot snapshot() {
+        long[] copy = new long[BUCKETS];
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            copy[i] = counts.get(i);
+            count += copy[i];
+        }
+        long largest = max.get();
+        return new Snapshot(count, count == 0 ? 0 : (double) sum.get() / count,
+                percentile(copy, count, 0.50, largest), percentile(copy, count, 0.99, largest),
+                percentile(copy, count, 0.999, largest), largest);
+    }
+
+    // the smallest bucket bound with at least the fraction of values at or below it, capped at the max
+    private static long percentile(long[] counts, long count, double fraction, long max) {
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(fraction * count));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(highestValue(i), max);
+            }
+        }
+        return max;
+    }
+
+    @Override
+    public long getCount() {
+        return snapshot().count;
+    }
+
+    @Override
+    public double getMeanMicros() {
+        return snapshot().mean / 1e3;
+    }
+
+    @Override
+    public double getP50Micros() {
+        return snapshot().p50 / 1e3;
+    }
+
+    @Override
+    public double getP99Micros() {
+        return snapshot().p99 / 1e3;
+    }
+
+    @Override
+    public double getP999Micros() {
+        return snapshot().p999 / 1e3;
+    }
+
+    @Override
+    public double getMaxMicros() {
+        return snapshot().max / 1e3;
+    }
+
+    @Override
+    public String toString() {
+        return name + " " + snapshot();
+    }
+
+    /**
+     * The distribution at one moment, in nanoseconds.
+     */
+    public static class Snapshot {
+        public final long count;
+        public final double mean;
+        public final long p50;
+        public final long p99;
+        public final long p999;
+        public final long max;
+
+        Snapshot(long count, double mean, long p50, long p99, long p999, long max) {
+            this.count = count;
+            this.mean = mean;
+            this.p50 = p50;
+            this.p99 = p99;
+            this.p999 = p999;
+            this.max = max;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("count=%d mean=%.1fus p50=%.1fus p99=%.1fus p999=%.1fus max=%.1fus",
+                    count, mean / 1e3, p50 / 1e3, p99 / 1e3, p999 / 1e3, max / 1e3);
+        }
+    }
+}
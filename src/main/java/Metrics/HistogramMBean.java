@@ -0,0 +1,19 @@
+package Metrics;
+
+/**
+ * The JMX view of a {@link Histogram}: its percentiles in microseconds.
+ */
+public interface HistogramMBean {
+
+    long getCount();
+
+    double getMeanMicros();
+
+    double getP50Micros();
+
+    double getP99Micros();
+
+    double getP999Micros();
+
+    double getMaxMicros();
+}
@@ -0,0 +1,119 @@
+package Metrics;
+
+import javax.management.*;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+/**
+ * Named latency histograms, counters and gauges, readable over JMX and as a text dump.
+ * <p>
+ * Metrics are created on first use and live as long as the registry. Code on a hot
+ * path looks its metrics up once, typically into a static final field, and then only
+ * records, which never allocates. Names are dotted, component first
+ * ({@code query.total}, {@code crawler.fetch}). Per-host metrics append the host
+ * ({@code crawler.bytes.en.wikipedia.org}).
+ * <p>
+ * A registry with a JMX domain registers every metric with the platform MBean
+ * server as it is created, as {@code <domain>:type=Histogram,name=<name>} (or
+ * Counter, or Gauge), so jconsole or any JMX client can watch it live. Histograms
+ * show their count, mean, p50, p99, p999 and max in microseconds.
+ * <p>
+ * {@link #shared()} is the registry the crawler, index and search engine record
+ * into, under the domain {@value #DOMAIN}. All methods are thread-safe.
+ */
+public class Metrics {
+    public static final String DOMAIN = "SearchEngine";
+    private static final Metrics SHARED = new Metrics(DOMAIN);
+
+    // null if metrics are not registered with JMX
+    private final String domain;
+    private final Map<String, Histogram> histograms = new ConcurrentHashMap<>();
+    private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+    private final Map<String, LongSupplier> gauges = new ConcurrentHashMap<>();
+
+    /**
+     * @param domain the JMX domain to register metrics under, or null to keep them off JMX
+     */
+    public Metrics(String domain) {
+        this.domain = domain;
+    }
+
+    public static Metrics shared() {
+        return SHARED;
+    }
+
+    public Histogram histogram(String name) {
+        return histograms.computeIfAbsent(name, n -> {
+            Histogram histogram = new Histogram(n);
+            register("Histogram", n, histogram, HistogramMBean.class);
+            return histogram;
+        });
+    }
+
+    public Counter counter(String name) {
+        return counters.computeIfAbsent(name, n -> {
+            Counter counter = new Counter(n);
+            register("Counter", n, counter, CounterMBean.class);
+            return counter;
+        });
+    }
+
+    /**
+     * Registers a value read when the metrics are, such as the size of an index.
+     * A gauge of the same name replaces the earlier one.
+     */
+    public void gauge(String name, LongSupplier value) {
+        CounterMBean view = value::getAsLong;
+        if (gauges.put(name, value) != null) {
+            unregister("Gauge", name);
+        }
+        register("Gauge", name, view, CounterMBean.class);
+    }
+
+    /**
+     * Every metric, one per line in name order: histograms with their percentiles in
+     * microseconds, then counters and gauges with their values.
+     */
+    public String dump() {
+        StringBuilder text = new StringBuilder();
+        for (Histogram histogram : new TreeMap<>(histograms).values()) {
+            text.append(histogram).append('\n');
+        }
+        Map<String, Long> values = new TreeMap<>();
+        counters.forEach((name, counter) -> values.put(name, counter.getValue()));
+        gauges.forEach((name, gauge) -> values.put(name, gauge.getAsLong()));
+        values.forEach((name, value) -> text.append(name).append(' ').append(value).append('\n'));
+        return text.toString();
+    }
+
+    private <T> void register(String type, String name, T metric, Class<T> view) {
+        if (domain == null) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new StandardMBean(metric, view), objectName(type, name));
+        } catch (JMException e) {
+            throw new IllegalStateException("cannot register metric " + name + " with JMX", e);
+        }
+    }
+
+    private void unregister(String type, String name) {
+        if (domain == null) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName(type, name));
+        } catch (JMException e) {
+            throw new IllegalStateException("cannot unregister metric " + name + " from JMX", e);
+        }
+    }
+
+    private ObjectName objectName(String type, String name) throws MalformedObjectNameException {
+        // host names and dotted names are legal as they are; anything else is quoted
+        boolean plain = name.chars().allMatch(c -> Character.isLetterOrDigit(c) || c == '.' || c == '-' || c == '_');
+        return new ObjectName(domain + ":type=" + type + ",name=" + (plain ? name : ObjectName.quote(name)));
+    }
+}
@@ -0,0 +1,129 @@
+package SearchEngine;
+
+import InvertedIndex.Impacts;
+import InvertedIndex.IndexReader;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Okapi BM25, a {@link ScoringModel} that saturates term frequency and normalizes by
+ * document length:
+ * <pre>
+ * score(d) = sum over query terms t of  count_t * idf_t * tf * (k1 + 1) / (tf + k1 * (1 - b + b * dl / avgdl))
+ * idf_t    = ln(1 + (N - df_t + 0.5) / (df_t + 0.5))
+ * </pre>
+ * where dl is the document's length and avgdl the average over the collection. The idf
+ * is computed once per query; no logarithm is taken per posting.
+ * <p>
+ * Against an index whose {@link IndexReader#impacts()} were computed with the same k1
+ * and b, the tf part of every posting is its precomputed, quantized impact: each term
+ * is bounded by its largest impact, so WAND prunes about as tightly as the scores
+ * themselves allow, and if the index also holds impact-ordered postings the query runs
+ * impact-ordered and stops early. Other indexes, such as an in-memory
+ * {@link InvertedIndex.InvertedIndex} still growing, are scored exactly from each
+ * document's length, with the loose bound idf * (k1 + 1) per term.
+ */
+public final class Bm25 implements ScoringModel {
+    public final double k1;
+    public final double b;
+
+    // the usual parameters, which IndexWriter precomputes impacts with
+    public Bm25() {
+        this(Impacts.DEFAULT_K1, Impacts.DEFAULT_B);
+    }
+
+    /**
+     * @throws IllegalArgumentException if k1 is not positive or b is not from 0 to 1
+     */
+    public Bm25(double k1, double b) {
+        if (!(k1 > 0) || !(b >= 0 && b <= 1)) {
+            throw new IllegalArgumentException("BM25 needs k1 > 0 and b from 0 to 1: k1=" + k1 + ", b=" + b);
+        }
+        this.k1 = k1;
+        this.b = b;
+    }
+
+    @Override
+    public Map<String, TermScorer> scorers(IndexReader reader, Map<String, Integer> termCounts) {
+        int totalDocs = reader.numDocs();
+        Impacts impacts = reader.impacts();
+        boolean precomputed = impacts != null && impacts.matches(k1, b);
+        if (!precomputed) {
+            impacts = new Impacts(k1, b, Impacts.averageDocLength(reader));
+        }
+
+        Map<String, TermScorer> scorers = new HashMap<>();
+        for (Map.Entry<String, Integer> entry : termCounts.entrySet()) {
+            String term = entry.getKey();
+            int docFreq = reader.docFreq(term);
+            if (docFreq == 0) {
+                continue;
+            }
+            double idf = Math.log(1 + (totalDocs - docFreq + 0.5) / (docFreq + 0.5));
+            double weight = entry.getValue() * idf;
+            scorers.put(term, precomputed
+                    ? new ImpactScorer(weight, impacts, reader, reader.maxImpact(term))
+                    : new ExactScorer(weight, impacts, reader));
+        }
+        return scorers;
+    }
+
+    @Override
+    public String toString() {
+        return "bm25(k1=" + k1 + ", b=" + b + ")";
+    }
+
+    // scores each posting by its impact, quantized the way IndexWriter stored it
+    private static final class ImpactScorer implements TermScorer {
+        private final double weight;
+        private final Impacts impacts;
+        private final IndexReader reader;
+        private final double maxScore;
+
+        ImpactScorer(double weight, Impacts impacts, IndexReader reader, int maxImpact) {
+            this.weight = weight;
+            this.impacts = impacts;
+            this.reader = reader;
+            this.maxScore = impactScore(maxImpact);
+        }
+
+        @Override
+        public double score(int docId, int termFrequency) {
+            return impactScore(impacts.quantize(termFrequency, reader.docLength(docId)));
+        }
+
+        @Override
+        public double maxScore() {
+            return maxScore;
+        }
+
+        @Override
+        public double impactScore(int impact) {
+            return weight * impacts.weight(impact);
+        }
+    }
+
+    private static final class ExactScorer implements TermScorer {
+        private final double weight;
+        private final Impacts impacts;
+        private final IndexReader reader;
+
+        ExactScorer(double weight, Impacts impacts, IndexReader reader) {
+            this.weight = weight;
+            this.impacts = impacts;
+            this.reader = reader;
+        }
+
+        @Override
+        public double score(int docId, int termFrequency) {
+            return weight * impacts.saturation(termFrequency, reader.docLength(docId));
+        }
+
+        // the tf part approaches k1 + 1 as tf grows
+        @Override
+        public double maxScore() {
+            return weight * (impacts.k1 + 1);
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package SearchEngine;
+
+import InvertedIndex.IndexReader;
+import InvertedIndex.PostingsCursor;
+
+import java.util.*;
+
+/**
+ * A parsed Boolean query: terms and phrases combined with AND, OR and NOT.
+ * <p>
+ * A NOT clause never matches on its own. Within a group it excludes documents from
+ * the group's other clauses, so {@code pyramid NOT giza} is pyramid minus giza, and a
+ * group made only of negations matches nothing.
+ */
+abstract class BooleanQuery {
+
+    /**
+     * An iterator over the matching documents, or null if the query can match none.
+     */
+    abstract DocIterator iterator(IndexReader index);
+
+    // adds the terms that are not negated, counting repeats, as the terms results are ranked by
+    abstract void collectTerms(Map<String, Integer> termCounts);
+
+    static final class TermNode extends BooleanQuery {
+        final String term;
+
+        TermNode(String term) {
+            this.term = term;
+        }
+
+        @Override
+        DocIterator iterator(IndexReader index) {
+            PostingsCursor cursor = index.postings(term);
+            return cursor == null ? null : new DocIterator.Term(cursor);
+        }
+
+        @Override
+        void collectTerms(Map<String, Integer> termCounts) {
+            termCounts.merge(term, 1, Integer::sum);
+        }
+
+        @Override
+        public String toString() {
+            return term;
+        }
+    }
+
+    static final class PhraseNode extends BooleanQuery {
+        final Phrase phrase;
+
+        PhraseNode(Phrase phrase) {
+            this.phrase = phrase;
+        }
+
+        // without positions a phrase only requires all of its terms
+        @Override
+        DocIterator iterator(IndexReader index) {
+            boolean positional = index.hasPositions();
+            Map<String, PostingsCursor> cursors = new HashMap<>();
+            List<DocIterator> terms = new ArrayList<>();
+            for (String term : phrase.terms) {
+                if (cursors.containsKey(term)) continue;
+                PostingsCursor cursor = index.postings(term, positional);
+                if (cursor == null) {
+                    return null;
+                }
+                cursors.put(term, cursor);
+                terms.add(new DocIterator.Term(cursor));
+            }
+            DocIterator conjunction = terms.size() == 1 ? terms.get(0) : new DocIterator.Conjunction(terms);
+            if (!positional) {
+                return conjunction;
+            }
+            PostingsCursor[] phraseCursors = new PostingsCursor[phrase.terms.length];
+            for (int i = 0; i < phraseCursors.length; i++) {
+                phraseCursors[i] = cursors.get(phrase.terms[i]);
+            }
+            return new DocIterator.PhraseFilter(conjunction, phrase, phraseCursors);
+        }
+
+        @Override
+        void collectTerms(Map<String, Integer> termCounts) {
+            for (String term : phrase.terms) {
+                termCounts.merge(term, 1, Integer::sum);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return phrase.toString();
+        }
+    }
+
+    static final class NotNode extends BooleanQuery {
+        final BooleanQuery clause;
+
+        NotNode(BooleanQuery clause) {
+            this.clause = clause;
+        }
+
+        @Override
+        DocIterator iterator(IndexReader index) {
+            return null;
+        }
+
+        @Override
+        void collectTerms(Map<String, Integer> termCounts) {
+        }
+
+        @Override
+        public String toString() {
+            return "NOT " + clause;
+        }
+    }
+
+    static final class Group extends BooleanQuery {
+        final boolean conjunction;
+        final List<BooleanQuery> clauses;
+
+        Group(boolean conjunction, List<BooleanQuery> clauses) {
+            this.conjunction = conjunction;
+            this.clauses = clauses;
+        }
+
+        @Override
+        DocIterator iterator(IndexReader index) {
+            List<DocIterator> included = new ArrayList<>();
+            List<DocIterator> excluded = new ArrayList<>();
+            for (BooleanQuery clause : clauses) {
+                if (clause instanceof NotNode not) {
+                    DocIterator iterator = not.clause.iterator(index);
+                    if (iterator != null) excluded.add(iterator);
+                    continue;
+                }
+                DocIterator iterator = clause.iterator(index);
+                if (iterator != null) {
+                    included.add(iterator);
+                } else if (conjunction) {
+                    return null;
+                }
+            }
+            if (included.isEmpty()) {
+                return null;
+            }
+            DocIterator matches = included.size() == 1 ? included.get(0)
+                    : conjunction ? new DocIterator.Conjunction(included) : new DocIterator.Disjunction(included);
+            if (!excluded.isEmpty()) {
+                matches = new DocIterator.Exclusion(matches,
+                        excluded.size() == 1 ? excluded.get(0) : new DocIterator.Disjunction(excluded));
+            }
+            return matches;
+        }
+
+        @Override
+        void collectTerms(Map<String, Integer> termCounts) {
+            for (BooleanQuery clause : clauses) {
+                clause.collectTerms(termCounts);
+            }
+        }
+
+        @Override
+        public String toString() {
+            StringJoiner joiner = new StringJoiner(conjunction ? " AND " : " OR ", "(", ")");
+            for (BooleanQuery clause : clauses) {
+                joiner.add(clause.toString());
+            }
+            return joiner.toString();
+        }
+    }
+}
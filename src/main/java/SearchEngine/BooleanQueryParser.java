@@ -0,0 +1,182 @@
+package SearchEngine;
+
+import InvertedIndex.IndexReader;
+import Tokenizer.Analyzer;
+
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Parses Boolean queries such as {@code (pyramid OR tomb) AND "old kingdom" NOT giza}.
+ * <p>
+ * Operators are upper-case words, so "and", "or" and "not" in ordinary queries stay
+ * search terms. NOT binds tightest, then AND, then OR; adjacent clauses without an
+ * operator are ORed, like the words of a ranked query. A word that analyzes to
+ * several terms ({@code giza's}) becomes a phrase. A word with wildcards
+ * ({@code pharao*}) matches any of the terms it expands to, see {@link Wildcard}.
+ * <p>
+ * Grammar:
+ * <pre>
+ * or      := and (OR? and)*
+ * and     := unary (AND unary)*
+ * unary   := NOT unary | primary
+ * primary := '(' or ')' | '"' words '"' ('~' N)? | word
+ * </pre>
+ */
+final class BooleanQueryParser {
+    private static final Pattern OPERATOR = Pattern.compile("\\b(AND|OR|NOT)\\b|[()]");
+    // groups: 1 '(', 2 ')', 3 quoted text, 4 proximity slop, 5 word
+    private static final Pattern TOKEN = Pattern.compile("(\\()|(\\))|\"([^\"]*)\"(?:~(\\d{1,9}))?|([^\\s()]+)");
+
+    private final Analyzer analyzer = new Analyzer();
+    // expands wildcard words, or null to leave them out
+    private final IndexReader reader;
+    private final Matcher tokens;
+    private boolean hasToken;
+
+    private BooleanQueryParser(String query, IndexReader reader) {
+        this.reader = reader;
+        this.tokens = TOKEN.matcher(query);
+        this.hasToken = tokens.find();
+    }
+
+    // whether the query uses any Boolean syntax, or should be ranked as a bag of words
+    static boolean isBoolean(String query) {
+        return OPERATOR.matcher(query).find();
+    }
+
+    /**
+     * The parsed query, or null if it contains no terms at all. Wildcard words are
+     * expanded against the reader, or left out if it is null.
+     *
+     * @throws IllegalArgumentException if the query is malformed
+     */
+    static BooleanQuery parse(String query, IndexReader reader) {
+        BooleanQueryParser parser = new BooleanQueryParser(query, reader);
+        BooleanQuery parsed = parser.parseOr();
+        if (parser.hasToken) {
+            throw new IllegalArgumentException("unexpected '" + parser.tokens.group() + "' in query: " + query);
+        }
+        return parsed;
+    }
+
+    private BooleanQuery parseOr() {
+        List<BooleanQuery> clauses = new ArrayList<>();
+        add(clauses, parseAnd());
+        while (hasToken && tokens.group(2) == null) {
+            if (isOperator("OR")) {
+                consume();
+                expectOperand("OR");
+            }
+            add(clauses, parseAnd());
+        }
+        return group(false, clauses);
+    }
+
+    private BooleanQuery parseAnd() {
+        List<BooleanQuery> clauses = new ArrayList<>();
+        add(clauses, parseUnary());
+        while (isOperator("AND")) {
+            consume();
+            expectOperand("AND");
+            add(clauses, parseUnary());
+        }
+        return group(true, clauses);
+    }
+
+    private BooleanQuery parseUnary() {
+        if (isOperator("NOT")) {
+            consume();
+            expectOperand("NOT");
+            BooleanQuery clause = parseUnary();
+            return clause == null ? null : new BooleanQuery.NotNode(clause);
+        }
+        return parsePrimary();
+    }
+
+    private BooleanQuery parsePrimary() {
+        if (!hasToken) {
+            throw new IllegalArgumentException("query ends unexpectedly");
+        }
+        if (tokens.group(1) != null) {
+            consume();
+            BooleanQuery inner = parseOr();
+            if (!hasToken || tokens.group(2) == null) {
+                throw new IllegalArgumentException("missing ')'");
+            }
+            consume();
+            return inner;
+        }
+        if (tokens.group(2) != null) {
+            throw new IllegalArgumentException("unexpected ')'");
+        }
+        if (isOperator("AND") || isOperator("OR")) {
+            throw new IllegalArgumentException("expected a term before " + tokens.group());
+        }
+        String quoted = tokens.group(3);
+        String word = tokens.group(5);
+        int slop = tokens.group(4) == null ? Phrase.EXACT : Integer.parseInt(tokens.group(4));
+        consume();
+        return quoted != null ? terms(quoted, slop) : word(word);
+    }
+
+    /*
+     * A wildcard is the OR of the terms it expands to. One that matches nothing stays
+     * as a term no document contains, so ANDing it matches nothing, as it would for
+     * an unknown word.
+     */
+    private BooleanQuery word(String text) {
+        List<BooleanQuery> clauses = new ArrayList<>();
+        String rest = Wildcard.expand(text, reader, (pattern, terms) -> {
+            List<BooleanQuery> alternatives = new ArrayList<>();
+            for (String term : terms) {
+                alternatives.add(new BooleanQuery.TermNode(term));
+            }
+            clauses.add(terms.isEmpty() ? new BooleanQuery.TermNode(pattern) : group(false, alternatives));
+        });
+        add(clauses, terms(rest, Phrase.EXACT));
+        return group(true, clauses);
+    }
+
+    // a single term, or a phrase when the text analyzes to several
+    private BooleanQuery terms(String text, int slop) {
+        List<String> terms = new ArrayList<>();
+        List<Integer> positions = new ArrayList<>();
+        analyzer.analyze(text, (term, position, start, end) -> {
+            terms.add(term);
+            positions.add(position);
+        });
+        if (terms.isEmpty()) {
+            return null;
+        }
+        if (terms.size() == 1) {
+            return new BooleanQuery.TermNode(terms.get(0));
+        }
+        return new BooleanQuery.PhraseNode(new Phrase(terms, positions, slop));
+    }
+
+    private boolean isOperator(String operator) {
+        return hasToken && operator.equals(tokens.group(5));
+    }
+
+    private void expectOperand(String operator) {
+        if (!hasToken || tokens.group(2) != null) {
+            throw new IllegalArgumentException("expected a term after " + operator);
+        }
+    }
+
+    private void consume() {
+        hasToken = tokens.find();
+    }
+
+    // clauses that analyzed to no terms at all are dropped
+    private static void add(List<BooleanQuery> clauses, BooleanQuery clause) {
+        if (clause != null) clauses.add(clause);
+    }
+
+    private static BooleanQuery group(boolean conjunction, List<BooleanQuery> clauses) {
+        if (clauses.isEmpty()) return null;
+        return clauses.size() == 1 ? clauses.get(0) : new BooleanQuery.Group(conjunction, clauses);
+    }
+}
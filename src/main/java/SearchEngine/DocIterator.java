@@ -0,0 +1,247 @@
+package SearchEngine;
+
+import InvertedIndex.PostingsCursor;
+
+import java.util.*;
+
+/**
+ * Iterates the doc ids matched by one node of a {@link BooleanQuery}, in increasing order.
+ * <p>
+ * Like {@link PostingsCursor}, an iterator starts before its first document, and
+ * {@link #advance(int)} never moves backwards. Composite iterators only ever call
+ * advance on their children, so every leaf leaps over whole postings blocks through
+ * the skip entries instead of decoding them.
+ */
+abstract class DocIterator {
+    static final int NO_MORE_DOCS = PostingsCursor.NO_MORE_DOCS;
+
+    protected int docId = -1;
+
+    final int docId() {
+        return docId;
+    }
+
+    abstract int next();
+
+    // the first doc id >= target, or the current one if already there
+    abstract int advance(int target);
+
+    // an upper bound on the number of matches, used to pick the rarest clause
+    abstract long cost();
+
+    static final class Term extends DocIterator {
+        final PostingsCursor cursor;
+
+        Term(PostingsCursor cursor) {
+            this.cursor = cursor;
+        }
+
+        @Override
+        int next() {
+            return docId = cursor.next();
+        }
+
+        @Override
+        int advance(int target) {
+            return docId = cursor.advance(target);
+        }
+
+        @Override
+        long cost() {
+            return cursor.size();
+        }
+    }
+
+    /**
+     * Documents matched by every clause. The rarest clause leads, and the others
+     * are advanced to its candidates; whenever one overshoots, the lead leaps to
+     * that doc instead. The work is bounded by the rarest clause's matches.
+     */
+    static final class Conjunction extends DocIterator {
+        private final DocIterator lead;
+        private final DocIterator[] others;
+
+        Conjunction(List<DocIterator> clauses) {
+            DocIterator[] sorted = clauses.toArray(new DocIterator[0]);
+            Arrays.sort(sorted, Comparator.comparingLong(DocIterator::cost));
+            this.lead = sorted[0];
+            this.others = Arrays.copyOfRange(sorted, 1, sorted.length);
+        }
+
+        @Override
+        int next() {
+            return align(lead.next());
+        }
+
+        @Override
+        int advance(int target) {
+            return docId >= target ? docId : align(lead.advance(target));
+        }
+
+        private int align(int doc) {
+            outer:
+            while (doc != NO_MORE_DOCS) {
+                for (DocIterator other : others) {
+                    int otherDoc = other.advance(doc);
+                    if (otherDoc > doc) {
+                        doc = lead.advance(otherDoc);
+                        continue outer;
+                    }
+                }
+                break;
+            }
+            return docId = doc;
+        }
+
+        @Override
+        long cost() {
+            return lead.cost();
+        }
+    }
+
+    /**
+     * Documents matched by any clause, merged through a min-heap on the clauses' doc ids.
+     */
+    static final class Disjunction extends DocIterator {
+        private final DocIterator[] heap;
+        private final long cost;
+
+        Disjunction(List<DocIterator> clauses) {
+            this.heap = clauses.toArray(new DocIterator[0]);
+            long total = 0;
+            for (DocIterator clause : heap) {
+                total += clause.cost();
+            }
+            this.cost = total;
+        }
+
+        @Override
+        int next() {
+            if (docId == -1) {
+                for (DocIterator clause : heap) {
+                    clause.next();
+                }
+                heapify();
+            } else if (docId != NO_MORE_DOCS) {
+                int current = docId;
+                while (heap[0].docId() == current) {
+                    heap[0].next();
+                    siftDown(0);
+                }
+            }
+            return docId = heap[0].docId();
+        }
+
+        @Override
+        int advance(int target) {
+            if (docId >= target) {
+                return docId;
+            }
+            while (heap[0].docId() < target) {
+                heap[0].advance(target);
+                siftDown(0);
+            }
+            return docId = heap[0].docId();
+        }
+
+        @Override
+        long cost() {
+            return cost;
+        }
+
+        private void heapify() {
+            for (int i = heap.length / 2 - 1; i >= 0; i--) {
+                siftDown(i);
+            }
+        }
+
+        private void siftDown(int i) {
+            DocIterator node = heap[i];
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= heap.length) break;
+                if (child + 1 < heap.length && heap[child + 1].docId() < heap[child].docId()) child++;
+                if (heap[child].docId() >= node.docId()) break;
+                heap[i] = heap[child];
+                i = child;
+            }
+            heap[i] = node;
+        }
+    }
+
+    /**
+     * Documents of include that excluded does not match. Excluded is only advanced
+     * to include's candidates, so it skips along rather than being enumerated.
+     */
+    static final class Exclusion extends DocIterator {
+        private final DocIterator include;
+        private final DocIterator excluded;
+
+        Exclusion(DocIterator include, DocIterator excluded) {
+            this.include = include;
+            this.excluded = excluded;
+        }
+
+        @Override
+        int next() {
+            return filter(include.next());
+        }
+
+        @Override
+        int advance(int target) {
+            return docId >= target ? docId : filter(include.advance(target));
+        }
+
+        private int filter(int doc) {
+            while (doc != NO_MORE_DOCS && excluded.advance(doc) == doc) {
+                doc = include.next();
+            }
+            return docId = doc;
+        }
+
+        @Override
+        long cost() {
+            return include.cost();
+        }
+    }
+
+    /**
+     * Documents of a conjunction over a phrase's terms in which the phrase itself occurs.
+     */
+    static final class PhraseFilter extends DocIterator {
+        private final DocIterator terms;
+        private final Phrase phrase;
+        private final PostingsCursor[] cursors;
+        private final int[] pointers;
+
+        // cursors[i] must iterate phrase.terms[i] with positions, and terms must match them all
+        PhraseFilter(DocIterator terms, Phrase phrase, PostingsCursor[] cursors) {
+            this.terms = terms;
+            this.phrase = phrase;
+            this.cursors = cursors;
+            this.pointers = new int[cursors.length];
+        }
+
+        @Override
+        int next() {
+            return filter(terms.next());
+        }
+
+        @Override
+        int advance(int target) {
+            return docId >= target ? docId : filter(terms.advance(target));
+        }
+
+        private int filter(int doc) {
+            while (doc != NO_MORE_DOCS && !phrase.matches(cursors, pointers)) {
+                doc = terms.next();
+            }
+            return docId = doc;
+        }
+
+        @Override
+        long cost() {
+            return terms.cost();
+        }
+    }
+}
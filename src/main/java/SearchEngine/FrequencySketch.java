@@ -0,0 +1,77 @@
+package SearchEngine;
+
+/**
+ * Count-min sketch of 4-bit counters estimating how often each key was seen recently,
+ * the frequency filter behind TinyLFU admission in {@link QueryCache}.
+ * <p>
+ * Every key maps to one counter in each of four rows and its frequency is the
+ * minimum of them, which overestimates only on collisions. Once the number of
+ * increments reaches the sample size all counters are halved, so the sketch
+ * forgets old popularity and tracks the current workload. Not thread-safe.
+ */
+final class FrequencySketch {
+    private static final long[] SEEDS = {
+            0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L
+    };
+    private static final long RESET_MASK = 0x7777777777777777L;
+
+    // each long packs sixteen 4-bit counters
+    private final long[] table;
+    private final int tableMask;
+    private final int sampleSize;
+    private int additions;
+
+    FrequencySketch(int maximumSize) {
+        int size = Integer.highestOneBit(Math.max(2, maximumSize) - 1) << 1;
+        this.table = new long[size];
+        this.tableMask = size - 1;
+        this.sampleSize = 10 * Math.max(1, maximumSize);
+    }
+
+    int frequency(int hash) {
+        int frequency = Integer.MAX_VALUE;
+        for (int row = 0; row < SEEDS.length; row++) {
+            long spread = spread(hash, row);
+            int shift = counterShift(spread);
+            frequency = Math.min(frequency, (int) ((table[index(spread)] >>> shift) & 0xFL));
+        }
+        return frequency;
+    }
+
+    void increment(int hash) {
+        boolean added = false;
+        for (int row = 0; row < SEEDS.length; row++) {
+            long spread = spread(hash, row);
+            int index = index(spread);
+            int shift = counterShift(spread);
+            if (((table[index] >>> shift) & 0xFL) < 15) {
+                table[index] += 1L << shift;
+                added = true;
+            }
+        }
+        if (added && ++additions >= sampleSize) {
+            reset();
+        }
+    }
+
+    // halve every counter to age out stale popularity
+    private void reset() {
+        for (int i = 0; i < table.length; i++) {
+            table[i] = (table[i] >>> 1) & RESET_MASK;
+        }
+        additions /= 2;
+    }
+
+    private static long spread(int hash, int row) {
+        long h = (hash + SEEDS[row]) * SEEDS[row];
+        return h ^ (h >>> 32);
+    }
+
+    private int index(long spread) {
+        return (int) (spread >>> 4) & tableMask;
+    }
+
+    private static int counterShift(long spread) {
+        return (int) (spread & 0xF) << 2;
+    }
+}
@@ -0,0 +1,176 @@
+package SearchEngine;
+
+import DocumentStore.DocumentReader;
+import InvertedIndex.IndexReader;
+import InvertedIndex.PostingsCursor;
+import Tokenizer.Analyzer;
+
+import java.util.*;
+
+/**
+ * Builds the snippet shown for a result: the window of a document holding the most
+ * query terms, with every match marked.
+ * <p>
+ * Matches are analyzed terms, not substrings, so a query for "pharaohs" marks
+ * "Pharaoh" and "PHARAOHS" but nothing inside longer words. Their positions come from
+ * the index's position lists, each reached through the skip entries, and the window
+ * with the most distinct terms (then the most matches) wins. Only then is any text
+ * read: {@link DocumentReader#excerpt} inflates just the blocks around the window, and
+ * re-analyzing that excerpt gives each token's characters. The cost depends on the
+ * query terms' frequencies in the document and on the window size, not on how long
+ * the document is.
+ * <p>
+ * Against an index without positions the snippet is the start of the document.
+ * A Highlighter is thread-safe.
+ */
+public class Highlighter {
+    private static final int DEFAULT_WINDOW = 30;
+
+    private final IndexReader index;
+    private final DocumentReader documents;
+    // snippet length in tokens
+    private final int window;
+
+    public Highlighter(IndexReader index, DocumentReader documents) {
+        this(index, documents, DEFAULT_WINDOW);
+    }
+
+    public Highlighter(IndexReader index, DocumentReader documents, int window) {
+        if (window < 1) {
+            throw new IllegalArgumentException("window must be positive: " + window);
+        }
+        this.index = index;
+        this.documents = documents;
+        this.window = window;
+    }
+
+    /**
+     * The snippet of a document for the given analyzed terms, such as
+     * {@link SearchEngine#highlightTerms(String)} returns.
+     */
+    public Snippet snippet(int docId, Collection<String> terms) {
+        Set<String> wanted = new HashSet<>(terms);
+        IndexReader reader = index.snapshot();
+        int densest = reader.hasPositions() ? densestWindow(reader, docId, wanted) : 0;
+        // keep a full window when the best matches sit near the end
+        int start = Math.max(0, Math.min(densest, reader.docLength(docId) - window));
+        int end = start + window;
+
+        String excerpt = documents.excerpt(docId, start, end);
+        if (excerpt == null) {
+            return new Snippet("", new int[0], false, false);
+        }
+        int base = start - start % DocumentReader.TOKEN_INTERVAL;
+        int[] bounds = {-1, -1};
+        List<int[]> matches = new ArrayList<>();
+        new Analyzer().analyze(excerpt, (term, position, from, to) -> {
+            int tokenPosition = base + position;
+            if (tokenPosition < start || tokenPosition >= end) {
+                return;
+            }
+            if (bounds[0] < 0) {
+                bounds[0] = from;
+            }
+            bounds[1] = to;
+            if (wanted.contains(term)) {
+                matches.add(new int[]{from, to});
+            }
+        });
+        if (bounds[0] < 0) {
+            return new Snippet("", new int[0], start > 0, false);
+        }
+
+        int[] highlights = new int[matches.size() * 2];
+        for (int i = 0; i < matches.size(); i++) {
+            highlights[2 * i] = matches.get(i)[0] - bounds[0];
+            highlights[2 * i + 1] = matches.get(i)[1] - bounds[0];
+        }
+        return new Snippet(excerpt.substring(bounds[0], bounds[1]), highlights, start > 0, end < reader.docLength(docId));
+    }
+
+    // the first position of the window that covers the most distinct terms, then the most matches
+    private int densestWindow(IndexReader reader, int docId, Set<String> terms) {
+        // position << 32 | term, so sorting orders matches by position
+        long[] matches = new long[16];
+        int count = 0, termIndex = 0;
+        for (String term : terms) {
+            PostingsCursor cursor = reader.postings(term, true);
+            if (cursor != null && cursor.advance(docId) == docId) {
+                int[] positions = cursor.positions();
+                int frequency = cursor.termFrequency();
+                if (count + frequency > matches.length) {
+                    matches = Arrays.copyOf(matches, Math.max(matches.length * 2, count + frequency));
+                }
+                for (int i = 0; i < frequency; i++) {
+                    matches[count++] = (long) positions[i] << 32 | termIndex;
+                }
+            }
+            termIndex++;
+        }
+        if (count == 0) {
+            return 0;
+        }
+        Arrays.sort(matches, 0, count);
+
+        // slide over the matches, keeping those within one window of the newest
+        int[] inWindow = new int[termIndex];
+        int distinct = 0, bestDistinct = 0, bestMatches = 0, bestFirst = 0, bestLast = 0;
+        for (int first = 0, last = 0; last < count; last++) {
+            if (inWindow[(int) matches[last]]++ == 0) distinct++;
+            while ((int) (matches[last] >>> 32) - (int) (matches[first] >>> 32) >= window) {
+                if (--inWindow[(int) matches[first]] == 0) distinct--;
+                first++;
+            }
+            if (distinct > bestDistinct || (distinct == bestDistinct && last - first + 1 > bestMatches)) {
+                bestDistinct = distinct;
+                bestMatches = last - first + 1;
+                bestFirst = (int) (matches[first] >>> 32);
+                bestLast = (int) (matches[last] >>> 32);
+            }
+        }
+        // center the matches in the window
+        return bestFirst - (window - (bestLast - bestFirst + 1)) / 2;
+    }
+
+    /**
+     * A piece of a document's text with the characters of each match marked.
+     */
+    public static class Snippet {
+        public final String text;
+        // start and end offsets in text of each match, in pairs
+        public final int[] highlights;
+        // whether the document continues before and after the snippet
+        public final boolean leading;
+        public final boolean trailing;
+
+        public Snippet(String text, int[] highlights, boolean leading, boolean trailing) {
+            this.text = text;
+            this.highlights = highlights;
+            this.leading = leading;
+            this.trailing = trailing;
+        }
+
+        /**
+         * The text with each match wrapped in open and close, and "..." where the
+         * document continues.
+         */
+        public String format(String open, String close) {
+            StringBuilder formatted = new StringBuilder(text.length() + 6 + highlights.length * (open.length() + close.length()));
+            if (leading) formatted.append("...");
+            int last = 0;
+            for (int i = 0; i < highlights.length; i += 2) {
+                formatted.append(text, last, highlights[i]).append(open)
+                        .append(text, highlights[i], highlights[i + 1]).append(close);
+                last = highlights[i + 1];
+            }
+            formatted.append(text, last, text.length());
+            if (trailing) formatted.append("...");
+            return formatted.toString();
+        }
+
+        @Override
+        public String toString() {
+            return format("", "");
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package SearchEngine;
+
+import InvertedIndex.PostingsCursor;
+
+import java.util.*;
+
+/**
+ * A quoted part of a query: either an exact phrase, whose terms must occur at the same
+ * relative positions as in the query, or a proximity query ({@code "a b"~N}), whose
+ * terms must all occur, in any order, within a span of at most N positions.
+ * <p>
+ * Matching intersects the position lists of a document that already contains every
+ * term, one pointer per list, so it costs O(sum of the terms' frequencies in the
+ * document) and runs inside the top-k loop on candidates only.
+ */
+final class Phrase {
+    // slop of an exact phrase
+    static final int EXACT = -1;
+
+    final String[] terms;
+    // position of each term relative to the first, taken from the analyzed query
+    final int[] offsets;
+    final int slop;
+
+    Phrase(List<String> terms, List<Integer> positions, int slop) {
+        if (slop != EXACT) {
+            // order and repetition do not matter for proximity, only which terms occur
+            List<String> distinct = new ArrayList<>(new LinkedHashSet<>(terms));
+            terms = distinct;
+            positions = Collections.nCopies(distinct.size(), positions.get(0));
+        }
+        this.terms = terms.toArray(new String[0]);
+        this.offsets = new int[terms.size()];
+        for (int i = 0; i < offsets.length; i++) {
+            offsets[i] = positions.get(i) - positions.get(0);
+        }
+        this.slop = slop;
+    }
+
+    /**
+     * Whether the document the cursors are positioned on contains the phrase. cursors[i]
+     * iterates the postings of terms[i] with positions; pointers is scratch space of the
+     * same length.
+     */
+    boolean matches(PostingsCursor[] cursors, int[] pointers) {
+        Arrays.fill(pointers, 0);
+        return slop == EXACT ? matchesExact(cursors, pointers) : matchesWithin(cursors, pointers);
+    }
+
+    // leapfrog over candidate start positions until every term lines up
+    private boolean matchesExact(PostingsCursor[] cursors, int[] pointers) {
+        int start = cursors[0].positions()[0] - offsets[0];
+        while (true) {
+            boolean aligned = true;
+            for (int i = 0; i < cursors.length; i++) {
+                int[] positions = cursors[i].positions();
+                int count = cursors[i].termFrequency();
+                int wanted = start + offsets[i];
+                while (pointers[i] < count && positions[pointers[i]] < wanted) {
+                    pointers[i]++;
+                }
+                if (pointers[i] == count) {
+                    return false;
+                }
+                int candidate = positions[pointers[i]] - offsets[i];
+                if (candidate > start) {
+                    start = candidate;
+                    aligned = false;
+                }
+            }
+            if (aligned) {
+                return true;
+            }
+        }
+    }
+
+    // slide a window over the merged position lists, always advancing its leftmost term
+    private boolean matchesWithin(PostingsCursor[] cursors, int[] pointers) {
+        while (true) {
+            int min = Integer.MAX_VALUE, max = Integer.MIN_VALUE, minTerm = 0;
+            for (int i = 0; i < cursors.length; i++) {
+                int position = cursors[i].positions()[pointers[i]];
+                if (position < min) {
+                    min = position;
+                    minTerm = i;
+                }
+                max = Math.max(max, position);
+            }
+            if (max - min <= slop) {
+                return true;
+            }
+            if (++pointers[minTerm] == cursors[minTerm].termFrequency()) {
+                return false;
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "\"" + String.join(" ", terms) + "\"" + (slop == EXACT ? "" : "~" + slop);
+    }
+}
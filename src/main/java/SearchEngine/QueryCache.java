@@ -0,0 +1,129 @@
+package SearchEngine;
+
+import java.util.*;
+
+/**
+ * Bounded cache of ranked results, keyed by the analyzed query.
+ * <p>
+ * Entries are kept in LRU order, but a new query only displaces the least recently
+ * used one when it has been asked for more often recently (TinyLFU admission, with
+ * frequencies estimated by a {@link FrequencySketch}). A burst of one-off queries
+ * therefore cannot flush the popular ones.
+ * <p>
+ * Every lookup carries the index generation. When a newer one arrives the whole
+ * cache is dropped, and results computed against an older generation are never
+ * stored. A lookup from an older generation, such as a query that began on the
+ * snapshot before a refresh, misses without touching the cache, so queries that
+ * straddle a refresh do not keep wiping each other's entries.
+ * All methods are synchronized; they are cheap next to evaluating a query.
+ */
+public class QueryCache {
+    private final int maximumSize;
+    private final LinkedHashMap<String, List<SearchEngine.Result>> entries;
+    private final FrequencySketch sketch;
+    private long generation;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long rejections;
+    private long invalidations;
+
+    public QueryCache(int maximumSize) {
+        if (maximumSize < 1) {
+            throw new IllegalArgumentException("maximumSize must be positive: " + maximumSize);
+        }
+        this.maximumSize = maximumSize;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true);
+        this.sketch = new FrequencySketch(maximumSize);
+    }
+
+    /**
+     * The cached results for the key, or null on a miss. Every lookup counts
+     * towards the key's frequency, whether or not it hits; one from an older
+     * generation than the cache's is a miss the stats do not count.
+     */
+    public synchronized List<SearchEngine.Result> get(String key, long generation) {
+        sketch.increment(key.hashCode());
+        if (generation < this.generation) {
+            return null;
+        }
+        sync(generation);
+        List<SearchEngine.Result> results = entries.get(key);
+        if (results == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+        return results;
+    }
+
+    /**
+     * Offers results computed against the given index generation. They are dropped
+     * if the index has moved on, or if the cache is full and the key is not more
+     * frequent than the entry it would evict.
+     */
+    public synchronized void put(String key, long generation, List<SearchEngine.Result> results) {
+        if (generation < this.generation) {
+            return;
+        }
+        sync(generation);
+        if (entries.containsKey(key) || entries.size() < maximumSize) {
+            entries.put(key, results);
+            return;
+        }
+        Map.Entry<String, List<SearchEngine.Result>> victim = entries.entrySet().iterator().next();
+        if (sketch.frequency(key.hashCode()) > sketch.frequency(victim.getKey().hashCode())) {
+            entries.remove(victim.getKey());
+            entries.put(key, results);
+            evictions++;
+        } else {
+            rejections++;
+        }
+    }
+
+    // drops every entry when the generation is newer than the cache's
+    private void sync(long generation) {
+        if (generation > this.generation) {
+            invalidations += entries.size();
+            entries.clear();
+            this.generation = generation;
+        }
+    }
+
+    public synchronized Stats stats() {
+        return new Stats(hits, misses, evictions, rejections, invalidations, entries.size());
+    }
+
+    public static class Stats {
+        public final long hits;
+        public final long misses;
+        // entries displaced by a more frequent query
+        public final long evictions;
+        // queries not admitted because they were rarer than the eviction candidate
+        public final long rejections;
+        // entries dropped because the index changed
+        public final long invalidations;
+        public final int size;
+
+        Stats(long hits, long misses, long evictions, long rejections, long invalidations, int size) {
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+            this.rejections = rejections;
+            this.invalidations = invalidations;
+            this.size = size;
+        }
+
+        public double hitRate() {
+            long lookups = hits + misses;
+            return lookups == 0 ? 0 : (double) hits / lookups;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("hits=%d misses=%d hitRate=%.3f evictions=%d rejections=%d invalidations=%d size=%d",
+                    hits, misses, hitRate(), evictions, rejections, invalidations, size);
+        }
+    }
+}
@@ -0,0 +1,253 @@
+package SearchEngine;
+
+import InvertedIndex.ImpactCursor;
+import InvertedIndex.IndexReader;
+import InvertedIndex.PostingsCursor;
+
+import java.util.Arrays;
+
+/**
+ * Score-at-a-time evaluation over impact-ordered postings, with early termination.
+ * <p>
+ * Every term's postings come in segments of equal impact, highest first (see
+ * {@link ImpactCursor}). The evaluation always reads next the segment that adds the
+ * most, the largest {@link ScoringModel.TermScorer#impactScore(int)} among the terms'
+ * current segments, and adds it to each of its documents' accumulator. R, the sum of
+ * those current segments' scores, bounds what any document can still gain, since no
+ * term has a higher segment left. A document that has not been seen yet can score at
+ * most R, so once R falls below the k-th best accumulator no new document can enter
+ * the top k, and reading stops. For a query of common terms that is usually after
+ * the top few segments, however long the postings are.
+ * <p>
+ * Each accumulator also records which terms have reached it. A document can only
+ * gain from the terms it has not met yet, at most their current segments' scores, so
+ * the documents that may still make the top k are few: the ones whose accumulator plus
+ * that bound reaches the k-th best. Those that met every term are scored already; the
+ * others look up the terms they miss in the docId-ordered postings. All of them are
+ * then collected like any other evaluation's, so the results are those of an
+ * exhaustive evaluation with the same scorer. A document's terms are summed in
+ * another order, though, so its score can differ in the last bit, and documents
+ * whose scores tie may come out in another order or trade places at the k-th.
+ * <p>
+ * The accumulators are arrays indexed by docId, 16 bytes per document. They are
+ * reused from a pool rather than allocated per query, and only the entries a query
+ * touched are cleared after it. A query of more than {@value #MAX_TERMS} terms does
+ * not fit the per-document term masks and is left to WAND.
+ */
+final class ScoreAtATime {
+    // slack on the bounds so floating point rounding never drops a competitive doc
+    private static final double BOUND_SLACK = 1e-9;
+    static final int MAX_TERMS = Integer.SIZE;
+
+    private ScoreAtATime() {
+    }
+
+    /**
+     * Collects the top k of the terms' documents into topK, using and then clearing
+     * the accumulators. Returns the number of documents fully scored.
+     */
+    static int evaluate(IndexReader reader, Term[] terms, Accumulators accumulators, TopKCollector topK, int k) {
+        accumulators.start(k);
+        try {
+            for (Term term : terms) {
+                term.nextSegment();
+            }
+            while (true) {
+                Term best = terms[0];
+                double remaining = 0;
+                for (Term term : terms) {
+                    if (term.segmentScore > best.segmentScore) best = term;
+                    remaining += term.segmentScore;
+                }
+                if (remaining <= 0 || remaining * (1 + BOUND_SLACK) < accumulators.kth()) {
+                    return scoreCandidates(reader, terms, accumulators, remaining, topK);
+                }
+                double score = best.segmentScore;
+                for (int doc = best.impacts.nextDoc(); doc != PostingsCursor.NO_MORE_DOCS; doc = best.impacts.nextDoc()) {
+                    accumulators.add(doc, score, best.bit);
+                }
+                best.nextSegment();
+            }
+        } finally {
+            accumulators.clear();
+        }
+    }
+
+    /*
+     * Completes, in docId order, every touched document that could still reach the k-th
+     * best, and offers it. Returns the number of documents offered.
+     */
+    private static int scoreCandidates(IndexReader reader, Term[] terms, Accumulators accumulators, double remaining,
+                                       TopKCollector topK) {
+        double kth = accumulators.kth();
+        int allTerms = terms.length == MAX_TERMS ? -1 : (1 << terms.length) - 1;
+        int[] candidates = new int[Math.min(accumulators.touchedCount, 1 << 10)];
+        int count = 0;
+        for (int i = 0; i < accumulators.touchedCount; i++) {
+            int doc = accumulators.touched[i];
+            double score = accumulators.scores[doc];
+            // a cheap test first: what the document could gain is at most remaining
+            if ((score + remaining) * (1 + BOUND_SLACK) < kth) {
+                continue;
+            }
+            int missing = ~accumulators.seen[doc] & allTerms;
+            double bound = score;
+            for (int bits = missing; bits != 0; bits &= bits - 1) {
+                bound += terms[Integer.numberOfTrailingZeros(bits)].segmentScore;
+            }
+            if (bound * (1 + BOUND_SLACK) >= kth) {
+                if (count == candidates.length) {
+                    candidates = Arrays.copyOf(candidates, count * 2);
+                }
+                candidates[count++] = doc;
+            }
+        }
+        Arrays.sort(candidates, 0, count);
+
+        PostingsCursor[] cursors = new PostingsCursor[terms.length];
+        for (int c = 0; c < count; c++) {
+            int doc = candidates[c];
+            double score = accumulators.scores[doc];
+            int missing = ~accumulators.seen[doc] & allTerms;
+            for (int bits = missing; bits != 0; bits &= bits - 1) {
+                int i = Integer.numberOfTrailingZeros(bits);
+                if (cursors[i] == null) {
+                    cursors[i] = reader.postings(terms[i].term);
+                }
+                if (cursors[i].advance(doc) == doc) {
+                    score += terms[i].scorer.score(doc, cursors[i].termFrequency());
+                }
+            }
+            topK.offer(doc, score);
+        }
+        return count;
+    }
+
+    // one query term: its impact-ordered postings and the score of its current segment
+    static final class Term {
+        final String term;
+        final ImpactCursor impacts;
+        final ScoringModel.TermScorer scorer;
+        // the term's bit in the accumulators' masks
+        final int bit;
+        double segmentScore;
+
+        // index is the term's position in the query, below MAX_TERMS
+        Term(String term, ImpactCursor impacts, ScoringModel.TermScorer scorer, int index) {
+            this.term = term;
+            this.impacts = impacts;
+            this.scorer = scorer;
+            this.bit = 1 << index;
+        }
+
+        // moves to the next segment and returns its score, 0 when the postings are exhausted
+        double nextSegment() {
+            int impact = impacts.nextSegment();
+            return segmentScore = impact == 0 ? 0 : scorer.impactScore(impact);
+        }
+    }
+
+    /**
+     * Per-document accumulators, and a min-heap of the k documents with the highest,
+     * the weakest on top. Scores only grow, so a document in the heap only moves down,
+     * and one outside it replaces the top once it beats it.
+     */
+    static final class Accumulators {
+        final double[] scores;
+        // a bit per query term that has reached the document
+        final int[] seen;
+        // 1 + the document's position in the heap, or 0 if it is not in it
+        final int[] heapPositions;
+        int[] heap = new int[0];
+        int k;
+        int heapSize;
+        int[] touched = new int[64];
+        int touchedCount;
+
+        Accumulators(int maxDocId) {
+            this.scores = new double[maxDocId + 1];
+            this.seen = new int[maxDocId + 1];
+            this.heapPositions = new int[maxDocId + 1];
+        }
+
+        // whether these can serve a query over docIds up to maxDocId
+        boolean fits(int maxDocId) {
+            return scores.length > maxDocId;
+        }
+
+        void start(int k) {
+            if (heap.length < k) {
+                heap = new int[k];
+            }
+            this.k = k;
+        }
+
+        // the k-th highest accumulator, 0 until k documents were touched
+        double kth() {
+            return heapSize < k ? 0 : scores[heap[0]];
+        }
+
+        void add(int doc, double score, int bit) {
+            seen[doc] |= bit;
+            double previous = scores[doc];
+            if (previous == 0) {
+                if (touchedCount == touched.length) {
+                    touched = Arrays.copyOf(touched, touchedCount * 2);
+                }
+                touched[touchedCount++] = doc;
+            }
+            double updated = scores[doc] = previous + score;
+            int position = heapPositions[doc];
+            if (position > 0) {
+                siftDown(position - 1);
+            } else if (heapSize < k) {
+                heap[heapSize] = doc;
+                heapPositions[doc] = heapSize + 1;
+                siftUp(heapSize++);
+            } else if (updated > scores[heap[0]]) {
+                heapPositions[heap[0]] = 0;
+                heap[0] = doc;
+                heapPositions[doc] = 1;
+                siftDown(0);
+            }
+        }
+
+        void clear() {
+            for (int i = 0; i < touchedCount; i++) {
+                scores[touched[i]] = 0;
+                seen[touched[i]] = 0;
+                heapPositions[touched[i]] = 0;
+            }
+            touchedCount = 0;
+            heapSize = 0;
+        }
+
+        private void siftUp(int i) {
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (scores[heap[parent]] <= scores[heap[i]]) break;
+                swap(i, parent);
+                i = parent;
+            }
+        }
+
+        private void siftDown(int i) {
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= heapSize) break;
+                if (child + 1 < heapSize && scores[heap[child + 1]] < scores[heap[child]]) child++;
+                if (scores[heap[i]] <= scores[heap[child]]) break;
+                swap(i, child);
+                i = child;
+            }
+        }
+
+        private void swap(int a, int b) {
+            int doc = heap[a];
+            heap[a] = heap[b];
+            heap[b] = doc;
+            heapPositions[heap[a]] = a + 1;
+            heapPositions[heap[b]] = b + 1;
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package SearchEngine;
+
+import InvertedIndex.IndexReader;
+
+import java.util.Map;
+
+/**
+ * How a {@link SearchEngine} scores documents against a query: {@link TfIdf}, the
+ * cosine similarity it has always ranked by, or {@link Bm25}.
+ * <p>
+ * A model only has to be additive: a document's score is the sum, over the query terms
+ * it contains, of what each term scores for it, and each term states an upper bound of
+ * that. WAND prunes with those bounds, so a model's ranking is exact however much it
+ * skips. A model whose term scorers score by the index's precomputed {@link
+ * InvertedIndex.Impacts impacts} also lets queries run impact-ordered, see {@link
+ * TermScorer#impactScore(int)}.
+ */
+public interface ScoringModel {
+
+    /**
+     * Weighs one query against the reader, once per search.
+     *
+     * @param termCounts every analyzed term of the query and how often it occurs,
+     *                   including terms no document contains
+     * @return a scorer for each term that can add to a document's score; a term
+     * without one contributes nothing
+     */
+    Map<String, TermScorer> scorers(IndexReader reader, Map<String, Integer> termCounts);
+
+    // one query term's contribution to the score of the documents that contain it
+    interface TermScorer {
+        /**
+         * What the term adds to the score of a document it occurs in termFrequency
+         * times. Must be at least 0.
+         */
+        double score(int docId, int termFrequency);
+
+        // at least score() of every posting of the term
+        double maxScore();
+
+        /**
+         * What the term adds for a posting of the given impact, or NaN if this scorer
+         * does not score by the reader's impacts. Where it does, {@link #score(int, int)}
+         * must equal this for the posting's impact, so impact-ordered and docId-ordered
+         * evaluation rank alike.
+         */
+        default double impactScore(int impact) {
+            return Double.NaN;
+        }
+    }
+}
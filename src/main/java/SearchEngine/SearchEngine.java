@@ -0,0 +1,578 @@
+package SearchEngine;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import InvertedIndex.*;
+import Metrics.Counter;
+import Metrics.Histogram;
+import Metrics.Metrics;
+import Tokenizer.Analyzer;
+
+/**
+ * Ranks documents by a {@link ScoringModel}: TF-IDF cosine similarity ({@link TfIdf})
+ * unless another is given, such as {@link Bm25}.
+ * <p>
+ * Queries are evaluated document-at-a-time with WAND: all postings cursors move
+ * forward together in docId order, and a document is only scored when the upper
+ * bounds of the terms it can contain are enough to beat the current k-th best
+ * score. Everything else is skipped through {@link PostingsCursor#advance(int)}.
+ * <p>
+ * A ranked query without quoted parts runs {@link ScoreAtATime score-at-a-time} instead
+ * when the model scores by the index's precomputed impacts and the index holds its
+ * postings in impact order ({@link IndexWriter#write(InvertedIndex, java.nio.file.Path, boolean)}).
+ * It reads the highest-scoring postings of every term first and stops once the rest
+ * cannot change the top k, so a common term costs its few best postings rather than
+ * all of them. Both evaluations return the same results, up to rounding in the
+ * last bit of a score, which can reorder documents whose scores tie.
+ * <p>
+ * Quoted parts of a query are phrases ({@code "old kingdom"}), or proximity queries
+ * when followed by {@code ~N} ({@code "pyramid giza"~5}: both words within 5 positions).
+ * Their words are ranked like any other query term, but a document must also contain
+ * every one of them, and against an index with positions the {@link Phrase} must
+ * match too. That check runs on each WAND candidate before it is scored. Without
+ * positions a quoted part only requires all of its words.
+ * <p>
+ * Words with wildcards ({@code pharao*}, {@code pyr?mid}) are expanded against the
+ * index's {@link TermDictionary} into the terms they match, see {@link Wildcard}. In a
+ * ranked query each of those terms is ranked like a word of the query; in a Boolean
+ * query the word matches any of them.
+ * <p>
+ * Queries using AND, OR, NOT or parentheses are parsed as a {@link BooleanQuery}
+ * instead. Its {@link DocIterator} tree selects the matching documents with skipping
+ * intersections, unions and exclusions, and only those are ranked, by the same
+ * model over the query's non-negated terms.
+ * <p>
+ * An optional {@link QueryCache} sits in front of evaluation. It is keyed by the
+ * sorted, stemmed query terms and k, so "Egyptian pyramids" and "pyramid egyptian"
+ * share an entry, and it is invalidated whenever the index generation changes.
+ * <p>
+ * A SearchEngine keeps no per-query state: every search builds its own cursors and
+ * collector, score-at-a-time accumulators are taken from a pool and returned cleared,
+ * and the cache locks itself, so one instance can serve any number of
+ * threads at once. Each search takes {@link IndexReader#snapshot()} once and runs
+ * entirely against it, so over a {@link NearRealTimeIndex} queries may run while
+ * documents are added. A plain {@link InvertedIndex} must not be written to while
+ * it is searched.
+ * <p>
+ * Every search records its latency in {@link Metrics#shared()}, as {@code query.total}
+ * and split into phases: {@code query.analysis} (parsing and analyzing the query),
+ * {@code query.lookup} (finding each term, its statistics and its postings),
+ * {@code query.evaluate} (traversing the postings and scoring candidates, which WAND
+ * interleaves) and {@code query.topk} (ordering the collected results). Cache hits
+ * only record the total. {@code query.scored} counts the documents fully scored,
+ * against which evaluate time can be read. Recording allocates nothing.
+ */
+public class SearchEngine {
+    private static final int DEFAULT_TOP_K = 10;
+    // slack on the WAND bound so floating point rounding never prunes a competitive doc
+    private static final double BOUND_SLACK = 1e-9;
+    // a quoted phrase, optionally followed by ~N for a proximity query
+    private static final Pattern PHRASE = Pattern.compile("\"([^\"]*)\"(?:~(\\d{1,9}))?");
+
+    private static final Histogram TOTAL = Metrics.shared().histogram("query.total");
+    private static final Histogram ANALYSIS = Metrics.shared().histogram("query.analysis");
+    private static final Histogram LOOKUP = Metrics.shared().histogram("query.lookup");
+    private static final Histogram EVALUATE = Metrics.shared().histogram("query.evaluate");
+    private static final Histogram TOP_K = Metrics.shared().histogram("query.topk");
+    private static final Counter SCORED = Metrics.shared().counter("query.scored");
+
+    private final IndexReader index;
+    private final ScoringModel model;
+    // null when caching is disabled
+    private final QueryCache cache;
+    // idle score-at-a-time accumulators, one per query running impact-ordered at a time
+    private final Queue<ScoreAtATime.Accumulators> accumulators = new ConcurrentLinkedQueue<>();
+
+    public SearchEngine(IndexReader index) {
+        this(index, new TfIdf());
+    }
+
+    public SearchEngine(IndexReader index, int cacheSize) {
+        this(index, new TfIdf(), cacheSize);
+    }
+
+    public SearchEngine(IndexReader index, ScoringModel model) {
+        this.index = index;
+        this.model = model;
+        this.cache = null;
+    }
+
+    public SearchEngine(IndexReader index, ScoringModel model, int cacheSize) {
+        this.index = index;
+        this.model = model;
+        this.cache = new QueryCache(cacheSize);
+    }
+
+    public List<Result> search(String query) {
+        return search(query, DEFAULT_TOP_K);
+    }
+
+    /**
+     * The k best documents for the query, best first. The list is shared with
+     * the cache and must not be modified.
+     *
+     * @throws IllegalArgumentException if a Boolean query is malformed
+     */
+    public List<Result> search(String query, int k) {
+        long started = System.nanoTime();
+        try {
+            // one snapshot for the whole query, so a concurrent refresh cannot mix statistics
+            IndexReader reader = index.snapshot();
+            if (BooleanQueryParser.isBoolean(query)) {
+                BooleanQuery parsed = BooleanQueryParser.parse(query, reader);
+                ANALYSIS.recordSince(started);
+                if (parsed == null) {
+                    return new ArrayList<>();
+                }
+                return cached(reader, () -> "bool " + k + " " + parsed, () -> rankBoolean(reader, parsed, k));
+            }
+            ParsedQuery parsed = parse(query, reader);
+            ANALYSIS.recordSince(started);
+            return cached(reader, () -> cacheKey(parsed, k), () -> rank(reader, parsed, k));
+        } finally {
+            TOTAL.recordSince(started);
+        }
+    }
+
+    /**
+     * The analyzed terms a query ranks by, without negated ones, for highlighting its
+     * results with a {@link Highlighter}. Without an index to expand them against,
+     * wildcard words are left out; {@link #highlightTerms(String)} includes them.
+     *
+     * @throws IllegalArgumentException if a Boolean query is malformed
+     */
+    public static Set<String> queryTerms(String query) {
+        return queryTerms(query, null);
+    }
+
+    /**
+     * Like {@link #queryTerms(String)}, with wildcard words expanded against this
+     * engine's index into the terms a search would rank by.
+     *
+     * @throws IllegalArgumentException if a Boolean query is malformed
+     */
+    public Set<String> highlightTerms(String query) {
+        return queryTerms(query, index.snapshot());
+    }
+
+    private static Set<String> queryTerms(String query, IndexReader reader) {
+        if (BooleanQueryParser.isBoolean(query)) {
+            Map<String, Integer> termCounts = new LinkedHashMap<>();
+            BooleanQuery parsed = BooleanQueryParser.parse(query, reader);
+            if (parsed != null) {
+                parsed.collectTerms(termCounts);
+            }
+            return termCounts.keySet();
+        }
+        return parse(query, reader).termCounts.keySet();
+    }
+
+    private List<Result> cached(IndexReader reader, Supplier<String> key, Supplier<List<Result>> ranking) {
+        if (cache == null) {
+            return ranking.get();
+        }
+
+        // read the generation first: results computed during an update are stamped stale
+        long generation = reader.getGeneration();
+        String cacheKey = key.get();
+        List<Result> results = cache.get(cacheKey, generation);
+        if (results == null) {
+            results = Collections.unmodifiableList(ranking.get());
+            cache.put(cacheKey, generation, results);
+        }
+        return results;
+    }
+
+    // hit, miss and eviction counts of the result cache, or null if caching is disabled
+    public QueryCache.Stats cacheStats() {
+        return cache == null ? null : cache.stats();
+    }
+
+    private List<Result> rank(IndexReader reader, ParsedQuery query, int k) {
+        long started = System.nanoTime();
+        Map<String, ScoringModel.TermScorer> scorers = model.scorers(reader, query.termCounts);
+        if (scorers.isEmpty()) {
+            return new ArrayList<>();
+        }
+        if (query.phrases.isEmpty()) {
+            List<Result> results = rankByImpact(reader, scorers, k, started);
+            if (results != null) {
+                return results;
+            }
+        }
+
+        Set<String> required = new HashSet<>();
+        Set<String> positional = new HashSet<>();
+        for (Phrase phrase : query.phrases) {
+            required.addAll(Arrays.asList(phrase.terms));
+            if (phrase.terms.length > 1 && reader.hasPositions()) {
+                positional.addAll(Arrays.asList(phrase.terms));
+            }
+        }
+
+        List<QueryTerm> terms = new ArrayList<>();
+        Map<String, PostingsCursor> cursors = new HashMap<>();
+        for (String term : query.termCounts.keySet()) {
+            ScoringModel.TermScorer scorer = scorers.get(term);
+            boolean isRequired = required.contains(term);
+            PostingsCursor postings = scorer != null || isRequired ? reader.postings(term, positional.contains(term)) : null;
+            if (postings != null) {
+                terms.add(new QueryTerm(terms.size(), postings, scorer != null ? scorer : NO_SCORE, isRequired));
+                cursors.put(term, postings);
+            } else if (isRequired) {
+                // a quoted word that no document contains
+                return new ArrayList<>();
+            }
+        }
+
+        List<PhraseMatcher> phrases = new ArrayList<>();
+        for (Phrase phrase : query.phrases) {
+            if (phrase.terms.length > 1 && reader.hasPositions()) {
+                phrases.add(new PhraseMatcher(phrase, cursors));
+            }
+        }
+        long looked = System.nanoTime();
+        LOOKUP.record(looked - started);
+
+        TopKCollector topK = new TopKCollector(k);
+        SCORED.add(evaluate(terms.toArray(new QueryTerm[0]), phrases.toArray(new PhraseMatcher[0]), topK));
+        return collect(topK, looked);
+    }
+
+    /*
+     * Evaluates score-at-a-time if every term is scored by impact and has impact-ordered
+     * postings, and returns null otherwise.
+     */
+    private List<Result> rankByImpact(IndexReader reader, Map<String, ScoringModel.TermScorer> scorers, int k,
+                                      long started) {
+        if (scorers.size() > ScoreAtATime.MAX_TERMS) {
+            return null;
+        }
+        List<ScoreAtATime.Term> terms = new ArrayList<>(scorers.size());
+        for (Map.Entry<String, ScoringModel.TermScorer> entry : scorers.entrySet()) {
+            if (Double.isNaN(entry.getValue().impactScore(1))) {
+                return null;
+            }
+            ImpactCursor impacts = reader.impactPostings(entry.getKey());
+            if (impacts == null) {
+                return null;
+            }
+            terms.add(new ScoreAtATime.Term(entry.getKey(), impacts, entry.getValue(), terms.size()));
+        }
+        int maxDocId = reader.getDocNorms().length - 1;
+        ScoreAtATime.Accumulators pooled = accumulators.poll();
+        if (pooled == null || !pooled.fits(maxDocId)) {
+            pooled = new ScoreAtATime.Accumulators(maxDocId);
+        }
+        long looked = System.nanoTime();
+        LOOKUP.record(looked - started);
+
+        TopKCollector topK = new TopKCollector(k);
+        SCORED.add(ScoreAtATime.evaluate(reader, terms.toArray(new ScoreAtATime.Term[0]), pooled, topK, k));
+        accumulators.offer(pooled);
+        return collect(topK, looked);
+    }
+
+    // records the time since evaluation started, then the time to order the top k
+    private static List<Result> collect(TopKCollector topK, long evaluationStarted) {
+        long evaluated = System.nanoTime();
+        EVALUATE.record(evaluated - evaluationStarted);
+        List<Result> results = topK.results();
+        TOP_K.recordSince(evaluated);
+        return results;
+    }
+
+    /*
+     * Ranks only the documents the Boolean query matches. Each scoring cursor is
+     * advanced to the next match, so terms with long postings are skipped along
+     * the matches rather than decoded in full, and an AND query costs in
+     * proportion to its rarest clause.
+     */
+    private List<Result> rankBoolean(IndexReader reader, BooleanQuery query, int k) {
+        long started = System.nanoTime();
+        DocIterator matches = query.iterator(reader);
+        if (matches == null) {
+            return new ArrayList<>();
+        }
+
+        Map<String, Integer> termCounts = new LinkedHashMap<>();
+        query.collectTerms(termCounts);
+        Map<String, ScoringModel.TermScorer> scorers = model.scorers(reader, termCounts);
+        List<QueryTerm> terms = new ArrayList<>();
+        double maxScore = 0;
+        for (Map.Entry<String, ScoringModel.TermScorer> entry : scorers.entrySet()) {
+            PostingsCursor postings = reader.postings(entry.getKey());
+            if (postings != null) {
+                QueryTerm queryTerm = new QueryTerm(terms.size(), postings, entry.getValue(), false);
+                terms.add(queryTerm);
+                maxScore += queryTerm.upperBound;
+            }
+        }
+        long looked = System.nanoTime();
+        LOOKUP.record(looked - started);
+        if (terms.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        TopKCollector topK = new TopKCollector(k);
+        int scored = 0;
+        for (int doc = matches.next(); doc != DocIterator.NO_MORE_DOCS; doc = matches.next()) {
+            // like the WAND bound: once the top k beat every possible score, stop
+            if (maxScore * (1 + BOUND_SLACK) <= topK.threshold()) {
+                break;
+            }
+            double score = 0;
+            for (QueryTerm term : terms) {
+                if (term.cursor.advance(doc) == doc) {
+                    score += term.scorer.score(doc, term.cursor.termFrequency());
+                }
+            }
+            topK.offer(doc, score);
+            scored++;
+        }
+        SCORED.add(scored);
+        return collect(topK, looked);
+    }
+
+    // every word of the query counts as a term; quoted parts also become phrases
+    private static ParsedQuery parse(String query, IndexReader reader) {
+        Analyzer analyzer = new Analyzer();
+        ParsedQuery parsed = new ParsedQuery();
+        Matcher matcher = PHRASE.matcher(query);
+        int last = 0;
+        while (matcher.find()) {
+            addWords(parsed, analyzer, query.substring(last, matcher.start()), reader);
+            List<String> terms = new ArrayList<>();
+            List<Integer> positions = new ArrayList<>();
+            analyzer.analyze(matcher.group(1), (term, position, start, end) -> {
+                parsed.addTerm(term);
+                terms.add(term);
+                positions.add(position);
+            });
+            if (!terms.isEmpty()) {
+                int slop = matcher.group(2) == null ? Phrase.EXACT : Integer.parseInt(matcher.group(2));
+                parsed.phrases.add(new Phrase(terms, positions, slop));
+            }
+            last = matcher.end();
+        }
+        addWords(parsed, analyzer, query.substring(last), reader);
+        return parsed;
+    }
+
+    // unquoted words: a wildcard adds every term it expands to, the rest are analyzed
+    private static void addWords(ParsedQuery parsed, Analyzer analyzer, String text, IndexReader reader) {
+        String rest = Wildcard.expand(text, reader, (pattern, terms) -> terms.forEach(parsed::addTerm));
+        analyzer.analyze(rest, (term, position, start, end) -> parsed.addTerm(term));
+    }
+
+    // k, the sorted terms (each repeated as often as it occurs in the query), then the sorted phrases
+    private static String cacheKey(ParsedQuery query, int k) {
+        String[] terms = query.termCounts.keySet().toArray(new String[0]);
+        Arrays.sort(terms);
+        StringBuilder key = new StringBuilder().append(k);
+        for (String term : terms) {
+            for (int i = query.termCounts.get(term); i > 0; i--) {
+                key.append(' ').append(term);
+            }
+        }
+        String[] phrases = new String[query.phrases.size()];
+        for (int i = 0; i < phrases.length; i++) {
+            phrases[i] = query.phrases.get(i).toString();
+        }
+        Arrays.sort(phrases);
+        for (String phrase : phrases) {
+            key.append(' ').append(phrase);
+        }
+        return key.toString();
+    }
+
+    /*
+     * Document-at-a-time WAND.
+     *
+     * The score of a document is the sum of what each query term scores for it,
+     * and each term's contribution is bounded by its scorer's maxScore(). The pivot is the first cursor
+     * (in docId order) at which the accumulated bounds exceed the current k-th
+     * best score; no document before the pivot can enter the top k.
+     *
+     * Required terms (the words of quoted parts) are intersected first: no
+     * document before the furthest required cursor can match, so every cursor
+     * leaps there before the pivot is chosen.
+     *
+     * Returns the number of documents scored.
+     */
+    private int evaluate(QueryTerm[] terms, PhraseMatcher[] phrases, TopKCollector topK) {
+        List<QueryTerm> requiredTerms = new ArrayList<>();
+        for (QueryTerm term : terms) {
+            term.cursor.next();
+            if (term.required) requiredTerms.add(term);
+        }
+        QueryTerm[] required = requiredTerms.toArray(new QueryTerm[0]);
+
+        int scored = 0;
+        while (true) {
+            if (required.length > 0) {
+                int target = 0;
+                for (QueryTerm term : required) {
+                    target = Math.max(target, term.cursor.docId());
+                }
+                if (target == PostingsCursor.NO_MORE_DOCS) {
+                    return scored;
+                }
+                for (QueryTerm term : terms) {
+                    if (term.cursor.docId() < target) term.cursor.advance(target);
+                }
+            }
+            sortByDocId(terms);
+
+            double threshold = topK.threshold();
+            double bound = 0;
+            int pivot = -1;
+            for (int i = 0; i < terms.length; i++) {
+                if (terms[i].cursor.docId() == PostingsCursor.NO_MORE_DOCS) break;
+                bound += terms[i].upperBound;
+                if (bound * (1 + BOUND_SLACK) > threshold) {
+                    pivot = i;
+                    break;
+                }
+            }
+            if (pivot < 0) {
+                return scored;
+            }
+
+            int pivotDoc = terms[pivot].cursor.docId();
+            if (terms[0].cursor.docId() == pivotDoc) {
+                // every cursor up to the pivot sits on pivotDoc: score it
+                double score = 0;
+                int matched = 0;
+                while (matched < terms.length && terms[matched].cursor.docId() == pivotDoc) {
+                    QueryTerm term = terms[matched++];
+                    score += term.scorer.score(pivotDoc, term.cursor.termFrequency());
+                }
+                scored++;
+                // positions are only read for documents that would enter the top k
+                if (score > topK.threshold() && matches(pivotDoc, required, phrases)) {
+                    topK.offer(pivotDoc, score);
+                }
+                for (int i = 0; i < matched; i++) {
+                    terms[i].cursor.next();
+                }
+            } else {
+                // no document before pivotDoc can make it into the top k
+                for (int i = 0; i < pivot; i++) {
+                    terms[i].cursor.advance(pivotDoc);
+                }
+            }
+        }
+    }
+
+    // must be called before the cursors move past docId, since phrases read their positions
+    private static boolean matches(int docId, QueryTerm[] required, PhraseMatcher[] phrases) {
+        for (QueryTerm term : required) {
+            if (term.cursor.docId() != docId) return false;
+        }
+        for (PhraseMatcher phrase : phrases) {
+            if (!phrase.matches()) return false;
+        }
+        return true;
+    }
+
+    /*
+     * Insertion sort: queries are short and the array is nearly sorted between iterations.
+     * Terms on the same document stay in query order, so a document's score is summed in
+     * the same order however the cursors got there, and a shard that lacks some of the
+     * terms scores it to the same bit as an index of the whole collection.
+     */
+    private static void sortByDocId(QueryTerm[] terms) {
+        for (int i = 1; i < terms.length; i++) {
+            QueryTerm term = terms[i];
+            int docId = term.cursor.docId();
+            int j = i - 1;
+            while (j >= 0 && (terms[j].cursor.docId() > docId
+                    || terms[j].cursor.docId() == docId && terms[j].order > term.order)) {
+                terms[j + 1] = terms[j];
+                j--;
+            }
+            terms[j + 1] = term;
+        }
+    }
+
+    // a quoted word the model gives no weight still has to occur in every result
+    private static final ScoringModel.TermScorer NO_SCORE = new ScoringModel.TermScorer() {
+        @Override
+        public double score(int docId, int termFrequency) {
+            return 0;
+        }
+
+        @Override
+        public double maxScore() {
+            return 0;
+        }
+    };
+
+    private static final class QueryTerm {
+        // the position of the term in the query, which orders terms on the same document
+        final int order;
+        final PostingsCursor cursor;
+        final ScoringModel.TermScorer scorer;
+        final double upperBound;
+        // part of a quoted phrase, so every result must contain it
+        final boolean required;
+
+        QueryTerm(int order, PostingsCursor cursor, ScoringModel.TermScorer scorer, boolean required) {
+            this.order = order;
+            this.cursor = cursor;
+            this.scorer = scorer;
+            this.upperBound = scorer.maxScore();
+            this.required = required;
+        }
+    }
+
+    private static final class ParsedQuery {
+        // analyzed term -> occurrences, quoted or not, in query order
+        final Map<String, Integer> termCounts = new LinkedHashMap<>();
+        final List<Phrase> phrases = new ArrayList<>();
+
+        void addTerm(String term) {
+            termCounts.merge(term, 1, Integer::sum);
+        }
+    }
+
+    // a phrase bound to the positional cursors of its terms for one evaluation
+    private static final class PhraseMatcher {
+        final Phrase phrase;
+        final PostingsCursor[] cursors;
+        final int[] pointers;
+
+        PhraseMatcher(Phrase phrase, Map<String, PostingsCursor> cursorsByTerm) {
+            this.phrase = phrase;
+            this.cursors = new PostingsCursor[phrase.terms.length];
+            for (int i = 0; i < cursors.length; i++) {
+                cursors[i] = cursorsByTerm.get(phrase.terms[i]);
+            }
+            this.pointers = new int[cursors.length];
+        }
+
+        // the caller has checked that every cursor is on the candidate document
+        boolean matches() {
+            return phrase.matches(cursors, pointers);
+        }
+    }
+
+    public static class Result {
+        public final int docId;
+        public final double score;
+
+        public Result(int docId, double score) {
+            this.docId = docId;
+            this.score = score;
+        }
+
+        @Override
+        public String toString() {
+            return "Doc #" + docId + " Score: " + score;
+        }
+    }
+}
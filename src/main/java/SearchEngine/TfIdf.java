@@ -0,0 +1,86 @@
+package SearchEngine;
+
+import InvertedIndex.IndexReader;
+import InvertedIndex.InvertedIndex;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * TF-IDF cosine similarity, the default {@link ScoringModel}.
+ * <p>
+ * A query term t weighs q_t = (1 + log10(count)) * idf_t and a document term
+ * w_td = (1 + log10(tf)) * idf_t, with idf_t = log10(N / df_t). A document scores
+ * the sum over the query terms of q_t * w_td / (|q| * |d|), where |d| is the norm of
+ * its full vector, precomputed by the index, and |q| counts every query term,
+ * including ones no document contains (with a df of 0.5). Each term is bounded by the
+ * index's largest normalized tf weight among its postings. Documents with a norm of 0
+ * contain only terms that occur everywhere, and score nothing.
+ */
+public final class TfIdf implements ScoringModel {
+    private static final double SMALL_VALUE = 0.5; // Small value for terms not in collection
+
+    @Override
+    public Map<String, TermScorer> scorers(IndexReader reader, Map<String, Integer> termCounts) {
+        int totalDocs = reader.numDocs();
+        double[] docNorms = reader.getDocNorms();
+        Map<String, Double> factors = new HashMap<>();
+        double queryNormSquared = 0;
+        for (Map.Entry<String, Integer> entry : termCounts.entrySet()) {
+            String term = entry.getKey();
+            double idf = idf(reader, term, totalDocs);
+            double weight = (1 + Math.log10(entry.getValue())) * idf;
+            queryNormSquared += weight * weight;
+            if (reader.docFreq(term) > 0) {
+                factors.put(term, weight * idf);
+            }
+        }
+
+        Map<String, TermScorer> scorers = new HashMap<>();
+        // avoid division by zero
+        if (queryNormSquared == 0) {
+            return scorers;
+        }
+        double queryNorm = Math.sqrt(queryNormSquared);
+        for (Map.Entry<String, Double> entry : factors.entrySet()) {
+            scorers.put(entry.getKey(), new Scorer(entry.getValue() / queryNorm,
+                    reader.maxNormalizedTfWeight(entry.getKey()), docNorms));
+        }
+        return scorers;
+    }
+
+    // if the term is not in any documents make df(t) equal to a small value instead of completely skipping it
+    private static double idf(IndexReader reader, String term, int totalDocs) {
+        double df = Math.max(reader.docFreq(term), SMALL_VALUE); // the number of docs containing the term
+        return Math.log10((double) totalDocs / df);
+    }
+
+    @Override
+    public String toString() {
+        return "tf-idf";
+    }
+
+    private static final class Scorer implements TermScorer {
+        // q_t * idf_t / |q|: multiplied by tfWeight(tf) / |d| it gives the term's share of the cosine
+        private final double factor;
+        private final double maxScore;
+        private final double[] docNorms;
+
+        Scorer(double factor, double maxNormalizedTfWeight, double[] docNorms) {
+            this.factor = factor;
+            this.maxScore = factor * maxNormalizedTfWeight;
+            this.docNorms = docNorms;
+        }
+
+        @Override
+        public double score(int docId, int termFrequency) {
+            double docNorm = docNorms[docId];
+            return docNorm == 0 ? 0 : factor * InvertedIndex.tfWeight(termFrequency) / docNorm;
+        }
+
+        @Override
+        public double maxScore() {
+            return maxScore;
+        }
+    }
+}
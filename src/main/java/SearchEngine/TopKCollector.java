@@ -0,0 +1,104 @@
+package SearchEngine;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Bounded min-heap that keeps the k best scoring documents seen so far.
+ * The root is the weakest entry, so checking whether a document is competitive
+ * is O(1) and replacing the weakest entry is O(log k).
+ * Ties on score are broken in favour of the smaller docId.
+ */
+final class TopKCollector {
+    private final int k;
+    private final int[] docIds;
+    private final double[] scores;
+    private int size;
+
+    TopKCollector(int k) {
+        if (k < 1) {
+            throw new IllegalArgumentException("k must be positive: " + k);
+        }
+        this.k = k;
+        this.docIds = new int[k];
+        this.scores = new double[k];
+    }
+
+    /**
+     * The score a document has to exceed to enter the top k. Documents must
+     * always score above zero, so this is 0 until the heap is full.
+     */
+    double threshold() {
+        return size < k ? 0 : scores[0];
+    }
+
+    boolean offer(int docId, double score) {
+        if (score <= 0) {
+            return false;
+        }
+        if (size < k) {
+            docIds[size] = docId;
+            scores[size] = score;
+            siftUp(size++);
+            return true;
+        }
+        if (!worse(docIds[0], scores[0], docId, score)) {
+            return false;
+        }
+        docIds[0] = docId;
+        scores[0] = score;
+        siftDown(0);
+        return true;
+    }
+
+    /**
+     * The collected documents, best first.
+     */
+    List<SearchEngine.Result> results() {
+        List<SearchEngine.Result> results = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            results.add(new SearchEngine.Result(docIds[i], scores[i]));
+        }
+        results.sort(Comparator.comparingDouble((SearchEngine.Result r) -> -r.score).thenComparingInt(r -> r.docId));
+        return results;
+    }
+
+    // true if (docA, scoreA) ranks below (docB, scoreB)
+    private static boolean worse(int docA, double scoreA, int docB, double scoreB) {
+        return scoreA < scoreB || (scoreA == scoreB && docA > docB);
+    }
+
+    private void siftUp(int i) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (!worse(docIds[i], scores[i], docIds[parent], scores[parent])) break;
+            swap(i, parent);
+            i = parent;
+        }
+    }
+
+    private void siftDown(int i) {
+        while (true) {
+            int left = 2 * i + 1;
+            if (left >= size) break;
+            int child = left;
+            int right = left + 1;
+            if (right < size && worse(docIds[right], scores[right], docIds[left], scores[left])) {
+                child = right;
+            }
+            if (!worse(docIds[child], scores[child], docIds[i], scores[i])) break;
+            swap(i, child);
+            i = child;
+        }
+    }
+
+    private void swap(int a, int b) {
+        int doc = docIds[a];
+        docIds[a] = docIds[b];
+        docIds[b] = doc;
+        double score = scores[a];
+        scores[a] = scores[b];
+        scores[b] = score;
+    }
+}
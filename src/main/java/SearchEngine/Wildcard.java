@@ -0,0 +1,121 @@
+package SearchEngine;
+
+import InvertedIndex.IndexReader;
+import InvertedIndex.TermDictionary;
+
+import java.util.*;
+import java.util.function.BiConsumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A query word with wildcards: {@code *} stands for any characters and {@code ?} for
+ * exactly one ({@code pharao*}, {@code pyr?mid}). A {@code ?} at the end of a word is
+ * punctuation ({@code where is giza?}), not a wildcard.
+ * <p>
+ * Patterns are matched against the index's terms, which are stemmed, so they are
+ * lower-cased but not stemmed themselves: {@code pyramids*} finds nothing, since the
+ * index holds {@code pyramid}. The literal prefix before the first wildcard selects a
+ * range of the {@link TermDictionary}, which is walked and filtered by the rest of the
+ * pattern. A pattern starting with a wildcard walks every term, and one of wildcards
+ * only ({@code *}) is dropped. A pattern expands to at most {@link #MAX_EXPANSIONS}
+ * terms, the ones in the most documents, so {@code a*} cannot turn into thousands of
+ * postings lists.
+ */
+final class Wildcard {
+    static final int MAX_EXPANSIONS = 64;
+    // a run of word and wildcard characters, the span a pattern can cover
+    private static final Pattern WORD = Pattern.compile("[\\w*?]+");
+
+    private final String pattern;
+    private final String prefix;
+
+    private Wildcard(String pattern) {
+        this.pattern = pattern;
+        int wildcard = 0;
+        while (pattern.charAt(wildcard) != '*' && pattern.charAt(wildcard) != '?') wildcard++;
+        this.prefix = pattern.substring(0, wildcard);
+    }
+
+    /**
+     * Expands the wildcard words of text against the reader, passing each pattern and
+     * its terms (possibly none) to the consumer, and returns text with those words
+     * blanked out for the analyzer. With no reader, wildcard words are only blanked out.
+     */
+    static String expand(String text, IndexReader reader, BiConsumer<String, List<String>> consumer) {
+        Matcher words = WORD.matcher(text);
+        StringBuilder rest = null;
+        while (words.find()) {
+            String word = stripTrailing(words.group());
+            if (word.indexOf('*') < 0 && word.indexOf('?') < 0) {
+                continue;
+            }
+            if (rest == null) {
+                rest = new StringBuilder(text);
+            }
+            for (int i = words.start(); i < words.end(); i++) {
+                rest.setCharAt(i, ' ');
+            }
+            if (reader != null && hasLiteral(word)) {
+                Wildcard wildcard = new Wildcard(word.toLowerCase(Locale.ROOT));
+                consumer.accept(wildcard.pattern, wildcard.expand(reader));
+            }
+        }
+        return rest == null ? text : rest.toString();
+    }
+
+    // a trailing '?' ends a question
+    private static String stripTrailing(String word) {
+        int end = word.length();
+        while (end > 0 && word.charAt(end - 1) == '?') end--;
+        return word.substring(0, end);
+    }
+
+    private static boolean hasLiteral(String word) {
+        for (int i = 0; i < word.length(); i++) {
+            if (word.charAt(i) != '*' && word.charAt(i) != '?') return true;
+        }
+        return false;
+    }
+
+    // the matching terms in the most documents, most first, ties in term order
+    private List<String> expand(IndexReader reader) {
+        Map<String, Integer> docFreqs = new HashMap<>();
+        PriorityQueue<String> best = new PriorityQueue<>(
+                Comparator.comparing((String term) -> docFreqs.get(term)).thenComparing(Comparator.reverseOrder()));
+        reader.terms().forEachWithPrefix(prefix, (ordinal, term) -> {
+            if (matches(term)) {
+                docFreqs.put(term, reader.docFreq(term));
+                best.add(term);
+                if (best.size() > MAX_EXPANSIONS) docFreqs.remove(best.poll());
+            }
+        });
+        List<String> terms = new ArrayList<>(best.size());
+        while (!best.isEmpty()) {
+            terms.add(best.poll());
+        }
+        Collections.reverse(terms);
+        return terms;
+    }
+
+    // glob matching, backtracking to the last '*' on a mismatch
+    private boolean matches(String term) {
+        int p = 0, t = 0, star = -1, resume = 0;
+        while (t < term.length()) {
+            if (p < pattern.length() && (pattern.charAt(p) == '?' || pattern.charAt(p) == term.charAt(t))) {
+                p++;
+                t++;
+            } else if (p < pattern.length() && pattern.charAt(p) == '*') {
+                star = p++;
+                resume = t;
+            } else if (star >= 0) {
+                p = star + 1;
+                t = ++resume;
+            } else {
+                return false;
+            }
+        }
+        while (p < pattern.length() && pattern.charAt(p) == '*') p++;
+        return p == pattern.length();
+    }
+}
@@ -0,0 +1,335 @@
+package Server;
+
+import Cluster.CollectionStatistics;
+import Metrics.Counter;
+import Metrics.Histogram;
+import Metrics.Metrics;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Searches a document-partitioned collection by scattering each query to every
+ * {@link ShardServer} at once and merging their top k into the collection's.
+ * <p>
+ * Before the first query the coordinator gathers every shard's statistics, sums them
+ * and sends the sums back, so all shards score by the whole collection's document
+ * count, average length and document frequencies, and a document scores the same
+ * wherever it is. A shard's top k therefore holds every document of the collection's
+ * top k that it owns, and the collection's top k is the best k of all shards' results
+ * by score, ties by ascending docId as in a single index. A search names the version
+ * of the statistics it expects; a shard that has other ones, because it restarted,
+ * answers 409 and the coordinator gathers and sends them again in the background.
+ * <p>
+ * A query then makes two rounds: a search on every shard for the top offset + k, and
+ * a fetch of the page's documents, highlighted, from the shards that own them. Each
+ * round waits for the shards up to the shard timeout. A shard that fails or runs out of
+ * time is left out and the response says so:
+ * <pre>
+ * "results":[...],"partial":true,"shards":{"total":4,"failed":[{"shard":"http://...","error":"timed out"}]}
+ * </pre>
+ * so a slow or dead shard costs a query at most its share of the results, never the
+ * answer. A result whose fetch failed keeps its docId and score, with null fields.
+ * <p>
+ * The latency of every shard request is recorded in {@code coordinator.shard}, the
+ * failed ones are counted in {@code coordinator.shard.failed} and the queries answered
+ * with partial results in {@code coordinator.partial}. Admission and the
+ * overall timeout are the {@link SearchServer}'s the coordinator is the backend of.
+ */
+public class Coordinator implements SearchBackend, Closeable {
+    private static final Histogram SHARD = Metrics.shared().histogram("coordinator.shard");
+    private static final Counter FAILED = Metrics.shared().counter("coordinator.shard.failed");
+    private static final Counter PARTIAL = Metrics.shared().counter("coordinator.partial");
+    // statistics hold every term, so they get longer than a query round
+    private static final Duration STATISTICS_TIMEOUT = Duration.ofSeconds(30);
+
+    private final List<URI> shards;
+    private final long shardTimeoutNanos;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final HttpClient client;
+    // the version of the statistics sent to the shards, in hex as searches name it
+    private volatile String version;
+    private final AtomicBoolean resending = new AtomicBoolean();
+
+    private Coordinator(List<URI> shards, Duration shardTimeout) {
+        this.shards = List.copyOf(shards);
+        this.shardTimeoutNanos = shardTimeout.toNanos();
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(shardTimeout)
+                .executor(executor)
+                .build();
+    }
+
+    /**
+     * A coordinator over the shards, once it has sent them the collection's statistics.
+     * Waits for shards that are not up yet, as when all start at once.
+     *
+     * @param shards       the base URIs of the shard servers, such as {@code http://localhost:9001}
+     * @param shardTimeout how long each round of a query waits for the shards
+     * @param startTimeout how long to wait for every shard to answer
+     * @throws IOException if some shard did not answer within startTimeout
+     */
+    public static Coordinator connect(List<URI> shards, Duration shardTimeout, Duration startTimeout)
+            throws IOException, InterruptedException {
+        if (shards.isEmpty() || shardTimeout.isNegative() || shardTimeout.isZero()) {
+            throw new IllegalArgumentException("a coordinator needs shards and a positive timeout: " + shards
+                    + ", " + shardTimeout);
+        }
+        Coordinator coordinator = new Coordinator(shards, shardTimeout);
+        long deadline = System.nanoTime() + startTimeout.toNanos();
+        while (true) {
+            try {
+                coordinator.sendStatistics();
+                return coordinator;
+            } catch (IOException e) {
+                if (System.nanoTime() - deadline > 0) {
+                    coordinator.close();
+                    throw e;
+                }
+                Thread.sleep(250);
+            }
+        }
+    }
+
+    // the version of the statistics the shards rank by
+    public String statisticsVersion() {
+        return version;
+    }
+
+    @Override
+    public void search(String query, int k, int offset, StringBuilder json) {
+        String q = URLEncoder.encode(query, StandardCharsets.UTF_8);
+        String expected = version;
+        List<Failure> failures = new ArrayList<>();
+
+        // round one: every shard's top offset + k
+        List<HttpRequest> searches = new ArrayList<>(shards.size());
+        for (URI shard : shards) {
+            searches.add(request(shard.resolve("/shard/search?q=" + q + "&k=" + (offset + k) + "&stats=" + expected)));
+        }
+        List<Hit> hits = new ArrayList<>();
+        Reply[] replies = gather(searches);
+        for (int shard = 0; shard < shards.size(); shard++) {
+            HttpResponse<String> response = replies[shard].response;
+            if (response == null) {
+                failures.add(new Failure(shard, replies[shard].error));
+            } else if (response.statusCode() == 200) {
+                parseHits(response.body(), shard, hits);
+            } else if (response.statusCode() == 400) {
+                // every shard parses the query alike
+                throw new IllegalArgumentException(response.body().startsWith("invalid query: ")
+                        ? response.body().substring(15) : response.body());
+            } else {
+                if (response.statusCode() == 409) {
+                    resendStatistics();
+                }
+                failures.add(new Failure(shard, "HTTP " + response.statusCode() + ": " + response.body().strip()));
+            }
+        }
+        // the best first, ties by docId, as a single index ranks them
+        hits.sort((a, b) -> a.score != b.score ? Double.compare(b.score, a.score) : Integer.compare(a.docId, b.docId));
+        List<Hit> page = hits.subList(Math.min(offset, hits.size()), Math.min(offset + k, hits.size()));
+
+        // round two: the page's documents from the shards that own them
+        Map<Integer, List<Hit>> owned = new TreeMap<>();
+        for (Hit hit : page) {
+            owned.computeIfAbsent(hit.shard, shard -> new ArrayList<>()).add(hit);
+        }
+        List<HttpRequest> fetches = new ArrayList<>(owned.size());
+        for (Map.Entry<Integer, List<Hit>> entry : owned.entrySet()) {
+            StringJoiner docs = new StringJoiner(",");
+            for (Hit hit : entry.getValue()) {
+                docs.add(Integer.toString(hit.docId));
+            }
+            fetches.add(request(shards.get(entry.getKey()).resolve("/shard/fetch?q=" + q + "&docs=" + docs)));
+        }
+        Reply[] fetched = gather(fetches);
+        int index = 0;
+        for (Map.Entry<Integer, List<Hit>> entry : owned.entrySet()) {
+            Reply reply = fetched[index++];
+            if (reply.response == null || reply.response.statusCode() != 200) {
+                failures.add(new Failure(entry.getKey(), "fetch: " + (reply.response == null ? reply.error
+                        : "HTTP " + reply.response.statusCode() + ": " + reply.response.body().strip())));
+                continue;
+            }
+            String[] lines = reply.response.body().split("\n");
+            for (int i = 0; i < lines.length; i++) {
+                entry.getValue().get(i).fields = lines[i];
+            }
+        }
+
+        json.append("\"results\":[");
+        for (int i = 0; i < page.size(); i++) {
+            Hit hit = page.get(i);
+            if (i > 0) json.append(',');
+            json.append("{\"docId\":").append(hit.docId).append(",\"score\":").append(hit.score).append(',');
+            json.append(hit.fields != null ? hit.fields : "\"url\":null,\"title\":null,\"snippet\":null,\"highlights\":[]");
+            json.append('}');
+        }
+        if (!failures.isEmpty()) {
+            PARTIAL.increment();
+            FAILED.add(failures.size());
+        }
+        json.append("],\"partial\":").append(!failures.isEmpty());
+        json.append(",\"shards\":{\"total\":").append(shards.size()).append(",\"failed\":[");
+        for (int i = 0; i < failures.size(); i++) {
+            if (i > 0) json.append(',');
+            json.append("{\"shard\":");
+            Json.string(json, shards.get(failures.get(i).shard).toString());
+            json.append(",\"error\":");
+            Json.string(json, failures.get(i).error);
+            json.append('}');
+        }
+        json.append("]}");
+    }
+
+    @Override
+    public void close() {
+        client.close();
+        executor.shutdown();
+    }
+
+    /*
+     * Sends the requests at once and waits for them until one shard timeout from now.
+     * Returns a reply per request, in order.
+     */
+    private Reply[] gather(List<HttpRequest> requests) {
+        long started = System.nanoTime();
+        long deadline = started + shardTimeoutNanos;
+        List<CompletableFuture<HttpResponse<String>>> futures = new ArrayList<>(requests.size());
+        for (HttpRequest request : requests) {
+            futures.add(client.sendAsync(request, HttpResponse.BodyHandlers.ofString())
+                    .whenComplete((response, error) -> SHARD.recordSince(started)));
+        }
+        Reply[] replies = new Reply[requests.size()];
+        for (int i = 0; i < replies.length; i++) {
+            CompletableFuture<HttpResponse<String>> future = futures.get(i);
+            try {
+                replies[i] = new Reply(future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS), null);
+            } catch (TimeoutException e) {
+                future.cancel(true);
+                replies[i] = new Reply(null, "timed out");
+            } catch (ExecutionException e) {
+                replies[i] = new Reply(null, e.getCause() instanceof HttpTimeoutException ? "timed out"
+                        : e.getCause() instanceof ConnectException ? "unreachable" : String.valueOf(e.getCause()));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                future.cancel(true);
+                replies[i] = new Reply(null, "interrupted");
+            }
+        }
+        return replies;
+    }
+
+    private HttpRequest request(URI uri) {
+        return HttpRequest.newBuilder(uri).timeout(Duration.ofNanos(shardTimeoutNanos)).GET().build();
+    }
+
+    // "docId\tscore" per line
+    private static void parseHits(String body, int shard, List<Hit> hits) {
+        for (String line : body.split("\n")) {
+            int tab = line.indexOf('\t');
+            if (tab > 0) {
+                hits.add(new Hit(Integer.parseInt(line.substring(0, tab)), Double.parseDouble(line.substring(tab + 1)), shard));
+            }
+        }
+    }
+
+    /*
+     * Gathers every shard's statistics and sends them all the sum.
+     *
+     * @throws IOException if some shard did not answer
+     */
+    private void sendStatistics() throws IOException, InterruptedException {
+        List<CollectionStatistics> partitions = new ArrayList<>(shards.size());
+        for (URI shard : shards) {
+            HttpResponse<String> response = client.send(HttpRequest.newBuilder(shard.resolve("/shard/statistics"))
+                    .timeout(STATISTICS_TIMEOUT).GET().build(), HttpResponse.BodyHandlers.ofString());
+            if (response.statusCode() != 200) {
+                throw new IOException(shard + " answered HTTP " + response.statusCode() + " for its statistics");
+            }
+            partitions.add(CollectionStatistics.decode(response.body()));
+        }
+        CollectionStatistics collection = CollectionStatistics.sum(partitions);
+        String encoded = collection.encode();
+        for (URI shard : shards) {
+            HttpResponse<Void> response = client.send(HttpRequest.newBuilder(shard.resolve("/shard/statistics"))
+                    .timeout(STATISTICS_TIMEOUT).PUT(HttpRequest.BodyPublishers.ofString(encoded)).build(), HttpResponse.BodyHandlers.discarding());
+            if (response.statusCode() != 204) {
+                throw new IOException(shard + " answered HTTP " + response.statusCode() + " to the statistics");
+            }
+        }
+        version = Long.toHexString(collection.version());
+    }
+
+    // at most one resend at a time, however many searches found a shard out of date
+    private void resendStatistics() {
+        if (!resending.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    sendStatistics();
+                } catch (IOException e) {
+                    // a shard is still down: the next search that reaches it tries again
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    resending.set(false);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            resending.set(false);
+        }
+    }
+
+    // one shard's result
+    private static final class Hit {
+        final int docId;
+        final double score;
+        final int shard;
+        // the fetched document fields, or null if the fetch failed
+        String fields;
+
+        Hit(int docId, double score, int shard) {
+            this.docId = docId;
+            this.score = score;
+            this.shard = shard;
+        }
+    }
+
+    // a shard's response, or why there is none
+    private static final class Reply {
+        final HttpResponse<String> response;
+        final String error;
+
+        Reply(HttpResponse<String> response, String error) {
+            this.response = response;
+            this.error = error;
+        }
+    }
+
+    private static final class Failure {
+        final int shard;
+        final String error;
+
+        Failure(int shard, String error) {
+            this.shard = shard;
+            this.error = error;
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package Server;
+
+import DocumentStore.DocumentReader;
+import SearchEngine.Highlighter;
+
+/**
+ * The little JSON the servers write: string literals escaped per RFC 8259, and the
+ * fields that describe a search result.
+ */
+final class Json {
+
+    private Json() {
+    }
+
+    // appends value as a quoted JSON string, or null
+    static void string(StringBuilder out, String value) {
+        if (value == null) {
+            out.append("null");
+            return;
+        }
+        out.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"' -> out.append("\\\"");
+                case '\\' -> out.append("\\\\");
+                case '\n' -> out.append("\\n");
+                case '\r' -> out.append("\\r");
+                case '\t' -> out.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        out.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        out.append(c);
+                    }
+                }
+            }
+        }
+        out.append('"');
+    }
+
+    /**
+     * Appends a result document's fields, without braces:
+     * {@code "url":...,"title":...,"snippet":...,"highlights":[[from,to],...]}.
+     * The text has no line breaks, which JSON strings escape.
+     */
+    static void document(StringBuilder out, DocumentReader documents, int docId, Highlighter.Snippet snippet) {
+        out.append("\"url\":");
+        string(out, documents.url(docId));
+        out.append(",\"title\":");
+        string(out, documents.title(docId));
+        out.append(",\"snippet\":");
+        string(out, snippet.text);
+        out.append(",\"highlights\":[");
+        for (int h = 0; h < snippet.highlights.length; h += 2) {
+            if (h > 0) out.append(',');
+            out.append('[').append(snippet.highlights[h]).append(',').append(snippet.highlights[h + 1]).append(']');
+        }
+        out.append(']');
+    }
+}
@@ -0,0 +1,20 @@
+package Server;
+
+/**
+ * What a {@link SearchServer} answers {@code /search} with: a local
+ * {@link SearchEngine.SearchEngine}, or a {@link Coordinator} over shard servers. The
+ * server parses the parameters, admits the request and bounds its time; the backend
+ * finds the page of results and writes it.
+ */
+public interface SearchBackend {
+
+    /**
+     * Appends the results ranked offset to offset + k - 1 as the JSON members that
+     * follow {@code "k"} in the response: {@code "results":[...]}, each result an
+     * object of its docId, score, url, title, snippet and highlights, and whatever
+     * else the backend reports. Called on a virtual thread.
+     *
+     * @throws IllegalArgumentException if the query is malformed, answered with 400
+     */
+    void search(String query, int k, int offset, StringBuilder json);
+}
@@ -0,0 +1,407 @@
+package Server;
+
+import Autocomplete.Autocomplete;
+import DocumentStore.DocumentReader;
+import Metrics.Counter;
+import Metrics.Histogram;
+import Metrics.Metrics;
+import SearchEngine.Highlighter;
+import SearchEngine.SearchEngine;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * A JSON search endpoint on the JDK's built-in {@link HttpServer}:
+ * <pre>
+ * GET /search?q=old+kingdom&amp;k=10&amp;offset=0
+ *
+ * {"query":"old kingdom","offset":0,"k":10,"tookMs":0.412,"results":[
+ *   {"docId":12,"score":0.3127,"url":"...","title":"...","snippet":"...","highlights":[[4,7],[21,28]]},
+ *   ...]}
+ * </pre>
+ * Every exchange is handled on its own virtual thread, so a slow client never holds a
+ * platform thread. Queries are admitted in two stages: at most {@code maxConcurrent}
+ * are evaluated at once and at most {@code maxQueued} more wait for a slot. A request
+ * arriving when both are full is refused at once with 503 and Retry-After, so overload
+ * sheds work instead of growing an unbounded queue. The timeout covers waiting for a
+ * slot as well as evaluation; a request that runs out of time gets 503 if it never
+ * started and 504 if its query was still running. A timed-out query keeps its slot
+ * until it finishes, so the limits always reflect the work actually in progress.
+ * <p>
+ * With an {@link Autocomplete}, {@code GET /suggest?q=egyptian+pyr&amp;k=8} answers with
+ * completions of what the user has typed so far, heaviest first:
+ * <pre>
+ * {"prefix":"egyptian pyr","suggestions":[{"text":"egyptian pyramid","weight":212},...]}
+ * </pre>
+ * Suggestions are answered on the exchange's own thread, without admission: a lookup
+ * takes microseconds, less than the admission itself. Every search that returns
+ * results on its first page is recorded as a query to suggest.
+ * <p>
+ * Errors are JSON too: {@code {"error":"..."}} with 400 for a missing or malformed
+ * parameter or query, 405 for anything but GET.
+ * <p>
+ * {@code GET /metrics} answers with the text dump of {@link Metrics#shared()}: the
+ * query, index and crawler histograms, plus {@code server.request}, the latency of
+ * every search request as the server saw it, {@code server.suggest}, the same for
+ * suggestions, and {@code server.rejected}, the requests refused with 503 or 504.
+ * <p>
+ * The results come from a {@link SearchBackend}: a local engine, highlighter and
+ * document store, or a {@link Coordinator} that gathers them from shard servers.
+ */
+public class SearchServer implements Closeable {
+    private static final int DEFAULT_K = 10;
+    static final int MAX_K = 100;
+    static final int MAX_OFFSET = 1_000;
+    private static final Histogram REQUEST = Metrics.shared().histogram("server.request");
+    private static final Histogram SUGGEST = Metrics.shared().histogram("server.suggest");
+    private static final Counter REJECTED = Metrics.shared().counter("server.rejected");
+
+    static {
+        disableNagle();
+    }
+
+    private final SearchBackend backend;
+    // null when the server answers no suggestions
+    private final Autocomplete autocomplete;
+    private final long timeoutNanos;
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    // requests waiting for or holding a slot
+    private final Semaphore admitted;
+    // queries being evaluated
+    private final Semaphore running;
+
+    /**
+     * A server that evaluates one query per core and queues up to four times as many.
+     */
+    public SearchServer(InetSocketAddress address, SearchEngine engine, Highlighter highlighter,
+                        DocumentReader documents) throws IOException {
+        this(address, engine, highlighter, documents, null);
+    }
+
+    /**
+     * Like {@link #SearchServer(InetSocketAddress, SearchEngine, Highlighter, DocumentReader)},
+     * also answering {@code /suggest} from the autocomplete.
+     */
+    public SearchServer(InetSocketAddress address, SearchEngine engine, Highlighter highlighter,
+                        DocumentReader documents, Autocomplete autocomplete) throws IOException {
+        this(address, engine, highlighter, documents, autocomplete, Runtime.getRuntime().availableProcessors(),
+                4 * Runtime.getRuntime().availableProcessors(), Duration.ofSeconds(2));
+    }
+
+    /**
+     * @param address       where to listen; port 0 picks a free port, see {@link #port()}
+     * @param maxConcurrent the number of queries evaluated at once
+     * @param maxQueued     the number of admitted requests that may wait for a free slot
+     * @param timeout       how long a request may wait and run before it is answered with an error
+     */
+    public SearchServer(InetSocketAddress address, SearchEngine engine, Highlighter highlighter,
+                        DocumentReader documents, int maxConcurrent, int maxQueued, Duration timeout) throws IOException {
+        this(address, engine, highlighter, documents, null, maxConcurrent, maxQueued, timeout);
+    }
+
+    /**
+     * @param autocomplete answers {@code /suggest} and learns from the searches, or null for neither
+     */
+    public SearchServer(InetSocketAddress address, SearchEngine engine, Highlighter highlighter,
+                        DocumentReader documents, Autocomplete autocomplete, int maxConcurrent, int maxQueued,
+                        Duration timeout) throws IOException {
+        this(address, new LocalBackend(engine, highlighter, documents, autocomplete), autocomplete, maxConcurrent,
+                maxQueued, timeout);
+    }
+
+    /**
+     * A server that answers searches from the backend, such as a {@link Coordinator},
+     * and no suggestions. The timeout has to leave the backend time to answer.
+     */
+    public SearchServer(InetSocketAddress address, SearchBackend backend, int maxConcurrent, int maxQueued,
+                        Duration timeout) throws IOException {
+        this(address, backend, null, maxConcurrent, maxQueued, timeout);
+    }
+
+    private SearchServer(InetSocketAddress address, SearchBackend backend, Autocomplete autocomplete,
+                         int maxConcurrent, int maxQueued, Duration timeout) throws IOException {
+        if (maxConcurrent < 1 || maxQueued < 0 || timeout.isNegative() || timeout.isZero()) {
+            throw new IllegalArgumentException("invalid server limits: maxConcurrent=" + maxConcurrent
+                    + ", maxQueued=" + maxQueued + ", timeout=" + timeout);
+        }
+        this.backend = backend;
+        this.autocomplete = autocomplete;
+        this.timeoutNanos = timeout.toNanos();
+        this.admitted = new Semaphore(maxConcurrent + maxQueued);
+        this.running = new Semaphore(maxConcurrent);
+
+        this.server = HttpServer.create(address, 0);
+        server.setExecutor(executor);
+        server.createContext("/search", this::handle);
+        server.createContext("/metrics", this::handleMetrics);
+        if (autocomplete != null) {
+            server.createContext("/suggest", this::handleSuggest);
+        }
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    // the port the server listens on
+    public int port() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Stops accepting connections and waits up to a second for exchanges in progress.
+     */
+    @Override
+    public void close() {
+        server.stop(1);
+        executor.shutdown();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            long started = System.nanoTime();
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                exchange.getResponseHeaders().set("Allow", "GET");
+                sendError(exchange, 405, "only GET is supported");
+                return;
+            }
+            Map<String, String> params = parameters(exchange.getRequestURI().getRawQuery());
+            String query = params.get("q");
+            int k, offset;
+            try {
+                k = intParameter(params, "k", DEFAULT_K, 1, MAX_K);
+                offset = intParameter(params, "offset", 0, 0, MAX_OFFSET);
+            } catch (IllegalArgumentException e) {
+                sendError(exchange, 400, e.getMessage());
+                return;
+            }
+            if (query == null || query.isBlank()) {
+                sendError(exchange, 400, "missing parameter q");
+                return;
+            }
+
+            if (!admitted.tryAcquire()) {
+                REJECTED.increment();
+                exchange.getResponseHeaders().set("Retry-After", "1");
+                sendError(exchange, 503, "server overloaded");
+                return;
+            }
+            try {
+                respond(exchange, query, k, offset, started);
+            } finally {
+                admitted.release();
+                REQUEST.recordSince(started);
+            }
+        }
+    }
+
+    private void handleMetrics(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            send(exchange, 200, "text/plain; charset=utf-8", Metrics.shared().dump());
+        }
+    }
+
+    private void handleSuggest(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            long started = System.nanoTime();
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                exchange.getResponseHeaders().set("Allow", "GET");
+                sendError(exchange, 405, "only GET is supported");
+                return;
+            }
+            Map<String, String> params = parameters(exchange.getRequestURI().getRawQuery());
+            String prefix = params.get("q");
+            int k;
+            try {
+                k = intParameter(params, "k", DEFAULT_K, 1, Autocomplete.MAX_K);
+            } catch (IllegalArgumentException e) {
+                sendError(exchange, 400, e.getMessage());
+                return;
+            }
+            if (prefix == null) {
+                sendError(exchange, 400, "missing parameter q");
+                return;
+            }
+            StringBuilder json = new StringBuilder(64 + 64 * k).append("{\"prefix\":");
+            Json.string(json, prefix);
+            json.append(",\"suggestions\":[");
+            List<Autocomplete.Suggestion> suggestions = autocomplete.suggest(prefix, k);
+            for (int i = 0; i < suggestions.size(); i++) {
+                if (i > 0) json.append(',');
+                json.append("{\"text\":");
+                Json.string(json, suggestions.get(i).text);
+                json.append(",\"weight\":").append(suggestions.get(i).weight).append('}');
+            }
+            send(exchange, 200, json.append("]}").toString());
+            SUGGEST.recordSince(started);
+        }
+    }
+
+    private void respond(HttpExchange exchange, String query, int k, int offset, long started) throws IOException {
+        long deadline = started + timeoutNanos;
+        try {
+            if (!running.tryAcquire(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+                REJECTED.increment();
+                exchange.getResponseHeaders().set("Retry-After", "1");
+                sendError(exchange, 503, "timed out waiting for a free slot");
+                return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            sendError(exchange, 503, "interrupted");
+            return;
+        }
+
+        Future<String> results;
+        try {
+            results = executor.submit(() -> {
+                try {
+                    return render(query, k, offset, started);
+                } finally {
+                    running.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            running.release();
+            sendError(exchange, 503, "server shutting down");
+            return;
+        }
+
+        try {
+            send(exchange, 200, results.get(deadline - System.nanoTime(), TimeUnit.NANOSECONDS));
+        } catch (TimeoutException e) {
+            REJECTED.increment();
+            sendError(exchange, 504, "query timed out");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IllegalArgumentException invalid) {
+                sendError(exchange, 400, "invalid query: " + invalid.getMessage());
+            } else {
+                sendError(exchange, 500, "search failed");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            sendError(exchange, 503, "interrupted");
+        }
+    }
+
+    private String render(String query, int k, int offset, long started) {
+        StringBuilder json = new StringBuilder(256 + 512 * k);
+        json.append("{\"query\":");
+        Json.string(json, query);
+        json.append(",\"offset\":").append(offset).append(",\"k\":").append(k).append(',');
+        backend.search(query, k, offset, json);
+        json.append(",\"tookMs\":").append((System.nanoTime() - started) / 1_000L / 1e3).append('}');
+        return json.toString();
+    }
+
+    // searches one engine, renders with its highlighter and documents
+    private static final class LocalBackend implements SearchBackend {
+        private final SearchEngine engine;
+        private final Highlighter highlighter;
+        private final DocumentReader documents;
+        private final Autocomplete autocomplete;
+
+        LocalBackend(SearchEngine engine, Highlighter highlighter, DocumentReader documents, Autocomplete autocomplete) {
+            this.engine = engine;
+            this.highlighter = highlighter;
+            this.documents = documents;
+            this.autocomplete = autocomplete;
+        }
+
+        @Override
+        public void search(String query, int k, int offset, StringBuilder json) {
+            List<SearchEngine.Result> results = engine.search(query, offset + k);
+            Set<String> terms = engine.highlightTerms(query);
+            if (autocomplete != null && offset == 0 && !results.isEmpty()) {
+                autocomplete.recordQuery(query);
+            }
+            json.append("\"results\":[");
+            for (int i = offset; i < results.size(); i++) {
+                SearchEngine.Result result = results.get(i);
+                if (i > offset) json.append(',');
+                json.append("{\"docId\":").append(result.docId).append(",\"score\":").append(result.score).append(',');
+                Json.document(json, documents, result.docId, highlighter.snippet(result.docId, terms));
+                json.append('}');
+            }
+            json.append(']');
+        }
+    }
+
+    /*
+     * The JDK server writes a response's headers and body separately. With Nagle's
+     * algorithm on, the body then waits for the client's delayed ACK, which adds about
+     * 40ms to every response. It reads this property once, when first used, so every
+     * server here sets it before creating its HttpServer.
+     */
+    static void disableNagle() {
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+    }
+
+    static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        StringBuilder json = new StringBuilder("{\"error\":");
+        Json.string(json, message);
+        send(exchange, status, json.append('}').toString());
+    }
+
+    static void send(HttpExchange exchange, int status, String body) throws IOException {
+        send(exchange, status, "application/json; charset=utf-8", body);
+    }
+
+    static void send(HttpExchange exchange, int status, String contentType, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    // the decoded name=value pairs of a query string; the first occurrence of a name wins
+    static Map<String, String> parameters(String rawQuery) {
+        Map<String, String> params = new HashMap<>();
+        if (rawQuery == null) {
+            return params;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int eq = pair.indexOf('=');
+            String name = eq < 0 ? pair : pair.substring(0, eq);
+            String value = eq < 0 ? "" : pair.substring(eq + 1);
+            try {
+                params.putIfAbsent(URLDecoder.decode(name, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+            } catch (IllegalArgumentException e) {
+                // a malformed %-escape: ignore the pair
+            }
+        }
+        return params;
+    }
+
+    static int intParameter(Map<String, String> params, String name, int defaultValue, int min, int max) {
+        String value = params.get(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            int parsed = Integer.parseInt(value.trim());
+            if (parsed >= min && parsed <= max) {
+                return parsed;
+            }
+        } catch (NumberFormatException e) {
+            // reported below
+        }
+        throw new IllegalArgumentException(name + " must be an integer from " + min + " to " + max + ": " + value);
+    }
+}
@@ -0,0 +1,252 @@
+package Server;
+
+import Cluster.CollectionStatistics;
+import Cluster.Partition;
+import DocumentStore.DocumentReader;
+import InvertedIndex.IndexReader;
+import Metrics.Histogram;
+import Metrics.Metrics;
+import SearchEngine.Highlighter;
+import SearchEngine.ScoringModel;
+import SearchEngine.SearchEngine;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * One shard of a document-partitioned deployment: serves searches over its
+ * {@link Partition}'s index to a {@link Coordinator}, which merges the shards' results.
+ * The protocol is plain text, tab-separated, with global docIds throughout:
+ * <pre>
+ * GET /shard/statistics              this shard's {@link CollectionStatistics}
+ * PUT /shard/statistics              installs the whole collection's statistics
+ * GET /shard/search?q=...&amp;k=20&amp;stats=3f2a...
+ *                                    the top k: "docId\tscore" per line, best first
+ * GET /shard/fetch?q=...&amp;docs=12,40
+ *                                    one line of JSON document fields per docId
+ * </pre>
+ * The shard ranks with the statistics it was last sent, so its scores are those an
+ * index of the whole collection would give, and answers a search only if its
+ * {@code stats} version is theirs: 409 otherwise, including before any were sent,
+ * and the coordinator then sends them again. Scores are written with
+ * {@link Double#toString(double)}, which the coordinator parses back to the same value.
+ * <p>
+ * Fetching is separate from searching so that only the documents on the merged page
+ * are highlighted, not every shard's top k. Errors are 400 for a malformed request or
+ * query, with the message as plain text.
+ * <p>
+ * A shard runs every request it gets, each on its own virtual thread: admission and
+ * timeouts are the coordinator's, which sends a shard at most two requests for each
+ * query it admitted. {@code GET /metrics} is the shard's own dump, with
+ * {@code shard.search} and {@code shard.fetch}.
+ */
+public class ShardServer implements Closeable {
+    private static final Histogram SEARCH = Metrics.shared().histogram("shard.search");
+    private static final Histogram FETCH = Metrics.shared().histogram("shard.fetch");
+    // the most a coordinator behind a SearchServer asks for in one search or fetch
+    private static final int MAX_K = SearchServer.MAX_OFFSET + SearchServer.MAX_K;
+
+    static {
+        SearchServer.disableNagle();
+    }
+
+    private final IndexReader index;
+    private final Partition partition;
+    private final DocumentReader documents;
+    private final Highlighter highlighter;
+    // expands the wildcards of a query to highlight, which needs no statistics
+    private final SearchEngine terms;
+    private final ScoringModel model;
+    private final int cacheSize;
+    private final String statistics;
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    // null until the coordinator sends the collection's statistics
+    private volatile Ranking ranking;
+
+    /**
+     * @param index      the partition's index, under local docIds
+     * @param collection the whole collection's documents, under global docIds
+     * @param cacheSize  the result cache of the engine, see {@link SearchEngine}
+     */
+    public ShardServer(InetSocketAddress address, IndexReader index, Partition partition, DocumentReader collection,
+                       ScoringModel model, int cacheSize) throws IOException {
+        this.index = index;
+        this.partition = partition;
+        this.documents = partition.documents(collection);
+        this.highlighter = new Highlighter(index, documents);
+        this.terms = new SearchEngine(index, model);
+        this.model = model;
+        this.cacheSize = cacheSize;
+        this.statistics = CollectionStatistics.of(index).encode();
+
+        this.server = HttpServer.create(address, 0);
+        server.setExecutor(executor);
+        server.createContext("/shard/statistics", this::handleStatistics);
+        server.createContext("/shard/search", this::handleSearch);
+        server.createContext("/shard/fetch", this::handleFetch);
+        server.createContext("/metrics", exchange -> {
+            try (exchange) {
+                SearchServer.send(exchange, 200, "text/plain; charset=utf-8", Metrics.shared().dump());
+            }
+        });
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    // the port the server listens on
+    public int port() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Stops accepting connections and waits up to a second for exchanges in progress.
+     */
+    @Override
+    public void close() {
+        server.stop(1);
+        executor.shutdown();
+    }
+
+    private void handleStatistics(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            switch (exchange.getRequestMethod()) {
+                case "GET" -> sendText(exchange, 200, statistics);
+                case "PUT" -> {
+                    CollectionStatistics collection;
+                    try (InputStream body = exchange.getRequestBody()) {
+                        collection = CollectionStatistics.decode(new String(body.readAllBytes(), StandardCharsets.UTF_8));
+                    } catch (IllegalArgumentException e) {
+                        sendText(exchange, 400, e.getMessage());
+                        return;
+                    }
+                    Ranking current = ranking;
+                    if (current == null || current.version != collection.version()) {
+                        ranking = new Ranking(collection.version(), new SearchEngine(collection.over(index), model, cacheSize));
+                    }
+                    exchange.sendResponseHeaders(204, -1);
+                }
+                default -> {
+                    exchange.getResponseHeaders().set("Allow", "GET, PUT");
+                    sendText(exchange, 405, "only GET and PUT are supported");
+                }
+            }
+        }
+    }
+
+    private void handleSearch(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            long started = System.nanoTime();
+            Map<String, String> params = SearchServer.parameters(exchange.getRequestURI().getRawQuery());
+            String query = params.get("q");
+            int k;
+            try {
+                k = SearchServer.intParameter(params, "k", 10, 1, MAX_K);
+            } catch (IllegalArgumentException e) {
+                sendText(exchange, 400, e.getMessage());
+                return;
+            }
+            if (query == null || query.isBlank()) {
+                sendText(exchange, 400, "missing parameter q");
+                return;
+            }
+            Ranking current = ranking;
+            if (current == null || !Long.toHexString(current.version).equals(params.get("stats"))) {
+                sendText(exchange, 409, current == null ? "no collection statistics"
+                        : "collection statistics are version " + Long.toHexString(current.version));
+                return;
+            }
+
+            List<SearchEngine.Result> results;
+            try {
+                results = current.engine.search(query, k);
+            } catch (IllegalArgumentException e) {
+                sendText(exchange, 400, "invalid query: " + e.getMessage());
+                return;
+            }
+            StringBuilder text = new StringBuilder(32 * results.size());
+            for (SearchEngine.Result result : results) {
+                text.append(partition.globalDocId(result.docId)).append('\t').append(result.score).append('\n');
+            }
+            sendText(exchange, 200, text.toString());
+            SEARCH.recordSince(started);
+        }
+    }
+
+    private void handleFetch(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            long started = System.nanoTime();
+            Map<String, String> params = SearchServer.parameters(exchange.getRequestURI().getRawQuery());
+            String query = params.get("q");
+            String docs = params.get("docs");
+            if (query == null || docs == null) {
+                sendText(exchange, 400, "missing parameter " + (query == null ? "q" : "docs"));
+                return;
+            }
+            int[] docIds;
+            Set<String> highlight;
+            try {
+                docIds = docIds(docs);
+                highlight = terms.highlightTerms(query);
+            } catch (IllegalArgumentException e) {
+                sendText(exchange, 400, e.getMessage());
+                return;
+            }
+
+            StringBuilder text = new StringBuilder(512 * docIds.length);
+            for (int docId : docIds) {
+                int local = partition.localDocId(docId);
+                Json.document(text, documents, local, highlighter.snippet(local, highlight));
+                text.append('\n');
+            }
+            sendText(exchange, 200, text.toString());
+            FETCH.recordSince(started);
+        }
+    }
+
+    // the comma-separated global docIds, each of which this shard has to own
+    private int[] docIds(String docs) {
+        String[] values = docs.split(",");
+        if (values.length > MAX_K) {
+            throw new IllegalArgumentException("at most " + MAX_K + " docs per fetch: " + values.length);
+        }
+        int[] docIds = new int[values.length];
+        for (int i = 0; i < values.length; i++) {
+            try {
+                docIds[i] = Integer.parseInt(values[i].trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("malformed docId: " + values[i]);
+            }
+            if (!partition.contains(docIds[i])) {
+                throw new IllegalArgumentException("docId " + docIds[i] + " is not on " + partition);
+            }
+        }
+        return docIds;
+    }
+
+    private static void sendText(HttpExchange exchange, int status, String body) throws IOException {
+        SearchServer.send(exchange, status, "text/plain; charset=utf-8", body);
+    }
+
+    // an engine ranking by one version of the collection's statistics
+    private static final class Ranking {
+        final long version;
+        final SearchEngine engine;
+
+        Ranking(long version, SearchEngine engine) {
+            this.version = version;
+            this.engine = engine;
+        }
+    }
+}
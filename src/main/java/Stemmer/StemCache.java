@@ -0,0 +1,91 @@
+package Stemmer;
+
+/**
+ * Bounded, thread-safe cache from surface forms to their interned stems.
+ * <p>
+ * Token frequencies in natural language are heavily skewed, so a small cache absorbs
+ * most stemming work. The cache is direct-mapped: a word hashes to exactly one slot
+ * holding an immutable entry, and a colliding word simply replaces it. Lookups take
+ * a character range of the caller's buffer and compare it in place, so a hit neither
+ * copies the word nor allocates. Only a miss stems the word, on a per-thread reusable
+ * {@link Stemmer}, and publishes a new entry.
+ * <p>
+ * Input must already be lower case, as {@link Stemmer} expects.
+ */
+public class StemCache {
+    private static final int DEFAULT_CAPACITY = 1 << 16;
+    private static final StemCache SHARED = new StemCache(DEFAULT_CAPACITY);
+
+    private final Entry[] slots;
+    private final int mask;
+    private final ThreadLocal<Stemmer> stemmers = ThreadLocal.withInitial(Stemmer::new);
+
+    /**
+     * @param capacity maximum number of cached words, rounded up to a power of two
+     */
+    public StemCache(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        int size = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+        this.slots = new Entry[size];
+        this.mask = size - 1;
+    }
+
+    /**
+     * The cache shared by indexing and query analysis.
+     */
+    public static StemCache shared() {
+        return SHARED;
+    }
+
+    public String stem(String word) {
+        return stem(word, 0, word.length());
+    }
+
+    /**
+     * Returns the interned stem of the characters start..end-1 of text.
+     */
+    public String stem(CharSequence text, int start, int end) {
+        int hash = 0;
+        for (int c = start; c < end; c++) {
+            hash = 31 * hash + text.charAt(c);
+        }
+        int slot = (hash ^ (hash >>> 16)) & mask;
+
+        // entries are immutable, so a racy read sees either a complete entry or null
+        Entry entry = slots[slot];
+        if (entry != null && entry.matches(hash, text, start, end)) {
+            return entry.stem;
+        }
+
+        Stemmer stemmer = stemmers.get();
+        stemmer.reset();
+        stemmer.add(text, start, end);
+        stemmer.stem();
+        String stem = stemmer.toString().intern();
+        slots[slot] = new Entry(hash, text, start, end, stem);
+        return stem;
+    }
+
+    private static final class Entry {
+        final int hash;
+        final char[] word;
+        final String stem;
+
+        Entry(int hash, CharSequence text, int start, int end, String stem) {
+            this.hash = hash;
+            this.word = new char[end - start];
+            for (int c = start; c < end; c++) word[c - start] = text.charAt(c);
+            this.stem = stem;
+        }
+
+        boolean matches(int hash, CharSequence text, int start, int end) {
+            if (this.hash != hash || word.length != end - start) return false;
+            for (int c = 0; c < word.length; c++) {
+                if (word[c] != text.charAt(start + c)) return false;
+            }
+            return true;
+        }
+    }
+}
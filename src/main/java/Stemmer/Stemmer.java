@@ -33,7 +33,30 @@ public   class Stemmer {
         i_end = 0;
     }
     public void addString(String s){
-         add(s.toCharArray(), s.length());
+         add(s, 0, s.length());
+    }
+
+    /**
+     * Adds the characters start..end-1 of s without copying them into an
+     * intermediate array.
+     */
+    public void add(CharSequence s, int start, int end) {
+        int len = end - start;
+        if (i + len >= b.length) {
+            char[] new_b = new char[i + len + INC];
+            for (int c = 0; c < i; c++) new_b[c] = b[c];
+            b = new_b;
+        }
+        for (int c = start; c < end; c++) b[i++] = s.charAt(c);
+    }
+
+    /**
+     * Discards any characters added since the last call to stem(), so the
+     * same instance can be reused for the next word.
+     */
+    public void reset() {
+        i = 0;
+        i_end = 0;
     }
     /**
      * Add a character to the word being stemmed.  When you are finished
@@ -0,0 +1,81 @@
+package Tokenizer;
+
+import Metrics.Histogram;
+import Metrics.Metrics;
+import Stemmer.StemCache;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The analysis chain shared by indexing and querying: tokenize, lower-case, stem.
+ * Both sides must analyze text identically or query terms will not match the index.
+ * <p>
+ * An Analyzer holds a reusable {@link Tokenizer} and is not thread-safe; use one
+ * per thread (or per index writer). Stems come from the shared {@link StemCache}.
+ * <p>
+ * One call in 64 is timed in detail: the time spent stemming and the time spent
+ * tokenizing (everything else except the consumer) are recorded in
+ * {@link Metrics#shared()} as {@code analyzer.stem} and {@code analyzer.tokenize}.
+ * Timing each token costs two clock reads per token, so only a sample pays it.
+ */
+public class Analyzer {
+    private static final int SAMPLE_INTERVAL = 64;
+    private static final Histogram TOKENIZE = Metrics.shared().histogram("analyzer.tokenize");
+    private static final Histogram STEM = Metrics.shared().histogram("analyzer.stem");
+
+    /**
+     * Receives each term of the text in order, with the token's position and the
+     * character offsets of its surface form in the original text.
+     */
+    @FunctionalInterface
+    public interface TermConsumer {
+        void accept(String term, int position, int start, int end);
+    }
+
+    private final Tokenizer tokenizer = new Tokenizer();
+    private final StemCache stems;
+
+    public Analyzer() {
+        this(StemCache.shared());
+    }
+
+    public Analyzer(StemCache stems) {
+        this.stems = stems;
+    }
+
+    /**
+     * Analyzes the text and returns the number of terms produced.
+     */
+    public int analyze(CharSequence text, TermConsumer consumer) {
+        if (ThreadLocalRandom.current().nextInt(SAMPLE_INTERVAL) == 0) {
+            return analyzeTimed(text, consumer);
+        }
+        Tokenizer tokens = tokenizer.reset(text);
+        int count = 0;
+        while (tokens.next()) {
+            consumer.accept(stems.stem(tokens, 0, tokens.length()), tokens.position(), tokens.start(), tokens.end());
+            count++;
+        }
+        return count;
+    }
+
+    private int analyzeTimed(CharSequence text, TermConsumer consumer) {
+        long started = System.nanoTime();
+        long stemming = 0, consuming = 0;
+        Tokenizer tokens = tokenizer.reset(text);
+        int count = 0;
+        while (tokens.next()) {
+            long stemStarted = System.nanoTime();
+            String term = stems.stem(tokens, 0, tokens.length());
+            long stemmed = System.nanoTime();
+            consumer.accept(term, tokens.position(), tokens.start(), tokens.end());
+            long consumed = System.nanoTime();
+            stemming += stemmed - stemStarted;
+            consuming += consumed - stemmed;
+            count++;
+        }
+        STEM.record(stemming);
+        TOKENIZE.record(System.nanoTime() - started - stemming - consuming);
+        return count;
+    }
+}
@@ -0,0 +1,116 @@
+package Tokenizer;
+
+import java.util.Arrays;
+
+/**
+ * Single-pass tokenizer that walks a CharSequence and lower-cases on the fly.
+ * <p>
+ * Tokens are maximal runs of word characters ({@code [A-Za-z0-9_]}, the set {@code \w}
+ * matches), so it produces the same tokens as {@code toLowerCase().split("\\W+")}
+ * (apart from a few non-ASCII characters whose lower case is ASCII, such as the Kelvin
+ * sign) without copying the text, running a regex or building a token array. The tokenizer
+ * is a cursor: after {@link #next()} returns true it describes the current token,
+ * and it is itself a CharSequence view of the token's lower-cased characters.
+ * Nothing is allocated per token, so the view is only valid until the next call.
+ * <pre>
+ * Tokenizer tokens = new Tokenizer().reset(text);
+ * while (tokens.next()) {
+ *     use(tokens, tokens.start(), tokens.end(), tokens.position());
+ * }
+ * </pre>
+ */
+public class Tokenizer implements CharSequence {
+    private CharSequence text = "";
+    private int limit;
+    private int offset;
+
+    private char[] buffer = new char[32];
+    private int length;
+    private int start;
+    private int end;
+    private int position;
+
+    public Tokenizer reset(CharSequence text) {
+        return reset(text, 0, text.length());
+    }
+
+    /**
+     * Tokenizes only the characters from..to-1 of text. Offsets stay relative to
+     * the whole text, and positions restart at 0.
+     */
+    public Tokenizer reset(CharSequence text, int from, int to) {
+        this.text = text;
+        this.limit = to;
+        this.offset = from;
+        this.length = 0;
+        this.start = this.end = from;
+        this.position = -1;
+        return this;
+    }
+
+    /**
+     * Moves to the next token. Returns false once the text is exhausted.
+     */
+    public boolean next() {
+        int i = offset;
+        while (i < limit && !isWordChar(text.charAt(i))) i++;
+        if (i >= limit) {
+            offset = limit;
+            length = 0;
+            return false;
+        }
+        start = i;
+        int n = 0;
+        for (; i < limit; i++) {
+            char c = text.charAt(i);
+            if (!isWordChar(c)) break;
+            if (n == buffer.length) {
+                buffer = Arrays.copyOf(buffer, n * 2);
+            }
+            buffer[n++] = (c >= 'A' && c <= 'Z') ? (char) (c + ('a' - 'A')) : c;
+        }
+        end = offset = i;
+        length = n;
+        position++;
+        return true;
+    }
+
+    // character offset of the current token's first char in the text
+    public int start() {
+        return start;
+    }
+
+    // character offset just past the current token
+    public int end() {
+        return end;
+    }
+
+    // index of the current token among the tokens of the text, starting at 0
+    public int position() {
+        return position;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        return buffer[index];
+    }
+
+    @Override
+    public CharSequence subSequence(int from, int to) {
+        return new String(buffer, from, to - from);
+    }
+
+    @Override
+    public String toString() {
+        return new String(buffer, 0, length);
+    }
+
+    private static boolean isWordChar(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_';
+    }
+}
@@ -0,0 +1,211 @@
+package Autocomplete;
+
+import DocumentStore.DocumentStore;
+import InvertedIndex.NearRealTimeIndex;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Completion lookups against a brute-force sort of every phrase, and the suggestions of
+ * an Autocomplete over a small index, its titles and its query log.
+ */
+class AutocompleteTest {
+    private final Random random = new Random(23);
+
+    @Test
+    void completesLikeASortOfEveryPhrase() {
+        TreeMap<String, String> texts = new TreeMap<>();
+        Map<String, Long> weights = new HashMap<>();
+        CompletionIndex.Builder builder = new CompletionIndex.Builder();
+        for (int i = 0; i < 36_000; i++) {
+            String text = phrase();
+            // Zipfian weights, so many phrases tie
+            long weight = 1 + (long) (1000 / (1 + random.nextInt(1000)));
+            builder.add(text, weight);
+            String key = CompletionIndex.key(text, false);
+            texts.putIfAbsent(key, text.trim().replaceAll("\\s+", " "));
+            weights.merge(key, weight, Long::sum);
+        }
+        CompletionIndex index = builder.build();
+        assertEquals(texts.size(), index.size());
+        List<String> keys = new ArrayList<>(texts.keySet());
+        Comparator<String> heaviestFirst = Comparator.comparingLong((String key) -> -weights.get(key))
+                .thenComparing(Comparator.naturalOrder());
+        List<String> ranked = new ArrayList<>(keys);
+        ranked.sort(heaviestFirst);
+
+        for (int i = 0; i < 20_000; i++) {
+            String key = keys.get(random.nextInt(keys.size()));
+            String prefix = i % 10 == 0 ? phrase().toLowerCase(Locale.ROOT) : key.substring(0, random.nextInt(key.length() + 1));
+            int k = 1 + random.nextInt(CompletionIndex.MAX_K);
+            // every key starting with the prefix sorts between it and the prefix followed by the last char
+            Set<String> matching = texts.subMap(prefix, true, prefix + Character.MAX_VALUE, true).keySet();
+            Stream<String> candidates = matching.size() < 1000 ? matching.stream().sorted(heaviestFirst)
+                    : ranked.stream().filter(candidate -> candidate.startsWith(prefix));
+            List<String> expected = candidates.limit(k)
+                    .map(candidate -> texts.get(candidate) + " (" + weights.get(candidate) + ")")
+                    .toList();
+            assertEquals(expected, index.complete(prefix, k).stream().map(Object::toString).toList(),
+                    "'" + prefix + "', k=" + k);
+        }
+    }
+
+    @Test
+    void suggestsWordsTitlesAndRecentQueries() {
+        try (NearRealTimeIndex index = new NearRealTimeIndex(false, Duration.ZERO)) {
+            DocumentStore store = new DocumentStore();
+            String[][] pages = {
+                    {"Great Pyramid of Giza", "the great pyramid at giza"},
+                    {"Great Pyramid of Giza", "a mirror of the great pyramid page"},
+                    {"Great Sphinx", "the sphinx faces the pyramids"},
+                    {"Pyramid of Djoser", "djoser's step pyramid at saqqara"},
+            };
+            for (String[] page : pages) {
+                index.addDocument(store.add("https://example.org/" + store.size(), page[0], page[1]), page[1]);
+            }
+            index.refresh();
+
+            try (Autocomplete autocomplete = new Autocomplete(index, store, Duration.ZERO)) {
+                // "pyramid" is in all four pages, the stem "pyramid" also from "pyramids"
+                assertEquals(List.of("pyramid (4)", "Pyramid of Djoser (1)"), strings(autocomplete.suggest("PYR", 5)));
+                assertEquals(List.of("Great Pyramid of Giza (2)", "great (2)", "Great Sphinx (1)"),
+                        strings(autocomplete.suggest("  great", 5)));
+                // a finished word completes phrases only, and the last word of many completes alone
+                assertEquals(List.of("Great Pyramid of Giza (2)", "Great Sphinx (1)"), strings(autocomplete.suggest("great ", 5)));
+                assertEquals(List.of("great pyramid (4)", "Great Pyramid of Giza (2)"), strings(autocomplete.suggest("great  pyr", 2)));
+                assertTrue(autocomplete.suggest("   ", 5).isEmpty());
+                assertThrows(IllegalArgumentException.class, () -> autocomplete.suggest("great", 0));
+                assertThrows(IllegalArgumentException.class, () -> autocomplete.suggest("great", Autocomplete.MAX_K + 1));
+
+                for (int i = 0; i < 7; i++) {
+                    autocomplete.recordQuery("Saqqara step pyramid");
+                }
+                autocomplete.recordQuery("saqqara AND pyramid");
+                autocomplete.recordQuery("\"saqqara pyramid\"");
+                autocomplete.recordQuery("saqq*");
+                assertTrue(autocomplete.suggest("saq", 5).stream().noneMatch(s -> s.text.contains(" ")),
+                        "queries count from the next rebuild");
+
+                // each rebuild publishes the counts, lower-cased, then halves them: 7, 3, 1, gone
+                for (long weight : new long[]{7, 3, 1}) {
+                    autocomplete.rebuild();
+                    assertEquals(List.of("saqqara (1)", "saqqara step pyramid (" + weight + ")").stream().sorted().toList(),
+                            strings(autocomplete.suggest("saq", 5)).stream().sorted().toList());
+                }
+                autocomplete.rebuild();
+                assertEquals(List.of("saqqara (1)"), strings(autocomplete.suggest("saq", 5)));
+
+                // pages added since are suggested after a rebuild; the new title and the
+                // word it repeats count as one suggestion
+                index.addDocument(store.add("https://example.org/4", "Saqqara", "saqqara necropolis"), "saqqara necropolis");
+                index.refresh();
+                autocomplete.rebuild();
+                assertEquals(List.of("Saqqara (3)"), strings(autocomplete.suggest("saq", 5)));
+            }
+        }
+    }
+
+    @Test
+    void suggestsOnlyTitlesOfLivePages() {
+        try (NearRealTimeIndex index = new NearRealTimeIndex(false, Duration.ZERO)) {
+            DocumentStore store = new DocumentStore();
+            int giza = add(index, store, "Great Pyramid of Giza", "the great pyramid at giza");
+            int sphinx = add(index, store, "Great Sphinx", "the sphinx faces the pyramids");
+            add(index, store, "Great Pyramid of Giza", "a mirror of the great pyramid page");
+            index.refresh();
+
+            try (Autocomplete autocomplete = new Autocomplete(index, store, Duration.ZERO)) {
+                assertEquals(List.of("Great Pyramid of Giza (2)", "Great Sphinx (1)"), strings(autocomplete.suggest("great ", 5)));
+
+                // a recrawl stores a changed page again under a new docId and deletes the
+                // old one, and deletes the pages that are gone; the store keeps them all
+                index.deleteDocument(giza);
+                add(index, store, "Great Pyramid of Giza", "the great pyramid at giza, revised");
+                index.deleteDocument(sphinx);
+                // stored, but not yet in the index's snapshot
+                store.add("https://example.org/" + store.size(), "Great Enclosure", "the great enclosure");
+                index.refresh();
+                autocomplete.rebuild();
+                assertEquals(5, store.size());
+                assertEquals(List.of("Great Pyramid of Giza (2)"), strings(autocomplete.suggest("great ", 5)));
+                assertEquals(List.of(), strings(autocomplete.suggest("great s", 5)));
+            }
+        }
+    }
+
+    private static int add(NearRealTimeIndex index, DocumentStore store, String title, String text) {
+        int docId = store.add("https://example.org/" + store.size(), title, text);
+        index.addDocument(docId, text);
+        return docId;
+    }
+
+    @Test
+    void servesLookupsWhileRebuilding() throws Exception {
+        try (NearRealTimeIndex index = new NearRealTimeIndex(false, Duration.ZERO)) {
+            DocumentStore store = new DocumentStore();
+            for (int docId = 0; docId < 2000; docId++) {
+                String text = phrase();
+                index.addDocument(store.add("https://example.org/" + docId, phrase(), text), text);
+            }
+            index.refresh();
+            AtomicBoolean done = new AtomicBoolean();
+            try (Autocomplete autocomplete = new Autocomplete(index, store, Duration.ofMillis(5));
+                 ExecutorService executor = Executors.newFixedThreadPool(4)) {
+                List<Future<Integer>> readers = new ArrayList<>();
+                for (int thread = 0; thread < 3; thread++) {
+                    long seed = thread;
+                    readers.add(executor.submit(() -> {
+                        Random prefixes = new Random(seed);
+                        int lookups = 0;
+                        while (!done.get() || lookups < 1000) {
+                            String prefix = String.valueOf((char) ('a' + prefixes.nextInt(6)));
+                            List<Autocomplete.Suggestion> suggestions = autocomplete.suggest(prefix, 10);
+                            assertFalse(suggestions.isEmpty(), prefix);
+                            for (int i = 1; i < suggestions.size(); i++) {
+                                assertTrue(suggestions.get(i - 1).weight >= suggestions.get(i).weight);
+                            }
+                            autocomplete.recordQuery(prefix + " query");
+                            lookups++;
+                        }
+                        return lookups;
+                    }));
+                }
+                for (int i = 0; i < 20; i++) {
+                    autocomplete.rebuild();
+                }
+                done.set(true);
+                for (Future<Integer> reader : readers) {
+                    assertTrue(reader.get() >= 1000);
+                }
+            }
+        }
+    }
+
+    private static List<String> strings(List<Autocomplete.Suggestion> suggestions) {
+        return suggestions.stream().map(Object::toString).toList();
+    }
+
+    // one to four short words of a small alphabet, in mixed case and spacing, so keys share prefixes
+    private String phrase() {
+        StringBuilder phrase = new StringBuilder();
+        for (int w = 0, words = 1 + random.nextInt(4); w < words; w++) {
+            if (w > 0) {
+                phrase.append(random.nextInt(8) == 0 ? "  " : " ");
+            }
+            for (int i = 0, length = 1 + random.nextInt(6); i < length; i++) {
+                char c = (char) ('a' + random.nextInt(6));
+                phrase.append(random.nextInt(10) == 0 ? Character.toUpperCase(c) : c);
+            }
+        }
+        return phrase.toString();
+    }
+}
@@ -0,0 +1,77 @@
+package Crawler;
+
+import DocumentStore.DocumentStore;
+import InvertedIndex.InvertedIndex;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The crawl pipeline against the link graph of {@link CrawlerTest}: every stored page
+ * has to reach the index, or the index stage waits for its docId forever.
+ */
+class CrawlPipelineTest {
+    private static final Duration TIMEOUT = Duration.ofSeconds(60);
+
+    private CrawlerTest.LinkGraph graph;
+
+    @AfterEach
+    void stopServer() {
+        if (graph != null) {
+            graph.close();
+        }
+    }
+
+    @Test
+    void indexesEveryStoredPageThroughFullQueues() throws IOException {
+        graph = new CrawlerTest.LinkGraph(400, 0, page -> false);
+        // more parsers than permits to spare, and queues of one page
+        try (Frontier frontier = new Frontier()) {
+            DocumentStore store = new DocumentStore();
+            InvertedIndex index = new InvertedIndex(true);
+            int stored = run(store, frontier, index, 8, 1);
+
+            assertEquals(150, stored);
+            assertEquals(150, store.size());
+            assertEquals(150, index.numDocs());
+        }
+    }
+
+    @Test
+    void indexesAPageWhoseLinksCouldNotBeQueued() throws IOException {
+        graph = new CrawlerTest.LinkGraph(400, 0, page -> false);
+        AtomicInteger adds = new AtomicInteger();
+        // a frontier whose spill fails now and then, after the page it came from is stored
+        try (Frontier frontier = new Frontier() {
+            @Override
+            public synchronized boolean add(String url) {
+                if (adds.incrementAndGet() % 7 == 0) {
+                    throw new UncheckedIOException(new IOException("disk full"));
+                }
+                return super.add(url);
+            }
+        }) {
+            DocumentStore store = new DocumentStore();
+            InvertedIndex index = new InvertedIndex(true);
+            int stored = run(store, frontier, index, 2, 4);
+
+            assertTrue(stored > 10, "stored " + stored);
+            assertEquals(store.size(), stored);
+            assertEquals(store.size(), index.numDocs());
+        }
+    }
+
+    private int run(DocumentStore store, Frontier frontier, InvertedIndex index, int parsers, int queueCapacity) {
+        Crawler crawler = new Crawler(graph.base(), 150, List.of(graph.url(0)), 8,
+                new HostThrottle(0, Integer.MAX_VALUE), store, new CrawlState(), null, frontier);
+        CrawlPipeline pipeline = new CrawlPipeline(crawler, index, parsers, 1, queueCapacity);
+        return assertTimeoutPreemptively(TIMEOUT, pipeline::run);
+    }
+}
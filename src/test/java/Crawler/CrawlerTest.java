@@ -0,0 +1,378 @@
+package Crawler;
+
+import DocumentStore.DocumentStore;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntPredicate;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The concurrent crawl and the recrawl against an embedded HTTP server serving a
+ * generated link graph.
+ */
+class CrawlerTest {
+    private static final Duration TIMEOUT = Duration.ofSeconds(60);
+
+    private LinkGraph graph;
+
+    @AfterEach
+    void stopServer() {
+        if (graph != null) {
+            graph.close();
+        }
+    }
+
+    @Test
+    void storesExactlyMaxPagesAndFetchesEachUrlOnce() throws IOException {
+        graph = new LinkGraph(500, 5, page -> false);
+        DocumentStore store = crawl(100, 8, new HostThrottle(0, Integer.MAX_VALUE));
+
+        assertEquals(100, store.size());
+        assertEquals(100, graph.requests(), "a fetch only starts while a page slot is free");
+        graph.assertNoUrlFetchedTwice();
+        assertTrue(graph.maxInFlight() <= 8, "at most maxConcurrency fetches at once: " + graph.maxInFlight());
+        assertTrue(graph.maxInFlight() > 1, "fetches ran concurrently");
+        Set<String> urls = new HashSet<>();
+        for (int docId = 0; docId < store.size(); docId++) {
+            assertTrue(urls.add(store.url(docId)), "stored twice: " + store.url(docId));
+        }
+    }
+
+    @Test
+    void spacesRequestsToTheSameHost() throws IOException {
+        graph = new LinkGraph(200, 0, page -> false);
+        long started = System.nanoTime();
+        DocumentStore store = crawl(30, 8, new HostThrottle(20, Integer.MAX_VALUE));
+
+        assertEquals(30, store.size());
+        // the throttle hands out slots 20ms apart from the first request on, so however
+        // many fetchers wait and however late a request arrives, the i-th one cannot
+        // arrive before i delays have passed
+        List<Long> arrivals = graph.arrivals();
+        for (int i = 0; i < arrivals.size(); i++) {
+            long sinceStartMillis = (arrivals.get(i) - started) / 1_000_000;
+            assertTrue(sinceStartMillis >= i * 20L, "request " + i + " came after " + sinceStartMillis + "ms");
+        }
+    }
+
+    @Test
+    void stopsAtTheHostRequestCap() throws IOException {
+        graph = new LinkGraph(200, 0, page -> false);
+        DocumentStore store = crawl(100, 8, new HostThrottle(0, 25));
+
+        assertEquals(25, graph.requests());
+        assertEquals(25, store.size());
+    }
+
+    @Test
+    void failedFetchGivesBackItsSlot() throws IOException {
+        // every fourth page answers 500; with leaked slots the crawl would stall after a few
+        graph = new LinkGraph(500, 0, page -> page % 4 == 3);
+        DocumentStore store = crawl(60, 2, new HostThrottle(0, Integer.MAX_VALUE));
+
+        assertEquals(60, store.size());
+        assertTrue(graph.failures() > 2, "failures: " + graph.failures());
+        assertEquals(60 + graph.failures(), graph.requests());
+        graph.assertNoUrlFetchedTwice();
+    }
+
+    @Test
+    void linksMirrorsInsteadOfStoringThem() throws IOException {
+        graph = new LinkGraph(300, 0, page -> false);
+        for (int page = 200; page < 220; page++) {
+            graph.mirror(page, page - 200);
+        }
+        DocumentStore store = new DocumentStore();
+        Crawler crawler;
+        try (Frontier frontier = new Frontier()) {
+            crawler = new Crawler(graph.base(), 250, List.of(graph.url(0)), 8, new HostThrottle(0, Integer.MAX_VALUE),
+                    store, new CrawlState(), new NearDuplicateDetector(), frontier);
+            assertTimeoutPreemptively(TIMEOUT, crawler::startConcurrentCrawling);
+        }
+
+        // duplicates do not count toward maxPages
+        assertEquals(250, store.size());
+        assertEquals(250 + crawler.getDuplicates().size(), graph.requests());
+        assertFalse(crawler.getDuplicates().isEmpty());
+        Set<String> stored = new HashSet<>();
+        for (int docId = 0; docId < store.size(); docId++) {
+            stored.add(store.url(docId));
+        }
+        // whichever of a pair came first is stored, and the other is linked to it
+        crawler.getDuplicates().forEach((url, docId) -> {
+            int page = graph.page(url);
+            int partner = page >= 200 ? page - 200 : page + 200;
+            assertTrue(page < 20 || page >= 200 && page < 220, url + " is not a mirror");
+            assertEquals(graph.url(partner), store.url(docId), url);
+            assertFalse(stored.contains(url), url);
+        });
+    }
+
+    @Test
+    void recrawlFetchesOnlyWhatChanged() throws IOException {
+        graph = new LinkGraph(120, 0, page -> false);
+        DocumentStore store = new DocumentStore();
+        CrawlState state = new CrawlState();
+        try (Frontier frontier = new Frontier()) {
+            Crawler crawler = new Crawler(graph.base(), 1000, List.of(graph.url(0)), 8,
+                    new HostThrottle(0, Integer.MAX_VALUE), store, state, null, frontier);
+            assertTimeoutPreemptively(TIMEOUT, crawler::startConcurrentCrawling);
+        }
+        int known = state.size();
+        assertTrue(known > 100, "crawled " + known + " pages");
+        Map<String, Integer> docIds = new HashMap<>();
+        for (String url : state.urls()) {
+            docIds.put(url, state.get(url).docId);
+        }
+        // pages 9, 19, ... send no ETag, so they are fetched in full and compared by hash;
+        // three edits and two removals have an ETag, two edits and one removal do not
+        List<Integer> edited = List.of(3, 17, 42, 59, 99);
+        List<Integer> deleted = List.of(5, 80, 119);
+        for (int page : edited) {
+            assertNotNull(state.get(graph.url(page)), "page " + page + " was crawled");
+            graph.edit(page);
+        }
+        for (int page : deleted) {
+            assertNotNull(state.get(graph.url(page)), "page " + page + " was crawled");
+            graph.remove(page);
+        }
+        int withoutEtag = (int) state.urls().stream().filter(url -> url.endsWith("9")).count();
+
+        int requestsBefore = graph.requests();
+        Map<String, Integer> changed = new LinkedHashMap<>();
+        List<Integer> newDocIds = new ArrayList<>();
+        Map<String, Integer> removed = new HashMap<>();
+        RecrawlListener listener = new RecrawlListener() {
+            @Override
+            public void changed(String url, int oldDocId, int newDocId, String text) {
+                assertEquals(docIds.get(url), oldDocId, url);
+                assertEquals(store.text(newDocId), text, url);
+                changed.put(url, newDocId);
+                newDocIds.add(newDocId);
+            }
+
+            @Override
+            public void removed(String url, int docId) {
+                assertEquals(docIds.get(url), docId, url);
+                removed.put(url, docId);
+            }
+        };
+        Crawler recrawler = new Crawler(graph.base(), 0, List.of(), 8, new HostThrottle(0, Integer.MAX_VALUE),
+                store, state, null);
+        Crawler.RecrawlStats stats = assertTimeoutPreemptively(TIMEOUT, () -> recrawler.recrawl(listener));
+
+        assertEquals(known, graph.requests() - requestsBefore, "each known page is requested once");
+        assertEquals(known - withoutEtag, graph.conditionalRequests(), "every page with an ETag is asked conditionally");
+        assertEquals(known - withoutEtag - 3 - 2, stats.notModified);
+        assertEquals(withoutEtag - 2 - 1, stats.unchanged);
+        assertEquals(5, stats.changed);
+        assertEquals(3, stats.removed);
+        assertEquals(0, stats.failed);
+
+        assertEquals(edited.stream().map(graph::url).collect(Collectors.toSet()), changed.keySet());
+        assertEquals(deleted.stream().map(graph::url).collect(Collectors.toSet()), removed.keySet());
+        List<Integer> sorted = new ArrayList<>(newDocIds);
+        Collections.sort(sorted);
+        assertEquals(sorted, newDocIds, "new docIds reach the listener in order");
+        assertEquals(known + 5, store.size());
+        assertEquals(known - 3, state.size());
+        changed.forEach((url, docId) -> {
+            assertEquals(docId, state.get(url).docId);
+            assertTrue(store.text(docId).contains("version 1"), store.text(docId));
+        });
+        removed.keySet().forEach(url -> assertNull(state.get(url), url));
+
+        // with nothing edited since, a second recrawl stores nothing
+        Crawler.RecrawlStats idle = new Crawler(graph.base(), 0, List.of(), 8, new HostThrottle(0, Integer.MAX_VALUE),
+                store, state, null).recrawl(listener);
+        assertEquals(0, idle.changed + idle.removed + idle.failed, idle.toString());
+        assertEquals(known - withoutEtag - 2, idle.notModified);
+        assertEquals(known + 5, store.size());
+    }
+
+    private DocumentStore crawl(int maxPages, int maxConcurrency, HostThrottle throttle) {
+        DocumentStore store = new DocumentStore();
+        try (Frontier frontier = new Frontier()) {
+            Crawler crawler = new Crawler(graph.base(), maxPages, List.of(graph.url(0)), maxConcurrency, throttle,
+                    store, new CrawlState(), null, frontier);
+            int stored = assertTimeoutPreemptively(TIMEOUT, crawler::startConcurrentCrawling);
+            assertEquals(store.size(), stored);
+        }
+        return store;
+    }
+
+    /**
+     * Pages /wiki/p0 to /wiki/p{size-1}, each linking to three others and to a few
+     * URLs the crawler must not follow. Records every request it serves.
+     */
+    static final class LinkGraph implements AutoCloseable {
+        private final int size;
+        private final int latencyMillis;
+        private final IntPredicate failing;
+        private final HttpServer server;
+        private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+        private final Map<String, AtomicInteger> fetches = new ConcurrentHashMap<>();
+        private final List<Long> arrivals = Collections.synchronizedList(new ArrayList<>());
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final AtomicInteger maxInFlight = new AtomicInteger();
+        private final AtomicInteger failures = new AtomicInteger();
+        private final AtomicInteger conditional = new AtomicInteger();
+        private final Map<Integer, Integer> versions = new ConcurrentHashMap<>();
+        private final Set<Integer> removed = ConcurrentHashMap.newKeySet();
+        private final Map<Integer, Integer> mirrors = new ConcurrentHashMap<>();
+
+        LinkGraph(int size, int latencyMillis, IntPredicate failing) throws IOException {
+            this.size = size;
+            this.latencyMillis = latencyMillis;
+            this.failing = failing;
+            this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+            server.setExecutor(executor);
+            server.createContext("/wiki/", this::serve);
+            server.start();
+        }
+
+        String base() {
+            return "http://127.0.0.1:" + server.getAddress().getPort() + "/wiki";
+        }
+
+        String url(int page) {
+            return base() + "/p" + page;
+        }
+
+        int page(String url) {
+            return Integer.parseInt(url.substring((base() + "/p").length()));
+        }
+
+        private void serve(HttpExchange exchange) throws IOException {
+            try (exchange) {
+                arrivals.add(System.nanoTime());
+                fetches.computeIfAbsent(exchange.getRequestURI().getPath(), path -> new AtomicInteger()).incrementAndGet();
+                maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+                try {
+                    if (latencyMillis > 0) {
+                        Thread.sleep(latencyMillis);
+                    }
+                    int page = Integer.parseInt(exchange.getRequestURI().getPath().substring("/wiki/p".length()));
+                    if (page >= size || failing.test(page)) {
+                        failures.incrementAndGet();
+                        exchange.sendResponseHeaders(500, -1);
+                        return;
+                    }
+                    String ifNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+                    if (ifNoneMatch != null) {
+                        conditional.incrementAndGet();
+                    }
+                    if (removed.contains(page)) {
+                        exchange.sendResponseHeaders(404, -1);
+                        return;
+                    }
+                    String etag = etag(page);
+                    if (ifNoneMatch != null && ifNoneMatch.equals(etag)) {
+                        exchange.sendResponseHeaders(304, -1);
+                        return;
+                    }
+                    byte[] body = page(mirrors.getOrDefault(page, page)).getBytes(StandardCharsets.UTF_8);
+                    exchange.getResponseHeaders().set("Content-Type", "text/html; charset=utf-8");
+                    if (etag != null) {
+                        exchange.getResponseHeaders().set("ETag", etag);
+                    }
+                    exchange.sendResponseHeaders(200, body.length);
+                    try (OutputStream out = exchange.getResponseBody()) {
+                        out.write(body);
+                    }
+                } catch (InterruptedException | NumberFormatException e) {
+                    exchange.sendResponseHeaders(404, -1);
+                } finally {
+                    inFlight.decrementAndGet();
+                }
+            }
+        }
+
+        // serves the original page's content, links included, for the mirror
+        void mirror(int mirror, int original) {
+            mirrors.put(mirror, original);
+        }
+
+        // changes the page's text, and its ETag if it has one
+        void edit(int page) {
+            versions.merge(page, 1, Integer::sum);
+        }
+
+        // answers 404 for the page from now on
+        void remove(int page) {
+            removed.add(page);
+        }
+
+        // pages ending in 9 send no validators
+        private String etag(int page) {
+            return page % 10 == 9 ? null : "\"p" + page + "v" + versions.getOrDefault(page, 0) + "\"";
+        }
+
+        private String page(int page) {
+            StringBuilder html = new StringBuilder("<html><head><title>Page ").append(page).append("</title></head><body>");
+            html.append("<p>page ").append(page).append(" text ").append(Integer.toHexString(page * 0x9E3779B1));
+            if (versions.containsKey(page)) {
+                html.append(" version ").append(versions.get(page));
+            }
+            html.append("</p>");
+            for (int target : new int[]{(page + 1) % size, (page * 7 + 3) % size, (page * 13 + 5) % size}) {
+                html.append("<a href=\"/wiki/p").append(target).append("\">p").append(target).append("</a> ");
+            }
+            // links a crawl must skip: a fragment, a namespaced page, another site
+            html.append("<a href=\"/wiki/p").append(page).append("#top\">top</a> ");
+            html.append("<a href=\"/wiki/Special:Random\">random</a> ");
+            html.append("<a href=\"http://example.invalid/wiki/p1\">elsewhere</a>");
+            return html.append("</body></html>").toString();
+        }
+
+        int requests() {
+            return arrivals.size();
+        }
+
+        int conditionalRequests() {
+            return conditional.get();
+        }
+
+        int failures() {
+            return failures.get();
+        }
+
+        int maxInFlight() {
+            return maxInFlight.get();
+        }
+
+        List<Long> arrivals() {
+            synchronized (arrivals) {
+                List<Long> sorted = new ArrayList<>(arrivals);
+                Collections.sort(sorted);
+                return sorted;
+            }
+        }
+
+        void assertNoUrlFetchedTwice() {
+            fetches.forEach((path, count) -> assertEquals(1, count.get(), path + " fetched " + count.get() + " times"));
+        }
+
+        @Override
+        public void close() {
+            server.stop(0);
+            executor.shutdownNow();
+        }
+    }
+}
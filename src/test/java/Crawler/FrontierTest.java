@@ -0,0 +1,84 @@
+package Crawler;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * A frontier with a small heap budget, driven by random adds and polls and checked
+ * against a HashSet and an ArrayDeque.
+ */
+class FrontierTest {
+
+    @Test
+    void matchesASetAndAQueue(@TempDir Path dir) throws IOException {
+        Random random = new Random(19);
+        Set<String> seen = new HashSet<>();
+        ArrayDeque<String> queue = new ArrayDeque<>();
+        Path spill = dir.resolve("frontier");
+        // a Bloom filter sized for far fewer URLs, so most repeats reach the runs
+        try (Frontier frontier = new Frontier(1000, 200, spill)) {
+            int maxRuns = 0;
+            for (int i = 0; i < 100_000; i++) {
+                if (random.nextInt(3) > 0) {
+                    // half repeats of earlier URLs, some outside ASCII
+                    String url = "https://example.org/wiki/" + (random.nextBoolean() ? "p" : "é")
+                            + random.nextInt(2 * i + 1);
+                    boolean first = seen.add(url);
+                    assertEquals(first, frontier.add(url), url);
+                    if (first) {
+                        queue.addLast(url);
+                    }
+                } else {
+                    assertEquals(queue.pollFirst(), frontier.poll());
+                }
+                assertEquals(queue.size(), frontier.size());
+                assertEquals(seen.size(), frontier.seen());
+                if (i % 1000 == 0) {
+                    maxRuns = Math.max(maxRuns, files(spill, "run"));
+                }
+            }
+            while (!queue.isEmpty()) {
+                assertEquals(queue.pollFirst(), frontier.poll());
+            }
+            assertTrue(frontier.isEmpty());
+            assertNull(frontier.poll());
+
+            // runs merge like index segments: logarithmically many
+            assertTrue(maxRuns > 1, "the seen set spilled");
+            assertTrue(maxRuns <= 1 + Math.ceil(Math.log(seen.size() / 100.0) / Math.log(2)), maxRuns + " runs");
+        }
+        assertEquals(0, files(spill, ""), "close deletes the scratch files");
+    }
+
+    @Test
+    void keepsSmallCrawlsOffTheDisk(@TempDir Path dir) {
+        Path spill = dir.resolve("frontier");
+        try (Frontier frontier = new Frontier(1000, 200, spill)) {
+            for (int i = 0; i < 99; i++) {
+                assertTrue(frontier.add("https://example.org/wiki/p" + i));
+                assertFalse(frontier.add("https://example.org/wiki/p" + i));
+            }
+            assertEquals("https://example.org/wiki/p0", frontier.poll());
+            assertFalse(Files.exists(spill));
+        }
+        assertThrows(IllegalArgumentException.class, () -> new Frontier(0, 200, null));
+        assertThrows(IllegalArgumentException.class, () -> new Frontier(1000, 1, null));
+    }
+
+    private static int files(Path dir, String prefix) throws IOException {
+        if (!Files.exists(dir)) {
+            return 0;
+        }
+        try (Stream<Path> files = Files.list(dir)) {
+            return (int) files.filter(file -> file.getFileName().toString().startsWith(prefix)).count();
+        }
+    }
+}
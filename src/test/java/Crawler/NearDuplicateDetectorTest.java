@@ -0,0 +1,134 @@
+package Crawler;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Banded lookup against a scan of every fingerprint, and fingerprints of generated
+ * articles, their printable views and edited copies.
+ */
+class NearDuplicateDetectorTest {
+    private final Random random = new Random(18);
+    private final String[] vocabulary = vocabulary(3000);
+
+    @Test
+    void findsWhatAScanFinds() {
+        for (int maxDistance = 0; maxDistance <= 7; maxDistance++) {
+            assertFindsWhatAScanFinds(maxDistance);
+        }
+        assertThrows(IllegalArgumentException.class, () -> new NearDuplicateDetector(8));
+        assertThrows(IllegalArgumentException.class, () -> new NearDuplicateDetector(-1));
+    }
+
+    @Test
+    void countsMoreShinglesThanOneFlushHolds() {
+        // "a b c a b" has the three shingles of "a b c" repeated, once each; repeated
+        // 70,000 times each, every bit still goes the way two of the three hashes vote
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 70_000; i++) {
+            text.append("alpha beta gamma ");
+        }
+        assertEquals(NearDuplicateDetector.fingerprint("alpha beta gamma alpha beta"),
+                NearDuplicateDetector.fingerprint(text));
+        assertEquals(NearDuplicateDetector.fingerprint("Alpha, BETA gamma."),
+                NearDuplicateDetector.fingerprint("alpha beta gamma"), "the words the index sees");
+        assertEquals(0, NearDuplicateDetector.fingerprint(""));
+    }
+
+    @Test
+    void separatesPrintableViewsFromEditsAndOtherPages() {
+        long[] fingerprints = new long[300];
+        int caught = 0;
+        for (int i = 0; i < fingerprints.length; i++) {
+            String[] words = article(1000 + random.nextInt(2000));
+            String text = String.join(" ", words);
+            fingerprints[i] = NearDuplicateDetector.fingerprint(text);
+
+            // the same text with a little boilerplate around it
+            String printable = "Printable version: " + words[0] + " " + words[1] + ". " + text + " Retrieved from the archive.";
+            if (NearDuplicateDetector.distance(fingerprints[i], NearDuplicateDetector.fingerprint(printable))
+                    <= NearDuplicateDetector.DEFAULT_MAX_DISTANCE) {
+                caught++;
+            }
+
+            String[] edited = words.clone();
+            for (int w = 0; w < edited.length; w += 10) {
+                edited[w + random.nextInt(Math.min(10, edited.length - w))] = word();
+            }
+            assertTrue(NearDuplicateDetector.distance(fingerprints[i], NearDuplicateDetector.fingerprint(String.join(" ", edited)))
+                    > NearDuplicateDetector.DEFAULT_MAX_DISTANCE, "an edited page is not a duplicate");
+        }
+        assertTrue(caught >= 270, "printable views caught: " + caught + " of 300");
+
+        for (int i = 0; i < fingerprints.length; i++) {
+            for (int j = i + 1; j < fingerprints.length; j++) {
+                assertTrue(NearDuplicateDetector.distance(fingerprints[i], fingerprints[j])
+                        > NearDuplicateDetector.DEFAULT_MAX_DISTANCE, "articles " + i + " and " + j);
+            }
+        }
+    }
+
+    // queries up to maxDistance + 3 bits from a stored fingerprint
+    private void assertFindsWhatAScanFinds(int maxDistance) {
+        NearDuplicateDetector detector = new NearDuplicateDetector(maxDistance);
+        long[] stored = new long[5000];
+        for (int docId = 0; docId < stored.length; docId++) {
+            // some pages share a band with an earlier one, so buckets hold several
+            stored[docId] = docId > 0 && docId % 5 == 0 ? flip(stored[random.nextInt(docId)], 8 + random.nextInt(8))
+                    : random.nextLong();
+            detector.add(stored[docId], docId);
+        }
+        assertEquals(stored.length, detector.size());
+        for (int i = 0; i < 2000; i++) {
+            long query = flip(stored[random.nextInt(stored.length)], random.nextInt(maxDistance + 4));
+            int found = detector.find(query);
+            boolean expected = Arrays.stream(stored).anyMatch(f -> NearDuplicateDetector.distance(f, query) <= maxDistance);
+            assertEquals(expected, found >= 0, "maxDistance " + maxDistance + ", query " + Long.toHexString(query));
+            if (found >= 0) {
+                assertTrue(NearDuplicateDetector.distance(stored[found], query) <= maxDistance);
+            }
+        }
+    }
+
+    private static long flip(long fingerprint, int bits) {
+        List<Integer> positions = new ArrayList<>();
+        for (int bit = 0; bit < 64; bit++) {
+            positions.add(bit);
+        }
+        Collections.shuffle(positions, new Random(fingerprint));
+        for (int i = 0; i < bits; i++) {
+            fingerprint ^= 1L << positions.get(i);
+        }
+        return fingerprint;
+    }
+
+    private String[] article(int length) {
+        String[] words = new String[length];
+        for (int i = 0; i < length; i++) {
+            words[i] = word();
+        }
+        return words;
+    }
+
+    // Zipfian, like the words of real pages
+    private String word() {
+        double u = random.nextDouble() * Math.log(vocabulary.length + 1.0);
+        return vocabulary[Math.min((int) Math.exp(u) - 1, vocabulary.length - 1)];
+    }
+
+    private String[] vocabulary(int size) {
+        Set<String> words = new LinkedHashSet<>();
+        while (words.size() < size) {
+            StringBuilder word = new StringBuilder();
+            int length = 2 + random.nextInt(8);
+            for (int i = 0; i < length; i++) {
+                word.append((char) ('a' + random.nextInt(26)));
+            }
+            words.add(word.toString());
+        }
+        return words.toArray(new String[0]);
+    }
+}
@@ -0,0 +1,142 @@
+package DocumentStore;
+
+import InvertedIndex.InvertedIndex;
+import InvertedIndex.ParallelIndexBuilder;
+import InvertedIndex.PostingsCursor;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The in-memory store, its mapped copy on disk, and a store read back and appended to,
+ * as a recrawl does.
+ */
+class DocumentStoreTest {
+
+    @Test
+    void mappedStoreServesWhatWasAdded(@TempDir Path dir) throws Exception {
+        Random random = new Random(13);
+        List<String> texts = new ArrayList<>();
+        DocumentStore store = new DocumentStore();
+        for (int docId = 0; docId < 2000; docId++) {
+            String text = switch (docId % 500) {
+                case 0 -> "";
+                case 1 -> text(random, 50_000); // about 300KB, over many blocks
+                case 2 -> "pharaoh \uD83D\uDC51 crown \uD800\uDF00 " + text(random, 100); // outside the BMP
+                default -> text(random, 1 + random.nextInt(300));
+            };
+            texts.add(text);
+            store.add("https://example.org/p" + docId, "Page " + docId + " é", text);
+        }
+        assertSameDocuments(texts, store);
+        store.write(dir);
+
+        try (MappedDocumentStore mapped = MappedDocumentStore.open(dir)) {
+            assertSameDocuments(texts, mapped);
+            // each reader thread keeps its own inflated block
+            try (ExecutorService executor = Executors.newFixedThreadPool(4)) {
+                List<Future<?>> readers = new ArrayList<>();
+                for (int thread = 0; thread < 4; thread++) {
+                    long seed = thread;
+                    readers.add(executor.submit(() -> {
+                        Random reads = new Random(seed);
+                        for (int i = 0; i < 2000; i++) {
+                            int docId = reads.nextInt(texts.size());
+                            DocumentReader documents = i % 2 == 0 ? mapped : store;
+                            assertEquals(texts.get(docId), documents.text(docId), "text of doc " + docId);
+                        }
+                    }));
+                }
+                for (Future<?> reader : readers) {
+                    reader.get();
+                }
+            }
+        }
+
+        // the indexer reads the text back from the store
+        InvertedIndex fromStore = new ParallelIndexBuilder(3, true).build(store.texts());
+        InvertedIndex fromTexts = new ParallelIndexBuilder(3, true).build(texts);
+        assertEquals(fromTexts.numDocs(), fromStore.numDocs());
+        assertEquals(fromTexts.totalDocLength(), fromStore.totalDocLength());
+        assertEquals(fromTexts.getIndex().keySet(), fromStore.getIndex().keySet());
+        for (String term : fromTexts.getIndex().keySet()) {
+            PostingsCursor expected = fromTexts.postings(term, true);
+            PostingsCursor actual = fromStore.postings(term, true);
+            for (int doc = expected.next(); doc != PostingsCursor.NO_MORE_DOCS; doc = expected.next()) {
+                assertEquals(doc, actual.next(), term);
+                assertEquals(expected.termFrequency(), actual.termFrequency(), term);
+            }
+            assertEquals(PostingsCursor.NO_MORE_DOCS, actual.next(), term);
+        }
+    }
+
+    @Test
+    void readStoreTakesMorePages(@TempDir Path dir) throws IOException {
+        Random random = new Random(17);
+        List<String> texts = new ArrayList<>();
+        DocumentStore store = new DocumentStore();
+        // short pages and pages longer than a block, so some straddle blocks
+        for (int docId = 0; docId < 300; docId++) {
+            texts.add(text(random, docId % 25 == 0 ? 3000 : 1 + random.nextInt(150)));
+            assertEquals(docId, store.add("https://example.org/p" + docId, "Page " + docId + " é", texts.get(docId)));
+        }
+        store.write(dir);
+
+        DocumentStore read = DocumentStore.read(dir);
+        assertEquals(300, read.size());
+        assertEquals(store.compressedTextBytes(), read.compressedTextBytes());
+        for (int docId = 300; docId < 400; docId++) {
+            texts.add(text(random, docId % 25 == 0 ? 3000 : 1 + random.nextInt(150)));
+            assertEquals(docId, read.add("https://example.org/p" + docId, "Page " + docId + " é", texts.get(docId)));
+        }
+        assertSameDocuments(texts, read);
+        read.write(dir);
+
+        try (MappedDocumentStore mapped = MappedDocumentStore.open(dir)) {
+            assertSameDocuments(texts, mapped);
+        }
+    }
+
+    @Test
+    void readRejectsATruncatedStore(@TempDir Path dir) throws IOException {
+        DocumentStore store = new DocumentStore();
+        store.add("https://example.org/p0", "Page 0", text(new Random(1), 5000));
+        store.write(dir);
+        Files.write(dir.resolve(DocumentStore.BLOCKS), new byte[10]);
+        assertThrows(IOException.class, () -> DocumentStore.read(dir));
+    }
+
+    private static void assertSameDocuments(List<String> texts, DocumentReader documents) {
+        assertEquals(texts.size(), documents.size());
+        for (int docId = 0; docId < texts.size(); docId++) {
+            assertEquals("https://example.org/p" + docId, documents.url(docId));
+            assertEquals("Page " + docId + " é", documents.title(docId));
+            assertEquals(texts.get(docId), documents.text(docId), "text of doc " + docId);
+            String text = texts.get(docId);
+            String excerpt = documents.excerpt(docId, 40, 60);
+            assertTrue(text.contains(excerpt), "excerpt of doc " + docId + ": " + excerpt);
+        }
+    }
+
+    private static String text(Random random, int words) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < words; i++) {
+            if (i > 0) {
+                text.append(' ');
+            }
+            text.append(i % 17 == 0 ? "naïve" : Integer.toString(random.nextInt(1 << 20), 36));
+        }
+        return text.toString();
+    }
+}
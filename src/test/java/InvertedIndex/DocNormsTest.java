@@ -0,0 +1,119 @@
+package InvertedIndex;
+
+import Tokenizer.Analyzer;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Document norms, lengths and per-term score bounds stored at index time, against a
+ * recomputation from each document's analyzed terms.
+ */
+class DocNormsTest {
+    private final Random random = new Random(3);
+    private final String[] vocabulary = vocabulary(500);
+
+    @Test
+    void matchRecomputedTfIdfVectors() {
+        InvertedIndex index = new InvertedIndex();
+        Map<Integer, Map<String, Integer>> documents = new TreeMap<>();
+        // sparse docIds, so the docIds in between have no norm or length
+        int docId = 0;
+        for (int i = 0; i < 1500; i++) {
+            docId += 1 + (random.nextInt(10) == 0 ? random.nextInt(20) : 0);
+            addDocument(index, documents, docId);
+            // checked midway too: idf changes as the collection grows, and the norms must follow
+            if (i == 700) {
+                assertNorms(index, documents);
+            }
+        }
+        assertNorms(index, documents);
+        assertSame(index.getDocNorms(), index.getDocNorms(), "the table is kept until the next addition");
+
+        // a document of terms in every other document weighs nothing
+        InvertedIndex uniform = new InvertedIndex();
+        uniform.addDocument(0, "giza pyramid");
+        uniform.addDocument(1, "pyramid giza giza");
+        assertArrayEquals(new double[]{0, 0}, uniform.getDocNorms());
+        assertEquals(0, uniform.maxNormalizedTfWeight("giza"));
+        assertEquals(3, uniform.docLength(1));
+        assertEquals(0, uniform.docLength(2));
+    }
+
+    private void addDocument(InvertedIndex index, Map<Integer, Map<String, Integer>> documents, int docId) {
+        StringJoiner text = new StringJoiner(random.nextBoolean() ? " " : ", ");
+        for (int i = 0, length = 1 + random.nextInt(120); i < length; i++) {
+            text.add(word());
+        }
+        Map<String, Integer> counts = new HashMap<>();
+        new Analyzer().analyze(text.toString(), (term, position, start, end) -> counts.merge(term, 1, Integer::sum));
+        documents.put(docId, counts);
+        index.addDocument(docId, text.toString());
+    }
+
+    private static void assertNorms(InvertedIndex index, Map<Integer, Map<String, Integer>> documents) {
+        Map<String, Integer> docFreqs = new HashMap<>();
+        long totalLength = 0;
+        for (Map<String, Integer> counts : documents.values()) {
+            counts.keySet().forEach(term -> docFreqs.merge(term, 1, Integer::sum));
+            for (int count : counts.values()) {
+                totalLength += count;
+            }
+        }
+        assertEquals(documents.size(), index.numDocs());
+        assertEquals(totalLength, index.totalDocLength());
+
+        double[] norms = index.getDocNorms();
+        Map<String, Double> bounds = new HashMap<>();
+        for (int docId = 0; docId < norms.length; docId++) {
+            Map<String, Integer> counts = documents.get(docId);
+            if (counts == null) {
+                assertEquals(0, norms[docId], "no document " + docId);
+                assertEquals(0, index.docLength(docId));
+                continue;
+            }
+            double sum = 0;
+            int length = 0;
+            for (Map.Entry<String, Integer> term : counts.entrySet()) {
+                double weight = (1 + Math.log10(term.getValue()))
+                        * Math.log10((double) documents.size() / docFreqs.get(term.getKey()));
+                sum += weight * weight;
+                length += term.getValue();
+            }
+            double norm = Math.sqrt(sum);
+            assertEquals(norm, norms[docId], 1e-12 * norm, "norm of " + docId);
+            assertEquals(length, index.docLength(docId), "length of " + docId);
+            if (norm > 0) {
+                for (Map.Entry<String, Integer> term : counts.entrySet()) {
+                    bounds.merge(term.getKey(), (1 + Math.log10(term.getValue())) / norm, Math::max);
+                }
+            }
+        }
+        assertEquals(documents.keySet().stream().mapToInt(Integer::intValue).max().orElse(-1) + 1, norms.length);
+        for (String term : docFreqs.keySet()) {
+            assertEquals(docFreqs.get(term), index.docFreq(term), term);
+            double bound = bounds.getOrDefault(term, 0.0);
+            assertEquals(bound, index.maxNormalizedTfWeight(term), 1e-12 * bound, "bound of " + term);
+        }
+    }
+
+    // Zipfian, so common terms have low idf and rare ones high
+    private String word() {
+        double u = random.nextDouble() * Math.log(vocabulary.length + 1.0);
+        return vocabulary[Math.min((int) Math.exp(u) - 1, vocabulary.length - 1)];
+    }
+
+    private String[] vocabulary(int size) {
+        Set<String> words = new LinkedHashSet<>();
+        while (words.size() < size) {
+            StringBuilder word = new StringBuilder();
+            for (int i = 0, length = 3 + random.nextInt(7); i < length; i++) {
+                word.append((char) ('a' + random.nextInt(10)));
+            }
+            words.add(word.toString());
+        }
+        return words.toArray(new String[0]);
+    }
+}
@@ -0,0 +1,220 @@
+package InvertedIndex;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Indexes written by {@link IndexWriter} and opened as a {@link MappedIndex}, against the
+ * in-memory index they were written from: every term, posting, position, skip, norm,
+ * length and impact. Includes the empty and sparse indexes a {@link NearRealTimeIndex}
+ * writes after deletions.
+ */
+class IndexWriterTest {
+    private final Random random = new Random(6);
+    private final String[] vocabulary = vocabulary(600);
+
+    @Test
+    void readsBackWhatWasWritten(@TempDir Path dir) throws IOException {
+        for (boolean positions : new boolean[]{false, true}) {
+            // sparse docIds, with a long run of missing ones before the last
+            InvertedIndex index = new InvertedIndex(positions);
+            int docId = 3;
+            for (int i = 0; i < 1200; i++) {
+                index.addDocument(docId, text());
+                docId += 1 + (random.nextInt(8) == 0 ? random.nextInt(30) : 0);
+            }
+            // hundreds of times the average length, so its single occurrence of a word has the lowest impact
+            index.addDocument(docId + 5000, "qqq " + (vocabulary[0] + " ").repeat(60_000));
+
+            for (boolean impactOrdered : new boolean[]{false, true}) {
+                Path written = dir.resolve(positions + "-" + impactOrdered);
+                IndexWriter.write(index, written, impactOrdered);
+                try (MappedIndex mapped = MappedIndex.open(written)) {
+                    assertEquals(impactOrdered, mapped.isImpactOrdered());
+                    assertEquals(index.maxDocId(), mapped.maxDocId());
+                    assertEquals(1, mapped.maxImpact("qqq"));
+                    assertSameIndex(index, mapped, "positions " + positions + ", impact-ordered " + impactOrdered);
+                }
+            }
+        }
+    }
+
+    @Test
+    void writesEmptyAndSparseIndexes(@TempDir Path dir) throws IOException {
+        InvertedIndex empty = new InvertedIndex(true);
+        IndexWriter.write(empty, dir.resolve("empty"), true);
+        try (MappedIndex mapped = MappedIndex.open(dir.resolve("empty"))) {
+            assertSameIndex(empty, mapped, "empty");
+            assertEquals(-1, mapped.maxDocId());
+            assertEquals(0, mapped.terms().size());
+        }
+
+        try (NearRealTimeIndex index = new NearRealTimeIndex(true, Duration.ZERO)) {
+            TreeMap<Integer, String> live = new TreeMap<>();
+            for (int docId = 0; docId < 400; docId++) {
+                live.put(docId, text());
+                index.addDocument(docId, live.get(docId));
+                if (docId % 100 == 99) index.refresh();
+            }
+            // deleted documents leave holes, including at both ends
+            for (int docId = 0; docId < 400; docId++) {
+                if (docId == 0 || docId == 399 || random.nextInt(3) == 0) {
+                    assertTrue(index.deleteDocument(docId));
+                    live.remove(docId);
+                }
+            }
+            index.write(dir.resolve("sparse"), false);
+            InvertedIndex fresh = new InvertedIndex(true);
+            live.forEach(fresh::addDocument);
+            try (MappedIndex mapped = MappedIndex.open(dir.resolve("sparse"))) {
+                assertSameIndex(fresh, mapped, "sparse");
+                // the written docIds still run to the last one added, which is empty
+                assertEquals(399, mapped.maxDocId());
+            }
+
+            // with every document deleted, what is written is the empty index
+            for (int docId : live.keySet()) {
+                assertTrue(index.deleteDocument(docId));
+            }
+            index.write(dir.resolve("deleted"), true);
+            try (MappedIndex mapped = MappedIndex.open(dir.resolve("deleted"))) {
+                assertSameIndex(empty, mapped, "all deleted");
+            }
+        }
+        assertFalse(MappedIndex.exists(dir.resolve("missing")));
+        assertThrows(IOException.class, () -> MappedIndex.open(dir.resolve("missing")));
+    }
+
+    private void assertSameIndex(InvertedIndex expected, MappedIndex actual, String message) {
+        assertEquals(expected.hasPositions(), actual.hasPositions(), message);
+        assertEquals(expected.numDocs(), actual.numDocs(), message);
+        assertEquals(expected.totalDocLength(), actual.totalDocLength(), message);
+        assertEquals(0, actual.getGeneration(), message);
+        // past the expected docIds, documents that were deleted have neither a norm nor a length
+        double[] expectedNorms = expected.getDocNorms();
+        double[] actualNorms = actual.getDocNorms();
+        assertEquals(actual.maxDocId() + 1, actualNorms.length, message);
+        for (int docId = 0; docId <= Math.max(expected.maxDocId(), actual.maxDocId()) + 2; docId++) {
+            double norm = docId < expectedNorms.length ? expectedNorms[docId] : 0;
+            assertEquals(norm, docId < actualNorms.length ? actualNorms[docId] : 0, 1e-12 * norm, message + ": norm of " + docId);
+            assertEquals(expected.docLength(docId), actual.docLength(docId), message + ": length of " + docId);
+        }
+
+        Impacts impacts = actual.impacts();
+        assertTrue(impacts.matches(Impacts.DEFAULT_K1, Impacts.DEFAULT_B), message);
+        assertEquals(Impacts.averageDocLength(expected), impacts.averageDocLength, message);
+
+        List<String> terms = new ArrayList<>(expected.getIndex().keySet());
+        assertEquals(terms.size(), actual.terms().size(), message);
+        for (String term : terms) {
+            String where = message + ": " + term;
+            assertEquals(expected.docFreq(term), actual.docFreq(term), where);
+            double bound = expected.maxNormalizedTfWeight(term);
+            assertEquals(bound, actual.maxNormalizedTfWeight(term), 1e-12 * bound, where);
+            assertEquals(term, actual.terms().term(actual.terms().ordinal(term)), where);
+
+            // every posting in order, and the impacts they quantize to
+            Map<Integer, Integer> expectedImpacts = new HashMap<>();
+            int maxImpact = 0;
+            PostingsCursor expectedPostings = expected.postings(term, expected.hasPositions());
+            PostingsCursor actualPostings = actual.postings(term, actual.hasPositions());
+            assertEquals(expectedPostings.size(), actualPostings.size(), where);
+            List<Integer> docIds = new ArrayList<>();
+            for (int docId = expectedPostings.next(); docId != PostingsCursor.NO_MORE_DOCS; docId = expectedPostings.next()) {
+                assertEquals(docId, actualPostings.next(), where);
+                int tf = expectedPostings.termFrequency();
+                assertEquals(tf, actualPostings.termFrequency(), where + " in " + docId);
+                if (expected.hasPositions()) {
+                    assertArrayEquals(Arrays.copyOf(expectedPostings.positions(), tf), Arrays.copyOf(actualPostings.positions(), tf),
+                            where + " in " + docId);
+                }
+                int impact = impacts.quantize(tf, expected.docLength(docId));
+                expectedImpacts.put(docId, impact);
+                maxImpact = Math.max(maxImpact, impact);
+                docIds.add(docId);
+            }
+            assertEquals(PostingsCursor.NO_MORE_DOCS, actualPostings.next(), where);
+            assertEquals(maxImpact, actual.maxImpact(term), where);
+            assertAdvances(docIds, actual.postings(term, actual.hasPositions()), where);
+            if (actual.isImpactOrdered()) {
+                assertImpactOrder(expectedImpacts, actual.impactPostings(term), where);
+            } else {
+                assertNull(actual.impactPostings(term), where);
+            }
+        }
+
+        assertEquals(0, actual.docFreq("zzzz"), message);
+        assertNull(actual.postings("zzzz"), message);
+        assertEquals(0, actual.maxNormalizedTfWeight("zzzz"), message);
+        assertEquals(0, actual.maxImpact("zzzz"), message);
+        assertNull(actual.impactPostings("zzzz"), message);
+        if (!actual.hasPositions()) {
+            assertThrows(IllegalStateException.class, () -> actual.postings(terms.isEmpty() ? "zzzz" : terms.get(0), true));
+        }
+    }
+
+    // leaps through the written skip entries to targets on and between postings
+    private void assertAdvances(List<Integer> docIds, PostingsCursor cursor, String message) {
+        int at = 0;
+        while (at < docIds.size()) {
+            at = Math.min(docIds.size() - 1, at + random.nextInt(2 * PostingsList.SKIP_INTERVAL));
+            int target = docIds.get(at) - (random.nextBoolean() && (at == 0 || docIds.get(at - 1) < docIds.get(at) - 1) ? 1 : 0);
+            assertEquals(docIds.get(at), cursor.advance(target), message + ": advance(" + target + ")");
+            at++;
+        }
+        assertEquals(PostingsCursor.NO_MORE_DOCS, cursor.advance(docIds.isEmpty() ? 0 : docIds.get(docIds.size() - 1) + 1), message);
+    }
+
+    // segments from the highest impact down, each in docId order, covering every posting once
+    private static void assertImpactOrder(Map<Integer, Integer> expected, ImpactCursor cursor, String message) {
+        Map<Integer, Integer> actual = new HashMap<>();
+        int previous = Integer.MAX_VALUE;
+        for (int impact = cursor.nextSegment(); impact > 0; impact = cursor.nextSegment()) {
+            assertTrue(impact < previous, message + ": impact " + impact + " after " + previous);
+            previous = impact;
+            int last = -1;
+            for (int docId = cursor.nextDoc(); docId != PostingsCursor.NO_MORE_DOCS; docId = cursor.nextDoc()) {
+                assertTrue(docId > last, message);
+                last = docId;
+                assertNull(actual.put(docId, impact), message + ": " + docId + " twice");
+            }
+        }
+        assertEquals(expected, actual, message);
+    }
+
+    // mostly short pages, some long enough for postings several skip blocks long, some empty
+    private String text() {
+        if (random.nextInt(40) == 0) {
+            return "";
+        }
+        StringJoiner text = new StringJoiner(" ");
+        for (int i = 0, length = random.nextInt(10) == 0 ? 300 + random.nextInt(700) : 1 + random.nextInt(80); i < length; i++) {
+            text.add(word());
+        }
+        return text.toString();
+    }
+
+    private String word() {
+        double u = random.nextDouble() * Math.log(vocabulary.length + 1.0);
+        return vocabulary[Math.min((int) Math.exp(u) - 1, vocabulary.length - 1)];
+    }
+
+    private String[] vocabulary(int size) {
+        Set<String> words = new LinkedHashSet<>();
+        while (words.size() < size) {
+            StringBuilder word = new StringBuilder();
+            for (int i = 0, length = 3 + random.nextInt(7); i < length; i++) {
+                word.append((char) ('a' + random.nextInt(10)));
+            }
+            words.add(word.toString());
+        }
+        return words.toArray(new String[0]);
+    }
+}
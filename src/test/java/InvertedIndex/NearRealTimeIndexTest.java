@@ -0,0 +1,230 @@
+package InvertedIndex;
+
+import SearchEngine.Bm25;
+import SearchEngine.ScoringModel;
+import SearchEngine.SearchEngine;
+import SearchEngine.TfIdf;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Random rounds of adds, updates and deletes against a {@link NearRealTimeIndex}, each
+ * compared with an {@link InvertedIndex} built from scratch over the live documents.
+ */
+class NearRealTimeIndexTest {
+    private static final ScoringModel[] MODELS = {new TfIdf(), new Bm25()};
+
+    private final Random random = new Random(16);
+    private final String[] vocabulary = vocabulary(400);
+
+    @Test
+    void matchesAFreshIndexOfTheLiveDocuments() {
+        try (NearRealTimeIndex index = new NearRealTimeIndex(true, Duration.ZERO)) {
+            TreeMap<Integer, String> live = new TreeMap<>();
+            int nextDocId = 0;
+            for (int round = 0; round < 40; round++) {
+                IndexSnapshot before = index.snapshot();
+                List<String> queries = queries(live);
+                List<String> seenBefore = search(before, queries);
+
+                int adds = 10 + random.nextInt(60);
+                for (int i = 0; i < adds; i++) {
+                    String text = text();
+                    index.addDocument(nextDocId, text);
+                    live.put(nextDocId++, text);
+                }
+                List<Integer> docIds = new ArrayList<>(live.keySet());
+                Collections.shuffle(docIds, random);
+                int updates = random.nextInt(Math.max(1, docIds.size() / 10));
+                for (int i = 0; i < updates; i++) {
+                    int oldDocId = docIds.get(i);
+                    String text = text();
+                    index.updateDocument(oldDocId, nextDocId, text);
+                    live.remove(oldDocId);
+                    live.put(nextDocId++, text);
+                }
+                int deletes = random.nextInt(Math.max(1, docIds.size() / 8));
+                for (int i = updates; i < updates + deletes && i < docIds.size(); i++) {
+                    assertTrue(index.deleteDocument(docIds.get(i)));
+                    live.remove(docIds.get(i));
+                }
+                assertFalse(index.deleteDocument(nextDocId + 1), "a docId never added is not live");
+
+                // nothing is searchable before the refresh
+                assertSame(before, index.snapshot());
+                IndexSnapshot after = round % 10 == 9 ? index.compact() : index.refresh();
+
+                // the snapshot a query took before still answers as it did
+                assertEquals(seenBefore, search(before, queries), "round " + round);
+
+                InvertedIndex fresh = new InvertedIndex(true);
+                live.forEach(fresh::addDocument);
+                assertStatistics(fresh, after, round);
+                assertMergePolicy(after, round % 10 == 9);
+                for (ScoringModel model : MODELS) {
+                    SearchEngine expected = new SearchEngine(fresh, model);
+                    SearchEngine actual = new SearchEngine(index, model);
+                    for (String query : queries(live)) {
+                        assertSameRanking(expected.search(query, 50), actual.search(query, 10),
+                                model + ", round " + round + ": " + query);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    void writesWhatItServes(@TempDir Path dir) throws IOException {
+        try (NearRealTimeIndex index = new NearRealTimeIndex(true, Duration.ZERO)) {
+            TreeMap<Integer, String> live = new TreeMap<>();
+            for (int docId = 0; docId < 300; docId++) {
+                live.put(docId, text());
+                index.addDocument(docId, live.get(docId));
+            }
+            index.refresh();
+            // updates and deletes leave gaps in the docIds, and the first and last ones dead
+            for (int docId : new int[]{0, 17, 18, 150, 299}) {
+                String text = text();
+                index.updateDocument(docId, live.lastKey() + 1, text);
+                live.put(live.lastKey() + 1, text);
+                live.remove(docId);
+            }
+            for (int docId : new int[]{1, 2, 40, 304}) {
+                assertTrue(index.deleteDocument(docId));
+                live.remove(docId);
+            }
+            index.write(dir.resolve("nrt"), true);
+            // a mapped index scores BM25 from quantized impacts, so the reference is mapped too
+            InvertedIndex fresh = new InvertedIndex(true);
+            live.forEach(fresh::addDocument);
+            IndexWriter.write(fresh, dir.resolve("fresh"), true);
+
+            try (MappedIndex mapped = MappedIndex.open(dir.resolve("nrt"));
+                 MappedIndex reference = MappedIndex.open(dir.resolve("fresh"))) {
+                assertEquals(live.size(), mapped.numDocs());
+                assertEquals(reference.totalDocLength(), mapped.totalDocLength());
+                for (ScoringModel model : MODELS) {
+                    SearchEngine expected = new SearchEngine(reference, model);
+                    SearchEngine actual = new SearchEngine(mapped, model);
+                    for (String query : queries(new TreeMap<>())) {
+                        assertSameRanking(expected.search(query, 50), actual.search(query, 10), model + ": " + query);
+                    }
+                }
+            }
+        }
+    }
+
+    private static void assertStatistics(InvertedIndex fresh, IndexSnapshot snapshot, int round) {
+        assertEquals(fresh.numDocs(), snapshot.numDocs(), "numDocs, round " + round);
+        assertEquals(fresh.totalDocLength(), snapshot.totalDocLength(), "totalDocLength, round " + round);
+        TermDictionary terms = fresh.terms();
+        for (int ordinal = 0; ordinal < terms.size(); ordinal++) {
+            String term = terms.term(ordinal);
+            assertEquals(fresh.docFreq(term), snapshot.docFreq(term), "docFreq(" + term + "), round " + round);
+        }
+        for (int docId = 0; docId <= snapshot.maxDocId(); docId++) {
+            assertEquals(fresh.docLength(docId), snapshot.docLength(docId), "length of doc " + docId + ", round " + round);
+        }
+        double[] expectedNorms = fresh.getDocNorms();
+        double[] actualNorms = snapshot.getDocNorms();
+        for (int docId = 0; docId < expectedNorms.length; docId++) {
+            assertEquals(expectedNorms[docId], actualNorms[docId], 1e-9 * Math.max(1, expectedNorms[docId]),
+                    "norm of doc " + docId + ", round " + round);
+        }
+    }
+
+    // logarithmically many segments, and tombstones kept below the ratio a refresh purges at
+    private static void assertMergePolicy(IndexSnapshot snapshot, boolean compacted) {
+        int docs = snapshot.numDocs() + snapshot.deletedDocs();
+        int maxSegments = 1 + (int) Math.ceil(Math.log(Math.max(docs, 1)) / Math.log(2));
+        assertTrue(snapshot.segmentCount() <= maxSegments, snapshot.segmentCount() + " segments for " + docs + " docs");
+        assertTrue(snapshot.deletedDocs() <= NearRealTimeIndex.MAX_DELETED_RATIO * docs,
+                snapshot.deletedDocs() + " tombstones in " + docs + " docs");
+        if (compacted) {
+            assertEquals(0, snapshot.deletedDocs());
+            assertTrue(snapshot.segmentCount() <= 1);
+        }
+    }
+
+    /*
+     * The same scores, within rounding, in the same order. Tied documents may come in
+     * either order, and a tie at the cut may put either one in the top k, so a docId
+     * may differ where the expected list has another document with the same score.
+     */
+    private static void assertSameRanking(List<SearchEngine.Result> expected, List<SearchEngine.Result> actual,
+                                          String message) {
+        assertEquals(Math.min(expected.size(), 10), actual.size(), message);
+        for (int i = 0; i < actual.size(); i++) {
+            double score = expected.get(i).score;
+            assertEquals(score, actual.get(i).score, 1e-9 * Math.max(1, score), message + " at " + i);
+            if (expected.get(i).docId != actual.get(i).docId) {
+                int docId = actual.get(i).docId;
+                assertTrue(expected.stream().anyMatch(r -> r.docId == docId && Math.abs(r.score - score) <= 1e-9 * Math.max(1, score)),
+                        message + ": doc " + docId + " at " + i + " is not tied with " + expected.get(i).docId);
+            }
+        }
+    }
+
+    // every model's top 10 for every query, as "Doc #docId Score: score" lines
+    private static List<String> search(IndexReader reader, List<String> queries) {
+        List<String> results = new ArrayList<>();
+        for (ScoringModel model : MODELS) {
+            SearchEngine engine = new SearchEngine(reader, model);
+            for (String query : queries) {
+                results.add(engine.search(query, 10).toString());
+            }
+        }
+        return results;
+    }
+
+    // ranked, Boolean and phrase queries, the phrases taken from live documents
+    private List<String> queries(TreeMap<Integer, String> live) {
+        List<String> queries = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            queries.add(word() + " " + word() + (i % 2 == 0 ? "" : " " + word()));
+        }
+        queries.add(word() + " AND " + word());
+        queries.add(word() + " OR " + word() + " NOT " + word());
+        if (!live.isEmpty()) {
+            String[] words = live.ceilingEntry(random.nextInt(live.lastKey() + 1)).getValue().split(" ");
+            int start = random.nextInt(words.length - 1);
+            queries.add("\"" + words[start] + " " + words[start + 1] + "\"");
+        }
+        return queries;
+    }
+
+    private String text() {
+        int length = 5 + random.nextInt(60);
+        StringJoiner text = new StringJoiner(" ");
+        for (int i = 0; i < length; i++) {
+            text.add(word());
+        }
+        return text.toString();
+    }
+
+    // skewed towards the first words, so some terms occur in most documents
+    private String word() {
+        double skew = random.nextDouble();
+        return vocabulary[(int) (skew * skew * skew * vocabulary.length)];
+    }
+
+    private String[] vocabulary(int size) {
+        Set<String> words = new LinkedHashSet<>();
+        while (words.size() < size) {
+            StringBuilder word = new StringBuilder();
+            int length = 4 + random.nextInt(5);
+            for (int i = 0; i < length; i++) {
+                word.append((char) ('a' + random.nextInt(26)));
+            }
+            words.add(word.toString());
+        }
+        return words.toArray(new String[0]);
+    }
+}
@@ -0,0 +1,124 @@
+package InvertedIndex;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Indexes built on several threads against the same documents added serially: the
+ * same terms, postings, positions, norms and lengths, whatever the thread count.
+ */
+class ParallelIndexBuilderTest {
+    private final Random random = new Random(5);
+    private final String[] vocabulary = vocabulary(800);
+
+    @Test
+    void buildsWhatSerialIndexingBuilds() {
+        List<String> documents = new ArrayList<>();
+        for (int i = 0; i < 1500; i++) {
+            documents.add(text());
+        }
+        for (boolean positions : new boolean[]{false, true}) {
+            InvertedIndex serial = serial(documents, positions);
+            for (int threads : new int[]{1, 2, 3, 4, 7, 16}) {
+                InvertedIndex parallel = new ParallelIndexBuilder(threads, positions).build(documents);
+                assertSameIndex(serial, parallel, threads + " threads, positions " + positions);
+            }
+        }
+
+        // fewer documents than threads, down to none
+        for (int size = 0; size <= 3; size++) {
+            List<String> few = documents.subList(0, size);
+            assertSameIndex(serial(few, true), new ParallelIndexBuilder(8, true).build(few), size + " documents");
+        }
+
+        // null documents are left out, including whole runs at either end
+        List<String> sparse = new ArrayList<>(documents);
+        for (int docId = 0; docId < sparse.size(); docId++) {
+            if (docId < 200 || docId >= 1400 || random.nextInt(3) == 0) sparse.set(docId, null);
+        }
+        assertSameIndex(serial(sparse, true), new ParallelIndexBuilder(7, true).build(sparse), "sparse");
+        assertEquals(200, serial(sparse, true).minDocId());
+        assertThrows(IllegalArgumentException.class, () -> new ParallelIndexBuilder(0));
+    }
+
+    private static InvertedIndex serial(List<String> documents, boolean positions) {
+        InvertedIndex index = new InvertedIndex(positions);
+        for (int docId = 0; docId < documents.size(); docId++) {
+            if (documents.get(docId) != null) index.addDocument(docId, documents.get(docId));
+        }
+        return index;
+    }
+
+    private static void assertSameIndex(InvertedIndex expected, InvertedIndex actual, String message) {
+        assertEquals(expected.hasPositions(), actual.hasPositions(), message);
+        assertEquals(expected.numDocs(), actual.numDocs(), message);
+        assertEquals(expected.maxDocId(), actual.maxDocId(), message);
+        assertEquals(expected.minDocId(), actual.minDocId(), message);
+        assertEquals(expected.totalDocLength(), actual.totalDocLength(), message);
+        assertEquals(expected.getGeneration(), actual.getGeneration(), message);
+        for (int docId = 0; docId <= expected.maxDocId() + 1; docId++) {
+            assertEquals(expected.docLength(docId), actual.docLength(docId), message + ": length of " + docId);
+        }
+
+        // norms sum the same terms, perhaps in another order, so only the last bit may differ
+        double[] expectedNorms = expected.getDocNorms();
+        double[] actualNorms = actual.getDocNorms();
+        assertEquals(expectedNorms.length, actualNorms.length, message);
+        for (int docId = 0; docId < expectedNorms.length; docId++) {
+            assertEquals(expectedNorms[docId], actualNorms[docId], 1e-12 * expectedNorms[docId], message + ": norm of " + docId);
+        }
+
+        assertEquals(expected.getIndex().keySet(), actual.getIndex().keySet(), message);
+        for (String term : expected.getIndex().keySet()) {
+            assertEquals(expected.docFreq(term), actual.docFreq(term), message + ": " + term);
+            double bound = expected.maxNormalizedTfWeight(term);
+            assertEquals(bound, actual.maxNormalizedTfWeight(term), 1e-12 * bound, message + ": " + term);
+            PostingsCursor expectedPostings = expected.postings(term, expected.hasPositions());
+            PostingsCursor actualPostings = actual.postings(term, actual.hasPositions());
+            assertEquals(expectedPostings.size(), actualPostings.size(), message + ": " + term);
+            for (int docId = expectedPostings.next(); docId != PostingsCursor.NO_MORE_DOCS; docId = expectedPostings.next()) {
+                assertEquals(docId, actualPostings.next(), message + ": " + term);
+                assertEquals(expectedPostings.termFrequency(), actualPostings.termFrequency(), message + ": " + term + " in " + docId);
+                if (expected.hasPositions()) {
+                    int tf = expectedPostings.termFrequency();
+                    assertArrayEquals(Arrays.copyOf(expectedPostings.positions(), tf), Arrays.copyOf(actualPostings.positions(), tf),
+                            message + ": " + term + " in " + docId);
+                }
+            }
+            assertEquals(PostingsCursor.NO_MORE_DOCS, actualPostings.next(), message + ": " + term);
+        }
+    }
+
+    // mostly short pages, some long, and now and then one with no terms at all
+    private String text() {
+        if (random.nextInt(50) == 0) {
+            return random.nextBoolean() ? "" : "... !";
+        }
+        StringJoiner text = new StringJoiner(random.nextBoolean() ? " " : ", ");
+        for (int i = 0, length = random.nextInt(10) == 0 ? 500 + random.nextInt(1500) : 1 + random.nextInt(100); i < length; i++) {
+            text.add(word());
+        }
+        return text.toString();
+    }
+
+    // Zipfian, so the common terms have postings in every shard and the rare ones in few
+    private String word() {
+        double u = random.nextDouble() * Math.log(vocabulary.length + 1.0);
+        return vocabulary[Math.min((int) Math.exp(u) - 1, vocabulary.length - 1)];
+    }
+
+    private String[] vocabulary(int size) {
+        Set<String> words = new LinkedHashSet<>();
+        while (words.size() < size) {
+            StringBuilder word = new StringBuilder();
+            for (int i = 0, length = 3 + random.nextInt(7); i < length; i++) {
+                word.append((char) ('a' + random.nextInt(10)));
+            }
+            words.add(word.toString());
+        }
+        return words.toArray(new String[0]);
+    }
+}
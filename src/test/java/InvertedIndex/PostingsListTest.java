@@ -0,0 +1,201 @@
+package InvertedIndex;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Varint postings decoded by next() and advance() against the arrays they were built
+ * from, with lengths and targets around the skip blocks' boundaries.
+ */
+class PostingsListTest {
+    private static final int BLOCK = PostingsList.SKIP_INTERVAL;
+
+    private final Random random = new Random(1);
+
+    @Test
+    void decodesWhatWasAdded() {
+        for (int size : new int[]{0, 1, BLOCK - 1, BLOCK, BLOCK + 1, 2 * BLOCK, 2 * BLOCK + 1, 5000}) {
+            for (boolean positional : new boolean[]{false, true}) {
+                Postings expected = postings(size);
+                PostingsList list = expected.build(positional);
+                assertEquals(size, list.size());
+                assertEquals(size == 0 ? -1 : expected.docIds[size - 1], list.lastDocId());
+
+                PostingsCursor cursor = list.cursor(positional);
+                assertEquals(size, cursor.size());
+                for (int i = 0; i < size; i++) {
+                    assertEquals(expected.docIds[i], cursor.next(), "posting " + i + " of " + size);
+                    assertEquals(expected.freqs[i], cursor.termFrequency());
+                    // positions are read for some postings only, so the others are skipped lazily
+                    if (positional && random.nextInt(3) == 0) {
+                        assertPositions(expected.positions[i], cursor);
+                    }
+                }
+                assertEquals(PostingsCursor.NO_MORE_DOCS, cursor.next());
+                assertEquals(PostingsCursor.NO_MORE_DOCS, cursor.next());
+
+                list.trim();
+                assertEquals(size == 0 ? PostingsCursor.NO_MORE_DOCS : expected.docIds[0], list.cursor().next(), "trimmed");
+            }
+        }
+    }
+
+    @Test
+    void advancesToTheFirstDocIdAtOrPastTheTarget() {
+        for (int size : new int[]{1, BLOCK - 1, BLOCK, BLOCK + 1, 3 * BLOCK, 10_000}) {
+            Postings expected = postings(size);
+            PostingsList list = expected.build(true);
+            for (int run = 0; run < 50; run++) {
+                PostingsCursor cursor = list.cursor(true);
+                int current = -1;
+                while (true) {
+                    int target = target(expected, current);
+                    int result = cursor.advance(target);
+                    int at = firstAtLeast(expected.docIds, Math.max(target, current));
+                    if (at == size) {
+                        assertEquals(PostingsCursor.NO_MORE_DOCS, result, "past the end of " + size);
+                        break;
+                    }
+                    assertEquals(expected.docIds[at], result, "advance(" + target + ") from " + current + " in " + size);
+                    assertEquals(expected.docIds[at], cursor.docId());
+                    assertEquals(expected.freqs[at], cursor.termFrequency());
+                    if (random.nextBoolean()) {
+                        assertPositions(expected.positions[at], cursor);
+                    }
+                    current = result;
+                    if (random.nextInt(4) == 0) {
+                        // stepping on after a leap decodes from where the skip landed
+                        int next = cursor.next();
+                        assertEquals(at + 1 < size ? expected.docIds[at + 1] : PostingsCursor.NO_MORE_DOCS, next);
+                        if (next == PostingsCursor.NO_MORE_DOCS) break;
+                        current = next;
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    void appendsOnlyLivePostings() {
+        Postings first = postings(300);
+        Postings second = postings(300);
+        int offset = first.docIds[299] + 1;
+        PostingsList appended = first.build(true);
+        BitSet live = new BitSet();
+        List<Integer> kept = new ArrayList<>();
+        for (int docId : first.docIds) {
+            kept.add(docId);
+        }
+        for (int docId : second.docIds) {
+            if (random.nextInt(3) > 0) {
+                live.set(offset + docId);
+                kept.add(offset + docId);
+            }
+        }
+        PostingsList shifted = new PostingsList(true);
+        for (int i = 0; i < second.docIds.length; i++) {
+            shifted.add(offset + second.docIds[i], second.positions[i], second.freqs[i]);
+        }
+        appended.addAll(shifted, live);
+
+        assertEquals(kept.size(), appended.size());
+        PostingsCursor cursor = appended.cursor(true);
+        for (int i = 0; i < kept.size(); i++) {
+            assertEquals(kept.get(i), cursor.next());
+            if (i >= 300) {
+                int at = Arrays.binarySearch(second.docIds, kept.get(i) - offset);
+                assertPositions(second.positions[at], cursor);
+            }
+        }
+        assertEquals(PostingsCursor.NO_MORE_DOCS, cursor.next());
+    }
+
+    @Test
+    void rejectsPostingsOutOfOrder() {
+        PostingsList list = new PostingsList();
+        list.add(5, 1);
+        assertThrows(IllegalArgumentException.class, () -> list.add(5, 1));
+        assertThrows(IllegalArgumentException.class, () -> list.add(3, 1));
+        assertThrows(IllegalArgumentException.class, () -> list.add(6, 0));
+        assertThrows(IllegalStateException.class, () -> list.cursor(true));
+
+        PostingsList positional = new PostingsList(true);
+        assertThrows(IllegalStateException.class, () -> positional.add(1, 1));
+        assertThrows(IllegalArgumentException.class, () -> positional.add(1, new int[]{4, 4}, 2));
+        assertThrows(IllegalArgumentException.class, () -> positional.add(1, new int[]{4}, 2));
+        assertThrows(IllegalArgumentException.class, () -> positional.addAll(list));
+    }
+
+    private static void assertPositions(int[] expected, PostingsCursor cursor) {
+        assertEquals(expected.length, cursor.termFrequency());
+        assertArrayEquals(expected, Arrays.copyOf(cursor.positions(), cursor.termFrequency()));
+    }
+
+    // a target at a block boundary, just before or after a posting, far ahead, or behind
+    private int target(Postings expected, int current) {
+        int size = expected.docIds.length;
+        int at = Math.min(size - 1, firstAtLeast(expected.docIds, current + 1) + random.nextInt(3 * BLOCK));
+        return switch (random.nextInt(6)) {
+            case 0 -> expected.docIds[Math.min(size - 1, (at / BLOCK + 1) * BLOCK)];
+            case 1 -> expected.docIds[Math.min(size - 1, (at / BLOCK + 1) * BLOCK - 1)] + 1;
+            case 2 -> Math.max(0, expected.docIds[at] - 1);
+            // behind a cursor that has not started, advance would stay before the first posting
+            case 3 -> current < 0 ? 0 : current - random.nextInt(100);
+            case 4 -> expected.docIds[size - 1] + 1 + random.nextInt(10);
+            default -> expected.docIds[at];
+        };
+    }
+
+    private static int firstAtLeast(int[] docIds, int target) {
+        int at = Arrays.binarySearch(docIds, target);
+        return at >= 0 ? at : -at - 1;
+    }
+
+    // gaps of one to three varint bytes and one of four, frequencies past one byte, positions to match
+    private Postings postings(int size) {
+        Postings postings = new Postings(size);
+        int docId = -1;
+        for (int i = 0; i < size; i++) {
+            int bytes = i == size / 2 ? 4 : random.nextInt(10) == 0 ? 1 + random.nextInt(3) : 1;
+            docId += 1 + random.nextInt(1 << (7 * bytes - 1));
+            postings.docIds[i] = docId;
+            int tf = random.nextInt(50) == 0 ? 100 + random.nextInt(300) : 1 + random.nextInt(4);
+            postings.freqs[i] = tf;
+            int[] positions = new int[tf];
+            int position = random.nextInt(200);
+            for (int p = 0; p < tf; p++) {
+                positions[p] = position;
+                position += 1 + (random.nextInt(20) == 0 ? random.nextInt(100_000) : random.nextInt(30));
+            }
+            postings.positions[i] = positions;
+        }
+        return postings;
+    }
+
+    private static final class Postings {
+        final int[] docIds;
+        final int[] freqs;
+        final int[][] positions;
+
+        Postings(int size) {
+            docIds = new int[size];
+            freqs = new int[size];
+            positions = new int[size][];
+        }
+
+        PostingsList build(boolean positional) {
+            PostingsList list = new PostingsList(positional);
+            for (int i = 0; i < docIds.length; i++) {
+                if (positional) {
+                    list.add(docIds[i], positions[i], freqs[i]);
+                } else {
+                    list.add(docIds[i], freqs[i]);
+                }
+            }
+            return list;
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package InvertedIndex;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Ordinal, term and prefix lookups against a sorted list, in memory and mapped from
+ * an index's terms.dat.
+ */
+class TermDictionaryTest {
+    private static final Comparator<String> UTF8_ORDER = (a, b) ->
+            Arrays.compareUnsigned(a.getBytes(StandardCharsets.UTF_8), b.getBytes(StandardCharsets.UTF_8));
+
+    private final Random random = new Random(22);
+
+    @Test
+    void matchesASortedList() {
+        Set<String> terms = new HashSet<>();
+        while (terms.size() < 20_000) {
+            terms.add(word());
+        }
+        List<String> sorted = new ArrayList<>(terms);
+        sorted.sort(UTF8_ORDER);
+        TermDictionary dictionary = TermDictionary.build(terms);
+        assertSameTerms(sorted, dictionary);
+
+        for (int i = 0; i < 5000; i++) {
+            String absent = word() + (char) ('a' + random.nextInt(26));
+            if (!terms.contains(absent)) {
+                assertEquals(-1, dictionary.ordinal(absent), absent);
+            }
+        }
+        assertEquals(-1, dictionary.ordinal(""));
+        assertEquals(-1, dictionary.ordinal("\uFFFF\uFFFF"));
+
+        List<String> prefixes = new ArrayList<>(List.of("", "zzzz", "\uD83D", "é", "中"));
+        for (int i = 0; i < 200; i++) {
+            String term = sorted.get(random.nextInt(sorted.size()));
+            prefixes.add(term.substring(0, random.nextInt(term.length() + 1)));
+        }
+        for (String prefix : prefixes) {
+            byte[] bytes = prefix.getBytes(StandardCharsets.UTF_8);
+            List<String> expected = new ArrayList<>();
+            for (String term : sorted) {
+                byte[] termBytes = term.getBytes(StandardCharsets.UTF_8);
+                if (termBytes.length >= bytes.length && Arrays.equals(termBytes, 0, bytes.length, bytes, 0, bytes.length)) {
+                    expected.add(term);
+                }
+            }
+            List<String> visited = new ArrayList<>();
+            dictionary.forEachWithPrefix(prefix, (ordinal, term) -> {
+                assertEquals(sorted.get(ordinal), term);
+                visited.add(term);
+            });
+            assertEquals(expected, visited, "prefix " + prefix);
+        }
+    }
+
+    @Test
+    void rejectsDuplicatesAndBadOrdinals() {
+        assertThrows(IllegalArgumentException.class, () -> TermDictionary.build(List.of("giza", "pyramid", "giza")));
+        TermDictionary empty = TermDictionary.build(List.of());
+        assertEquals(0, empty.size());
+        assertEquals(-1, empty.ordinal("giza"));
+        empty.forEachWithPrefix("", (ordinal, term) -> fail(term));
+        TermDictionary one = TermDictionary.build(List.of("giza"));
+        assertEquals("giza", one.term(0));
+        assertThrows(IndexOutOfBoundsException.class, () -> one.term(1));
+        assertThrows(IndexOutOfBoundsException.class, () -> one.term(-1));
+    }
+
+    @Test
+    void mappedIndexReadsTheSameDictionary(@TempDir Path dir) throws IOException {
+        InvertedIndex index = new InvertedIndex(false);
+        for (int docId = 0; docId < 2000; docId++) {
+            StringJoiner text = new StringJoiner(" ");
+            for (int i = 0; i < 50; i++) {
+                text.add(word());
+            }
+            index.addDocument(docId, text.toString());
+        }
+        List<String> sorted = new ArrayList<>(index.getIndex().keySet());
+        sorted.sort(UTF8_ORDER);
+        assertSameTerms(sorted, index.terms());
+
+        IndexWriter.write(index, dir, false);
+        try (MappedIndex mapped = MappedIndex.open(dir)) {
+            assertSameTerms(sorted, mapped.terms());
+            for (String term : sorted) {
+                assertEquals(index.docFreq(term), mapped.docFreq(term), term);
+            }
+            assertEquals(0, mapped.docFreq("notaterm"));
+        }
+    }
+
+    private static void assertSameTerms(List<String> sorted, TermDictionary dictionary) {
+        assertEquals(sorted.size(), dictionary.size());
+        for (int ordinal = 0; ordinal < sorted.size(); ordinal++) {
+            assertEquals(sorted.get(ordinal), dictionary.term(ordinal));
+            assertEquals(ordinal, dictionary.ordinal(sorted.get(ordinal)));
+        }
+        List<String> walked = new ArrayList<>();
+        dictionary.forEachWithPrefix("", (ordinal, term) -> walked.add(term));
+        assertEquals(sorted, walked);
+    }
+
+    // a few shared stems with endings, so sorted neighbours share long prefixes; some not ASCII
+    private String word() {
+        String[] stems = {"pyramid", "pharaoh", "tomb", "nile", "kingdom", "dynasty", "papyr", "obelisk"};
+        String[] accents = {"", "", "", "é", "ü", "中", "👑"};
+        StringBuilder word = new StringBuilder(random.nextInt(4) == 0 ? "" : stems[random.nextInt(stems.length)]);
+        int length = 1 + random.nextInt(6);
+        for (int i = 0; i < length; i++) {
+            word.append((char) ('a' + random.nextInt(26)));
+        }
+        return word.append(accents[random.nextInt(accents.length)]).toString();
+    }
+}
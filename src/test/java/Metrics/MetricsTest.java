@@ -0,0 +1,133 @@
+package Metrics;
+
+import org.junit.jupiter.api.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Histogram buckets and percentiles against exact values, concurrent recording, and
+ * the JMX and text views of a registry.
+ */
+class MetricsTest {
+
+    @Test
+    void bucketsAreAtMostASixteenthWide() {
+        Random random = new Random(20);
+        List<Long> values = new ArrayList<>();
+        for (long value = 0; value < 1000; value++) {
+            values.add(value);
+        }
+        for (int power = 4; power < 63; power++) {
+            values.add((1L << power) - 1);
+            values.add(1L << power);
+            values.add((1L << power) + 1);
+        }
+        values.add(Long.MAX_VALUE);
+        for (int i = 0; i < 100_000; i++) {
+            values.add(random.nextLong() >>> 1 + random.nextInt(63));
+        }
+        for (long value : values) {
+            int bucket = Histogram.bucket(value);
+            assertTrue(bucket >= 0 && bucket < 960, value + " in bucket " + bucket);
+            assertTrue(Histogram.highestValue(bucket) >= value, value + " above its bucket");
+            assertTrue(bucket == 0 || Histogram.highestValue(bucket - 1) < value, value + " below its bucket");
+            assertTrue(Histogram.highestValue(bucket) - value <= value / 16, value + " in a bucket too wide");
+        }
+    }
+
+    @Test
+    void percentilesAreWithinABucketOfExact() {
+        Random random = new Random(20);
+        Histogram histogram = new Metrics(null).histogram("test.lognormal");
+        long[] samples = new long[500_000];
+        long sum = 0;
+        for (int i = 0; i < samples.length; i++) {
+            // around 100us, with a long tail
+            samples[i] = (long) Math.exp(11.5 + 1.2 * random.nextGaussian());
+            histogram.record(samples[i]);
+            sum += samples[i];
+        }
+        histogram.record(-5);
+        Histogram.Snapshot snapshot = histogram.snapshot();
+        long[] sorted = Arrays.copyOf(samples, samples.length + 1);
+        Arrays.sort(sorted);
+
+        assertEquals(sorted.length, snapshot.count);
+        assertEquals((double) sum / sorted.length, snapshot.mean, 1e-6 * snapshot.mean);
+        assertEquals(sorted[sorted.length - 1], snapshot.max);
+        long[] reported = {snapshot.p50, snapshot.p99, snapshot.p999};
+        double[] fractions = {0.50, 0.99, 0.999};
+        for (int i = 0; i < fractions.length; i++) {
+            long exact = sorted[(int) Math.ceil(fractions[i] * sorted.length) - 1];
+            assertTrue(reported[i] >= exact && reported[i] <= exact * 1.0625,
+                    "p" + fractions[i] + ": " + reported[i] + ", exact " + exact);
+        }
+    }
+
+    @Test
+    void recordsFromManyThreadsWithoutAllocating() throws Exception {
+        Histogram histogram = new Metrics(null).histogram("test.concurrent");
+        try (ExecutorService executor = Executors.newFixedThreadPool(4)) {
+            List<Future<?>> recorders = new ArrayList<>();
+            for (int thread = 0; thread < 4; thread++) {
+                recorders.add(executor.submit(() -> {
+                    for (int i = 1; i <= 100_000; i++) {
+                        histogram.record(i);
+                    }
+                }));
+            }
+            for (Future<?> recorder : recorders) {
+                recorder.get();
+            }
+        }
+        Histogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(400_000, snapshot.count);
+        assertEquals(50_000.5, snapshot.mean, 1e-9);
+        assertEquals(100_000, snapshot.max);
+
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long before = threads.getCurrentThreadAllocatedBytes();
+        for (int i = 0; i < 1_000_000; i++) {
+            histogram.record(i);
+        }
+        long allocated = threads.getCurrentThreadAllocatedBytes() - before;
+        assertTrue(allocated < 1024, "a million records allocated " + allocated + " bytes");
+    }
+
+    @Test
+    void exposesMetricsOverJmxAndAsText() throws Exception {
+        Metrics metrics = new Metrics("MetricsTest");
+        metrics.histogram("query.total").record(2_000);
+        metrics.histogram("query.total").record(4_000);
+        metrics.counter("crawler.bytes.example.org").add(300);
+        metrics.counter("odd name, quoted").increment();
+        metrics.gauge("index.docs", () -> 7);
+        metrics.gauge("index.docs", () -> 9);
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName histogram = new ObjectName("MetricsTest:type=Histogram,name=query.total");
+        assertEquals(2L, server.getAttribute(histogram, "Count"));
+        assertEquals(3.0, (Double) server.getAttribute(histogram, "MeanMicros"), 1e-9);
+        assertEquals(4.0, (Double) server.getAttribute(histogram, "MaxMicros"), 1e-9);
+        assertEquals(300L, server.getAttribute(new ObjectName("MetricsTest:type=Counter,name=crawler.bytes.example.org"), "Value"));
+        assertEquals(1L, server.getAttribute(new ObjectName("MetricsTest:type=Counter,name="
+                + ObjectName.quote("odd name, quoted")), "Value"));
+        assertEquals(9L, server.getAttribute(new ObjectName("MetricsTest:type=Gauge,name=index.docs"), "Value"));
+        assertSame(metrics.histogram("query.total"), metrics.histogram("query.total"));
+
+        String[] lines = metrics.dump().split("\n");
+        assertEquals(4, lines.length);
+        assertTrue(lines[0].startsWith("query.total count=2 mean=3.0us"), lines[0]);
+        assertEquals("crawler.bytes.example.org 300", lines[1]);
+        assertEquals("index.docs 9", lines[2]);
+        assertEquals("odd name, quoted 1", lines[3]);
+    }
+}
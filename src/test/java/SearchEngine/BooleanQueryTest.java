@@ -0,0 +1,207 @@
+package SearchEngine;
+
+import InvertedIndex.InvertedIndex;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Random AND/OR/NOT queries over words and phrases, parsed and run through their
+ * {@link DocIterator} trees and through the engine, against the same query evaluated
+ * as sets of documents.
+ */
+class BooleanQueryTest {
+    // two letters, so every word is its own stem; "zz" occurs in no document
+    private static final String[] VOCABULARY = {"ab", "cd", "ef", "gh", "ij", "kl", "mn", "op"};
+
+    private final Random random = new Random(12);
+    private final List<String[]> documents = new ArrayList<>();
+    private final InvertedIndex index = new InvertedIndex(true);
+
+    @Test
+    void matchesTheSetsItDescribes() {
+        for (int docId = 0; docId < 300; docId++) {
+            String[] words = new String[random.nextInt(25)];
+            for (int i = 0; i < words.length; i++) {
+                words[i] = word();
+            }
+            documents.add(words);
+            index.addDocument(docId, String.join(" ", words));
+        }
+        SearchEngine engine = new SearchEngine(index, new Bm25());
+
+        for (int i = 0; i < 1000; i++) {
+            Clause query = clause(3);
+            List<Integer> expected = new ArrayList<>(query.matches);
+            String text = query.text;
+
+            DocIterator iterator = BooleanQueryParser.parse(text, index).iterator(index);
+            List<Integer> matches = new ArrayList<>();
+            if (iterator != null) {
+                for (int doc = iterator.next(); doc != DocIterator.NO_MORE_DOCS; doc = iterator.next()) {
+                    matches.add(doc);
+                }
+            }
+            assertEquals(expected, matches, text);
+            assertAdvances(expected, BooleanQueryParser.parse(text, index).iterator(index), text);
+
+            // only the matches are ranked, and every one of them scores
+            Set<Integer> ranked = new TreeSet<>();
+            for (SearchEngine.Result result : engine.search(text, documents.size())) {
+                ranked.add(result.docId);
+            }
+            assertEquals(new TreeSet<>(expected), ranked, "ranked: " + text);
+        }
+    }
+
+    @Test
+    void matchesNothingWithOnlyNegations() {
+        InvertedIndex index = new InvertedIndex(true);
+        index.addDocument(0, "ab cd");
+        index.addDocument(1, "cd ef");
+        index.addDocument(2, "ef");
+        SearchEngine engine = new SearchEngine(index, new Bm25());
+        assertEquals(List.of(), engine.search("NOT ab", 10));
+        assertEquals(List.of(), engine.search("NOT ab NOT cd", 10));
+        assertEquals(List.of(), engine.search("NOT (ab OR cd)", 10));
+        // a group of negations inside a conjunction leaves it nothing to match
+        assertEquals(List.of(), engine.search("ef AND (NOT ab NOT cd)", 10));
+        // within a group, a negation excludes from the other clauses, whichever operator joins them
+        assertEquals(List.of(2), docIds(engine.search("ef NOT cd", 10)));
+        assertEquals(List.of(2), docIds(engine.search("ef OR NOT cd", 10)));
+        assertEquals(List.of(1), docIds(engine.search("NOT ab AND cd", 10)));
+
+        for (String malformed : new String[]{"(ab", "ab)", "ab AND", "AND ab", "ab OR OR cd", "NOT", "ab AND ()"}) {
+            assertThrows(IllegalArgumentException.class, () -> engine.search(malformed, 10), malformed);
+        }
+    }
+
+    // every advance lands on the first match at or after its target, or stays put if already there
+    private void assertAdvances(List<Integer> expected, DocIterator iterator, String query) {
+        if (iterator == null) {
+            assertEquals(List.of(), expected, query);
+            return;
+        }
+        int current = -1;
+        while (current != DocIterator.NO_MORE_DOCS) {
+            int result;
+            int wanted;
+            if (current >= 0 && random.nextInt(4) == 0) {
+                result = iterator.next();
+                wanted = firstAtLeast(expected, current + 1);
+            } else {
+                int target = current >= 0 && random.nextInt(5) == 0 ? current - random.nextInt(3) : current + 1 + random.nextInt(30);
+                result = iterator.advance(target);
+                wanted = target <= current ? current : firstAtLeast(expected, target);
+            }
+            assertEquals(wanted, result, query);
+            assertEquals(result, iterator.docId());
+            current = result;
+        }
+    }
+
+    private static int firstAtLeast(List<Integer> docIds, int target) {
+        for (int docId : docIds) {
+            if (docId >= target) return docId;
+        }
+        return DocIterator.NO_MORE_DOCS;
+    }
+
+    private static List<Integer> docIds(List<SearchEngine.Result> results) {
+        List<Integer> docIds = new ArrayList<>();
+        for (SearchEngine.Result result : results) {
+            docIds.add(result.docId);
+        }
+        Collections.sort(docIds);
+        return docIds;
+    }
+
+    /*
+     * A query and the documents it matches. A group of two or more clauses matches the
+     * AND or OR of its clauses that are not negated, minus every document a negated one
+     * matches, and nothing if all are negated. A negated clause matches nothing alone.
+     */
+    private Clause clause(int depth) {
+        if (depth == 0 || random.nextInt(3) == 0) {
+            return leaf();
+        }
+        boolean conjunction = random.nextBoolean();
+        List<Clause> clauses = new ArrayList<>();
+        for (int i = 0, size = 2 + random.nextInt(3); i < size; i++) {
+            Clause clause = clause(depth - 1);
+            clauses.add(random.nextInt(4) == 0 ? negate(clause) : clause);
+        }
+
+        StringJoiner text = new StringJoiner(conjunction ? " AND " : random.nextBoolean() ? " OR " : " ");
+        Set<Integer> included = null;
+        Set<Integer> excluded = new TreeSet<>();
+        for (Clause clause : clauses) {
+            text.add(clause.text);
+            if (clause.negated) {
+                excluded.addAll(clause.matches);
+            } else if (included == null) {
+                included = new TreeSet<>(clause.matches);
+            } else if (conjunction) {
+                included.retainAll(clause.matches);
+            } else {
+                included.addAll(clause.matches);
+            }
+        }
+        Set<Integer> matches = included == null ? new TreeSet<>() : included;
+        matches.removeAll(excluded);
+        return new Clause("(" + text + ")", matches, false);
+    }
+
+    private static Clause negate(Clause clause) {
+        return new Clause("NOT " + clause.text, clause.matches, true);
+    }
+
+    // a word, an unknown word, an exact phrase or a proximity query
+    private Clause leaf() {
+        int kind = random.nextInt(10);
+        if (kind == 0) {
+            return new Clause("zz", Set.of(), false);
+        }
+        if (kind > 2) {
+            String word = word();
+            Set<Integer> matches = new TreeSet<>();
+            for (int docId = 0; docId < documents.size(); docId++) {
+                if (Arrays.asList(documents.get(docId)).contains(word)) matches.add(docId);
+            }
+            return new Clause(word, matches, false);
+        }
+        String[] terms = {word(), word()};
+        int slop = kind == 1 ? Phrase.EXACT : 1 + random.nextInt(4);
+        Set<Integer> matches = new TreeSet<>();
+        for (int docId = 0; docId < documents.size(); docId++) {
+            if (occurs(documents.get(docId), terms, slop)) matches.add(docId);
+        }
+        return new Clause("\"" + terms[0] + " " + terms[1] + "\"" + (slop == Phrase.EXACT ? "" : "~" + slop), matches, false);
+    }
+
+    // the two terms in order and adjacent, or both within slop positions of each other
+    private static boolean occurs(String[] words, String[] terms, int slop) {
+        for (int i = 0; i < words.length; i++) {
+            if (slop == Phrase.EXACT) {
+                if (i + 1 < words.length && words[i].equals(terms[0]) && words[i + 1].equals(terms[1])) return true;
+                continue;
+            }
+            for (int j = i; j <= i + slop && j < words.length; j++) {
+                if (words[i].equals(terms[0]) && words[j].equals(terms[1])
+                        || words[i].equals(terms[1]) && words[j].equals(terms[0])) return true;
+            }
+        }
+        return false;
+    }
+
+    // skewed, so ANDs of common words match often and of rare ones seldom
+    private String word() {
+        int rank = (int) Math.exp(random.nextDouble() * Math.log(VOCABULARY.length + 1.0)) - 1;
+        return VOCABULARY[Math.min(rank, VOCABULARY.length - 1)];
+    }
+
+    private record Clause(String text, Set<Integer> matches, boolean negated) {
+    }
+}
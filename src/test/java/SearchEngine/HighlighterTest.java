@@ -0,0 +1,167 @@
+package SearchEngine;
+
+import DocumentStore.DocumentStore;
+import DocumentStore.MappedDocumentStore;
+import InvertedIndex.InvertedIndex;
+import Tokenizer.Analyzer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Snippets from the in-memory and the mapped store, each checked against every window
+ * of the analyzed document: the snippet must be one of the windows with the most
+ * distinct query terms, then the most matches, with exactly its matches marked.
+ */
+class HighlighterTest {
+    private static final String[] SEPARATORS = {" ", " ", " ", ", ", ". ", " — ", " ", "\n"};
+
+    private final Random random = new Random(14);
+    private final String[] vocabulary = vocabulary(300);
+
+    @Test
+    void marksTheDensestWindow(@TempDir Path dir) throws IOException {
+        List<String> texts = new ArrayList<>();
+        DocumentStore store = new DocumentStore();
+        InvertedIndex index = new InvertedIndex(true);
+        for (int docId = 0; docId < 400; docId++) {
+            // short pages, pages shorter than a window, and pages over many blocks
+            int length = docId % 100 == 0 ? 20_000 : docId % 7 == 0 ? 1 + random.nextInt(30) : 30 + random.nextInt(600);
+            String text = text(length);
+            texts.add(text);
+            store.add("https://example.org/p" + docId, "Page " + docId, text);
+            index.addDocument(docId, text);
+        }
+        store.write(dir);
+
+        try (MappedDocumentStore mapped = MappedDocumentStore.open(dir)) {
+            Highlighter inMemory = new Highlighter(index, store);
+            Highlighter fromDisk = new Highlighter(index, mapped);
+            SearchEngine engine = new SearchEngine(index, new Bm25());
+            for (int i = 0; i < 300; i++) {
+                String query = word() + " " + word() + (i % 3 == 0 ? "" : " " + word());
+                Set<String> terms = engine.highlightTerms(query);
+                for (SearchEngine.Result result : engine.search(query, 10)) {
+                    Highlighter.Snippet snippet = inMemory.snippet(result.docId, terms);
+                    assertBestWindow(texts.get(result.docId), index.docLength(result.docId), terms, snippet,
+                            "doc " + result.docId + ", " + query);
+                    assertEquals(describe(snippet), describe(fromDisk.snippet(result.docId, terms)),
+                            "mapped store, doc " + result.docId + ", " + query);
+                }
+            }
+        }
+    }
+
+    @Test
+    void marksStemsNotSubstrings() {
+        String text = "The PHARAOHS ruled. A pharaoh's tomb; pharaohship is not a match.";
+        DocumentStore store = new DocumentStore();
+        store.add("https://example.org/p0", "Pharaohs", text);
+        InvertedIndex index = new InvertedIndex(true);
+        index.addDocument(0, text);
+
+        Highlighter.Snippet snippet = new Highlighter(index, store).snippet(0, SearchEngine.queryTerms("pharaoh"));
+        assertEquals("The [PHARAOHS] ruled. A [pharaoh]'s tomb; pharaohship is not a match", snippet.format("[", "]"));
+        assertFalse(snippet.leading);
+        assertFalse(snippet.trailing);
+    }
+
+    // the snippet is the text of some window [start, start + 30) scoring as well as any
+    private static void assertBestWindow(String text, int docLength, Set<String> terms, Highlighter.Snippet snippet,
+                                         String message) {
+        List<String> tokens = new ArrayList<>();
+        List<int[]> offsets = new ArrayList<>();
+        new Analyzer().analyze(text, (term, position, from, to) -> {
+            assertEquals(tokens.size(), position);
+            tokens.add(term);
+            offsets.add(new int[]{from, to});
+        });
+        assertEquals(docLength, tokens.size(), message);
+
+        int window = 30;
+        int lastStart = Math.max(0, docLength - window);
+        long[] scores = new long[lastStart + 1];
+        long best = 0;
+        for (int start = 0; start <= lastStart; start++) {
+            Set<String> distinct = new HashSet<>();
+            int matches = 0;
+            for (int position = start; position < Math.min(start + window, docLength); position++) {
+                if (terms.contains(tokens.get(position))) {
+                    distinct.add(tokens.get(position));
+                    matches++;
+                }
+            }
+            scores[start] = (long) distinct.size() << 32 | matches;
+            best = Math.max(best, scores[start]);
+        }
+
+        List<String> bestWindows = new ArrayList<>();
+        for (int start = 0; start <= lastStart; start++) {
+            if (scores[start] != best) {
+                continue;
+            }
+            int end = Math.min(start + window, docLength);
+            int base = offsets.get(start)[0];
+            StringBuilder highlights = new StringBuilder();
+            for (int position = start; position < end; position++) {
+                if (terms.contains(tokens.get(position))) {
+                    highlights.append(offsets.get(position)[0] - base).append('-').append(offsets.get(position)[1] - base).append(' ');
+                }
+            }
+            String expected = text.substring(base, offsets.get(end - 1)[1]) + " | " + highlights.toString().trim()
+                    + " | " + (start > 0) + " " + (end < docLength);
+            bestWindows.add(expected);
+            if (expected.equals(describe(snippet))) {
+                return;
+            }
+        }
+        fail(message + ": " + describe(snippet) + " is none of the " + bestWindows.size() + " best windows, such as "
+                + bestWindows.get(0));
+    }
+
+    // the text, the highlight spans and the leading and trailing flags
+    private static String describe(Highlighter.Snippet snippet) {
+        StringJoiner highlights = new StringJoiner(" ");
+        for (int i = 0; i < snippet.highlights.length; i += 2) {
+            highlights.add(snippet.highlights[i] + "-" + snippet.highlights[i + 1]);
+        }
+        return snippet.text + " | " + highlights + " | " + snippet.leading + " " + snippet.trailing;
+    }
+
+    private String text(int length) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            if (i > 0) {
+                text.append(SEPARATORS[random.nextInt(SEPARATORS.length)]);
+            }
+            String word = word();
+            text.append(i % 11 == 0 ? word.toUpperCase(Locale.ROOT) : word);
+        }
+        return text.toString();
+    }
+
+    // skewed towards the first words, so queries match often and in clusters
+    private String word() {
+        double skew = random.nextDouble();
+        return vocabulary[(int) (skew * skew * vocabulary.length)];
+    }
+
+    private String[] vocabulary(int size) {
+        Set<String> words = new LinkedHashSet<>();
+        while (words.size() < size) {
+            StringBuilder word = new StringBuilder();
+            int length = 4 + random.nextInt(5);
+            for (int i = 0; i < length; i++) {
+                word.append((char) ('a' + random.nextInt(26)));
+            }
+            // some words outside ASCII, to move byte offsets away from char offsets
+            words.add(words.size() % 10 == 0 ? word + "é" : word.toString());
+        }
+        return words.toArray(new String[0]);
+    }
+}
@@ -0,0 +1,125 @@
+package SearchEngine;
+
+import InvertedIndex.InvertedIndex;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Phrase and proximity queries, ranked and Boolean, against a scan of every document's
+ * words over a small vocabulary, so that phrases match often and partly match more.
+ */
+class PhraseTest {
+    // two letters, so every word is its own stem
+    private static final String[] VOCABULARY = {"ab", "cd", "ef", "gh", "ij"};
+
+    private final Random random = new Random(11);
+    private final List<String[]> documents = new ArrayList<>();
+
+    @Test
+    void matchesEveryOccurrenceAndNoOther() {
+        InvertedIndex positional = new InvertedIndex(true);
+        InvertedIndex plain = new InvertedIndex(false);
+        for (int docId = 0; docId < 400; docId++) {
+            String[] words = new String[random.nextInt(40)];
+            for (int i = 0; i < words.length; i++) {
+                words[i] = word();
+            }
+            documents.add(words);
+            positional.addDocument(docId, String.join(" ", words));
+            plain.addDocument(docId, String.join(" ", words));
+        }
+        SearchEngine engine = new SearchEngine(positional, new Bm25());
+        SearchEngine withoutPositions = new SearchEngine(plain, new Bm25());
+
+        for (int i = 0; i < 600; i++) {
+            String[] terms = phrase();
+            int slop = random.nextBoolean() ? Phrase.EXACT : random.nextInt(6);
+            String quoted = "\"" + String.join(" ", terms) + "\"" + (slop == Phrase.EXACT ? "" : "~" + slop);
+            Set<Integer> expected = new TreeSet<>();
+            Set<Integer> containing = new TreeSet<>();
+            for (int docId = 0; docId < documents.size(); docId++) {
+                if (slop == Phrase.EXACT ? containsPhrase(documents.get(docId), terms)
+                        : containsWithin(documents.get(docId), terms, slop)) {
+                    expected.add(docId);
+                }
+                if (Arrays.asList(documents.get(docId)).containsAll(Arrays.asList(terms))) {
+                    containing.add(docId);
+                }
+            }
+
+            // ranked, a free word widens nothing: every result must hold the phrase
+            String query = random.nextBoolean() ? quoted : word() + " " + quoted;
+            assertEquals(expected, docIds(engine.search(query, documents.size())), query);
+            assertEquals(containing, docIds(withoutPositions.search(query, documents.size())), "without positions: " + query);
+
+            // as a clause of a Boolean query, through its iterator
+            assertEquals(expected, matches(positional, quoted), "Boolean: " + quoted);
+            assertEquals(containing, matches(plain, quoted), "Boolean without positions: " + quoted);
+        }
+    }
+
+    private static boolean containsPhrase(String[] words, String[] terms) {
+        for (int start = 0; start + terms.length <= words.length; start++) {
+            int i = 0;
+            while (i < terms.length && words[start + i].equals(terms[i])) i++;
+            if (i == terms.length) return true;
+        }
+        return false;
+    }
+
+    // some window of slop + 1 positions holds every distinct term
+    private static boolean containsWithin(String[] words, String[] terms, int slop) {
+        Set<String> wanted = new HashSet<>(Arrays.asList(terms));
+        for (int start = 0; start < words.length; start++) {
+            Set<String> window = new HashSet<>();
+            for (int p = start; p <= start + slop && p < words.length; p++) {
+                window.add(words[p]);
+            }
+            if (window.containsAll(wanted)) return true;
+        }
+        return false;
+    }
+
+    private static Set<Integer> matches(InvertedIndex index, String query) {
+        Set<Integer> matches = new TreeSet<>();
+        DocIterator iterator = BooleanQueryParser.parse(query, index).iterator(index);
+        if (iterator != null) {
+            for (int doc = iterator.next(); doc != DocIterator.NO_MORE_DOCS; doc = iterator.next()) {
+                assertTrue(matches.add(doc), "doc " + doc + " repeated");
+            }
+        }
+        return matches;
+    }
+
+    private static Set<Integer> docIds(List<SearchEngine.Result> results) {
+        Set<Integer> docIds = new TreeSet<>();
+        for (SearchEngine.Result result : results) {
+            docIds.add(result.docId);
+        }
+        return docIds;
+    }
+
+    // two to four words, half the time taken from a document so that the phrase occurs
+    private String[] phrase() {
+        int length = 2 + random.nextInt(3);
+        String[] source = documents.get(random.nextInt(documents.size()));
+        if (random.nextBoolean() && source.length >= length) {
+            int start = random.nextInt(source.length - length + 1);
+            return Arrays.copyOfRange(source, start, start + length);
+        }
+        String[] terms = new String[length];
+        for (int i = 0; i < length; i++) {
+            terms[i] = word();
+        }
+        return terms;
+    }
+
+    // skewed, so some pairs are common and others rare
+    private String word() {
+        int rank = (int) Math.exp(random.nextDouble() * Math.log(VOCABULARY.length + 1.0)) - 1;
+        return VOCABULARY[Math.min(rank, VOCABULARY.length - 1)];
+    }
+}
@@ -0,0 +1,90 @@
+package SearchEngine;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * TinyLFU admission against a burst of one-off queries, and invalidation by index
+ * generation, including lookups that arrive from an older snapshot.
+ */
+class QueryCacheTest {
+
+    @Test
+    void keepsPopularQueriesThroughABurst() {
+        QueryCache cache = new QueryCache(100);
+        for (int round = 0; round < 5; round++) {
+            for (int i = 0; i < 100; i++) {
+                lookup(cache, "popular " + i, 0);
+            }
+        }
+        QueryCache.Stats warm = cache.stats();
+        assertEquals(100, warm.size);
+        assertEquals(400, warm.hits);
+
+        // a scan of queries asked once each is not admitted over the popular ones
+        for (int i = 0; i < 1000; i++) {
+            lookup(cache, "once " + i, 0);
+        }
+        QueryCache.Stats scanned = cache.stats();
+        // only a one-off whose counters all collide with busier keys' gets in
+        assertTrue(scanned.rejections >= 990 && scanned.evictions <= 10, scanned.toString());
+        int kept = 0;
+        for (int i = 0; i < 100; i++) {
+            if (cache.get("popular " + i, 0) != null) kept++;
+        }
+        assertTrue(kept >= 100 - scanned.evictions, kept + " popular queries kept");
+
+        // a query asked more often than the least recently used entry displaces it
+        for (int i = 0; i < 8; i++) {
+            lookup(cache, "rising", 0);
+        }
+        assertNotNull(cache.get("rising", 0));
+        assertEquals(100, cache.stats().size);
+        assertTrue(cache.stats().evictions > scanned.evictions);
+    }
+
+    @Test
+    void dropsEntriesOnlyForANewerGeneration() {
+        QueryCache cache = new QueryCache(10);
+        List<SearchEngine.Result> results = List.of(new SearchEngine.Result(3, 1.5));
+        cache.put("giza", 1, results);
+        cache.put("saqqara", 1, results);
+        assertSame(results, cache.get("giza", 1));
+
+        // results from before the refresh are never stored
+        cache.put("old", 0, results);
+        assertNull(cache.get("old", 1));
+
+        // a query still running on the older snapshot misses, uncounted, and keeps the cache
+        QueryCache.Stats before = cache.stats();
+        assertNull(cache.get("giza", 0));
+        QueryCache.Stats after = cache.stats();
+        assertEquals(before.misses, after.misses);
+        assertEquals(before.hits, after.hits);
+        assertEquals(0, after.invalidations);
+        assertSame(results, cache.get("saqqara", 1));
+
+        // a newer generation drops everything, and older ones no longer roll it back
+        assertNull(cache.get("giza", 2));
+        assertEquals(2, cache.stats().invalidations);
+        assertEquals(0, cache.stats().size);
+        cache.put("giza", 2, results);
+        assertNull(cache.get("giza", 1));
+        cache.put("pyramid", 1, results);
+        assertSame(results, cache.get("giza", 2));
+        assertNull(cache.get("pyramid", 2));
+        assertEquals(2, cache.stats().invalidations);
+
+        assertThrows(IllegalArgumentException.class, () -> new QueryCache(0));
+    }
+
+    // a search: a lookup, and on a miss the results offered back
+    private static void lookup(QueryCache cache, String key, long generation) {
+        if (cache.get(key, generation) == null) {
+            cache.put(key, generation, List.of(new SearchEngine.Result(key.length(), 1.0)));
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package SearchEngine;
+
+import InvertedIndex.Impacts;
+import InvertedIndex.IndexReader;
+import InvertedIndex.IndexWriter;
+import InvertedIndex.InvertedIndex;
+import InvertedIndex.MappedIndex;
+import InvertedIndex.PostingsCursor;
+import Metrics.Counter;
+import Metrics.Metrics;
+import Tokenizer.Analyzer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * BM25 over a synthetic Zipfian corpus, three ways: score-at-a-time over impact-ordered
+ * postings, WAND over the same index written without them, and a brute-force sum of
+ * every posting's quantized impact.
+ */
+class ScoreAtATimeTest {
+    private final Random random = new Random(24);
+    private final String[] vocabulary = vocabulary(2000);
+
+    @Test
+    void matchesWandAndBruteForce(@TempDir Path dir) throws IOException {
+        InvertedIndex built = new InvertedIndex(false);
+        for (int docId = 0; docId < 3000; docId++) {
+            built.addDocument(docId, text(20 + random.nextInt(180)));
+        }
+        IndexWriter.write(built, dir.resolve("impacts"), true);
+        IndexWriter.write(built, dir.resolve("wand"), false);
+
+        Counter scored = Metrics.shared().counter("query.scored");
+        long byImpact = 0, byWand = 0;
+        try (MappedIndex impactOrdered = MappedIndex.open(dir.resolve("impacts"));
+             MappedIndex docOrdered = MappedIndex.open(dir.resolve("wand"))) {
+            assertTrue(impactOrdered.isImpactOrdered());
+            assertFalse(docOrdered.isImpactOrdered());
+            // one engine each, so the pooled accumulators are reused from query to query
+            SearchEngine scoreAtATime = new SearchEngine(impactOrdered, new Bm25());
+            SearchEngine wand = new SearchEngine(docOrdered, new Bm25());
+            for (int i = 0; i < 300; i++) {
+                String query = query(1 + random.nextInt(5));
+                int k = new int[]{1, 10, 50}[i % 3];
+                List<SearchEngine.Result> expected = bruteForce(impactOrdered, query, 2 * k);
+
+                long before = scored.getValue();
+                List<SearchEngine.Result> impactResults = scoreAtATime.search(query, k);
+                long between = scored.getValue();
+                List<SearchEngine.Result> wandResults = wand.search(query, k);
+                byImpact += between - before;
+                byWand += scored.getValue() - between;
+
+                assertSameRanking(expected, k, impactResults, "score-at-a-time, k=" + k + ": " + query);
+                assertSameRanking(expected, k, wandResults, "WAND, k=" + k + ": " + query);
+            }
+        }
+        assertTrue(byImpact < byWand, "score-at-a-time scored " + byImpact + " documents, WAND " + byWand);
+    }
+
+    // every document's sum of count * idf * weight(impact) over the query's terms, best first
+    private static List<SearchEngine.Result> bruteForce(IndexReader reader, String query, int k) {
+        Map<String, Integer> counts = new HashMap<>();
+        new Analyzer().analyze(query, (term, position, start, end) -> counts.merge(term, 1, Integer::sum));
+        Impacts impacts = reader.impacts();
+        int totalDocs = reader.numDocs();
+        Map<Integer, Double> scores = new HashMap<>();
+        counts.forEach((term, count) -> {
+            int docFreq = reader.docFreq(term);
+            if (docFreq == 0) {
+                return;
+            }
+            double weight = count * Math.log(1 + (totalDocs - docFreq + 0.5) / (docFreq + 0.5));
+            PostingsCursor postings = reader.postings(term, false);
+            for (int doc = postings.next(); doc != PostingsCursor.NO_MORE_DOCS; doc = postings.next()) {
+                double score = weight * impacts.weight(impacts.quantize(postings.termFrequency(), reader.docLength(doc)));
+                scores.merge(doc, score, Double::sum);
+            }
+        });
+        List<SearchEngine.Result> results = new ArrayList<>();
+        scores.forEach((docId, score) -> results.add(new SearchEngine.Result(docId, score)));
+        results.sort(Comparator.comparingDouble((SearchEngine.Result r) -> -r.score).thenComparingInt(r -> r.docId));
+        return results.subList(0, Math.min(k, results.size()));
+    }
+
+    /*
+     * The same scores as the first k expected, within rounding, in the same order. Sums
+     * taken in another order can differ in the last bit, which may swap documents that
+     * tie, inside the top k or at its cut, so a docId may differ where the expected list
+     * has another document with the same score.
+     */
+    private static void assertSameRanking(List<SearchEngine.Result> expected, int k, List<SearchEngine.Result> actual,
+                                          String message) {
+        assertEquals(Math.min(expected.size(), k), actual.size(), message);
+        for (int i = 0; i < actual.size(); i++) {
+            double score = expected.get(i).score;
+            double tolerance = 1e-9 * Math.max(1, score);
+            assertEquals(score, actual.get(i).score, tolerance, message + " at " + i);
+            if (expected.get(i).docId != actual.get(i).docId) {
+                int docId = actual.get(i).docId;
+                assertTrue(expected.stream().anyMatch(r -> r.docId == docId && Math.abs(r.score - score) <= tolerance),
+                        message + ": doc " + docId + " at " + i + " is not tied with " + expected.get(i).docId);
+            }
+        }
+    }
+
+    private String query(int words) {
+        StringJoiner query = new StringJoiner(" ");
+        for (int i = 0; i < words; i++) {
+            query.add(word());
+        }
+        return query.toString();
+    }
+
+    private String text(int length) {
+        StringJoiner text = new StringJoiner(" ");
+        for (int i = 0; i < length; i++) {
+            text.add(word());
+        }
+        return text.toString();
+    }
+
+    // Zipfian: the r-th word is drawn in proportion to 1/r, by inverting the harmonic CDF
+    private String word() {
+        double u = random.nextDouble() * Math.log(vocabulary.length + 1.0);
+        int rank = (int) Math.exp(u) - 1;
+        return vocabulary[Math.min(rank, vocabulary.length - 1)];
+    }
+
+    private String[] vocabulary(int size) {
+        Set<String> words = new LinkedHashSet<>();
+        while (words.size() < size) {
+            StringBuilder word = new StringBuilder();
+            int length = 4 + random.nextInt(5);
+            for (int i = 0; i < length; i++) {
+                word.append((char) ('a' + random.nextInt(26)));
+            }
+            words.add(word.toString());
+        }
+        return words.toArray(new String[0]);
+    }
+}
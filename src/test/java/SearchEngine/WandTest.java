@@ -0,0 +1,164 @@
+package SearchEngine;
+
+import InvertedIndex.InvertedIndex;
+import Tokenizer.Analyzer;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * WAND's TF-IDF top k against exhaustive cosine scoring of every document, over a
+ * corpus where a third of the documents repeat earlier ones, so that scores tie
+ * exactly, often at the k-th place.
+ */
+class WandTest {
+    private final Random random = new Random(2);
+    private final String[] vocabulary = vocabulary(300);
+    private final List<Map<String, Integer>> documents = new ArrayList<>();
+    private final List<String> texts = new ArrayList<>();
+
+    @Test
+    void matchesExhaustiveScoring() {
+        InvertedIndex index = new InvertedIndex();
+        for (int docId = 0; docId < 2000; docId++) {
+            String text = docId > 0 && random.nextInt(3) == 0 ? texts.get(random.nextInt(docId)) : text(1 + random.nextInt(60));
+            texts.add(text);
+            Map<String, Integer> counts = new HashMap<>();
+            new Analyzer().analyze(text, (term, position, start, end) -> counts.merge(term, 1, Integer::sum));
+            documents.add(counts);
+            index.addDocument(docId, text);
+        }
+        SearchEngine engine = new SearchEngine(index, new TfIdf());
+
+        int tiesAtTheCut = 0;
+        for (int i = 0; i < 500; i++) {
+            String query = query();
+            int k = new int[]{1, 5, 10, 50}[i % 4];
+            List<SearchEngine.Result> expected = exhaustive(query);
+            List<SearchEngine.Result> actual = engine.search(query, k);
+            assertSameRanking(expected, k, actual, "k=" + k + ": " + query);
+
+            // among copies of one document, whose scores are equal to the bit, the smallest docIds win
+            Set<Integer> returned = new HashSet<>();
+            actual.forEach(result -> returned.add(result.docId));
+            for (SearchEngine.Result result : actual) {
+                int first = texts.indexOf(texts.get(result.docId));
+                for (int docId = first; docId < result.docId; docId++) {
+                    if (texts.get(docId).equals(texts.get(result.docId))) {
+                        assertTrue(returned.contains(docId), "copy " + docId + " of " + result.docId + " left out, k=" + k + ": " + query);
+                    }
+                }
+            }
+            if (expected.size() > k && Math.abs(expected.get(k - 1).score - expected.get(k).score) <= 1e-12) {
+                tiesAtTheCut++;
+            }
+        }
+        assertTrue(tiesAtTheCut > 50, tiesAtTheCut + " queries tie at the k-th place");
+    }
+
+    // every document's cosine with the query, recomputed from its terms, best first
+    private List<SearchEngine.Result> exhaustive(String query) {
+        Map<String, Integer> queryCounts = new HashMap<>();
+        new Analyzer().analyze(query, (term, position, start, end) -> queryCounts.merge(term, 1, Integer::sum));
+        Map<String, Integer> docFreqs = new HashMap<>();
+        for (Map<String, Integer> counts : documents) {
+            counts.keySet().forEach(term -> docFreqs.merge(term, 1, Integer::sum));
+        }
+        int totalDocs = documents.size();
+        double queryNorm = 0;
+        for (Map.Entry<String, Integer> entry : queryCounts.entrySet()) {
+            double weight = (1 + Math.log10(entry.getValue())) * idf(docFreqs, entry.getKey(), totalDocs);
+            queryNorm += weight * weight;
+        }
+        queryNorm = Math.sqrt(queryNorm);
+
+        List<SearchEngine.Result> results = new ArrayList<>();
+        for (int docId = 0; docId < totalDocs; docId++) {
+            Map<String, Integer> counts = documents.get(docId);
+            double docNorm = 0;
+            for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+                double weight = (1 + Math.log10(entry.getValue())) * idf(docFreqs, entry.getKey(), totalDocs);
+                docNorm += weight * weight;
+            }
+            docNorm = Math.sqrt(docNorm);
+            double score = 0;
+            for (Map.Entry<String, Integer> entry : queryCounts.entrySet()) {
+                Integer tf = counts.get(entry.getKey());
+                if (tf != null && docNorm > 0) {
+                    double idf = idf(docFreqs, entry.getKey(), totalDocs);
+                    score += (1 + Math.log10(entry.getValue())) * idf * (1 + Math.log10(tf)) * idf / (queryNorm * docNorm);
+                }
+            }
+            if (score > 0) {
+                results.add(new SearchEngine.Result(docId, score));
+            }
+        }
+        results.sort(Comparator.comparingDouble((SearchEngine.Result r) -> -r.score).thenComparingInt(r -> r.docId));
+        return results;
+    }
+
+    private static double idf(Map<String, Integer> docFreqs, String term, int totalDocs) {
+        return Math.log10(totalDocs / Math.max(docFreqs.getOrDefault(term, 0), 0.5));
+    }
+
+    /*
+     * The same scores as the first k expected, within rounding, in the same order. The
+     * exhaustive sum adds terms in another order than WAND, so it can differ in the last
+     * bit, and a docId may differ where the expected list has another document with the
+     * same score.
+     */
+    private static void assertSameRanking(List<SearchEngine.Result> expected, int k, List<SearchEngine.Result> actual,
+                                          String message) {
+        assertEquals(Math.min(expected.size(), k), actual.size(), message);
+        for (int i = 0; i < actual.size(); i++) {
+            double score = expected.get(i).score;
+            double tolerance = 1e-9 * Math.max(1, score);
+            assertEquals(score, actual.get(i).score, tolerance, message + " at " + i);
+            if (expected.get(i).docId != actual.get(i).docId) {
+                int docId = actual.get(i).docId;
+                assertTrue(expected.stream().anyMatch(r -> r.docId == docId && Math.abs(r.score - score) <= tolerance),
+                        message + ": doc " + docId + " at " + i + " is not tied with " + expected.get(i).docId);
+            }
+        }
+    }
+
+    // one to five words, some repeated, and now and then one no document contains
+    private String query() {
+        StringJoiner query = new StringJoiner(" ");
+        for (int i = 0, words = 1 + random.nextInt(5); i < words; i++) {
+            String word = word();
+            query.add(word);
+            if (random.nextInt(5) == 0) query.add(word);
+        }
+        if (random.nextInt(10) == 0) query.add("zzzz");
+        return query.toString();
+    }
+
+    private String text(int length) {
+        StringJoiner text = new StringJoiner(" ");
+        for (int i = 0; i < length; i++) {
+            text.add(word());
+        }
+        return text.toString();
+    }
+
+    // Zipfian, so the common words occur in most documents and bound their scores low
+    private String word() {
+        double u = random.nextDouble() * Math.log(vocabulary.length + 1.0);
+        return vocabulary[Math.min((int) Math.exp(u) - 1, vocabulary.length - 1)];
+    }
+
+    private String[] vocabulary(int size) {
+        Set<String> words = new LinkedHashSet<>();
+        while (words.size() < size) {
+            StringBuilder word = new StringBuilder();
+            for (int i = 0, length = 3 + random.nextInt(6); i < length; i++) {
+                word.append((char) ('a' + random.nextInt(10)));
+            }
+            words.add(word.toString());
+        }
+        return words.toArray(new String[0]);
+    }
+}
@@ -0,0 +1,138 @@
+package SearchEngine;
+
+import InvertedIndex.IndexWriter;
+import InvertedIndex.InvertedIndex;
+import InvertedIndex.MappedIndex;
+import InvertedIndex.PostingsCursor;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Wildcard words expanded against an index, checked against a scan of its terms, and
+ * ranked, Boolean and wildcard queries compared between the in-memory index and its
+ * mapped copy.
+ */
+class WildcardTest {
+    private final Random random = new Random(22);
+    private final String[] vocabulary = vocabulary(1500);
+
+    @Test
+    void expandsToTheMostFrequentMatchingTerms() {
+        InvertedIndex index = index();
+        SearchEngine engine = new SearchEngine(index, new TfIdf());
+        List<String> terms = new ArrayList<>(index.getIndex().keySet());
+        for (int i = 0; i < 300; i++) {
+            String pattern = pattern(terms.get(random.nextInt(terms.size())));
+            List<String> expected = bruteForce(index, terms, pattern);
+            assertEquals(new HashSet<>(expected), engine.highlightTerms(pattern), pattern);
+
+            // a Boolean query matches the documents holding any of the expansion
+            String other = vocabulary[random.nextInt(200)];
+            Set<Integer> matching = new TreeSet<>(documents(index, expected));
+            matching.retainAll(documents(index, new ArrayList<>(SearchEngine.queryTerms(other))));
+            Set<Integer> found = new TreeSet<>();
+            engine.search(pattern + " AND " + other, index.numDocs()).forEach(result -> found.add(result.docId));
+            assertEquals(matching, found, pattern + " AND " + other);
+        }
+        assertEquals(Set.of("giza"), SearchEngine.queryTerms("giza?"), "a trailing ? is punctuation");
+        assertTrue(engine.highlightTerms("*").isEmpty(), "a pattern of wildcards only is dropped");
+    }
+
+    @Test
+    void mappedIndexAnswersTheSame(@TempDir Path dir) throws IOException {
+        InvertedIndex index = index();
+        IndexWriter.write(index, dir, false);
+        List<String> terms = new ArrayList<>(index.getIndex().keySet());
+        try (MappedIndex mapped = MappedIndex.open(dir)) {
+            SearchEngine expected = new SearchEngine(index, new TfIdf());
+            SearchEngine actual = new SearchEngine(mapped, new TfIdf());
+            for (int i = 0; i < 600; i++) {
+                String word = terms.get(random.nextInt(terms.size()));
+                String query = switch (i % 3) {
+                    case 0 -> word + " " + vocabulary[random.nextInt(vocabulary.length)];
+                    case 1 -> "(" + word + " OR " + pattern(word) + ") NOT " + vocabulary[random.nextInt(50)];
+                    default -> pattern(word) + " " + word;
+                };
+                assertEquals(expected.search(query, 20).toString(), actual.search(query, 20).toString(), query);
+            }
+        }
+    }
+
+    // the matching terms in the most documents, at most MAX_EXPANSIONS, ties in term order
+    private static List<String> bruteForce(InvertedIndex index, List<String> terms, String pattern) {
+        Pattern glob = Pattern.compile(Pattern.quote(pattern).replace("*", "\\E.*\\Q").replace("?", "\\E.\\Q"));
+        List<String> matching = new ArrayList<>();
+        for (String term : terms) {
+            if (glob.matcher(term).matches()) {
+                matching.add(term);
+            }
+        }
+        matching.sort(Comparator.comparingInt((String term) -> -index.docFreq(term)).thenComparing(Comparator.naturalOrder()));
+        return matching.subList(0, Math.min(Wildcard.MAX_EXPANSIONS, matching.size()));
+    }
+
+    private static Set<Integer> documents(InvertedIndex index, List<String> terms) {
+        Set<Integer> documents = new HashSet<>();
+        for (String term : terms) {
+            PostingsCursor postings = index.postings(term, false);
+            for (int doc = postings.next(); doc != PostingsCursor.NO_MORE_DOCS; doc = postings.next()) {
+                documents.add(doc);
+            }
+        }
+        return documents;
+    }
+
+    // the term with a ? for one letter, a * for its end, or both; never a trailing ?
+    private String pattern(String term) {
+        StringBuilder pattern = new StringBuilder(term);
+        if (term.length() > 2 && random.nextBoolean()) {
+            pattern.setCharAt(1 + random.nextInt(term.length() - 2), '?');
+        }
+        if (random.nextInt(3) > 0 || pattern.indexOf("?") < 0) {
+            pattern.setLength(1 + random.nextInt(pattern.length()));
+            if (pattern.charAt(pattern.length() - 1) == '?') {
+                pattern.setLength(pattern.length() - 1);
+            }
+            pattern.append('*');
+        }
+        return pattern.toString();
+    }
+
+    private InvertedIndex index() {
+        InvertedIndex index = new InvertedIndex(true);
+        for (int docId = 0; docId < 2000; docId++) {
+            StringJoiner text = new StringJoiner(" ");
+            for (int i = 0, length = 10 + random.nextInt(100); i < length; i++) {
+                text.add(word());
+            }
+            index.addDocument(docId, text.toString());
+        }
+        return index;
+    }
+
+    // Zipfian, so expansions of short prefixes pass MAX_EXPANSIONS and compete on docFreq
+    private String word() {
+        double u = random.nextDouble() * Math.log(vocabulary.length + 1.0);
+        return vocabulary[Math.min((int) Math.exp(u) - 1, vocabulary.length - 1)];
+    }
+
+    private String[] vocabulary(int size) {
+        Set<String> words = new LinkedHashSet<>();
+        while (words.size() < size) {
+            StringBuilder word = new StringBuilder();
+            int length = 3 + random.nextInt(7);
+            for (int i = 0; i < length; i++) {
+                word.append((char) ('a' + random.nextInt(8)));
+            }
+            words.add(word.toString());
+        }
+        return words.toArray(new String[0]);
+    }
+}
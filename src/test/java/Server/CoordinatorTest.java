@@ -0,0 +1,333 @@
+package Server;
+
+import Cluster.CollectionStatistics;
+import Cluster.Partition;
+import DocumentStore.DocumentStore;
+import InvertedIndex.InvertedIndex;
+import InvertedIndex.ParallelIndexBuilder;
+import SearchEngine.Bm25;
+import SearchEngine.Highlighter;
+import SearchEngine.SearchEngine;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * A coordinator over shard servers in this JVM, compared with a single-index server
+ * over the same documents, also after a recrawl, and its partial answers when a shard
+ * hangs, stops or restarts.
+ */
+class CoordinatorTest {
+    private static final Pattern HIT = Pattern.compile("\\{\"docId\":(\\d+),\"score\":([^,]+),");
+
+    private final Random random = new Random(25);
+    private final String[] vocabulary = vocabulary(400);
+    private final DocumentStore store = store(3000);
+    private final InvertedIndex index = new ParallelIndexBuilder(1, true).build(store.texts());
+    private final SearchEngine engine = new SearchEngine(index, new Bm25());
+
+    @Test
+    void shardsAnswerLikeOneIndex() throws Exception {
+        try (SearchServer single = new SearchServer(loopback(), new SearchEngine(index, new Bm25(), 1024),
+                new Highlighter(index, store), store, 1, 4, Duration.ofSeconds(10));
+             HttpClient client = HttpClient.newHttpClient()) {
+            single.start();
+            for (int shards : new int[]{1, 3, 4}) {
+                List<Partition> partitions = new ArrayList<>();
+                for (int shard = 0; shard < shards; shard++) {
+                    partitions.add(Partition.of(shard, shards, store.size()));
+                }
+                assertAnswersLike(single, client, partitions);
+            }
+        }
+    }
+
+    @Test
+    void shardsAnswerLikeOneIndexAfterARecrawl(@TempDir Path dir) throws Exception {
+        BitSet live = new BitSet();
+        live.set(0, store.size());
+        Partition before = Partition.of(1, 3, store.size(), live);
+        before.write(dir);
+
+        // a recrawl stores each changed page again under a new docId, and keeps the old
+        // version and the removed pages in the store
+        for (int i = 0; i < 800; i++) {
+            int docId = random.nextInt(store.size());
+            if (live.get(docId)) {
+                live.clear(docId);
+                if (random.nextBoolean()) {
+                    live.set(store.add(store.url(docId), store.title(docId) + " (revised)", store.text(docId) + " " + word()));
+                }
+            }
+        }
+        List<String> texts = new ArrayList<>();
+        for (int docId = 0; docId < store.size(); docId++) {
+            texts.add(live.get(docId) ? store.text(docId) : null);
+        }
+        InvertedIndex current = new ParallelIndexBuilder(1, true).build(texts);
+        assertEquals(live.cardinality(), current.numDocs());
+
+        try (SearchServer single = new SearchServer(loopback(), new SearchEngine(current, new Bm25(), 1024),
+                new Highlighter(current, store), store, 1, 4, Duration.ofSeconds(10));
+             HttpClient client = HttpClient.newHttpClient()) {
+            single.start();
+            for (int shards : new int[]{1, 3, 4}) {
+                List<Partition> partitions = new ArrayList<>();
+                for (int shard = 0; shard < shards; shard++) {
+                    partitions.add(Partition.of(shard, shards, store.size(), live));
+                }
+                // contiguous, covering every docId, and balanced by live documents
+                int liveDocs = 0;
+                for (int shard = 0; shard < shards; shard++) {
+                    Partition partition = partitions.get(shard);
+                    assertEquals(shard == 0 ? 0 : partitions.get(shard - 1).endDocId, partition.firstDocId);
+                    assertEquals(live.get(partition.firstDocId, partition.endDocId).cardinality(), partition.liveDocs());
+                    assertTrue(Math.abs(partition.liveDocs() - live.cardinality() / shards) <= 1, partition.toString());
+                    liveDocs += partition.liveDocs();
+                }
+                assertEquals(store.size(), partitions.get(shards - 1).endDocId);
+                assertEquals(live.cardinality(), liveDocs);
+                assertAnswersLike(single, client, partitions);
+            }
+        }
+
+        // the shard built before the recrawl is built again, and the new one is reopened
+        Partition after = Partition.of(1, 3, store.size(), live);
+        assertNotEquals(after, Partition.read(dir));
+        assertEquals(before, Partition.read(dir));
+        after.write(dir);
+        assertEquals(after, Partition.read(dir));
+        assertFalse(Partition.exists(dir.resolve("missing")));
+        // so is one whose range holds the same docIds but lost a page
+        BitSet removed = (BitSet) live.clone();
+        removed.clear(live.nextSetBit(store.size() / 2));
+        assertNotEquals(Partition.of(0, 1, store.size(), live), Partition.of(0, 1, store.size(), removed));
+    }
+
+    // a coordinator over shard servers for the partitions answers like the single-index server
+    private void assertAnswersLike(SearchServer single, HttpClient client, List<Partition> partitions) throws Exception {
+        int shards = partitions.size();
+        List<ShardServer> servers = new ArrayList<>();
+        try {
+            for (Partition partition : partitions) {
+                servers.add(shard(partition, null));
+            }
+            try (Coordinator coordinator = Coordinator.connect(uris(servers), Duration.ofSeconds(5), Duration.ofSeconds(5))) {
+                for (int i = 0; i < 200; i++) {
+                    String query = query(i);
+                    int k = 1 + random.nextInt(20);
+                    int offset = i % 4 == 0 ? random.nextInt(30) : 0;
+                    StringBuilder sharded = new StringBuilder();
+                    coordinator.search(query, k, offset, sharded);
+                    String expected = client.send(HttpRequest.newBuilder(URI.create("http://localhost:" + single.port()
+                            + "/search?q=" + URLEncoder.encode(query, StandardCharsets.UTF_8) + "&k=" + k
+                            + "&offset=" + offset)).build(), HttpResponse.BodyHandlers.ofString()).body();
+                    assertEquals(between(expected, "\"results\":", ",\"tookMs\""), between(sharded.toString(), "\"results\":", ",\"partial\""),
+                            shards + " shards: " + query + ", k=" + k + ", offset=" + offset);
+                    assertTrue(sharded.toString().endsWith("\"partial\":false,\"shards\":{\"total\":" + shards + ",\"failed\":[]}"));
+                }
+                StringBuilder json = new StringBuilder();
+                assertThrows(IllegalArgumentException.class, () -> coordinator.search("(giza", 10, 0, json));
+            }
+        } finally {
+            servers.forEach(ShardServer::close);
+        }
+    }
+
+    @Test
+    void leavesOutShardsThatFail() throws Exception {
+        Partition hanging = Partition.of(1, 3, store.size());
+        CountDownLatch released = new CountDownLatch(1);
+        HttpServer stub = hangingShard(hanging, released);
+        List<ShardServer> servers = new ArrayList<>();
+        try {
+            servers.add(shard(Partition.of(0, 3, store.size()), null));
+            servers.add(shard(Partition.of(2, 3, store.size()), null));
+            List<URI> uris = uris(servers);
+            uris.add(1, URI.create("http://localhost:" + stub.getAddress().getPort()));
+            try (Coordinator coordinator = Coordinator.connect(uris, Duration.ofMillis(300), Duration.ofSeconds(5))) {
+                // a hanging shard costs its share of the results and one shard timeout
+                String query = query(0);
+                long started = System.nanoTime();
+                String json = search(coordinator, query);
+                assertTrue(System.nanoTime() - started < Duration.ofSeconds(2).toNanos());
+                assertEquals(expected(query, hanging), hits(json), query);
+                assertTrue(json.contains("\"partial\":true,\"shards\":{\"total\":3,\"failed\":[{\"shard\":\"" + uris.get(1)
+                        + "\",\"error\":\"timed out\"}]}"), json);
+                // released, the stub answers with no results, as if its range were empty
+                released.countDown();
+
+                // a stopped shard is unreachable, and none of its documents appear
+                Partition stopped = Partition.of(2, 3, store.size());
+                int port = servers.get(1).port();
+                servers.remove(1).close();
+                json = search(coordinator, query);
+                List<String> hits = hits(json);
+                for (String hit : hits) {
+                    int docId = Integer.parseInt(hit.substring(0, hit.indexOf(' ')));
+                    assertFalse(stopped.contains(docId) || hanging.contains(docId), hit);
+                }
+                assertTrue(json.contains("{\"shard\":\"" + uris.get(2) + "\",\"error\":\"unreachable\"}"), json);
+
+                // restarted, it has no statistics until the coordinator resends them
+                servers.add(shard(stopped, new InetSocketAddress(InetAddress.getLoopbackAddress(), port)));
+                json = search(coordinator, query);
+                assertTrue(json.contains("{\"shard\":\"" + uris.get(2) + "\",\"error\":\"HTTP 409: no collection statistics\"}"), json);
+                long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+                do {
+                    Thread.sleep(20);
+                    json = search(coordinator, query);
+                } while (json.contains("HTTP 409") && System.nanoTime() < deadline);
+                assertEquals(expected(query, hanging), hits(json), query);
+                assertTrue(json.endsWith("\"partial\":false,\"shards\":{\"total\":3,\"failed\":[]}"), json);
+            }
+        } finally {
+            released.countDown();
+            stub.stop(0);
+            servers.forEach(ShardServer::close);
+        }
+    }
+
+    private ShardServer shard(Partition partition, InetSocketAddress address) throws IOException {
+        ShardServer server = new ShardServer(address != null ? address : loopback(), partition.index(store, 1), partition,
+                store, new Bm25(), 1024);
+        server.start();
+        return server;
+    }
+
+    // answers the statistics of its partition, but no search until released, then an empty one
+    private HttpServer hangingShard(Partition partition, CountDownLatch released) throws IOException {
+        // before the JDK server first reads it, as the servers here do
+        SearchServer.disableNagle();
+        HttpServer server = HttpServer.create(loopback(), 0);
+        String statistics = CollectionStatistics.of(partition.index(store, 1)).encode();
+        server.createContext("/shard/statistics", exchange -> {
+            try (exchange) {
+                exchange.getRequestBody().readAllBytes();
+                if ("GET".equals(exchange.getRequestMethod())) {
+                    SearchServer.send(exchange, 200, "text/plain; charset=utf-8", statistics);
+                } else {
+                    exchange.sendResponseHeaders(204, -1);
+                }
+            }
+        });
+        server.createContext("/shard/search", exchange -> {
+            try (exchange) {
+                released.await();
+                SearchServer.send(exchange, 200, "text/plain; charset=utf-8", "");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        server.start();
+        return server;
+    }
+
+    private static String search(Coordinator coordinator, String query) {
+        StringBuilder json = new StringBuilder();
+        coordinator.search(query, 10, 0, json);
+        return json.toString();
+    }
+
+    // the single index's top 10 of the documents the missing shard does not own
+    private List<String> expected(String query, Partition missing) {
+        return engine.search(query, store.size()).stream()
+                .filter(result -> !missing.contains(result.docId))
+                .limit(10)
+                .map(result -> result.docId + " " + result.score)
+                .toList();
+    }
+
+    private static List<String> hits(String json) {
+        List<String> hits = new ArrayList<>();
+        Matcher matcher = HIT.matcher(json);
+        while (matcher.find()) {
+            hits.add(matcher.group(1) + " " + matcher.group(2));
+        }
+        return hits;
+    }
+
+    private static String between(String text, String from, String to) {
+        int start = text.indexOf(from);
+        int end = text.indexOf(to, start);
+        assertTrue(start >= 0 && end >= 0, text);
+        return text.substring(start + from.length(), end);
+    }
+
+    private static InetSocketAddress loopback() {
+        return new InetSocketAddress(InetAddress.getLoopbackAddress(), 0);
+    }
+
+    private static List<URI> uris(List<ShardServer> servers) {
+        List<URI> uris = new ArrayList<>();
+        for (ShardServer server : servers) {
+            uris.add(URI.create("http://localhost:" + server.port()));
+        }
+        return uris;
+    }
+
+    // ranked, Boolean, phrase and wildcard queries in turn
+    private String query(int i) {
+        return switch (i % 4) {
+            case 0 -> word() + " " + word() + (random.nextBoolean() ? "" : " " + word());
+            case 1 -> random.nextBoolean() ? word() + " AND " + word() : "(" + word() + " OR " + word() + ") NOT " + word();
+            case 2 -> {
+                // two neighbours from some page, so the phrase matches at least once
+                String[] words = store.text(random.nextInt(store.size())).split(" ");
+                int at = random.nextInt(words.length - 1);
+                yield "\"" + words[at] + " " + words[at + 1] + "\"";
+            }
+            default -> word().substring(0, 3) + "* " + word();
+        };
+    }
+
+    private DocumentStore store(int size) {
+        DocumentStore store = new DocumentStore();
+        for (int docId = 0; docId < size; docId++) {
+            StringJoiner text = new StringJoiner(" ");
+            for (int i = 0, length = 20 + random.nextInt(300); i < length; i++) {
+                text.add(word());
+            }
+            store.add("https://example.org/p" + docId, "Page " + docId, text.toString());
+        }
+        return store;
+    }
+
+    // Zipfian, so common words tie on scores across shards
+    private String word() {
+        double u = random.nextDouble() * Math.log(vocabulary.length + 1.0);
+        return vocabulary[Math.min((int) Math.exp(u) - 1, vocabulary.length - 1)];
+    }
+
+    private String[] vocabulary(int size) {
+        Set<String> words = new LinkedHashSet<>();
+        while (words.size() < size) {
+            StringBuilder word = new StringBuilder();
+            for (int i = 0, length = 3 + random.nextInt(7); i < length; i++) {
+                word.append((char) ('a' + random.nextInt(8)));
+            }
+            words.add(word.toString());
+        }
+        return words.toArray(new String[0]);
+    }
+}
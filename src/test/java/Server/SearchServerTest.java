@@ -0,0 +1,172 @@
+package Server;
+
+import Metrics.Counter;
+import Metrics.Metrics;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Admission and request validation of the search endpoint, over a backend that blocks
+ * until released, so the tests decide when slots are held and queries run late.
+ */
+class SearchServerTest {
+    private final CountDownLatch released = new CountDownLatch(1);
+    private final AtomicInteger started = new AtomicInteger();
+    // the searches the backend was asked for, as "query k offset"
+    private final List<String> calls = new CopyOnWriteArrayList<>();
+    private final Counter rejected = Metrics.shared().counter("server.rejected");
+
+    // "block" waits for the release, "bad" is malformed, "fail" breaks; others answer at once
+    private final SearchBackend backend = (query, k, offset, json) -> {
+        calls.add(query + " " + k + " " + offset);
+        started.incrementAndGet();
+        switch (query) {
+            case "block" -> {
+                try {
+                    released.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            case "bad" -> throw new IllegalArgumentException("unbalanced quotes");
+            case "fail" -> throw new IllegalStateException("index unavailable");
+            default -> {
+            }
+        }
+        json.append("\"results\":[]");
+    };
+
+    @Test
+    void refusesRequestsBeyondTheQueue() throws Exception {
+        try (SearchServer server = new SearchServer(loopback(), backend, 1, 1, Duration.ofSeconds(30));
+             HttpClient client = HttpClient.newHttpClient()) {
+            server.start();
+            long rejectedBefore = rejected.getValue();
+            CompletableFuture<HttpResponse<String>> running = get(client, server, "/search?q=block");
+            awaitStarted(1);
+
+            // one request may queue for the slot; of two more, whichever comes second is refused at once
+            CompletableFuture<HttpResponse<String>> first = get(client, server, "/search?q=queued");
+            CompletableFuture<HttpResponse<String>> second = get(client, server, "/search?q=queued");
+            HttpResponse<String> refused = (HttpResponse<String>) CompletableFuture.anyOf(first, second).get(10, TimeUnit.SECONDS);
+            assertEquals(503, refused.statusCode(), refused.body());
+            assertEquals("1", refused.headers().firstValue("Retry-After").orElse(null));
+            assertEquals("{\"error\":\"server overloaded\"}", refused.body());
+            assertEquals(1, started.get(), "the refused request never reached the backend");
+            assertEquals(rejectedBefore + 1, rejected.getValue());
+
+            // released, the running query and the queued one both answer
+            released.countDown();
+            assertEquals(200, running.get(10, TimeUnit.SECONDS).statusCode());
+            CompletableFuture<HttpResponse<String>> queued = first.get() == refused ? second : first;
+            assertEquals(200, queued.get(10, TimeUnit.SECONDS).statusCode());
+            assertEquals(List.of("block 10 0", "queued 10 0"), calls);
+        }
+    }
+
+    @Test
+    void timesOutWaitingAndRunning() throws Exception {
+        try (SearchServer server = new SearchServer(loopback(), backend, 1, 4, Duration.ofMillis(300));
+             HttpClient client = HttpClient.newHttpClient()) {
+            server.start();
+            long rejectedBefore = rejected.getValue();
+            CompletableFuture<HttpResponse<String>> running = get(client, server, "/search?q=block");
+            awaitStarted(1);
+            CompletableFuture<HttpResponse<String>> waiting = get(client, server, "/search?q=waiting");
+
+            // the query that ran out of time was evaluating, the other never got a slot
+            HttpResponse<String> late = running.get(10, TimeUnit.SECONDS);
+            assertEquals(504, late.statusCode(), late.body());
+            assertEquals("{\"error\":\"query timed out\"}", late.body());
+            HttpResponse<String> starved = waiting.get(10, TimeUnit.SECONDS);
+            assertEquals(503, starved.statusCode(), starved.body());
+            assertEquals("1", starved.headers().firstValue("Retry-After").orElse(null));
+            assertEquals("{\"error\":\"timed out waiting for a free slot\"}", starved.body());
+
+            // the timed-out query still holds its slot until it finishes
+            HttpResponse<String> stillHeld = get(client, server, "/search?q=waiting").get(10, TimeUnit.SECONDS);
+            assertEquals(503, stillHeld.statusCode(), stillHeld.body());
+            assertEquals(1, started.get());
+            assertEquals(rejectedBefore + 3, rejected.getValue());
+
+            released.countDown();
+            HttpResponse<String> freed = get(client, server, "/search?q=freed").get(10, TimeUnit.SECONDS);
+            assertEquals(200, freed.statusCode(), freed.body());
+        }
+    }
+
+    @Test
+    void rejectsMalformedRequests() throws Exception {
+        try (SearchServer server = new SearchServer(loopback(), backend, 2, 2, Duration.ofSeconds(10));
+             HttpClient client = HttpClient.newHttpClient()) {
+            server.start();
+            for (String path : new String[]{"/search?q=giza&k=0", "/search?q=giza&k=101", "/search?q=giza&k=ten",
+                    "/search?q=giza&offset=-1", "/search?q=giza&offset=1001", "/search?q=giza&k=", "/search",
+                    "/search?q=", "/search?q=+%20", "/search?k=5"}) {
+                HttpResponse<String> response = get(client, server, path).get(10, TimeUnit.SECONDS);
+                assertEquals(400, response.statusCode(), path);
+                assertTrue(response.body().startsWith("{\"error\":\""), response.body());
+                assertEquals("application/json; charset=utf-8", response.headers().firstValue("Content-Type").orElse(null));
+            }
+            assertEquals(List.of(), calls, "invalid parameters never reach the backend");
+            long rejectedBefore = rejected.getValue();
+
+            HttpResponse<String> malformed = get(client, server, "/search?q=bad").get(10, TimeUnit.SECONDS);
+            assertEquals(400, malformed.statusCode());
+            assertEquals("{\"error\":\"invalid query: unbalanced quotes\"}", malformed.body());
+            assertEquals(500, get(client, server, "/search?q=fail").get(10, TimeUnit.SECONDS).statusCode());
+
+            HttpResponse<String> posted = client.send(HttpRequest.newBuilder(uri(server, "/search?q=giza"))
+                    .POST(HttpRequest.BodyPublishers.ofString("q=giza")).build(), HttpResponse.BodyHandlers.ofString());
+            assertEquals(405, posted.statusCode());
+            assertEquals("GET", posted.headers().firstValue("Allow").orElse(null));
+
+            // the limits themselves are accepted, and the first occurrence of a parameter wins
+            HttpResponse<String> ok = get(client, server, "/search?q=old+kingdom&k=100&offset=1000&k=3").get(10, TimeUnit.SECONDS);
+            assertEquals(200, ok.statusCode(), ok.body());
+            assertTrue(ok.body().startsWith("{\"query\":\"old kingdom\",\"offset\":1000,\"k\":100,\"results\":[],\"tookMs\":"), ok.body());
+            assertEquals(List.of("bad 10 0", "fail 10 0", "old kingdom 100 1000"), calls);
+
+            // answered, failed or refused, every request gives its place back
+            for (int i = 0; i < 10; i++) {
+                assertEquals(200, get(client, server, "/search?q=giza").get(10, TimeUnit.SECONDS).statusCode(), "request " + i);
+            }
+            assertEquals(rejectedBefore, rejected.getValue(), "only overload is counted as rejected");
+        }
+        assertThrows(IllegalArgumentException.class, () -> new SearchServer(loopback(), backend, 0, 1, Duration.ofSeconds(1)));
+        assertThrows(IllegalArgumentException.class, () -> new SearchServer(loopback(), backend, 1, -1, Duration.ofSeconds(1)));
+        assertThrows(IllegalArgumentException.class, () -> new SearchServer(loopback(), backend, 1, 1, Duration.ZERO));
+    }
+
+    private void awaitStarted(int count) throws InterruptedException {
+        long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        while (started.get() < count) {
+            assertTrue(System.nanoTime() < deadline, "the backend was never called");
+            Thread.sleep(5);
+        }
+    }
+
+    private static CompletableFuture<HttpResponse<String>> get(HttpClient client, SearchServer server, String path) {
+        return client.sendAsync(HttpRequest.newBuilder(uri(server, path)).build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private static URI uri(SearchServer server, String path) {
+        return URI.create("http://localhost:" + server.port() + path);
+    }
+
+    private static InetSocketAddress loopback() {
+        return new InetSocketAddress(InetAddress.getLoopbackAddress(), 0);
+    }
+}
@@ -0,0 +1,125 @@
+package Stemmer;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Cached stems against a fresh {@link Stemmer} per word, through a cache small enough
+ * that words keep evicting each other, from one thread and from several.
+ */
+class StemCacheTest {
+    private static final String[] ENGLISH = {
+            "caresses", "ponies", "ties", "caress", "cats", "feed", "agreed", "plastered", "bled", "motoring",
+            "sing", "conflated", "troubled", "sized", "hopping", "tanned", "falling", "hissing", "fizzed",
+            "failing", "filing", "happy", "sky", "relational", "conditional", "rational", "valenci", "hesitanci",
+            "digitizer", "conformabli", "radicalli", "differentli", "vileli", "analogousli", "vietnamization",
+            "predication", "operator", "feudalism", "decisiveness", "hopefulness", "callousness", "formaliti",
+            "sensitiviti", "sensibiliti", "triplicate", "formative", "formalize", "electriciti", "electrical",
+            "hopeful", "goodness", "revival", "allowance", "inference", "airliner", "gyroscopic", "adjustable",
+            "defensible", "irritant", "replacement", "adjustment", "dependent", "adoption", "homologou",
+            "communism", "activate", "angulariti", "homologous", "effective", "bowdlerize", "probate", "rate",
+            "cease", "controll", "roll", "pharaohs", "pyramids", "dynasties", "kingdoms", "a", "is", "as", "x1",
+            "under_score", "2024", "generalizations", "oscillators"
+    };
+
+    private final Random random = new Random(7);
+
+    @Test
+    void matchesAFreshStemmer() {
+        // eight slots for thousands of words: most lookups replace another word's entry
+        StemCache cache = new StemCache(8);
+        List<String> words = words();
+        for (int round = 0; round < 3; round++) {
+            for (String word : words) {
+                String stem = cache.stem(word);
+                assertEquals(reference(word), stem, word);
+                assertSame(stem.intern(), stem, "stems are interned");
+            }
+        }
+
+        // a range of a larger buffer stems like the word alone
+        for (int i = 0; i < 5000; i++) {
+            String word = words.get(random.nextInt(words.size()));
+            StringBuilder buffer = new StringBuilder();
+            String before = words.get(random.nextInt(words.size()));
+            buffer.append(before).append(word).append(words.get(random.nextInt(words.size())));
+            assertEquals(reference(word), cache.stem(buffer, before.length(), before.length() + word.length()), word);
+        }
+
+        // words with equal hashes share a slot without being confused
+        assertEquals("Aa".hashCode(), "BB".hashCode());
+        StemCache one = new StemCache(1);
+        assertEquals(reference("Aa"), one.stem("Aa"));
+        assertEquals(reference("BB"), one.stem("BB"));
+        assertEquals(reference("Aa"), one.stem("Aa"));
+        assertEquals("", one.stem(""));
+        assertThrows(IllegalArgumentException.class, () -> new StemCache(0));
+    }
+
+    @Test
+    void agreesAcrossThreads() throws Exception {
+        StemCache cache = new StemCache(64);
+        List<String> words = words();
+        Map<String, String> expected = new HashMap<>();
+        for (String word : words) {
+            expected.put(word, reference(word));
+        }
+        try (ExecutorService executor = Executors.newFixedThreadPool(4)) {
+            List<Future<?>> threads = new ArrayList<>();
+            for (int thread = 0; thread < 4; thread++) {
+                long seed = thread;
+                threads.add(executor.submit(() -> {
+                    Random order = new Random(seed);
+                    for (int i = 0; i < 200_000; i++) {
+                        String word = words.get(order.nextInt(words.size()));
+                        assertEquals(expected.get(word), cache.stem(word), word);
+                    }
+                }));
+            }
+            for (Future<?> thread : threads) {
+                thread.get();
+            }
+        }
+    }
+
+    // the Porter stemmer's own path: one character at a time into a new instance
+    private static String reference(String word) {
+        Stemmer stemmer = new Stemmer();
+        for (int i = 0; i < word.length(); i++) {
+            stemmer.add(word.charAt(i));
+        }
+        stemmer.stem();
+        return stemmer.toString();
+    }
+
+    // the English samples, their prefixes, and generated words with common endings, some
+    // longer than the stemmer's initial buffer
+    private List<String> words() {
+        Set<String> words = new LinkedHashSet<>(Arrays.asList(ENGLISH));
+        for (String word : ENGLISH) {
+            words.add(word.substring(0, 1 + random.nextInt(word.length())));
+        }
+        String[] endings = {"", "s", "es", "ed", "ing", "ly", "ness", "ation", "izer", "ful", "ement", "ies", "y", "e"};
+        for (int length = 40; length <= 120; length++) {
+            words.add(word(length));
+        }
+        while (words.size() < 3000) {
+            words.add(word(1 + random.nextInt(8)) + endings[random.nextInt(endings.length)]);
+        }
+        return new ArrayList<>(words);
+    }
+
+    private String word(int length) {
+        StringBuilder word = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            word.append("aeioubcdlmnprstvyz".charAt(random.nextInt(18)));
+        }
+        return word.toString();
+    }
+}
@@ -0,0 +1,103 @@
+package Tokenizer;
+
+import Stemmer.StemCache;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tokens, offsets and positions against the runs of {@code \w} a regex finds in the
+ * same text, and the analyzer's terms against the stems of those tokens.
+ */
+class TokenizerTest {
+    private static final Pattern WORD = Pattern.compile("\\w+");
+    // word characters, separators, and non-ASCII letters that \w and the tokenizer both split on
+    private static final String ALPHABET = "abcXYZ09_ \t\n.,;:-'\"()!?/éßKİ中";
+
+    private final Random random = new Random(8);
+
+    @Test
+    void matchesTheRegexTokens() {
+        Tokenizer tokens = new Tokenizer();
+        for (int i = 0; i < 2000; i++) {
+            String text = text();
+            assertTokens(text, 0, text.length(), tokens.reset(text));
+            // the view of the current token reads like the lower-cased surface form
+            for (tokens.reset(text); tokens.next(); ) {
+                String surface = text.substring(tokens.start(), tokens.end()).toLowerCase(Locale.ROOT);
+                assertEquals(surface, tokens.toString());
+                assertEquals(surface.length(), tokens.length());
+                if (tokens.length() > 1) {
+                    assertEquals(surface.substring(1), tokens.subSequence(1, tokens.length()).toString());
+                    assertEquals(surface.charAt(1), tokens.charAt(1));
+                }
+            }
+            assertFalse(tokens.next(), "stays exhausted");
+
+            // a range tokenizes as if it were the whole text, at the same offsets
+            int from = random.nextInt(text.length() + 1);
+            int to = from + random.nextInt(text.length() - from + 1);
+            assertTokens(text, from, to, tokens.reset(text, from, to));
+        }
+
+        // tokens longer than the initial buffer, and text with no tokens at all
+        String longWord = "Pyramid".repeat(20);
+        assertTokens(longWord + " of " + longWord, 0, 2 * longWord.length() + 4, tokens.reset(longWord + " of " + longWord));
+        assertFalse(tokens.reset("").next());
+        assertFalse(tokens.reset(" ... é !").next());
+    }
+
+    @Test
+    void analyzesToTheStemsOfTheTokens() {
+        StemCache stems = new StemCache(256);
+        Analyzer analyzer = new Analyzer(stems);
+        // enough calls that the sampled, timed path runs as well as the plain one
+        for (int i = 0; i < 1000; i++) {
+            String text = text() + " Running ponies' generalizations";
+            List<String> expected = new ArrayList<>();
+            for (Matcher matcher = WORD.matcher(text); matcher.find(); ) {
+                String token = matcher.group().toLowerCase(Locale.ROOT);
+                expected.add(stems.stem(token) + "@" + expected.size() + ":" + matcher.start() + "-" + matcher.end());
+            }
+            List<String> terms = new ArrayList<>();
+            int count = analyzer.analyze(text, (term, position, start, end) -> terms.add(term + "@" + position + ":" + start + "-" + end));
+            assertEquals(expected, terms, text);
+            assertEquals(expected.size(), count);
+        }
+    }
+
+    private static void assertTokens(String text, int from, int to, Tokenizer tokens) {
+        Matcher matcher = WORD.matcher(text).region(from, to);
+        int position = 0;
+        while (matcher.find()) {
+            assertTrue(tokens.next(), "missing " + matcher.group() + " in " + text);
+            assertEquals(matcher.group().toLowerCase(Locale.ROOT), tokens.toString());
+            assertEquals(matcher.start(), tokens.start());
+            assertEquals(matcher.end(), tokens.end());
+            assertEquals(position++, tokens.position());
+        }
+        assertFalse(tokens.next(), "extra token in " + text);
+        if (from == 0 && to == text.length()) {
+            // over the whole text, as many tokens as the split the tokenizer replaced
+            String[] split = text.split("\\W+");
+            int words = split.length > 0 && split[0].isEmpty() ? split.length - 1 : split.length;
+            assertEquals(words, position);
+        }
+    }
+
+    // runs of letters and separators, mostly short, sometimes starting or ending on either
+    private String text() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0, length = random.nextInt(60); i < length; i++) {
+            char c = ALPHABET.charAt(random.nextInt(ALPHABET.length()));
+            for (int repeat = random.nextInt(3); repeat >= 0; repeat--) {
+                text.append(c);
+            }
+        }
+        return text.toString();
+    }
+}